@@ -13,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 /**
  * 
@@ -35,8 +36,8 @@ public class ConstraintsLoader {
 			reader.close();
 			return matrixConstraintsDTO;
 
-		} catch (IOException ex) {
-			logger.error("ConstraintsLoader.saveToJSON:", ex);
+		} catch (IOException | JsonParseException ex) {
+			logger.error("ConstraintsLoader.loadFromJSON:", ex);
 			return null;
 		}
 
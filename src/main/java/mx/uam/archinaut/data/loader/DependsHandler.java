@@ -0,0 +1,33 @@
+package mx.uam.archinaut.data.loader;
+
+/**
+ * Receives the contents of a depends-sdsm file as it is being read. Variables
+ * are received first, in the order in which the cells refer to them, then each
+ * cell is followed by its dependencies.
+ */
+public interface DependsHandler {
+
+	/**
+	 * A file name from the "variables" array
+	 *
+	 * @param name the name as it appears in the file
+	 */
+	public void variable(String name);
+
+	/**
+	 * A new cell from the "cells" array
+	 *
+	 * @param source      index of the source variable
+	 * @param destination index of the destination variable
+	 */
+	public void cell(int source, int destination);
+
+	/**
+	 * A dependency type of the last cell
+	 *
+	 * @param type        the dependency type
+	 * @param occurrences the number of occurrences
+	 */
+	public void dependency(String type, int occurrences);
+
+}
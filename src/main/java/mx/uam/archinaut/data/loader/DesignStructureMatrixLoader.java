@@ -21,24 +21,28 @@ SOFTWARE.
 */
 package mx.uam.archinaut.data.loader;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonToken;
-
 import lombok.extern.slf4j.Slf4j;
+import mx.uam.archinaut.data.nameprocessing.NameFilter;
 import mx.uam.archinaut.data.nameprocessing.NameProcessor;
+import mx.uam.archinaut.data.nameprocessing.NameTransformer;
+import mx.uam.archinaut.model.DependencyStore;
+import mx.uam.archinaut.model.DependencyTypeTable;
 import mx.uam.archinaut.model.DesignStructureMatrix;
-import mx.uam.archinaut.model.MatrixDependencyGroup;
 import mx.uam.archinaut.model.MatrixElement;
 import mx.uam.archinaut.model.yaml.RenamingConfiguration;
 
@@ -67,98 +71,244 @@ public class DesignStructureMatrixLoader {
 	 */
 	public DesignStructureMatrix loadFromJSON(String filename, RenamingConfiguration renamingConfiguration) {
 
-		List<MatrixElement> elements = new ArrayList<>();
+		return loadFromJSON(filename, nameProcessor.getTransformer(renamingConfiguration));
 
-		try {
+	}
+
+	/**
+	 * Loads a file produced by depends without the elements whose renamed name is
+	 * matched by the exclusions, nor their dependencies
+	 * 
+	 * @param filename              the path of the file
+	 * @param renamingConfiguration the renaming of the elements
+	 * @param exclusions            the compiled exclusions
+	 * @return a DesignStructureMatrix, null if the file couldn't be loaded
+	 */
+	public DesignStructureMatrix loadFromJSON(String filename, RenamingConfiguration renamingConfiguration,
+			NameFilter exclusions) {
 
-			log.info("Loading JSON depends output from: ", filename);
+		return loadFromJSON(filename, nameProcessor.getTransformer(renamingConfiguration), null, exclusions);
 
-			InputStream is = new FileInputStream(filename);
+	}
 
-			Reader reader = new InputStreamReader(is);
+	/**
+	 * Loads a file produced by depends renaming its elements with a compiled
+	 * renaming configuration
+	 * 
+	 * @param filename        the path of the file
+	 * @param nameTransformer the renaming of the elements
+	 * @return a DesignStructureMatrix, null if the file couldn't be loaded
+	 */
+	public DesignStructureMatrix loadFromJSON(String filename, NameTransformer nameTransformer) {
 
-			// Convert JSON File to Java Object
-			JsonReader jsonReader = new JsonReader(reader);
+		return loadFromJSON(filename, nameTransformer, null);
 
-			jsonReader.beginObject();
+	}
 
-			// consume "schemaVersion" : "1.0"
-			jsonReader.nextName();
-			jsonReader.nextString();
+	/**
+	 * Loads a file produced by depends renaming its elements with a compiled
+	 * renaming configuration. Dependencies of other types than the ones given are
+	 * dropped while the file is read, and cells left without dependencies are not
+	 * stored
+	 * 
+	 * @param filename        the path of the file
+	 * @param nameTransformer the renaming of the elements
+	 * @param types           the dependency types to load, null to load every type
+	 * @return a DesignStructureMatrix, null if the file couldn't be loaded
+	 */
+	public DesignStructureMatrix loadFromJSON(String filename, NameTransformer nameTransformer,
+			Collection<String> types) {
 
-			// consume "name" : "dependency-sdsm"
-			jsonReader.nextName();
-			jsonReader.nextString();
+		return loadFromJSON(filename, nameTransformer, types, NameFilter.NONE);
 
-			jsonReader.nextName(); // consume "variables"
-			jsonReader.beginArray();
+	}
 
-			// filenames
-			JsonToken token = jsonReader.peek();
+	/**
+	 * Loads a file produced by depends renaming its elements with a compiled
+	 * renaming configuration. The elements whose renamed name is matched by the
+	 * exclusions are not created and their cells are skipped while the file is
+	 * read, as are the dependencies of other types than the ones given
+	 * 
+	 * @param filename        the path of the file
+	 * @param nameTransformer the renaming of the elements
+	 * @param types           the dependency types to load, null to load every type
+	 * @param exclusions      the compiled exclusions
+	 * @return a DesignStructureMatrix, null if the file couldn't be loaded
+	 */
+	public DesignStructureMatrix loadFromJSON(String filename, NameTransformer nameTransformer,
+			Collection<String> types, NameFilter exclusions) {
 
-			while (token != JsonToken.END_ARRAY) {
-				String value = jsonReader.nextString();
-				value = nameProcessor.processName(renamingConfiguration, value);
+		MatrixHandler handler = new MatrixHandler(nameTransformer, types == null ? null : new HashSet<>(types),
+				exclusions);
 
-				elements.add(new MatrixElement(value)); // consume file name
-				token = jsonReader.peek();
+		try {
+
+			log.info("Loading JSON depends output from: {}", filename);
+
+			if (MappedDependsReader.canMap(Files.size(Paths.get(filename)))) {
+				new MappedDependsReader().read(filename, handler);
+			} else {
+				new JsonDependsReader().read(filename, handler);
 			}
 
-			jsonReader.endArray();
+		} catch (IOException ex) {
+
+			log.error("DesignStructureMatrixLoader.loadFromJSON: ", ex);
+			return null;
+		}
+
+		DependencyStore store = handler.buildStore();
 
-			jsonReader.nextName(); // consume "cells"
+		log.info("Loaded {} elements and {} dependency cells", store.getElementsCount(), store.getCellsCount());
+
+		if (handler.dropped > 0) {
+			log.info("Dropped {} dependencies of types that are not in the configuration", handler.dropped);
+		}
 
-			jsonReader.beginArray();
+		DesignStructureMatrix matrix = new DesignStructureMatrix(filename, handler.elements);
 
-			token = jsonReader.peek();
+		if (!exclusions.isEmpty()) {
 
-			while (token != JsonToken.END_ARRAY) {
-				jsonReader.beginObject();
+			for (String exclusion : exclusions.getExclusions()) {
+				matrix.addExclusionString(exclusion);
+			}
+
+			log.info("Removed {} elements and {} dependency cells, exclusions are: {}", handler.excluded,
+					handler.removedCells, exclusions);
+		}
+
+		return matrix;
+	}
+
+	/**
+	 * Creates the elements and streams the cells into the compressed store, no
+	 * object is created per cell
+	 */
+	private class MatrixHandler implements DependsHandler {
 
-				jsonReader.nextName(); // consume "src"
-				int row = jsonReader.nextInt();
+		private final NameTransformer nameTransformer;
 
-				jsonReader.nextName(); // consume "dest"
-				int column = jsonReader.nextInt();
+		// The types that are loaded, null for every type
+		private final Set<String> types;
 
-				jsonReader.nextName(); // consume "values"
-				jsonReader.beginObject();
+		// Id of every type found, NO_ID for the types that are dropped
+		private final Map<String, Integer> typeIds = new HashMap<>();
 
-				MatrixElement source = elements.get(row);
-				MatrixElement destination = elements.get(column);
-				MatrixDependencyGroup dependencies = new MatrixDependencyGroup(source, destination);
-				source.addDependency(dependencies);
+		private final NameFilter exclusions;
 
-				while (token != JsonToken.END_OBJECT) {
+		private final List<MatrixElement> elements = new ArrayList<>();
 
-					String dependencyType = jsonReader.nextName(); // consume dependency type
-					int intValue = jsonReader.nextInt(); // consume value
+		// Index of the element of every variable, -1 for the excluded variables
+		private int[] elementIndexes = new int[1024];
 
-					dependencies.addDependency(dependencyType, intValue);
+		private int variables = 0;
 
-					token = jsonReader.peek();
-				}
+		private DependencyStore.Builder storeBuilder;
 
-				jsonReader.endObject();
+		// The cell whose dependencies are being read, it is added with its first
+		// loaded dependency
+		private int cellSource = -1;
 
-				jsonReader.endObject();
-				token = jsonReader.peek();
+		private int cellDestination;
+
+		// True while the dependencies of a cell of an excluded element are read
+		private boolean skipping = false;
+
+		private int dropped = 0;
+
+		private int excluded = 0;
+
+		private int removedCells = 0;
+
+		MatrixHandler(NameTransformer nameTransformer, Set<String> types, NameFilter exclusions) {
+			this.nameTransformer = nameTransformer;
+			this.types = types;
+			this.exclusions = exclusions;
+		}
+
+		@Override
+		public void variable(String name) {
+
+			String fullName = nameTransformer.transform(name);
+
+			if (variables == elementIndexes.length) {
+				elementIndexes = Arrays.copyOf(elementIndexes, variables * 2);
 			}
 
-			jsonReader.endArray();
-			jsonReader.endObject();
+			if (exclusions.matches(fullName)) {
+				elementIndexes[variables++] = -1;
+				excluded++;
+				return;
+			}
 
-			jsonReader.close();
+			elementIndexes[variables++] = elements.size();
+			elements.add(new MatrixElement(fullName));
+		}
 
-		} catch (IOException ex) {
+		@Override
+		public void cell(int source, int destination) {
 
-			log.error("DesignStructureMatrixLoader.loadFromJSON: ", ex);
-			return null;
+			// The variables always come before the cells
+			if (storeBuilder == null) {
+				storeBuilder = new DependencyStore.Builder(elements);
+			}
+
+			cellSource = elementIndex(source);
+			cellDestination = elementIndex(destination);
+
+			skipping = cellSource == -1 || cellDestination == -1;
+
+			if (skipping) {
+				cellSource = -1;
+				removedCells++;
+			}
 		}
 
-		DesignStructureMatrix matrix = new DesignStructureMatrix(filename, elements);
+		/**
+		 * Returns the index of the element of a variable, -1 if it was excluded
+		 */
+		private int elementIndex(int variable) {
 
-		return matrix;
+			if (variable < 0 || variable >= variables) {
+				throw new IllegalArgumentException(
+						"Cell refers to variable " + variable + " outside of the " + variables + " variables");
+			}
+
+			return elementIndexes[variable];
+		}
+
+		@Override
+		public void dependency(String type, int occurrences) {
+
+			if (skipping) {
+				return;
+			}
+
+			int typeId = typeIds.computeIfAbsent(type, t -> types == null || types.contains(t)
+					? DependencyTypeTable.intern(t)
+					: DependencyTypeTable.NO_ID);
+
+			if (typeId == DependencyTypeTable.NO_ID) {
+				dropped++;
+				return;
+			}
+
+			if (cellSource != -1) {
+				storeBuilder.addCell(cellSource, cellDestination);
+				cellSource = -1;
+			}
+
+			storeBuilder.addDependency(typeId, occurrences);
+		}
+
+		DependencyStore buildStore() {
+
+			if (storeBuilder == null) {
+				storeBuilder = new DependencyStore.Builder(elements);
+			}
+
+			return storeBuilder.build();
+		}
 	}
 
 }
@@ -0,0 +1,410 @@
+package mx.uam.archinaut.data.loader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.opencsv.exceptions.CsvValidationException;
+
+import lombok.extern.slf4j.Slf4j;
+import mx.uam.archinaut.model.CoChangeTable;
+import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.MetricsTable;
+import mx.uam.archinaut.model.yaml.SourceConfiguration;
+
+/**
+ *
+ * Keeps the parsed form of the inputs of a configuration file in a directory,
+ * so a new analysis only parses the inputs that changed since the previous one.
+ *
+ * Every source has two files in the directory, named after a hash of its
+ * signature: a .hash file with the SHA-256 of the contents of the input it
+ * was parsed from, and a .data file with the parsed form. The depends output is
+ * kept as a matrix snapshot, the CSV files as their metrics tables and the
+ * coupling files as their tables of co-changes. Files
+ * are written to a temporary file and then moved, and a cache that can't be
+ * read or written is logged and ignored.
+ */
+@Slf4j
+@Component
+public class InputCache {
+
+	// Changing the format of the .data files or how inputs are parsed changes every
+	// key
+	private static final int VERSION = 4;
+
+	@Autowired
+	private SnapshotLoader snapshotLoader;
+
+	/**
+	 * Parses an input
+	 *
+	 * @param <T> the parsed form of the input
+	 */
+	@FunctionalInterface
+	public interface Parser<T> {
+
+		T parse() throws IOException, CsvValidationException;
+
+	}
+
+	/**
+	 * Returns the matrix of a depends source, from the cache if its file didn't
+	 * change, parsing it and saving it in the cache otherwise
+	 *
+	 * @param cacheDirectory the directory of the cache
+	 * @param source         the depends source
+	 * @param parser         parses the depends output
+	 * @return the matrix, null if the parser returns null
+	 * @throws IOException
+	 * @throws CsvValidationException
+	 */
+	public DesignStructureMatrix getMatrix(String cacheDirectory, SourceConfiguration source,
+			Parser<DesignStructureMatrix> parser) throws IOException, CsvValidationException {
+
+		return get(cacheDirectory, source, parser, new Format<DesignStructureMatrix>() {
+
+			@Override
+			public DesignStructureMatrix read(Path data) throws IOException {
+				return snapshotLoader.loadSnapshot(data.toString());
+			}
+
+			@Override
+			public void write(DesignStructureMatrix matrix, Path data) throws IOException {
+				snapshotLoader.saveSnapshot(matrix, data.toString());
+			}
+
+		});
+	}
+
+	/**
+	 * Returns the metrics of a CSV source, from the cache if its file didn't
+	 * change, parsing it and saving it in the cache otherwise
+	 *
+	 * @param cacheDirectory the directory of the cache
+	 * @param source         the CSV source
+	 * @param parser         parses the CSV file
+	 * @return the metrics
+	 * @throws IOException
+	 * @throws CsvValidationException
+	 */
+	public MetricsTable getMetrics(String cacheDirectory, SourceConfiguration source, Parser<MetricsTable> parser)
+			throws IOException, CsvValidationException {
+
+		return get(cacheDirectory, source, parser, new Format<MetricsTable>() {
+
+			@Override
+			public MetricsTable read(Path data) throws IOException {
+				return readMetrics(data);
+			}
+
+			@Override
+			public void write(MetricsTable table, Path data) throws IOException {
+				writeMetrics(table, data);
+			}
+
+		});
+	}
+
+	/**
+	 * Returns the co-changes of a coupling source, from the cache if its file
+	 * didn't change, parsing it and saving it in the cache otherwise
+	 *
+	 * @param cacheDirectory the directory of the cache
+	 * @param source         the coupling source
+	 * @param parser         parses the coupling file
+	 * @return the co-changes
+	 * @throws IOException
+	 * @throws CsvValidationException
+	 */
+	public CoChangeTable getCoChanges(String cacheDirectory, SourceConfiguration source,
+			Parser<CoChangeTable> parser) throws IOException, CsvValidationException {
+
+		return get(cacheDirectory, source, parser, new Format<CoChangeTable>() {
+
+			@Override
+			public CoChangeTable read(Path data) throws IOException {
+				return readCoChanges(data);
+			}
+
+			@Override
+			public void write(CoChangeTable table, Path data) throws IOException {
+				writeCoChanges(table, data);
+			}
+
+		});
+	}
+
+	private <T> T get(String cacheDirectory, SourceConfiguration source, Parser<T> parser, Format<T> format)
+			throws IOException, CsvValidationException {
+
+		Path directory = Paths.get(cacheDirectory);
+		String key = hash(VERSION + "\n" + source.getSignature());
+
+		Path hashFile = directory.resolve(key + ".hash");
+		Path dataFile = directory.resolve(key + ".data");
+
+		String contentHash = hashContent(source.getFile());
+
+		if (Files.isRegularFile(hashFile) && Files.isRegularFile(dataFile)
+				&& contentHash.equals(new String(Files.readAllBytes(hashFile), StandardCharsets.US_ASCII))) {
+
+			try {
+
+				T cached = format.read(dataFile);
+				log.info("Cache hit for {} ({} entry)", source.getFile(), source.getFormat());
+				return cached;
+
+			} catch (IOException e) {
+				log.warn("Ignoring unreadable cache of " + source.getFile(), e);
+			}
+		}
+
+		log.info("Cache miss for {} ({} entry), parsing it", source.getFile(), source.getFormat());
+
+		T parsed = parser.parse();
+
+		if (parsed != null) {
+
+			try {
+
+				Files.createDirectories(directory);
+
+				// The old hash is removed first, so an interrupted update is a miss
+				Files.deleteIfExists(hashFile);
+
+				Path temporary = Files.createTempFile(directory, key, ".tmp");
+				format.write(parsed, temporary);
+				Files.move(temporary, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+				temporary = Files.createTempFile(directory, key, ".tmp");
+				Files.write(temporary, contentHash.getBytes(StandardCharsets.US_ASCII));
+				Files.move(temporary, hashFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			} catch (IOException e) {
+				log.warn("Couldn't save cache of " + source.getFile(), e);
+			}
+		}
+
+		return parsed;
+	}
+
+	private void writeMetrics(MetricsTable table, Path data) throws IOException {
+
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(data), 1 << 16))) {
+
+			output.writeUTF(table.getSource());
+			output.writeInt(table.getMetricsCount());
+
+			for (int metric = 0; metric < table.getMetricsCount(); metric++) {
+				output.writeUTF(table.getMetricName(metric));
+			}
+
+			output.writeInt(table.getElementsCount());
+
+			for (int index = 0; index < table.getElementsCount(); index++) {
+
+				output.writeUTF(table.getElementName(index));
+
+				for (int metric = 0; metric < table.getMetricsCount(); metric++) {
+					output.writeBoolean(table.hasValue(index, metric));
+					output.writeInt(table.getValue(index, metric));
+				}
+			}
+		}
+	}
+
+	private MetricsTable readMetrics(Path data) throws IOException {
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(data), 1 << 16))) {
+
+			String source = input.readUTF();
+			int metricsCount = input.readInt();
+
+			if (metricsCount < 0) {
+				throw new IOException("Cache " + data + " is corrupted");
+			}
+
+			List<String> metricNames = new ArrayList<>();
+
+			for (int metric = 0; metric < metricsCount; metric++) {
+				metricNames.add(input.readUTF());
+			}
+
+			MetricsTable table = new MetricsTable(source, metricNames);
+			int elementsCount = input.readInt();
+
+			for (int index = 0; index < elementsCount; index++) {
+
+				String name = input.readUTF();
+
+				for (int metric = 0; metric < metricsCount; metric++) {
+
+					boolean present = input.readBoolean();
+					int value = input.readInt();
+
+					if (present) {
+						table.addValue(name, metric, value);
+					}
+				}
+			}
+
+			return table;
+
+		} catch (EOFException e) {
+			throw new IOException("Cache " + data + " is truncated", e);
+		}
+	}
+
+	private void writeCoChanges(CoChangeTable table, Path data) throws IOException {
+
+		// The names are written once, and the pairs refer to them by their id in the
+		// table
+		int pairsCount = table.getPairsCount();
+
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(data), 1 << 16))) {
+
+			output.writeUTF(table.getSource());
+			output.writeBoolean(table.getMetricName() != null);
+			output.writeUTF(table.getMetricName() == null ? "" : table.getMetricName());
+
+			output.writeInt(table.getNamesCount());
+
+			for (int id = 0; id < table.getNamesCount(); id++) {
+				output.writeUTF(table.getName(id));
+			}
+
+			output.writeInt(pairsCount);
+
+			for (int pair = 0; pair < pairsCount; pair++) {
+				output.writeInt(table.getElementId(pair));
+				output.writeInt(table.getCoupledId(pair));
+				output.writeInt(table.getCoChanges(pair));
+			}
+		}
+	}
+
+	private CoChangeTable readCoChanges(Path data) throws IOException {
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(data), 1 << 16))) {
+
+			String source = input.readUTF();
+			boolean hasMetric = input.readBoolean();
+			String metricName = input.readUTF();
+
+			CoChangeTable table = new CoChangeTable(source, hasMetric ? metricName : null);
+
+			int[] ids = new int[readCount(input, data)];
+
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = table.addName(input.readUTF());
+			}
+			int pairsCount = readCount(input, data);
+
+			for (int pair = 0; pair < pairsCount; pair++) {
+
+				int element = input.readInt();
+				int coupled = input.readInt();
+				int coChanges = input.readInt();
+
+				if (element < 0 || element >= ids.length || coupled < 0 || coupled >= ids.length) {
+					throw new IOException("Cache " + data + " is corrupted");
+				}
+
+				table.addPair(ids[element], ids[coupled], coChanges);
+			}
+
+			return table;
+
+		} catch (EOFException e) {
+			throw new IOException("Cache " + data + " is truncated", e);
+		}
+	}
+
+	private int readCount(DataInputStream input, Path data) throws IOException {
+
+		int count = input.readInt();
+
+		if (count < 0) {
+			throw new IOException("Cache " + data + " is corrupted");
+		}
+
+		return count;
+	}
+
+	/**
+	 * SHA-256 of the contents of a file in hexadecimal
+	 */
+	private String hashContent(String file) throws IOException {
+
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[1 << 16];
+
+		try (InputStream input = Files.newInputStream(Paths.get(file))) {
+
+			int read;
+
+			while ((read = input.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+
+		return toHex(digest.digest());
+	}
+
+	private String hash(String text) {
+		return toHex(newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private MessageDigest newDigest() {
+
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform must support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private String toHex(byte[] bytes) {
+
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * How the parsed form of an input is saved in a .data file
+	 */
+	private interface Format<T> {
+
+		T read(Path data) throws IOException;
+
+		void write(T parsed, Path data) throws IOException;
+
+	}
+
+}
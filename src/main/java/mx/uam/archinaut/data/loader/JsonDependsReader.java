@@ -0,0 +1,97 @@
+package mx.uam.archinaut.data.loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ *
+ * Reader for JSON files produced by depends (version 0.9.4) that uses the Gson
+ * streaming API. It is used for files that are too large to be mapped
+ */
+public class JsonDependsReader {
+
+	/**
+	 * Read a depends-sdsm file
+	 *
+	 * @param filename the path of the file
+	 * @param handler  the handler that receives the contents
+	 * @throws IOException
+	 */
+	public void read(String filename, DependsHandler handler) throws IOException {
+
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8);
+				JsonReader jsonReader = new JsonReader(reader)) {
+
+			jsonReader.beginObject();
+
+			// consume "schemaVersion" : "1.0"
+			jsonReader.nextName();
+			jsonReader.nextString();
+
+			// consume "name" : "dependency-sdsm"
+			jsonReader.nextName();
+			jsonReader.nextString();
+
+			jsonReader.nextName(); // consume "variables"
+			jsonReader.beginArray();
+
+			// filenames
+			JsonToken token = jsonReader.peek();
+
+			while (token != JsonToken.END_ARRAY) {
+				handler.variable(jsonReader.nextString()); // consume file name
+				token = jsonReader.peek();
+			}
+
+			jsonReader.endArray();
+
+			jsonReader.nextName(); // consume "cells"
+
+			jsonReader.beginArray();
+
+			token = jsonReader.peek();
+
+			while (token != JsonToken.END_ARRAY) {
+				jsonReader.beginObject();
+
+				jsonReader.nextName(); // consume "src"
+				int row = jsonReader.nextInt();
+
+				jsonReader.nextName(); // consume "dest"
+				int column = jsonReader.nextInt();
+
+				jsonReader.nextName(); // consume "values"
+				jsonReader.beginObject();
+
+				handler.cell(row, column);
+
+				token = jsonReader.peek();
+
+				while (token != JsonToken.END_OBJECT) {
+
+					String dependencyType = jsonReader.nextName(); // consume dependency type
+					int intValue = jsonReader.nextInt(); // consume value
+
+					handler.dependency(dependencyType, intValue);
+
+					token = jsonReader.peek();
+				}
+
+				jsonReader.endObject();
+
+				jsonReader.endObject();
+				token = jsonReader.peek();
+			}
+
+			jsonReader.endArray();
+			jsonReader.endObject();
+		}
+	}
+
+}
@@ -0,0 +1,632 @@
+package mx.uam.archinaut.data.loader;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ *
+ * Reader for JSON files produced by depends (version 0.9.4) built for the
+ * depends-sdsm schema (schemaVersion, name, variables, cells). The file is
+ * mapped in memory and its bytes are scanned directly: the src, dest and values
+ * numbers are parsed without creating strings, and dependency types are
+ * resolved against the types seen before.
+ */
+public class MappedDependsReader {
+
+	private static final byte[] VARIABLES = "variables".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CELLS = "cells".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] SRC = "src".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] DEST = "dest".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] VALUES = "values".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Returns true if the file can be read by this reader, mapped buffers are
+	 * limited to 2GB
+	 *
+	 * @param size the size of the file
+	 * @return
+	 */
+	public static boolean canMap(long size) {
+		return size <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Read a depends-sdsm file
+	 *
+	 * @param filename the path of the file
+	 * @param handler  the handler that receives the contents
+	 * @throws IOException
+	 */
+	public void read(String filename, DependsHandler handler) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+
+			long size = channel.size();
+
+			if (!canMap(size)) {
+				throw new IOException("File " + filename + " is too large to be mapped: " + size + " bytes");
+			}
+
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+
+			new Scanner(buffer, handler).readDocument();
+		}
+	}
+
+	/**
+	 * Scans the mapped bytes of one file
+	 */
+	private static class Scanner {
+
+		private final MappedByteBuffer buffer;
+
+		private final int limit;
+
+		private final DependsHandler handler;
+
+		private int position = 0;
+
+		// Dependency types already seen, so no string is created for them again
+		private byte[][] typeBytes = new byte[16][];
+
+		private String[] typeNames = new String[16];
+
+		private int types = 0;
+
+		// Reusable buffer to copy strings out of the mapped file
+		private byte[] scratch = new byte[256];
+
+		Scanner(MappedByteBuffer buffer, DependsHandler handler) {
+			this.buffer = buffer;
+			this.limit = buffer.limit();
+			this.handler = handler;
+		}
+
+		/**
+		 * Read the top level object
+		 *
+		 * @throws IOException
+		 */
+		void readDocument() throws IOException {
+
+			// Skip the UTF-8 byte order mark
+			if (limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB
+					&& buffer.get(2) == (byte) 0xBF) {
+				position = 3;
+			}
+
+			expect('{');
+
+			if (peek() == '}') {
+				position++;
+				return;
+			}
+
+			do {
+				int keyStart = readKey();
+				int keyEnd = position - 1;
+				expect(':');
+
+				if (keyEquals(keyStart, keyEnd, VARIABLES)) {
+					readVariables();
+				} else if (keyEquals(keyStart, keyEnd, CELLS)) {
+					readCells();
+				} else {
+					// schemaVersion, name or anything not needed
+					skipValue();
+				}
+			} while (nextInObject());
+		}
+
+		private void readVariables() throws IOException {
+
+			expect('[');
+
+			if (peek() == ']') {
+				position++;
+				return;
+			}
+
+			do {
+				handler.variable(readString());
+			} while (nextInArray());
+		}
+
+		private void readCells() throws IOException {
+
+			expect('[');
+
+			if (peek() == ']') {
+				position++;
+				return;
+			}
+
+			do {
+				readCell();
+			} while (nextInArray());
+		}
+
+		private void readCell() throws IOException {
+
+			expect('{');
+
+			int source = -1;
+			int destination = -1;
+			int valuesPosition = -1;
+
+			if (peek() != '}') {
+				do {
+					int keyStart = readKey();
+					int keyEnd = position - 1;
+					expect(':');
+
+					if (keyEquals(keyStart, keyEnd, SRC)) {
+						source = readInt();
+					} else if (keyEquals(keyStart, keyEnd, DEST)) {
+						destination = readInt();
+					} else if (keyEquals(keyStart, keyEnd, VALUES)) {
+
+						if (source >= 0 && destination >= 0) {
+							handler.cell(source, destination);
+							readValues();
+							valuesPosition = -2;
+						} else {
+							// depends writes src and dest first, but the values can be revisited
+							peek();
+							valuesPosition = position;
+							skipValue();
+						}
+					} else {
+						skipValue();
+					}
+				} while (nextInObject());
+			} else {
+				position++;
+			}
+
+			if (source < 0 || destination < 0) {
+				throw error("Cell without src or dest");
+			}
+
+			if (valuesPosition == -1) {
+				handler.cell(source, destination);
+			} else if (valuesPosition >= 0) {
+				int end = position;
+				position = valuesPosition;
+				handler.cell(source, destination);
+				readValues();
+				position = end;
+			}
+		}
+
+		private void readValues() throws IOException {
+
+			expect('{');
+
+			if (peek() == '}') {
+				position++;
+				return;
+			}
+
+			do {
+				String type = readType();
+				expect(':');
+				handler.dependency(type, readInt());
+			} while (nextInObject());
+		}
+
+		/**
+		 * Read a dependency type, the name is only created the first time it is found
+		 *
+		 * @return
+		 * @throws IOException
+		 */
+		private String readType() throws IOException {
+
+			int start = readKey();
+			int end = position - 1;
+
+			for (int i = 0; i < types; i++) {
+				if (keyEquals(start, end, typeBytes[i])) {
+					return typeNames[i];
+				}
+			}
+
+			position = start - 1;
+			String type = readString();
+
+			if (types == typeNames.length) {
+				typeBytes = Arrays.copyOf(typeBytes, types * 2);
+				typeNames = Arrays.copyOf(typeNames, types * 2);
+			}
+
+			typeBytes[types] = Arrays.copyOfRange(scratch, 0, end - start);
+			typeNames[types] = type;
+			types++;
+
+			return type;
+		}
+
+		/**
+		 * Skip a key string without decoding it
+		 *
+		 * @return the position of the first byte of the key, the position is left
+		 *         after the closing quote
+		 * @throws IOException
+		 */
+		private int readKey() throws IOException {
+
+			expect('"');
+
+			int start = position;
+
+			while (position < limit) {
+				byte current = buffer.get(position++);
+
+				if (current == '"') {
+					return start;
+				}
+
+				if (current == '\\') {
+					position++;
+				}
+			}
+
+			throw error("Unterminated string");
+		}
+
+		/**
+		 * Compare the raw bytes of a key with an expected value
+		 */
+		private boolean keyEquals(int start, int end, byte[] expected) {
+
+			if (end - start != expected.length) {
+				return false;
+			}
+
+			for (int i = 0; i < expected.length; i++) {
+				if (buffer.get(start + i) != expected[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Read a string value, the raw bytes are left in scratch
+		 *
+		 * @return
+		 * @throws IOException
+		 */
+		private String readString() throws IOException {
+
+			expect('"');
+
+			int start = position;
+			boolean escaped = false;
+
+			while (true) {
+
+				if (position >= limit) {
+					throw error("Unterminated string");
+				}
+
+				byte current = buffer.get(position);
+
+				if (current == '"') {
+					break;
+				}
+
+				if (current == '\\') {
+					escaped = true;
+					position++;
+				}
+
+				position++;
+			}
+
+			int length = position - start;
+			position++;
+
+			if (scratch.length < length) {
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			}
+
+			for (int i = 0; i < length; i++) {
+				scratch[i] = buffer.get(start + i);
+			}
+
+			if (!escaped) {
+				return new String(scratch, 0, length, StandardCharsets.UTF_8);
+			}
+
+			return unescape(length);
+		}
+
+		/**
+		 * Decode a string with escape sequences from scratch
+		 */
+		private String unescape(int length) throws IOException {
+
+			StringBuilder result = new StringBuilder(length);
+			int segmentStart = 0;
+			int i = 0;
+
+			while (i < length) {
+
+				if (scratch[i] != '\\') {
+					i++;
+					continue;
+				}
+
+				// Raw segments never split a multi-byte character as the escape is ASCII
+				result.append(new String(scratch, segmentStart, i - segmentStart, StandardCharsets.UTF_8));
+
+				char escape = (char) scratch[i + 1];
+
+				switch (escape) {
+				case 'b':
+					result.append('\b');
+					break;
+				case 'f':
+					result.append('\f');
+					break;
+				case 'n':
+					result.append('\n');
+					break;
+				case 'r':
+					result.append('\r');
+					break;
+				case 't':
+					result.append('\t');
+					break;
+				case 'u':
+					if (i + 6 > length) {
+						throw error("Invalid unicode escape");
+					}
+					result.append((char) Integer.parseInt(new String(scratch, i + 2, 4, StandardCharsets.US_ASCII), 16));
+					i += 4;
+					break;
+				default:
+					// \" \\ \/
+					result.append(escape);
+				}
+
+				i += 2;
+				segmentStart = i;
+			}
+
+			result.append(new String(scratch, segmentStart, length - segmentStart, StandardCharsets.UTF_8));
+
+			return result.toString();
+		}
+
+		/**
+		 * Read an integer directly from the bytes
+		 *
+		 * @return
+		 * @throws IOException
+		 */
+		private int readInt() throws IOException {
+
+			peek();
+
+			int start = position;
+			boolean negative = false;
+			long value = 0;
+
+			if (position < limit && buffer.get(position) == '-') {
+				negative = true;
+				position++;
+			}
+
+			int digitsStart = position;
+
+			while (position < limit) {
+				byte current = buffer.get(position);
+
+				if (current < '0' || current > '9') {
+					break;
+				}
+
+				value = value * 10 + (current - '0');
+
+				if (value > Integer.MAX_VALUE + 1L) {
+					throw error("Number too large");
+				}
+
+				position++;
+			}
+
+			if (position == digitsStart) {
+				throw error("Expected a number");
+			}
+
+			if (position < limit) {
+				byte current = buffer.get(position);
+
+				// A number like 1.0 or 1e2 is accepted if it is integral, as Gson does
+				if (current == '.' || current == 'e' || current == 'E') {
+					return readDecimalAsInt(start);
+				}
+			}
+
+			value = negative ? -value : value;
+
+			if (value > Integer.MAX_VALUE) {
+				throw error("Number too large");
+			}
+
+			return (int) value;
+		}
+
+		private int readDecimalAsInt(int start) throws IOException {
+
+			while (position < limit) {
+				byte current = buffer.get(position);
+
+				if ((current < '0' || current > '9') && current != '.' && current != 'e' && current != 'E'
+						&& current != '-' && current != '+') {
+					break;
+				}
+
+				position++;
+			}
+
+			byte[] number = new byte[position - start];
+
+			for (int i = 0; i < number.length; i++) {
+				number[i] = buffer.get(start + i);
+			}
+
+			String text = new String(number, StandardCharsets.US_ASCII);
+
+			try {
+				double asDouble = Double.parseDouble(text);
+				int asInt = (int) asDouble;
+
+				if (asInt != asDouble) {
+					throw error("Expected an int but was " + text);
+				}
+
+				return asInt;
+
+			} catch (NumberFormatException e) {
+				throw error("Expected an int but was " + text);
+			}
+		}
+
+		/**
+		 * Skip any value, including nested objects and arrays
+		 *
+		 * @throws IOException
+		 */
+		private void skipValue() throws IOException {
+
+			int depth = 0;
+
+			do {
+				int current = peek();
+
+				switch (current) {
+				case '{':
+				case '[':
+					depth++;
+					position++;
+					break;
+				case '}':
+				case ']':
+					depth--;
+					position++;
+					break;
+				case '"':
+					readKey();
+					break;
+				case ',':
+				case ':':
+					position++;
+					break;
+				case -1:
+					throw error("Unexpected end of file");
+				default:
+					// true, false, null or a number
+					while (position < limit && !isDelimiter(buffer.get(position))) {
+						position++;
+					}
+				}
+			} while (depth > 0);
+		}
+
+		private boolean isDelimiter(byte current) {
+			return current == ',' || current == '}' || current == ']' || current == ' ' || current == '\t'
+					|| current == '\n' || current == '\r';
+		}
+
+		/**
+		 * Consume the separator after an object member
+		 *
+		 * @return true if there is another member
+		 * @throws IOException
+		 */
+		private boolean nextInObject() throws IOException {
+
+			int current = peek();
+			position++;
+
+			if (current == ',') {
+				return true;
+			}
+
+			if (current == '}') {
+				return false;
+			}
+
+			position--;
+			throw error("Expected ',' or '}'");
+		}
+
+		/**
+		 * Consume the separator after an array element
+		 *
+		 * @return true if there is another element
+		 * @throws IOException
+		 */
+		private boolean nextInArray() throws IOException {
+
+			int current = peek();
+			position++;
+
+			if (current == ',') {
+				return true;
+			}
+
+			if (current == ']') {
+				return false;
+			}
+
+			position--;
+			throw error("Expected ',' or ']'");
+		}
+
+		private void expect(char expected) throws IOException {
+
+			if (peek() != expected) {
+				throw error("Expected '" + expected + "'");
+			}
+
+			position++;
+		}
+
+		/**
+		 * Skip whitespace and return the next byte without consuming it
+		 *
+		 * @return the next byte or -1 at the end of the file
+		 */
+		private int peek() {
+
+			while (position < limit) {
+				byte current = buffer.get(position);
+
+				if (current != ' ' && current != '\t' && current != '\n' && current != '\r') {
+					return current;
+				}
+
+				position++;
+			}
+
+			return -1;
+		}
+
+		private IOException error(String message) {
+			return new IOException(message + " at byte " + position);
+		}
+	}
+
+}
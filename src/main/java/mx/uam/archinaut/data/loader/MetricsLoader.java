@@ -1,36 +1,147 @@
 package mx.uam.archinaut.data.loader;
 
 import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
 import org.springframework.stereotype.Component;
 
 import lombok.extern.slf4j.Slf4j;
+import mx.uam.archinaut.model.MatrixElement;
+import mx.uam.archinaut.model.PackageMetrics;
 
 @Slf4j
 @Component
 public class MetricsLoader {
 
 	/**
-	 * 
-	 * @param foldername
-	 * @param filename
-	 * @param report
-	 * @return
+	 * Write the metrics report of a group of elements, one row per element as it
+	 * is produced. The values of every row are written in the order of the
+	 * columns, and a metric that an element doesn't have is an empty cell
+	 *
+	 * @param filename       the path of the report
+	 * @param filenameColumn the header of the column with the names
+	 * @param metricNames    the metrics, in the order of the columns
+	 * @param elements       the elements
+	 * @return true if the report was written
 	 */
-	public boolean saveReport(String filename, StringBuilder report) {
-
-		File file = new File(filename);
-		BufferedWriter writer = null;
-		try {
-			writer = new BufferedWriter(new FileWriter(file));
-			writer.write(report.toString());
-			writer.close();
-		} catch (Exception ex) {
+	public boolean saveReport(String filename, String filenameColumn, Collection<String> metricNames,
+			Iterable<MatrixElement> elements) {
+
+		String[] columns = metricNames.toArray(new String[0]);
+
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(Files.newOutputStream(Paths.get(filename)), StandardCharsets.UTF_8), 1 << 16)) {
+
+			writer.write(filenameColumn);
+
+			for (String column : columns) {
+				writer.write(',');
+				writer.write(column);
+			}
+
+			writer.write('\n');
+
+			char[] digits = new char[11];
+
+			for (MatrixElement element : elements) {
+
+				writer.write(element.getFullName());
+
+				Map<String, Integer> metrics = element.getMetrics();
+
+				for (String column : columns) {
+
+					writer.write(',');
+
+					Integer value = metrics.get(column);
+
+					if (value != null) {
+						writeInt(writer, value, digits);
+					}
+				}
+
+				writer.write('\n');
+			}
+
+		} catch (IOException ex) {
 			log.error("MetricsLoader.saveReport", ex);
 			return false;
 		}
+
+		return true;
+	}
+
+	/**
+	 * Write the report of the package metrics, one row per group in the order of
+	 * the tree. The ratios have three decimals
+	 *
+	 * @param filename the path of the report
+	 * @param metrics  the metrics of the groups
+	 * @return true if the report was written
+	 */
+	public boolean savePackagesReport(String filename, PackageMetrics metrics) {
+
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(Files.newOutputStream(Paths.get(filename)), StandardCharsets.UTF_8), 1 << 16)) {
+
+			writer.write("Package,ELEMENTS,ABSTRACT_ELEMENTS,CA,CE,INSTABILITY,ABSTRACTNESS,DISTANCE\n");
+
+			char[] digits = new char[11];
+
+			for (int i = 0; i < metrics.getPackages().size(); i++) {
+
+				writer.write(metrics.getPackages().get(i).getFullName());
+
+				for (int value : new int[] { metrics.getElementsCount(i), metrics.getAbstractElementsCount(i),
+						metrics.getAfferentCoupling(i), metrics.getEfferentCoupling(i) }) {
+					writer.write(',');
+					writeInt(writer, value, digits);
+				}
+
+				writer.write(String.format(Locale.ROOT, ",%.3f,%.3f,%.3f\n", metrics.getInstability(i),
+						metrics.getAbstractness(i), metrics.getDistance(i)));
+			}
+
+		} catch (IOException ex) {
+			log.error("MetricsLoader.savePackagesReport", ex);
+			return false;
+		}
+
 		return true;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Write the decimal digits of a value without creating a string
+	 */
+	private void writeInt(Writer writer, int value, char[] digits) throws IOException {
+
+		if (value == Integer.MIN_VALUE) {
+			writer.write(Integer.toString(value));
+			return;
+		}
+
+		boolean negative = value < 0;
+		int remaining = negative ? -value : value;
+		int position = digits.length;
+
+		do {
+			digits[--position] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+		} while (remaining != 0);
+
+		if (negative) {
+			digits[--position] = '-';
+		}
+
+		writer.write(digits, position, digits.length - position);
+	}
+
+}
@@ -0,0 +1,506 @@
+package mx.uam.archinaut.data.loader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Reader for CSV files that only keeps the columns it is asked for. The
+ * indices of the columns are found once in the header, the other columns of
+ * every row are scanned but never copied, and no map or array of strings is
+ * created per row.
+ *
+ * Quoting follows the default OpenCSV parser: ',' separates fields, '"' quotes
+ * them, a doubled quote or a '\' before a quote or a '\' escapes it, and quoted
+ * fields can span several lines. Rows with a different number of fields than
+ * the header are rejected, as CSVReaderHeaderAware does.
+ */
+public class ProjectedCsvReader implements Closeable {
+
+	private static final char SEPARATOR = ',';
+
+	private static final char QUOTE = '"';
+
+	private static final char ESCAPE = '\\';
+
+	private final Reader reader;
+
+	// Characters read from the file, lines are parsed where they are read
+	private char[] buffer = new char[1 << 16];
+
+	private int position = 0;
+
+	private int limit = 0;
+
+	private boolean endOfInput = false;
+
+	// Set after a '\r' so that a following '\n' ends the same line
+	private boolean skipLineFeed = false;
+
+	// Bounds of the current line in the buffer, without the line terminator
+	private int lineStart;
+
+	private int lineEnd;
+
+	// Names of the requested columns and their index in the header, -1 if missing
+	private final String[] requestedNames;
+
+	private final int[] requestedColumns;
+
+	// Number of columns in the header
+	private int columnsCount;
+
+	// Columns of the header whose fields are copied, every column is copied
+	// while the header is read
+	private boolean[] projected = null;
+
+	// Characters of the copied fields of the current record
+	private char[] fields = new char[256];
+
+	private int fieldsLength;
+
+	private int[] fieldStarts = new int[16];
+
+	private int[] fieldEnds = new int[16];
+
+	// State of the parser inside a record
+	private int column;
+
+	private int fieldStart;
+
+	private boolean copying;
+
+	private boolean inQuotes;
+
+	private long recordNumber = 0;
+
+	/**
+	 * Constructor, reads the header
+	 *
+	 * @param reader  the reader of the CSV contents, closed with this reader
+	 * @param columns the names of the columns to read
+	 * @throws IOException if the header can't be read
+	 */
+	public ProjectedCsvReader(Reader reader, List<String> columns) throws IOException {
+
+		this.reader = reader;
+		this.requestedNames = columns.toArray(new String[0]);
+		this.requestedColumns = new int[requestedNames.length];
+
+		try {
+			readHeader();
+		} catch (IOException e) {
+			reader.close();
+			throw e;
+		}
+	}
+
+	private void readHeader() throws IOException {
+
+		columnsCount = readRecord();
+
+		if (columnsCount < 0) {
+			throw new IOException("The CSV file has no header");
+		}
+
+		// If a name is repeated the last column wins, as in CSVReaderHeaderAware
+		Map<String, Integer> headerIndex = new HashMap<>();
+
+		for (int i = 0; i < columnsCount; i++) {
+			headerIndex.put(new String(fields, fieldStarts[i], fieldEnds[i] - fieldStarts[i]), i);
+		}
+
+		projected = new boolean[columnsCount];
+
+		for (int i = 0; i < requestedNames.length; i++) {
+			Integer index = headerIndex.get(requestedNames[i]);
+			requestedColumns[i] = index == null ? -1 : index;
+
+			if (index != null) {
+				projected[index] = true;
+			}
+		}
+	}
+
+	/**
+	 * Move to the next record
+	 *
+	 * @return false if there are no more records
+	 * @throws IOException if the record is malformed or can't be read
+	 */
+	public boolean next() throws IOException {
+
+		int count = readRecord();
+
+		if (count < 0) {
+			return false;
+		}
+
+		if (count != columnsCount) {
+			throw new IOException("Record " + recordNumber + " has " + count + " fields but the header has "
+					+ columnsCount);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Test if a requested column is in the header
+	 *
+	 * @param column the index of the column in the requested list
+	 * @return
+	 */
+	public boolean hasColumn(int column) {
+		return requestedColumns[column] >= 0;
+	}
+
+	/**
+	 * Returns the value of a requested column in the current record
+	 *
+	 * @param column the index of the column in the requested list
+	 * @return the value, null if the column is not in the header
+	 */
+	public String getString(int column) {
+
+		int index = requestedColumns[column];
+
+		if (index < 0) {
+			return null;
+		}
+
+		return new String(fields, fieldStarts[index], fieldEnds[index] - fieldStarts[index]);
+	}
+
+	/**
+	 * Returns the value of a requested column in the current record parsed as an
+	 * int, with the same rules as Integer.parseInt but without creating a string
+	 *
+	 * @param column the index of the column in the requested list
+	 * @return the value
+	 * @throws NumberFormatException if the value is not an int or the column is
+	 *                               not in the header
+	 */
+	public int getInt(int column) {
+
+		int index = requestedColumns[column];
+
+		if (index < 0) {
+			throw new NumberFormatException("Column " + requestedNames[column] + " is not in the header");
+		}
+
+		int i = fieldStarts[index];
+		int end = fieldEnds[index];
+
+		if (i == end) {
+			throw invalidNumber(index);
+		}
+
+		boolean negative = false;
+		int bound = -Integer.MAX_VALUE;
+
+		char first = fields[i];
+
+		if (first < '0') {
+			if (first == '-') {
+				negative = true;
+				bound = Integer.MIN_VALUE;
+			} else if (first != '+') {
+				throw invalidNumber(index);
+			}
+
+			if (end - i == 1) {
+				throw invalidNumber(index);
+			}
+
+			i++;
+		}
+
+		// Accumulate negatively to handle Integer.MIN_VALUE
+		int multiplicationBound = bound / 10;
+		int result = 0;
+
+		while (i < end) {
+			int digit = Character.digit(fields[i++], 10);
+
+			if (digit < 0 || result < multiplicationBound) {
+				throw invalidNumber(index);
+			}
+
+			result *= 10;
+
+			if (result < bound + digit) {
+				throw invalidNumber(index);
+			}
+
+			result -= digit;
+		}
+
+		return negative ? result : -result;
+	}
+
+	private NumberFormatException invalidNumber(int index) {
+		return new NumberFormatException(
+				"For input string: \"" + new String(fields, fieldStarts[index], fieldEnds[index] - fieldStarts[index])
+						+ "\"");
+	}
+
+	/**
+	 * Returns the number of records read, the header included
+	 *
+	 * @return
+	 */
+	public long getRecordNumber() {
+		return recordNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Read the next record, which may span several lines if it has quoted fields
+	 *
+	 * @return the number of fields, -1 at the end of the file
+	 * @throws IOException
+	 */
+	private int readRecord() throws IOException {
+
+		if (!nextLine()) {
+			return -1;
+		}
+
+		recordNumber++;
+
+		fieldsLength = 0;
+		column = 0;
+		inQuotes = false;
+		beginField();
+
+		parseLine();
+
+		while (inQuotes) {
+
+			if (!nextLine()) {
+				throw new IOException("Unterminated quoted field at end of the CSV file in record " + recordNumber);
+			}
+
+			// The line terminator is part of the quoted field
+			append('\n');
+			parseLine();
+		}
+
+		endField();
+
+		return column + 1;
+	}
+
+	/**
+	 * Parse the current line, continuing the record that is being read. The
+	 * positions used for the embedded quote rule are relative to the line, as in
+	 * the OpenCSV parser
+	 */
+	private void parseLine() {
+
+		char[] line = buffer;
+		int start = lineStart;
+		int length = lineEnd - lineStart;
+
+		boolean inField = false;
+
+		for (int i = 0; i < length; i++) {
+
+			char c = line[start + i];
+
+			if (c == ESCAPE) {
+
+				// An escape that doesn't precede a quote or an escape is dropped
+				if ((inQuotes || inField) && i + 1 < length && isEscapable(line[start + i + 1])) {
+					append(line[start + i + 1]);
+					i++;
+				}
+
+			} else if (c == QUOTE) {
+
+				if ((inQuotes || inField) && i + 1 < length && line[start + i + 1] == QUOTE) {
+
+					append(QUOTE);
+					i++;
+
+				} else {
+
+					inQuotes = !inQuotes;
+
+					// A quote in the middle of a field is kept
+					if (i > 2 && line[start + i - 1] != SEPARATOR && i + 1 < length
+							&& line[start + i + 1] != SEPARATOR) {
+
+						if (isFieldWhitespace()) {
+							fieldsLength = fieldStart;
+						} else {
+							append(c);
+						}
+					}
+				}
+
+				inField = !inField;
+
+			} else if (c == SEPARATOR && !inQuotes) {
+
+				endField();
+				column++;
+				beginField();
+				inField = false;
+
+			} else {
+
+				append(c);
+				inField = true;
+
+			}
+		}
+	}
+
+	private static boolean isEscapable(char c) {
+		return c == QUOTE || c == ESCAPE;
+	}
+
+	private void beginField() {
+		copying = projected == null || (column < projected.length && projected[column]);
+		fieldStart = fieldsLength;
+	}
+
+	private void endField() {
+
+		if (!copying) {
+			return;
+		}
+
+		if (column >= fieldStarts.length) {
+			fieldStarts = Arrays.copyOf(fieldStarts, Math.max(column + 1, fieldStarts.length * 2));
+			fieldEnds = Arrays.copyOf(fieldEnds, fieldStarts.length);
+		}
+
+		fieldStarts[column] = fieldStart;
+		fieldEnds[column] = fieldsLength;
+	}
+
+	private void append(char c) {
+
+		if (!copying) {
+			return;
+		}
+
+		if (fieldsLength == fields.length) {
+			fields = Arrays.copyOf(fields, fields.length * 2);
+		}
+
+		fields[fieldsLength++] = c;
+	}
+
+	private boolean isFieldWhitespace() {
+
+		if (!copying || fieldsLength == fieldStart) {
+			return false;
+		}
+
+		for (int i = fieldStart; i < fieldsLength; i++) {
+			if (!Character.isWhitespace(fields[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Find the next line in the buffer, reading more characters when needed.
+	 * Lines end with '\n', '\r' or "\r\n", as in BufferedReader
+	 *
+	 * @return false at the end of the file
+	 * @throws IOException
+	 */
+	private boolean nextLine() throws IOException {
+
+		int scan = position;
+
+		while (true) {
+
+			if (scan == limit) {
+
+				if (endOfInput) {
+					break;
+				}
+
+				scan -= fill();
+				continue;
+			}
+
+			char c = buffer[scan];
+
+			if (skipLineFeed) {
+				skipLineFeed = false;
+
+				if (c == '\n') {
+					position = ++scan;
+					continue;
+				}
+			}
+
+			if (c == '\n' || c == '\r') {
+				lineStart = position;
+				lineEnd = scan;
+				position = scan + 1;
+				skipLineFeed = c == '\r';
+				return true;
+			}
+
+			scan++;
+		}
+
+		// The last line may have no terminator
+		if (position < limit) {
+			lineStart = position;
+			lineEnd = limit;
+			position = limit;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Move the unread characters to the start of the buffer and read more
+	 *
+	 * @return how many positions the characters were moved
+	 * @throws IOException
+	 */
+	private int fill() throws IOException {
+
+		int shift = position;
+
+		if (shift > 0) {
+			System.arraycopy(buffer, shift, buffer, 0, limit - shift);
+			limit -= shift;
+			position = 0;
+		} else if (limit == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+
+		int read = reader.read(buffer, limit, buffer.length - limit);
+
+		if (read < 0) {
+			endOfInput = true;
+		} else {
+			limit += read;
+		}
+
+		return shift;
+	}
+
+}
@@ -0,0 +1,493 @@
+package mx.uam.archinaut.data.loader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import mx.uam.archinaut.model.DependencyMetric;
+import mx.uam.archinaut.model.DependencyRule;
+import mx.uam.archinaut.model.DependencyStore;
+import mx.uam.archinaut.model.DependencyTypeTable;
+import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.ElementMetric;
+import mx.uam.archinaut.model.MatrixDependencyGroup;
+import mx.uam.archinaut.model.MatrixElement;
+import mx.uam.archinaut.model.MatrixElementGroup;
+
+/**
+ *
+ * Saves a loaded DesignStructureMatrix into a binary snapshot and loads it back
+ * through a memory mapped file, so the depends output and the CSV files don't
+ * have to be parsed again. A snapshot holds the elements, the namespace tree,
+ * the dependency cells with their co-changes, the metrics, the dependency rules
+ * and the maximum and minimum values.
+ *
+ * All numbers are big endian ints and strings are written as their length in
+ * bytes followed by their UTF-8 bytes, -1 for null. The file starts with a
+ * magic number and a version, and snapshots of other versions are rejected.
+ */
+@Slf4j
+@Component
+public class SnapshotLoader {
+
+	// "DSMS" in ASCII
+	private static final int MAGIC = 0x44534D53;
+
+	public static final int VERSION = 3;
+
+	private static final byte LEAF = 0;
+
+	private static final byte GROUP = 1;
+
+	/**
+	 * Save a matrix into a snapshot file
+	 *
+	 * @param matrix   the matrix
+	 * @param filename the path of the snapshot
+	 * @throws IOException
+	 */
+	public void saveSnapshot(DesignStructureMatrix matrix, String filename) throws IOException {
+
+		log.info("Saving snapshot of {} to: {}", matrix.getFileName(), filename);
+
+		List<MatrixElement> elements = new ArrayList<>();
+		Map<MatrixElement, Integer> indexes = new IdentityHashMap<>();
+
+		for (MatrixElement element : matrix.getElements()) {
+			indexes.put(element, elements.size());
+			elements.add(element);
+		}
+
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(Paths.get(filename)), 1 << 16))) {
+
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+
+			writeString(output, matrix.getFileName());
+			writeString(output, matrix.getElementNamesPrefix());
+			writeString(output, matrix.getMetricsNamesPrefix());
+			writeString(output, matrix.getLogNamesPrefix());
+
+			output.writeInt(matrix.getExclusionStrings().size());
+			for (String exclusion : matrix.getExclusionStrings()) {
+				writeString(output, exclusion);
+			}
+
+			output.writeInt(matrix.getDependencyRules().size());
+			for (DependencyRule rule : matrix.getDependencyRules()) {
+				writeString(output, rule.getSource());
+				writeString(output, rule.getDestination());
+				writeString(output, rule.getDescription());
+			}
+
+			output.writeInt(elements.size());
+			for (MatrixElement element : elements) {
+				writeString(output, element.getFullName());
+				writeString(output, element.getName());
+			}
+
+			writeDependencies(output, elements, indexes);
+			writeMetrics(output, elements);
+
+			output.writeInt(DependencyMetric.values().length);
+			for (DependencyMetric metric : DependencyMetric.values()) {
+				writeString(output, metric.name());
+				output.writeInt(matrix.getMaximumDependencyValue(metric));
+			}
+
+			writeValues(output, matrix.getMaximumElementValues());
+			writeValues(output, matrix.getMinimumElementValues());
+
+			MatrixElementGroup root = matrix.getRootGroup();
+
+			output.writeBoolean(root != null);
+
+			if (root != null) {
+				writeNode(output, root, indexes);
+			}
+		}
+	}
+
+	private void writeDependencies(DataOutputStream output, List<MatrixElement> elements,
+			Map<MatrixElement, Integer> indexes) throws IOException {
+
+		Map<String, Integer> typeIds = new HashMap<>();
+		List<String> typeNames = new ArrayList<>();
+
+		// The types are written first, so collect them and the cells of every element
+		List<List<MatrixDependencyGroup>> cells = new ArrayList<>();
+
+		for (MatrixElement element : elements) {
+
+			List<MatrixDependencyGroup> elementCells = new ArrayList<>();
+
+			for (MatrixDependencyGroup group : element.getDependencies()) {
+
+				if (!indexes.containsKey(group.getDestination())) {
+					log.warn("Dependency from {} to {} is not saved, the destination is not in the matrix",
+							element.getFullName(), group.getDestination().getFullName());
+					continue;
+				}
+
+				for (String type : group.getDependencies().keySet()) {
+					if (!typeIds.containsKey(type)) {
+						typeIds.put(type, typeNames.size());
+						typeNames.add(type);
+					}
+				}
+
+				elementCells.add(group);
+			}
+
+			cells.add(elementCells);
+		}
+
+		output.writeInt(typeNames.size());
+		for (String type : typeNames) {
+			writeString(output, type);
+		}
+
+		for (List<MatrixDependencyGroup> elementCells : cells) {
+
+			output.writeInt(elementCells.size());
+
+			for (MatrixDependencyGroup group : elementCells) {
+
+				Map<String, Integer> dependencies = group.getDependencies();
+
+				output.writeInt(indexes.get(group.getDestination()));
+				output.writeInt(dependencies.size());
+
+				for (Entry<String, Integer> dependency : dependencies.entrySet()) {
+					output.writeInt(typeIds.get(dependency.getKey()));
+					output.writeInt(dependency.getValue());
+				}
+
+				output.writeInt(group.getCoChanges());
+			}
+		}
+	}
+
+	private void writeMetrics(DataOutputStream output, List<MatrixElement> elements) throws IOException {
+
+		Map<String, Integer> metricIds = new HashMap<>();
+		List<String> metricNames = new ArrayList<>();
+
+		for (MatrixElement element : elements) {
+			for (String metric : element.getMetrics().keySet()) {
+				if (!metricIds.containsKey(metric)) {
+					metricIds.put(metric, metricNames.size());
+					metricNames.add(metric);
+				}
+			}
+		}
+
+		output.writeInt(metricNames.size());
+		for (String metric : metricNames) {
+			writeString(output, metric);
+		}
+
+		// Metrics are written in the order of the element maps, which is the order of
+		// the reports
+		for (MatrixElement element : elements) {
+
+			output.writeInt(element.getMetrics().size());
+
+			for (Entry<String, Integer> metric : element.getMetrics().entrySet()) {
+				output.writeInt(metricIds.get(metric.getKey()));
+				output.writeInt(metric.getValue());
+			}
+		}
+	}
+
+	private void writeValues(DataOutputStream output, Map<String, Integer> values) throws IOException {
+
+		output.writeInt(values.size());
+
+		for (Entry<String, Integer> value : values.entrySet()) {
+			writeString(output, value.getKey());
+			output.writeInt(value.getValue());
+		}
+	}
+
+	private void writeNode(DataOutputStream output, MatrixElement node, Map<MatrixElement, Integer> indexes)
+			throws IOException {
+
+		if (node instanceof MatrixElementGroup) {
+
+			MatrixElementGroup group = (MatrixElementGroup) node;
+
+			output.writeByte(GROUP);
+			writeString(output, group.getFullName());
+			writeString(output, group.getName());
+			output.writeInt(group.getChildrenCount());
+
+			for (MatrixElement child : group.getChildren()) {
+				writeNode(output, child, indexes);
+			}
+
+		} else {
+
+			Integer index = indexes.get(node);
+
+			if (index == null) {
+				throw new IOException("Element " + node.getFullName() + " of the namespace tree is not in the matrix");
+			}
+
+			output.writeByte(LEAF);
+			output.writeInt(index);
+		}
+	}
+
+	private void writeString(DataOutputStream output, String value) throws IOException {
+
+		if (value == null) {
+			output.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * Load a matrix from a snapshot file
+	 *
+	 * @param filename the path of the snapshot
+	 * @return the matrix
+	 * @throws IOException if the file is not a snapshot of this version or is
+	 *                     truncated
+	 */
+	public DesignStructureMatrix loadSnapshot(String filename) throws IOException {
+
+		log.info("Loading snapshot from: {}", filename);
+
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+
+			long size = channel.size();
+
+			if (!MappedDependsReader.canMap(size)) {
+				throw new IOException("File " + filename + " is too large to be mapped: " + size + " bytes");
+			}
+
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+
+			if (size < 8 || buffer.getInt() != MAGIC) {
+				throw new IOException("File " + filename + " is not a matrix snapshot");
+			}
+
+			int version = buffer.getInt();
+
+			if (version != VERSION) {
+				throw new IOException("Snapshot " + filename + " has version " + version + ", only version " + VERSION
+						+ " is supported");
+			}
+
+			DesignStructureMatrix matrix = readMatrix(buffer);
+
+			log.info("Loaded {} elements from snapshot of {}", matrix.getElementsCount(), matrix.getFileName());
+
+			return matrix;
+
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+				| ClassCastException e) {
+			throw new IOException("Snapshot " + filename + " is truncated or corrupted", e);
+		}
+	}
+
+	private DesignStructureMatrix readMatrix(MappedByteBuffer buffer) {
+
+		String fileName = readString(buffer);
+		String elementNamesPrefix = readString(buffer);
+		String metricsNamesPrefix = readString(buffer);
+		String logNamesPrefix = readString(buffer);
+
+		List<String> exclusions = new ArrayList<>();
+		int exclusionsCount = buffer.getInt();
+
+		for (int i = 0; i < exclusionsCount; i++) {
+			exclusions.add(readString(buffer));
+		}
+
+		List<DependencyRule> rules = new ArrayList<>();
+		int rulesCount = buffer.getInt();
+
+		for (int i = 0; i < rulesCount; i++) {
+			rules.add(new DependencyRule(readString(buffer), readString(buffer), readString(buffer)));
+		}
+
+		int elementsCount = buffer.getInt();
+		List<MatrixElement> elements = new ArrayList<>(elementsCount);
+
+		for (int i = 0; i < elementsCount; i++) {
+			MatrixElement element = new MatrixElement(readString(buffer));
+			element.setName(readString(buffer));
+			elements.add(element);
+		}
+
+		// The matrix is created first so the metrics are read into its store
+		DesignStructureMatrix matrix = new DesignStructureMatrix(fileName, elements);
+
+		readDependencies(buffer, elements);
+		readMetrics(buffer, elements);
+
+		matrix.setElementNamesPrefix(elementNamesPrefix);
+		matrix.setMetricsNamesPrefix(metricsNamesPrefix);
+		matrix.setLogNamesPrefix(logNamesPrefix);
+
+		for (String exclusion : exclusions) {
+			matrix.addExclusionString(exclusion);
+		}
+
+		for (DependencyRule rule : rules) {
+			matrix.addDependencyRule(rule);
+		}
+
+		int dependencyMetricsCount = buffer.getInt();
+
+		for (int i = 0; i < dependencyMetricsCount; i++) {
+			String metric = readString(buffer);
+			int value = buffer.getInt();
+
+			try {
+				matrix.setMaximumDependencyValue(DependencyMetric.valueOf(metric), value);
+			} catch (IllegalArgumentException e) {
+				log.warn("Ignoring maximum of unknown dependency metric {}", metric);
+			}
+		}
+
+		int maximumsCount = buffer.getInt();
+
+		for (int i = 0; i < maximumsCount; i++) {
+			String metric = readString(buffer);
+			matrix.setMaximumElementValue(new ElementMetric(metric, 0), buffer.getInt());
+		}
+
+		int minimumsCount = buffer.getInt();
+
+		for (int i = 0; i < minimumsCount; i++) {
+			String metric = readString(buffer);
+			matrix.setMinumElementValue(new ElementMetric(metric, 0), buffer.getInt());
+		}
+
+		if (buffer.get() != 0) {
+			matrix.setRootGroup((MatrixElementGroup) readNode(buffer, elements));
+		}
+
+		return matrix;
+	}
+
+	private void readDependencies(MappedByteBuffer buffer, List<MatrixElement> elements) {
+
+		// Ids of the types of the snapshot in the DependencyTypeTable
+		int[] typeIds = new int[buffer.getInt()];
+
+		for (int i = 0; i < typeIds.length; i++) {
+			typeIds[i] = DependencyTypeTable.intern(readString(buffer));
+		}
+
+		DependencyStore.Builder builder = new DependencyStore.Builder(elements);
+
+		for (int source = 0; source < elements.size(); source++) {
+
+			int cells = buffer.getInt();
+
+			for (int cell = 0; cell < cells; cell++) {
+
+				builder.addCell(source, buffer.getInt());
+
+				int values = buffer.getInt();
+
+				for (int value = 0; value < values; value++) {
+					int type = typeIds[buffer.getInt()];
+					builder.addDependency(type, buffer.getInt());
+				}
+
+				builder.setCoChanges(buffer.getInt());
+			}
+		}
+
+		builder.build();
+	}
+
+	private void readMetrics(MappedByteBuffer buffer, List<MatrixElement> elements) {
+
+		String[] metricNames = new String[buffer.getInt()];
+
+		for (int i = 0; i < metricNames.length; i++) {
+			metricNames[i] = readString(buffer);
+		}
+
+		for (MatrixElement element : elements) {
+
+			int metrics = buffer.getInt();
+
+			for (int metric = 0; metric < metrics; metric++) {
+				String name = metricNames[buffer.getInt()];
+				element.addMetricValue(new ElementMetric(name, buffer.getInt()));
+			}
+		}
+	}
+
+	private MatrixElement readNode(MappedByteBuffer buffer, List<MatrixElement> elements) {
+
+		byte kind = buffer.get();
+
+		if (kind == LEAF) {
+			return elements.get(buffer.getInt());
+		}
+
+		if (kind != GROUP) {
+			throw new IllegalArgumentException("Unknown node kind " + kind);
+		}
+
+		MatrixElementGroup group = new MatrixElementGroup(readString(buffer));
+		group.setName(readString(buffer));
+
+		int children = buffer.getInt();
+
+		for (int i = 0; i < children; i++) {
+			group.addChild(readNode(buffer, elements));
+		}
+
+		return group;
+	}
+
+	private String readString(MappedByteBuffer buffer) {
+
+		int length = buffer.getInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		if (length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -4,72 +4,376 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
 
+import mx.uam.archinaut.data.nameprocessing.NameFilter;
+import mx.uam.archinaut.data.nameprocessing.NameProcessor;
+import mx.uam.archinaut.model.DependencyRule;
+import mx.uam.archinaut.model.dto.DependencyConstraintDTO;
+import mx.uam.archinaut.model.dto.MatrixConstraintsDTO;
+import mx.uam.archinaut.model.yaml.AnalysisConfiguration;
+import mx.uam.archinaut.model.yaml.ConstraintsConfiguration;
+import mx.uam.archinaut.model.yaml.Metric;
+import mx.uam.archinaut.model.yaml.RuleConfiguration;
+import mx.uam.archinaut.model.yaml.SourceConfiguration;
+import mx.uam.archinaut.model.yaml.Substitution;
 import mx.uam.archinaut.model.yaml.YamlConfigurationEntry;
+import mx.uam.archinaut.services.DependencyAnalysisService;
 
 @Component
 public class YamlLoader {
 
-	public YamlConfigurationEntry getDependsConfigurationEntry(String filename) throws FileNotFoundException {
+	@Autowired
+	private NameProcessor nameProcessor;
 
-		// Instantiate loader
-		Yaml yaml = new Yaml(new Constructor(YamlConfigurationEntry.class));
+	@Autowired
+	private ConstraintsLoader constraintsLoader;
 
-		// Load configuration file as InputStream
-		try (InputStream is = new FileInputStream(filename)) {
+	/**
+	 * Parse and validate a configuration file. Every problem of the file is
+	 * reported at once, before any of its sources is loaded
+	 *
+	 * @param filename the configuration file
+	 * @return the configuration
+	 * @throws FileNotFoundException    if the configuration file doesn't exist
+	 * @throws IllegalArgumentException if the configuration is not valid
+	 */
+	public AnalysisConfiguration loadConfiguration(String filename) throws FileNotFoundException {
 
-			// For every entry in the file cast them to YamlConfigurationEntry and return
-			// the depends configuration entry, if found
-			for (Object o : yaml.loadAll(is)) {
+		List<YamlConfigurationEntry> entries = loadEntries(filename);
+		List<String> problems = new ArrayList<>();
+
+		SourceConfiguration dependsSource = null;
+		List<SourceConfiguration> metricSources = new ArrayList<>();
+		List<DependencyRule> dependencyRules = new ArrayList<>();
+
+		// Entry that saves each metric name, to find repeated names
+		Map<String, String> savedNames = new HashMap<>();
+
+		for (int i = 0; i < entries.size(); i++) {
+
+			YamlConfigurationEntry entry = entries.get(i);
+			String description = "Entry " + (i + 1) + " (" + entry.getFile() + ")";
+
+			int problemsBefore = problems.size();
+
+			validateEntry(entry, description, problems);
+
+			if (problems.size() > problemsBefore) {
+				continue;
+			}
+
+			SourceConfiguration source = new SourceConfiguration(entry,
+					nameProcessor.getTransformer(entry.getRenaming()));
+
+			if (source.isDepends()) {
+
+				if (dependsSource != null) {
+					problems.add(description + ": depends output is already loaded from " + dependsSource.getFile());
+				}
+
+				dependsSource = source;
+
+				if (entry.getConstraints() != null) {
+					dependencyRules = createDependencyRules(entry.getConstraints(), description, problems);
+				}
+
+			} else {
+
+				for (String name : source.getMetricNames()) {
+
+					String previous = savedNames.putIfAbsent(name, description);
+
+					if (previous != null) {
+						problems.add(description + ": metric " + name + " is also loaded by " + previous);
+					}
+
+					if (DependencyAnalysisService.isComputedMetric(name)) {
+						problems.add(description + ": metric " + name
+								+ " is calculated from the dependencies, it needs another name");
+					}
+				}
+
+				metricSources.add(source);
+			}
+		}
+
+		if (dependsSource == null) {
+			problems.add("Depends setting missing in configuration file!");
+		}
+
+		if (!problems.isEmpty()) {
+			throw new IllegalArgumentException(
+					"Invalid configuration file " + filename + ":\n  " + String.join("\n  ", problems));
+		}
+
+		return new AnalysisConfiguration(filename, dependsSource, metricSources, dependencyRules);
+	}
+
+	private void validateEntry(YamlConfigurationEntry entry, String description, List<String> problems) {
+
+		if (entry.getFile() == null || !Files.isReadable(Paths.get(entry.getFile()))) {
+			problems.add(description + ": file can't be read");
+		}
+
+		if (entry.getFormat() == null) {
+			problems.add(description + ": format is missing");
+			return;
+		}
+
+		if (entry.getRenaming() == null) {
+			problems.add(description + ": renaming is missing");
+		} else if (entry.getRenaming().getPrefix() == null || entry.getRenaming().getSuffix() == null) {
+			problems.add(description + ": renaming needs a prefix and a suffix, they can be empty");
+		} else if (entry.getRenaming().getSubstitutions() != null) {
+
+			for (Substitution substitution : entry.getRenaming().getSubstitutions()) {
+				if (substitution.getOrder() == null || substitution.getSubstitute() == null
+						|| substitution.getWith() == null) {
+					problems.add(description + ": substitutions need an order, a substitute and a with");
+					break;
+				}
+			}
+		}
+
+		if (entry.getExclusions() != null) {
+			validateExclusions(entry, description, problems);
+		}
+
+		if (entry.getConstraints() != null && !SourceConfiguration.DEPENDS_FORMAT.equals(entry.getFormat())) {
+			problems.add(description + ": only the depends output can have constraints");
+		}
+
+		if (entry.getMetrics() == null || entry.getMetrics().isEmpty()) {
+			problems.add(description + ": no metrics");
+			return;
+		}
+
+		int filenames = 0;
+		int coupled = 0;
+
+		for (Metric metric : entry.getMetrics()) {
+
+			if (metric.getName() == null || metric.getName().isBlank()) {
+				problems.add(description + ": a metric has no name");
+			}
+
+			if (Boolean.TRUE.equals(metric.getFilename())) {
+				filenames++;
+			} else if (Boolean.TRUE.equals(metric.getCoupled())) {
+				coupled++;
+			}
+		}
+
+		int others = entry.getMetrics().size() - filenames - coupled;
+
+		if (coupled > 0 && !SourceConfiguration.COUPLING_FORMAT.equalsIgnoreCase(entry.getFormat())) {
+			problems.add(description + ": only COUPLING entries can have a coupled metric");
+		}
+
+		if (SourceConfiguration.DEPENDS_FORMAT.equals(entry.getFormat())) {
+
+			if (filenames > 0) {
+				problems.add(description + ": the depends output can't have a filename metric");
+			}
+
+		} else if (SourceConfiguration.CSV_FORMAT.equalsIgnoreCase(entry.getFormat())) {
+
+			if (filenames != 1) {
+				problems.add(description + ": needs exactly one filename metric, it has " + filenames);
+			}
+
+		} else if (SourceConfiguration.COUPLING_FORMAT.equalsIgnoreCase(entry.getFormat())) {
+
+			if (filenames != 1 || coupled != 1 || others != 1) {
+				problems.add(description + ": needs one filename metric, one coupled metric and one co-changes metric");
+			}
+
+		} else {
+			problems.add(description + ": unknown format " + entry.getFormat());
+		}
+	}
+
+	private void validateExclusions(YamlConfigurationEntry entry, String description, List<String> problems) {
+
+		if (!SourceConfiguration.DEPENDS_FORMAT.equals(entry.getFormat())) {
+			problems.add(description + ": only the depends output can have exclusions");
+			return;
+		}
+
+		for (String exclusion : entry.getExclusions()) {
+			if (exclusion == null || exclusion.isEmpty()) {
+				problems.add(description + ": an exclusion is empty");
+				return;
+			}
+		}
+
+		try {
+			NameFilter.compile(entry.getExclusions());
+		} catch (IllegalArgumentException e) {
+			problems.add(description + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Create the dependency rules of the constraints of the depends entry. Every
+	 * layer gets a rule for each layer above it, and the constraints of the
+	 * ConstraintsLoader file are rules between the elements with those names
+	 */
+	private List<DependencyRule> createDependencyRules(ConstraintsConfiguration constraints, String description,
+			List<String> problems) {
 
-				assert (o instanceof YamlConfigurationEntry) : "A loaded YAML object was not an instance of YamlConfigurationEntry!";
+		List<DependencyRule> rules = new ArrayList<>();
 
-				YamlConfigurationEntry entry = (YamlConfigurationEntry) o;
+		if (constraints.getLayers() != null) {
 
-				if (entry.getFormat().equals("DEPENDS")) {
-					return entry;
+			List<String> layers = constraints.getLayers();
+
+			for (String layer : layers) {
+				validateSelector(layer, description, problems);
+			}
+
+			for (int i = 1; i < layers.size(); i++) {
+				for (int j = 0; j < i; j++) {
+					rules.add(new DependencyRule(layers.get(i), layers.get(j),
+							"Layer " + layers.get(i) + " must not depend on layer " + layers.get(j) + " above it"));
 				}
+			}
+		}
 
+		if (constraints.getRules() != null) {
+			for (RuleConfiguration rule : constraints.getRules()) {
+
+				validateSelector(rule.getSource(), description, problems);
+				validateSelector(rule.getMustNotDependOn(), description, problems);
+
+				rules.add(new DependencyRule(rule.getSource(), rule.getMustNotDependOn(),
+						rule.getSource() + " must not depend on " + rule.getMustNotDependOn()));
 			}
+		}
+
+		if (constraints.getFile() != null) {
 
-		} catch (IOException fe) {
-			throw new IllegalArgumentException("Depends setting missing in configuration file!");
+			MatrixConstraintsDTO matrixConstraints = Files.isReadable(Paths.get(constraints.getFile()))
+					? constraintsLoader.loadFromJSON(constraints.getFile())
+					: null;
+
+			if (matrixConstraints == null) {
+				problems.add(description + ": constraints can't be read from " + constraints.getFile());
+			} else if (matrixConstraints.getDependencyConstraints() != null) {
+
+				for (DependencyConstraintDTO constraint : matrixConstraints.getDependencyConstraints()) {
+
+					if (constraint.getSourceElement() == null || constraint.getDestinationElement() == null) {
+						problems.add(description + ": a constraint of " + constraints.getFile()
+								+ " needs a source and a destination element");
+						continue;
+					}
+
+					String source = constraint.getSourceElement();
+					String destination = constraint.getDestinationElement();
+
+					rules.add(new DependencyRule(NameFilter.exactly(source), NameFilter.exactly(destination),
+							source + " must not depend on " + destination));
+				}
+			}
 		}
+
+		return rules;
+	}
+
+	private void validateSelector(String selector, String description, List<String> problems) {
+
+		if (selector == null || selector.isEmpty()) {
+			problems.add(description + ": a layer or rule of the constraints is empty");
+			return;
+		}
+
+		try {
+			NameFilter.compile(Collections.singletonList(selector));
+		} catch (IllegalArgumentException e) {
+			problems.add(description + ": constraint " + selector + " is not valid, " + e.getMessage());
+		}
+	}
+
+	public YamlConfigurationEntry getDependsConfigurationEntry(String filename) throws FileNotFoundException {
+
+		// Return the depends configuration entry, if found
+		for (YamlConfigurationEntry entry : loadEntries(filename)) {
+			if (SourceConfiguration.DEPENDS_FORMAT.equals(entry.getFormat())) {
+				return entry;
+			}
+		}
+
 		throw new IllegalArgumentException("Depends setting missing in configuration file!");
 	}
 
 	public List<YamlConfigurationEntry> getNonDependsConfigurationEntries(String filename)
 			throws FileNotFoundException {
 
+		List<YamlConfigurationEntry> entries = new ArrayList<>();
+
+		for (YamlConfigurationEntry entry : loadEntries(filename)) {
+			if (!SourceConfiguration.DEPENDS_FORMAT.equals(entry.getFormat())) {
+				entries.add(entry);
+			}
+		}
+
+		return entries;
+
+	}
+
+	/**
+	 * Parse every entry of a configuration file
+	 *
+	 * @param filename the configuration file
+	 * @return the entries in the order of the file
+	 * @throws FileNotFoundException if the file doesn't exist
+	 */
+	private List<YamlConfigurationEntry> loadEntries(String filename) throws FileNotFoundException {
+
 		// Instantiate loader
 		Yaml yaml = new Yaml(new Constructor(YamlConfigurationEntry.class));
 
+		List<YamlConfigurationEntry> entries = new ArrayList<>();
+
 		// Load configuration file as InputStream
-		InputStream is = new FileInputStream(filename);
+		try (InputStream is = new FileInputStream(filename)) {
 
-		List<YamlConfigurationEntry> entries = new ArrayList<>();
+			// For every entry in the file cast them to YamlConfigurationEntry and add them
+			// to the list.
+			for (Object o : yaml.loadAll(is)) {
 
-		// For every entry in the file cast them to YamlConfigurationEntry and add them
-		// to the list.
-		for (Object o : yaml.loadAll(is)) {
+				// Empty documents are skipped
+				if (o == null) {
+					continue;
+				}
 
-			assert (o instanceof YamlConfigurationEntry) : "A loaded YAML object was not an instance of YamlConfigurationEntry!";
-			YamlConfigurationEntry entry = (YamlConfigurationEntry) o;
+				if (!(o instanceof YamlConfigurationEntry)) {
+					throw new IllegalArgumentException("An entry of " + filename + " is not a configuration entry");
+				}
 
-			if (!entry.getFormat().equals("DEPENDS")) {
-				entries.add(entry);
+				entries.add((YamlConfigurationEntry) o);
 			}
 
+		} catch (FileNotFoundException fe) {
+			throw fe;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Couldn't read configuration file " + filename, e);
 		}
 
 		return entries;
-
 	}
 
 }
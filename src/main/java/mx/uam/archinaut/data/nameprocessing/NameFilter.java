@@ -0,0 +1,419 @@
+package mx.uam.archinaut.data.nameprocessing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A list of exclusions compiled into a single matcher. An exclusion that starts
+ * with "glob:" must match the whole name, where * is any sequence of characters
+ * and ? is any character. One that starts with "regex:" is a regular expression
+ * found anywhere in the name, use ^ and $ to anchor it. Any other exclusion is
+ * a substring of the name, as with String.contains. The same syntax selects
+ * the elements of the dependency rules.
+ *
+ * The substrings are compiled into an Aho-Corasick automaton whose failure
+ * transitions are resolved into a table, so a name is read once, one table
+ * lookup per character, no matter how many substrings there are. The globs and
+ * regular expressions are joined into one pattern. Instances are immutable and
+ * can be shared between threads.
+ *
+ * A filter can also report which of its exclusions match a name, so the
+ * selectors of many rules are tested with a single filter: every state of the
+ * automaton keeps the substrings that end in it, and the joined pattern is
+ * only followed by the patterns of each exclusion when it finds a match.
+ */
+public class NameFilter {
+
+	public static final String GLOB_PREFIX = "glob:";
+
+	public static final String REGEX_PREFIX = "regex:";
+
+	// The filter without exclusions, it doesn't match any name
+	public static final NameFilter NONE = compile(Collections.emptyList());
+
+	private final List<String> exclusions;
+
+	// Character class of the ASCII characters, the other characters are in the map
+	private final int[] asciiClasses = new int[128];
+
+	private final Map<Character, Integer> otherClasses = new HashMap<>();
+
+	// Number of character classes, class 0 are the characters of no substring
+	private int classes = 1;
+
+	// Next state of every state and character class, null if there are no
+	// substrings
+	private int[] transitions;
+
+	// The states where a substring ends
+	private boolean[] accepting;
+
+	// For every state, the positions in the list of the substrings that end in it
+	private int[][] outputs;
+
+	// The globs and regular expressions, null if there are none
+	private final Pattern pattern;
+
+	// Every glob and regular expression, and its position in the list
+	private final Pattern[] expressionPatterns;
+
+	private final int[] expressionPositions;
+
+	private NameFilter(List<String> exclusions) {
+
+		this.exclusions = Collections.unmodifiableList(new ArrayList<>(exclusions));
+
+		List<String> substrings = new ArrayList<>();
+		List<Integer> substringPositions = new ArrayList<>();
+		List<String> expressions = new ArrayList<>();
+		List<Integer> positions = new ArrayList<>();
+
+		for (int position = 0; position < exclusions.size(); position++) {
+
+			String exclusion = exclusions.get(position);
+
+			if (exclusion == null) {
+				throw new IllegalArgumentException("An exclusion is null");
+			}
+
+			if (exclusion.startsWith(GLOB_PREFIX)) {
+				expressions.add("^" + globToRegex(exclusion.substring(GLOB_PREFIX.length())) + "$");
+				positions.add(position);
+			} else if (exclusion.startsWith(REGEX_PREFIX)) {
+				expressions.add(checkRegex(exclusion.substring(REGEX_PREFIX.length())));
+				positions.add(position);
+			} else {
+				substrings.add(exclusion);
+				substringPositions.add(position);
+			}
+		}
+
+		if (!substrings.isEmpty()) {
+			buildAutomaton(substrings, substringPositions);
+		}
+
+		expressionPatterns = new Pattern[expressions.size()];
+		expressionPositions = new int[expressions.size()];
+
+		for (int i = 0; i < expressions.size(); i++) {
+			expressionPatterns[i] = Pattern.compile(expressions.get(i));
+			expressionPositions[i] = positions.get(i);
+		}
+
+		if (expressions.isEmpty()) {
+			pattern = null;
+		} else {
+			pattern = Pattern.compile("(?:" + String.join(")|(?:", expressions) + ")");
+		}
+	}
+
+	/**
+	 * Compile a list of exclusions. The list is copied
+	 *
+	 * @param exclusions the exclusions
+	 * @return the filter
+	 * @throws IllegalArgumentException if an exclusion is null or a regular
+	 *                                  expression is not valid
+	 */
+	public static NameFilter compile(List<String> exclusions) {
+		return new NameFilter(exclusions);
+	}
+
+	/**
+	 * Returns the exclusion that matches a name and nothing else
+	 *
+	 * @param name the name
+	 * @return a regular expression exclusion
+	 */
+	public static String exactly(String name) {
+		return REGEX_PREFIX + "^" + Pattern.quote(name) + "$";
+	}
+
+	/**
+	 * Returns the name that an exclusion created with exactly matches, so it can be
+	 * looked up instead of matched
+	 *
+	 * @param exclusion the exclusion
+	 * @return the name, null if the exclusion was not created with exactly
+	 */
+	public static String getExactName(String exclusion) {
+
+		String prefix = REGEX_PREFIX + "^\\Q";
+		String suffix = "\\E$";
+
+		if (exclusion == null || !exclusion.startsWith(prefix) || !exclusion.endsWith(suffix)
+				|| exclusion.length() < prefix.length() + suffix.length()) {
+			return null;
+		}
+
+		// Pattern.quote ends the quote before every \E of the name and quotes it
+		String name = exclusion.substring(prefix.length(), exclusion.length() - suffix.length()).replace(
+				"\\E\\\\E\\Q", "\\E");
+
+		return exactly(name).equals(exclusion) ? name : null;
+	}
+
+	private static String globToRegex(String glob) {
+
+		StringBuilder sb = new StringBuilder();
+		int from = 0;
+
+		for (int i = 0; i < glob.length(); i++) {
+
+			char c = glob.charAt(i);
+
+			if (c == '*' || c == '?') {
+
+				if (i > from) {
+					sb.append(Pattern.quote(glob.substring(from, i)));
+				}
+
+				sb.append(c == '*' ? ".*" : ".");
+				from = i + 1;
+			}
+		}
+
+		if (from < glob.length()) {
+			sb.append(Pattern.quote(glob.substring(from)));
+		}
+
+		return sb.toString();
+	}
+
+	private static String checkRegex(String regex) {
+
+		try {
+			Pattern.compile(regex);
+		} catch (PatternSyntaxException e) {
+			throw new IllegalArgumentException(
+					"Exclusion " + REGEX_PREFIX + regex + " is not a valid regular expression: " + e.getDescription(),
+					e);
+		}
+
+		return regex;
+	}
+
+	/**
+	 * Build the trie of the substrings and resolve the failure transitions,
+	 * breadth first, so every state has a next state for every class
+	 */
+	private void buildAutomaton(List<String> substrings, List<Integer> positions) {
+
+		int maximumStates = 1;
+
+		for (String substring : substrings) {
+
+			maximumStates += substring.length();
+
+			for (int i = 0; i < substring.length(); i++) {
+
+				char c = substring.charAt(i);
+
+				if (classOf(c) == 0) {
+					if (c < asciiClasses.length) {
+						asciiClasses[c] = classes++;
+					} else {
+						otherClasses.put(c, classes++);
+					}
+				}
+			}
+		}
+
+		transitions = new int[maximumStates * classes];
+		accepting = new boolean[maximumStates];
+		outputs = new int[maximumStates][];
+		Arrays.fill(transitions, -1);
+
+		int states = 1;
+
+		for (int substring = 0; substring < substrings.size(); substring++) {
+
+			String characters = substrings.get(substring);
+			int state = 0;
+
+			for (int i = 0; i < characters.length(); i++) {
+
+				int position = state * classes + classOf(characters.charAt(i));
+
+				if (transitions[position] == -1) {
+					transitions[position] = states++;
+				}
+
+				state = transitions[position];
+			}
+
+			accepting[state] = true;
+			outputs[state] = append(outputs[state], positions.get(substring));
+		}
+
+		int[] failures = new int[states];
+		Deque<Integer> queue = new ArrayDeque<>();
+
+		// The children of the root fail to the root, the missing transitions of
+		// the root go back to it
+		for (int c = 0; c < classes; c++) {
+
+			int child = transitions[c];
+
+			if (child == -1) {
+				transitions[c] = 0;
+			} else {
+				failures[child] = 0;
+				queue.add(child);
+			}
+		}
+
+		while (!queue.isEmpty()) {
+
+			int state = queue.poll();
+			int failure = failures[state];
+
+			// A substring ends here if it is a suffix of the one of the state
+			accepting[state] |= accepting[failure];
+
+			if (outputs[failure] != null) {
+				for (int output : outputs[failure]) {
+					outputs[state] = append(outputs[state], output);
+				}
+			}
+
+			for (int c = 0; c < classes; c++) {
+
+				int position = state * classes + c;
+				int child = transitions[position];
+
+				if (child == -1) {
+					transitions[position] = transitions[failure * classes + c];
+				} else {
+					failures[child] = transitions[failure * classes + c];
+					queue.add(child);
+				}
+			}
+		}
+	}
+
+	private static int[] append(int[] values, int value) {
+
+		if (values == null) {
+			return new int[] { value };
+		}
+
+		int[] appended = Arrays.copyOf(values, values.length + 1);
+		appended[values.length] = value;
+
+		return appended;
+	}
+
+	private int classOf(char c) {
+
+		if (c < asciiClasses.length) {
+			return asciiClasses[c];
+		}
+
+		return otherClasses.getOrDefault(c, 0);
+	}
+
+	/**
+	 * Test if a name is excluded
+	 *
+	 * @param name the name
+	 * @return true if an exclusion matches the name
+	 */
+	public boolean matches(String name) {
+
+		if (transitions != null) {
+
+			int state = 0;
+
+			if (accepting[state]) {
+				return true;
+			}
+
+			for (int i = 0; i < name.length(); i++) {
+
+				state = transitions[state * classes + classOf(name.charAt(i))];
+
+				if (accepting[state]) {
+					return true;
+				}
+			}
+		}
+
+		return pattern != null && pattern.matcher(name).find();
+	}
+
+	/**
+	 * Find the exclusions that match a name
+	 *
+	 * @param name the name
+	 * @return the positions in the list of the exclusions that match the name
+	 */
+	public BitSet findMatches(String name) {
+
+		BitSet matches = new BitSet();
+
+		if (transitions != null) {
+
+			int state = 0;
+			addOutputs(state, matches);
+
+			for (int i = 0; i < name.length(); i++) {
+				state = transitions[state * classes + classOf(name.charAt(i))];
+				addOutputs(state, matches);
+			}
+		}
+
+		// The joined pattern rejects most names without trying every expression
+		if (pattern != null && pattern.matcher(name).find()) {
+			for (int i = 0; i < expressionPatterns.length; i++) {
+				if (expressionPatterns[i].matcher(name).find()) {
+					matches.set(expressionPositions[i]);
+				}
+			}
+		}
+
+		return matches;
+	}
+
+	private void addOutputs(int state, BitSet matches) {
+
+		if (accepting[state]) {
+			for (int output : outputs[state]) {
+				matches.set(output);
+			}
+		}
+	}
+
+	/**
+	 * Test if there are no exclusions
+	 *
+	 * @return true if the filter doesn't match any name
+	 */
+	public boolean isEmpty() {
+		return exclusions.isEmpty();
+	}
+
+	/**
+	 * Returns the exclusions as they were given
+	 *
+	 * @return
+	 */
+	public List<String> getExclusions() {
+		return exclusions;
+	}
+
+	@Override
+	public String toString() {
+		return exclusions.toString();
+	}
+
+}
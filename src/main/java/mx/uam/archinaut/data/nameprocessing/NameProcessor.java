@@ -1,30 +1,30 @@
-
 package mx.uam.archinaut.data.nameprocessing;
 
-import java.util.Collections;
-import java.util.List;
-
 import org.springframework.stereotype.Component;
 
 import mx.uam.archinaut.model.yaml.RenamingConfiguration;
-import mx.uam.archinaut.model.yaml.Substitution;
 
 @Component
 public class NameProcessor {
 
 	public String processName(RenamingConfiguration renamingConfiguration, String nameToProcess) {
 
-		String result = nameToProcess.replace(renamingConfiguration.getPrefix(), "")
-				.replace(renamingConfiguration.getSuffix(), "");
+		return getTransformer(renamingConfiguration).transform(nameToProcess);
 
-		List<Substitution> substutions = renamingConfiguration.getSubstitutions();
-		Collections.sort(substutions);
-
-		for (Substitution substitution : substutions) {
-			result = result.replace(substitution.getSubstitute(), substitution.getWith());
-		}
+	}
 
-		return result;
+	/**
+	 * Returns the compiled form of a renaming configuration. Nothing is cached, so
+	 * the transformer reflects the configuration as it is now, and callers that
+	 * process many names should keep the transformer instead of calling
+	 * processName for each of them, as the loaders and SourceConfiguration do
+	 *
+	 * @param renamingConfiguration the configuration
+	 * @return the transformer
+	 */
+	public NameTransformer getTransformer(RenamingConfiguration renamingConfiguration) {
+
+		return NameTransformer.compile(renamingConfiguration);
 
 	}
 
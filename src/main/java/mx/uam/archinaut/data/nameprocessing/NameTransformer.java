@@ -0,0 +1,395 @@
+package mx.uam.archinaut.data.nameprocessing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mx.uam.archinaut.model.yaml.RenamingConfiguration;
+import mx.uam.archinaut.model.yaml.Substitution;
+
+/**
+ * A renaming configuration compiled into a chain of stages that work on a
+ * reusable character buffer. The result is the same as removing every
+ * occurrence of the prefix, then of the suffix, and then replacing every
+ * occurrence of each substitution in order with String.replace, but no
+ * intermediate string is created.
+ *
+ * Empty prefixes and suffixes are dropped, and consecutive substitutions of
+ * single characters are merged into one table, so a usual configuration is a
+ * removal and a single pass over the name. Instances are immutable and can be
+ * shared between threads.
+ */
+public class NameTransformer {
+
+	// Buffers of the current thread
+	private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+	private final Stage[] stages;
+
+	private NameTransformer(List<Stage> stages) {
+		this.stages = stages.toArray(new Stage[0]);
+	}
+
+	/**
+	 * Compile a renaming configuration. The configuration is not modified
+	 *
+	 * @param renamingConfiguration the configuration
+	 * @return the transformer
+	 */
+	public static NameTransformer compile(RenamingConfiguration renamingConfiguration) {
+
+		List<Stage> stages = new ArrayList<>();
+
+		addReplacement(stages, renamingConfiguration.getPrefix(), "");
+		addReplacement(stages, renamingConfiguration.getSuffix(), "");
+
+		if (renamingConfiguration.getSubstitutions() != null) {
+
+			// Sort a copy, the order of the configuration is left as it was loaded
+			List<Substitution> substitutions = new ArrayList<>(renamingConfiguration.getSubstitutions());
+			substitutions.sort(null);
+
+			for (Substitution substitution : substitutions) {
+				addReplacement(stages, substitution.getSubstitute(), substitution.getWith());
+			}
+		}
+
+		return new NameTransformer(stages);
+	}
+
+	private static void addReplacement(List<Stage> stages, String target, String replacement) {
+
+		if (target.length() == 1) {
+
+			Stage last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+
+			if (last instanceof CharacterStage) {
+				((CharacterStage) last).add(target.charAt(0), replacement);
+			} else {
+				CharacterStage stage = new CharacterStage();
+				stage.add(target.charAt(0), replacement);
+				stages.add(stage);
+			}
+
+		} else if (!target.isEmpty()) {
+			stages.add(new StringStage(target, replacement));
+		} else if (!replacement.isEmpty()) {
+			// String.replace inserts the replacement around every character
+			stages.add(new InsertionStage(replacement));
+		}
+	}
+
+	/**
+	 * Transform a name
+	 *
+	 * @param name the name
+	 * @return the transformed name, the same instance if nothing changed
+	 */
+	public String transform(String name) {
+
+		if (stages.length == 0) {
+			return name;
+		}
+
+		Workspace workspace = WORKSPACE.get();
+		workspace.load(name);
+
+		boolean changed = false;
+
+		for (Stage stage : stages) {
+			changed |= stage.apply(workspace);
+		}
+
+		return changed ? new String(workspace.chars, 0, workspace.length) : name;
+	}
+
+	private interface Stage {
+
+		/**
+		 * Apply the stage to the characters of the workspace
+		 *
+		 * @return true if the characters changed
+		 */
+		boolean apply(Workspace workspace);
+
+	}
+
+	/**
+	 * Replaces every non overlapping occurrence of a string, from left to right,
+	 * copying the characters between occurrences in bulk
+	 */
+	private static class StringStage implements Stage {
+
+		private final char[] target;
+
+		private final char[] replacement;
+
+		StringStage(String target, String replacement) {
+			this.target = target.toCharArray();
+			this.replacement = replacement.toCharArray();
+		}
+
+		@Override
+		public boolean apply(Workspace workspace) {
+
+			char[] chars = workspace.chars;
+			int length = workspace.length;
+
+			int found = indexOf(chars, length, 0);
+
+			if (found < 0) {
+				return false;
+			}
+
+			int from = 0;
+			workspace.beginOutput();
+
+			while (found >= 0) {
+				workspace.write(chars, from, found - from);
+				workspace.write(replacement, 0, replacement.length);
+
+				from = found + target.length;
+				found = indexOf(chars, length, from);
+			}
+
+			workspace.write(chars, from, length - from);
+			workspace.endOutput();
+
+			return true;
+		}
+
+		private int indexOf(char[] chars, int length, int from) {
+
+			char first = target[0];
+			int last = length - target.length;
+
+			for (int i = from; i <= last; i++) {
+
+				if (chars[i] == first) {
+
+					int j = 1;
+
+					while (j < target.length && chars[i + j] == target[j]) {
+						j++;
+					}
+
+					if (j == target.length) {
+						return i;
+					}
+				}
+			}
+
+			return -1;
+		}
+
+	}
+
+	/**
+	 * Consecutive substitutions of single characters. Each character is replaced
+	 * by the result of applying all of them in order to that character alone, in
+	 * place when every replacement is a single character
+	 */
+	private static class CharacterStage implements Stage {
+
+		private char[] targets = new char[0];
+
+		private String[] images = new String[0];
+
+		// Images of ASCII characters, null if they are not replaced
+		private final String[] asciiImages = new String[128];
+
+		private boolean singleCharacters = true;
+
+		void add(char target, String replacement) {
+
+			// Later substitutions also apply to what previous ones produced
+			for (int i = 0; i < targets.length; i++) {
+				images[i] = images[i].replace(String.valueOf(target), replacement);
+			}
+
+			if (find(target) < 0) {
+				targets = Arrays.copyOf(targets, targets.length + 1);
+				images = Arrays.copyOf(images, images.length + 1);
+				targets[targets.length - 1] = target;
+				images[images.length - 1] = replacement;
+			}
+
+			singleCharacters = true;
+
+			for (int i = 0; i < targets.length; i++) {
+
+				singleCharacters &= images[i].length() == 1;
+
+				if (targets[i] < asciiImages.length) {
+					asciiImages[targets[i]] = images[i];
+				}
+			}
+		}
+
+		private int find(char c) {
+
+			for (int i = 0; i < targets.length; i++) {
+				if (targets[i] == c) {
+					return i;
+				}
+			}
+
+			return -1;
+		}
+
+		private String image(char c) {
+
+			if (c < asciiImages.length) {
+				return asciiImages[c];
+			}
+
+			int index = find(c);
+			return index < 0 ? null : images[index];
+		}
+
+		@Override
+		public boolean apply(Workspace workspace) {
+
+			char[] chars = workspace.chars;
+			int length = workspace.length;
+
+			if (singleCharacters) {
+
+				boolean changed = false;
+
+				for (int i = 0; i < length; i++) {
+
+					String image = image(chars[i]);
+
+					if (image != null) {
+						chars[i] = image.charAt(0);
+						changed = true;
+					}
+				}
+
+				return changed;
+			}
+
+			int from = 0;
+			boolean changed = false;
+
+			for (int i = 0; i < length; i++) {
+
+				String image = image(chars[i]);
+
+				if (image != null) {
+
+					if (!changed) {
+						workspace.beginOutput();
+						changed = true;
+					}
+
+					workspace.write(chars, from, i - from);
+					workspace.write(image);
+					from = i + 1;
+				}
+			}
+
+			if (changed) {
+				workspace.write(chars, from, length - from);
+				workspace.endOutput();
+			}
+
+			return changed;
+		}
+
+	}
+
+	/**
+	 * Replacement of the empty string, which String.replace inserts before every
+	 * character and at the end
+	 */
+	private static class InsertionStage implements Stage {
+
+		private final String insertion;
+
+		InsertionStage(String insertion) {
+			this.insertion = insertion;
+		}
+
+		@Override
+		public boolean apply(Workspace workspace) {
+
+			char[] chars = workspace.chars;
+			int length = workspace.length;
+
+			workspace.beginOutput();
+
+			for (int i = 0; i < length; i++) {
+				workspace.write(insertion);
+				workspace.write(chars, i, 1);
+			}
+
+			workspace.write(insertion);
+			workspace.endOutput();
+
+			return true;
+		}
+
+	}
+
+	/**
+	 * Two buffers that are reused by every name transformed in a thread. Stages
+	 * that change the length write into the spare buffer, which then becomes the
+	 * current one
+	 */
+	private static class Workspace {
+
+		private char[] chars = new char[256];
+
+		private int length;
+
+		private char[] spare = new char[256];
+
+		private int spareLength;
+
+		void load(String name) {
+
+			if (chars.length < name.length()) {
+				chars = new char[Math.max(name.length(), chars.length * 2)];
+			}
+
+			name.getChars(0, name.length(), chars, 0);
+			length = name.length();
+		}
+
+		void beginOutput() {
+			spareLength = 0;
+		}
+
+		void write(char[] source, int offset, int count) {
+
+			if (spareLength + count > spare.length) {
+				spare = Arrays.copyOf(spare, Math.max(spareLength + count, spare.length * 2));
+			}
+
+			System.arraycopy(source, offset, spare, spareLength, count);
+			spareLength += count;
+		}
+
+		void write(String text) {
+
+			if (spareLength + text.length() > spare.length) {
+				spare = Arrays.copyOf(spare, Math.max(spareLength + text.length(), spare.length * 2));
+			}
+
+			text.getChars(0, text.length(), spare, spareLength);
+			spareLength += text.length();
+		}
+
+		void endOutput() {
+
+			char[] swap = chars;
+			chars = spare;
+			length = spareLength;
+			spare = swap;
+		}
+
+	}
+
+}
@@ -50,18 +50,8 @@ public class AggregateMatrixDependencyGroup extends MatrixDependencyGroup {
 
 		}
 
-		for (String type : group.getDependencies().keySet()) {
-
-			int oldOccurrences = 0;
-
-			if (dependencies.containsKey(type)) {
-				oldOccurrences = dependencies.get(type);
-				dependencies.remove(type);
-			}
-
-			dependencies.put(type, group.getDependencies().get(type) + oldOccurrences);
-
-		}
+		// The occurrences are added by type id, without creating a map
+		group.addOccurrencesTo(this);
 
 		subDependencyGroups.add(group);
 
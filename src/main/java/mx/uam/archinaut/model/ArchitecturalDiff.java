@@ -1,7 +1,6 @@
 package mx.uam.archinaut.model;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import mx.uam.archinaut.model.MatrixElement.ElementStatus;
 
@@ -20,7 +19,8 @@ public class ArchitecturalDiff {
 	private DesignStructureMatrix diffTargetMatrix;
 	private DiffType diffType;
 
-	Map<String, Delta> deltasMap = new HashMap<>();
+	// Deltas indexed by the id of the full name they were requested for
+	Delta[] deltasById = new Delta[0];
 
 	public ArchitecturalDiff(DesignStructureMatrix original, DesignStructureMatrix diffTarget, DiffType diffType) {
 		this.originalMatrix = original;
@@ -40,23 +40,62 @@ public class ArchitecturalDiff {
 	 */
 	public Delta getDeltaForElement(String fullName) {
 
+		Delta cached = getCachedDelta(ElementSymbolTable.getId(fullName));
+
+		if (cached != null) {
+			return cached;
+		}
+
 		if (originalMatrix.getElementByFullname(fullName) == null) {
 			return null;
 		}
 
-		Delta delta = deltasMap.get(fullName);
+		MatrixElement originalElementVersion = originalMatrix.getElementByFullname(fullName);
+		MatrixElement diffTargetElementVersion = diffTargetMatrix.getElementByFullname(fullName);
+		ElementStatus targetStatus = originalMatrix.getElementStatus(fullName);
 
-		if (delta == null) {
-			MatrixElement originalElementVersion = originalMatrix.getElementByFullname(fullName);
-			MatrixElement diffTargetElementVersion = diffTargetMatrix.getElementByFullname(fullName);
-			ElementStatus targetStatus = originalMatrix.getElementStatus(fullName);
+		Delta delta = new Delta(originalElementVersion, diffTargetElementVersion, targetStatus, diffType);
 
-			delta = new Delta(originalElementVersion, diffTargetElementVersion, targetStatus, diffType);
-			deltasMap.put(fullName, delta);
+		// A name without an id is only known under an alternative name, it is not
+		// interned to keep its delta
+		int id = ElementSymbolTable.getId(fullName);
 
+		if (id != ElementSymbolTable.NO_ID) {
+
+			if (id >= deltasById.length) {
+				deltasById = Arrays.copyOf(deltasById, Math.max(id + 1, deltasById.length * 3 / 2));
+			}
+
+			deltasById[id] = delta;
 		}
 
 		return delta;
 	}
 
+	/**
+	 * Get delta for an element given the id of its full name
+	 * 
+	 * @param id
+	 * @return null if the element is not in the matrix, a delta if it is
+	 */
+	public Delta getDeltaForElement(int id) {
+
+		Delta cached = getCachedDelta(id);
+
+		if (cached != null) {
+			return cached;
+		}
+
+		return getDeltaForElement(ElementSymbolTable.getName(id));
+	}
+
+	private Delta getCachedDelta(int id) {
+
+		if (id < 0 || id >= deltasById.length) {
+			return null;
+		}
+
+		return deltasById[id];
+	}
+
 }
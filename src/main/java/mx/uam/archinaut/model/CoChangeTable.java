@@ -0,0 +1,247 @@
+package mx.uam.archinaut.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The pairs of elements that changed together, parsed from one coupling source
+ * before they are added to a matrix. Every full name gets an id that is its
+ * position in the table, the names are not interned as most of them may not
+ * be in the matrix. A pair is keyed by the ids of both elements packed in a
+ * long, and the keys are held in an open addressing hash of primitives, so
+ * millions of pairs can be joined with the cells of a matrix without creating
+ * an object per pair. Co-changes of the same pair are added together.
+ */
+public class CoChangeTable {
+
+	// The file the pairs were parsed from
+	private final String source;
+
+	// Name of the metric with the co-changes of every element, null if none
+	private final String metricName;
+
+	// Id of every full name, and the names by id
+	private final Map<String, Integer> ids = new HashMap<>();
+
+	private String[] names = new String[16];
+
+	private int namesCount = 0;
+
+	// Key and co-changes of every pair, in the order in which they were found
+	private long[] keys = new long[16];
+
+	private int[] coChanges = new int[16];
+
+	private int pairsCount = 0;
+
+	// Hash of the keys, every slot holds the index of a pair plus one, 0 if free
+	private int[] slots = new int[32];
+
+	/**
+	 * Constructor
+	 *
+	 * @param source     the file the pairs are parsed from
+	 * @param metricName the name of the metric with the co-changes of every
+	 *                   element, null if the metric is not added
+	 */
+	public CoChangeTable(String source, String metricName) {
+		this.source = source;
+		this.metricName = metricName;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getMetricName() {
+		return metricName;
+	}
+
+	/**
+	 * Add the co-changes of a pair of elements
+	 *
+	 * @param element the full name of the element
+	 * @param coupled the full name of the element that changed with it
+	 * @param value   the number of co-changes
+	 */
+	public void addPair(String element, String coupled, int value) {
+		addPair(addName(element), addName(coupled), value);
+	}
+
+	/**
+	 * Returns the id of a full name in the table, giving it the next id if it has
+	 * none
+	 *
+	 * @param name the full name of an element
+	 * @return the id
+	 */
+	public int addName(String name) {
+
+		Integer id = ids.get(name);
+
+		if (id == null) {
+
+			if (namesCount == names.length) {
+				names = Arrays.copyOf(names, namesCount * 2);
+			}
+
+			names[namesCount] = name;
+			id = namesCount++;
+			ids.put(name, id);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns the number of full names in the table, ids are smaller than this
+	 * number
+	 *
+	 * @return
+	 */
+	public int getNamesCount() {
+		return namesCount;
+	}
+
+	/**
+	 * Returns the full name that has an id in the table
+	 *
+	 * @param id the id
+	 * @return
+	 */
+	public String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Add the co-changes of a pair of elements
+	 *
+	 * @param element the id in the table of the full name of the element
+	 * @param coupled the id in the table of the full name of the element that
+	 *                changed with it
+	 * @param value   the number of co-changes
+	 */
+	public void addPair(int element, int coupled, int value) {
+
+		long key = key(element, coupled);
+		int slot = findSlot(key);
+
+		if (slots[slot] != 0) {
+			coChanges[slots[slot] - 1] += value;
+			return;
+		}
+
+		if (pairsCount == keys.length) {
+			keys = Arrays.copyOf(keys, pairsCount * 2);
+			coChanges = Arrays.copyOf(coChanges, pairsCount * 2);
+		}
+
+		keys[pairsCount] = key;
+		coChanges[pairsCount] = value;
+		pairsCount++;
+		slots[slot] = pairsCount;
+
+		// Keep the hash at most half full
+		if (pairsCount * 2 > slots.length) {
+			rehash();
+		}
+	}
+
+	public int getPairsCount() {
+		return pairsCount;
+	}
+
+	/**
+	 * Returns the id in the table of the first element of a pair
+	 *
+	 * @param pair the index of the pair, smaller than getPairsCount
+	 * @return
+	 */
+	public int getElementId(int pair) {
+		return (int) (keys[pair] >>> 32);
+	}
+
+	/**
+	 * Returns the id in the table of the second element of a pair
+	 *
+	 * @param pair the index of the pair, smaller than getPairsCount
+	 * @return
+	 */
+	public int getCoupledId(int pair) {
+		return (int) keys[pair];
+	}
+
+	/**
+	 * Returns the co-changes of a pair
+	 *
+	 * @param pair the index of the pair, smaller than getPairsCount
+	 * @return
+	 */
+	public int getCoChanges(int pair) {
+		return coChanges[pair];
+	}
+
+	/**
+	 * Find a pair, the order of the elements matters
+	 *
+	 * @param element the id in the table of the first element
+	 * @param coupled the id in the table of the second element
+	 * @return the index of the pair, -1 if there is none
+	 */
+	public int findPair(int element, int coupled) {
+
+		if (element < 0 || coupled < 0) {
+			return -1;
+		}
+
+		return slots[findSlot(key(element, coupled))] - 1;
+	}
+
+	private static long key(int element, int coupled) {
+		return ((long) element << 32) | (coupled & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the slot of a key, or the free slot where it would go
+	 */
+	private int findSlot(long key) {
+
+		int mask = slots.length - 1;
+		int slot = hash(key) & mask;
+
+		while (slots[slot] != 0 && keys[slots[slot] - 1] != key) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	private static int hash(long key) {
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+
+	private void rehash() {
+
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+
+		for (int pair = 0; pair < pairsCount; pair++) {
+
+			int slot = hash(keys[pair]) & mask;
+
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+
+			slots[slot] = pair + 1;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CoChangeTable from " + source + " pairs: " + pairsCount;
+	}
+
+}
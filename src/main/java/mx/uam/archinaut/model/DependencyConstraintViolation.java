@@ -2,9 +2,12 @@ package mx.uam.archinaut.model;
 
 public class DependencyConstraintViolation {
 
-	// The associated constraint
+	// The associated constraint, null if the dependency breaks a rule
 	private DependencyConstraint constraint;
 
+	// The associated rule, null if the dependency breaks a constraint
+	private DependencyRule rule;
+
 	// The dependency group at the element level (not groups)
 	private MatrixDependencyGroup dependencyGroup;
 
@@ -13,16 +16,25 @@ public class DependencyConstraintViolation {
 		this.constraint = constraint;
 	}
 
+	public DependencyConstraintViolation(MatrixDependencyGroup dependencyGroup, DependencyRule rule) {
+		this.dependencyGroup = dependencyGroup;
+		this.rule = rule;
+	}
+
 	public DependencyConstraint getConstraint() {
 		return constraint;
 	}
 
+	public DependencyRule getRule() {
+		return rule;
+	}
+
 	public MatrixDependencyGroup getMatrixDependencyGroup() {
 		return dependencyGroup;
 	}
 
 	public String toString() {
-		return "Violation : " + constraint + " Element source : " + dependencyGroup.getSource()
-				+ " and Element destination : " + dependencyGroup.getDestination();
+		return "Violation : " + (constraint != null ? constraint : rule) + " Element source : "
+				+ dependencyGroup.getSource() + " and Element destination : " + dependencyGroup.getDestination();
 	}
 }
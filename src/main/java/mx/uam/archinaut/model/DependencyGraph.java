@@ -0,0 +1,249 @@
+package mx.uam.archinaut.model;
+
+import java.util.Arrays;
+
+/**
+ * The dependencies between a set of nodes, such as the elements of a matrix or
+ * the groups at one depth of its tree, in compressed sparse row form. The nodes
+ * are numbered from 0, and the edges of every node are stored contiguously, so
+ * graph algorithms run over a couple of arrays instead of the
+ * MatrixDependencyGroups of every element.
+ *
+ * A graph is a snapshot of the dependencies when it was created, later changes
+ * to the dependencies are not seen.
+ */
+public class DependencyGraph {
+
+	// For every node, the position of its first edge. Size is nodes + 1
+	private final int[] offsets;
+
+	// For every edge, the node it goes to
+	private final int[] targets;
+
+	private DependencyGraph(int[] offsets, int[] targets) {
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/**
+	 * Returns the number of nodes
+	 *
+	 * @return
+	 */
+	public int getNodesCount() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Returns the number of edges
+	 *
+	 * @return
+	 */
+	public int getEdgesCount() {
+		return offsets[offsets.length - 1];
+	}
+
+	/**
+	 * Returns the position of the first edge of a node, its edges go up to the
+	 * first edge of the next node
+	 *
+	 * @param node the node
+	 * @return the position of the edge
+	 */
+	public int getFirstEdge(int node) {
+		return offsets[node];
+	}
+
+	/**
+	 * Returns the node an edge goes to
+	 *
+	 * @param edge the position of the edge
+	 * @return the node
+	 */
+	public int getTarget(int edge) {
+		return targets[edge];
+	}
+
+	/**
+	 * Returns the number of edges of a node
+	 *
+	 * @param node the node
+	 * @return
+	 */
+	public int getEdgesCount(int node) {
+		return offsets[node + 1] - offsets[node];
+	}
+
+	/**
+	 * Create the graph with the same nodes and every edge in the other direction.
+	 * The edges of every node are ordered by the node they come from
+	 *
+	 * @return the reversed graph
+	 */
+	public DependencyGraph reverse() {
+
+		int nodes = getNodesCount();
+		int[] reversedOffsets = new int[nodes + 1];
+		int[] reversedTargets = new int[targets.length];
+
+		for (int target : targets) {
+			reversedOffsets[target + 1]++;
+		}
+
+		for (int node = 0; node < nodes; node++) {
+			reversedOffsets[node + 1] += reversedOffsets[node];
+		}
+
+		int[] next = Arrays.copyOf(reversedOffsets, nodes);
+
+		for (int node = 0; node < nodes; node++) {
+			for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+				reversedTargets[next[targets[edge]]++] = node;
+			}
+		}
+
+		return new DependencyGraph(reversedOffsets, reversedTargets);
+	}
+
+	/**
+	 * Create the graph between sets of nodes, such as the components of the graph
+	 * or the groups that have the nodes. There is an edge between two different
+	 * sets if a node of one has an edge to a node of the other, and each edge
+	 * appears once
+	 *
+	 * @param sets      for every node, its set, or -1 for the nodes that are left
+	 *                  out
+	 * @param setsCount the number of sets
+	 * @return the graph, its nodes are the sets
+	 */
+	public DependencyGraph condense(int[] sets, int setsCount) {
+
+		int nodes = getNodesCount();
+
+		int[] condensedOffsets = new int[setsCount + 1];
+
+		for (int node = 0; node < nodes; node++) {
+			if (sets[node] != -1) {
+				condensedOffsets[sets[node] + 1] += getEdgesCount(node);
+			}
+		}
+
+		for (int set = 0; set < setsCount; set++) {
+			condensedOffsets[set + 1] += condensedOffsets[set];
+		}
+
+		// The edges of every set, with repetitions, ordered by set
+		int[] edges = new int[condensedOffsets[setsCount]];
+		int[] next = Arrays.copyOf(condensedOffsets, setsCount);
+
+		for (int node = 0; node < nodes; node++) {
+
+			int set = sets[node];
+
+			if (set == -1) {
+				continue;
+			}
+
+			for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+				edges[next[set]++] = sets[targets[edge]];
+			}
+		}
+
+		// Keep the first edge towards every other set, the last set that had an edge
+		// to every set tells if it was already kept
+		int[] lastSource = new int[setsCount];
+		Arrays.fill(lastSource, -1);
+
+		int[] condensedTargets = new int[edges.length];
+		int kept = 0;
+
+		for (int set = 0; set < setsCount; set++) {
+
+			int first = condensedOffsets[set];
+			int last = condensedOffsets[set + 1];
+			condensedOffsets[set] = kept;
+
+			for (int edge = first; edge < last; edge++) {
+
+				int target = edges[edge];
+
+				if (target != -1 && target != set && lastSource[target] != set) {
+					lastSource[target] = set;
+					condensedTargets[kept++] = target;
+				}
+			}
+		}
+
+		condensedOffsets[setsCount] = kept;
+
+		return new DependencyGraph(condensedOffsets, Arrays.copyOf(condensedTargets, kept));
+	}
+
+	/**
+	 * Builds a graph from the edges of every node, which must be added in the
+	 * order of the nodes
+	 */
+	public static class Builder {
+
+		private final int[] offsets;
+
+		private int[] targets = new int[1024];
+
+		private int node = 0;
+
+		private int edges = 0;
+
+		/**
+		 * Constructor
+		 *
+		 * @param nodes the number of nodes
+		 */
+		public Builder(int nodes) {
+			this.offsets = new int[nodes + 1];
+		}
+
+		/**
+		 * Add an edge
+		 *
+		 * @param source the node the edge comes from, not lower than the one of the
+		 *               previous edge
+		 * @param target the node the edge goes to
+		 */
+		public void addEdge(int source, int target) {
+
+			int nodes = offsets.length - 1;
+
+			if (source < node || source >= nodes || target < 0 || target >= nodes) {
+				throw new IllegalArgumentException(
+						"Edge from " + source + " to " + target + " is out of order or outside of the " + nodes
+								+ " nodes");
+			}
+
+			// Close the nodes before the source
+			while (node < source) {
+				offsets[++node] = edges;
+			}
+
+			if (edges == targets.length) {
+				targets = Arrays.copyOf(targets, edges * 2);
+			}
+
+			targets[edges++] = target;
+		}
+
+		/**
+		 * Create the graph, the builder must not be used afterwards
+		 *
+		 * @return the graph
+		 */
+		public DependencyGraph build() {
+
+			while (node < offsets.length - 1) {
+				offsets[++node] = edges;
+			}
+
+			return new DependencyGraph(offsets, Arrays.copyOf(targets, edges));
+		}
+	}
+
+}
@@ -0,0 +1,288 @@
+package mx.uam.archinaut.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dependencies between the nodes of the tree of a matrix, aggregated in one
+ * bottom-up pass. For every group of the tree there is a rollup towards every
+ * node at the same depth that its elements depend on, with the occurrences,
+ * co-changes and maximums of the cells below both nodes. Elements that are
+ * not as deep as the group are destinations of rollups of their own.
+ *
+ * A cell of the matrix enters at the level of the group of its source, and the
+ * rollups of every level are then added to the ones of the level above, so
+ * every cell is visited once. The rollups of a level are made of the rollups
+ * of the level below and the cells that entered at that level, which is what
+ * lets a model go down into the groups that are expanded.
+ *
+ * The rollups reflect the dependencies when they were built and must not be
+ * modified.
+ */
+public class DependencyRollup {
+
+	private static final AggregateMatrixDependencyGroup[] NO_ROLLUPS = new AggregateMatrixDependencyGroup[0];
+
+	// Depth of every node of the tree, the root has depth 0
+	private final Map<MatrixElement, Integer> depths = new IdentityHashMap<>();
+
+	// The rollups of every group, towards the nodes at its depth and the elements
+	// above it
+	private final Map<MatrixElement, AggregateMatrixDependencyGroup[]> rollups = new IdentityHashMap<>();
+
+	private int rollupsCount = 0;
+
+	/**
+	 * Aggregate the dependencies of the elements of a tree
+	 *
+	 * @param root the root of the tree
+	 */
+	public DependencyRollup(MatrixElementGroup root) {
+
+		List<MatrixElement> elements = new ArrayList<>();
+		int maximumDepth = addNode(root, 0, elements);
+
+		// The rollups of every level as they are created, and the rollup of every
+		// pair of nodes
+		List<List<AggregateMatrixDependencyGroup>> levels = new ArrayList<>();
+		Map<MatrixElement, Map<MatrixElement, AggregateMatrixDependencyGroup>> pairs = new IdentityHashMap<>();
+
+		for (int level = 0; level < maximumDepth; level++) {
+			levels.add(new ArrayList<>());
+		}
+
+		// Every cell enters at the level of the group of its source
+		for (MatrixElement source : elements) {
+
+			int level = depths.get(source) - 1;
+
+			for (MatrixDependencyGroup cell : source.getDependencies()) {
+
+				// The destination is not in the tree
+				if (!depths.containsKey(cell.getDestination())) {
+					continue;
+				}
+
+				getRollup(source.getGroup(), ancestor(cell.getDestination(), level), levels.get(level), pairs)
+						.addDependencyGroup(cell);
+			}
+		}
+
+		// The rollups of every level are added to the ones of the level above
+		for (int level = maximumDepth - 1; level > 0; level--) {
+			for (AggregateMatrixDependencyGroup rollup : levels.get(level)) {
+
+				MatrixElement sourceParent = rollup.getSource().getGroup();
+				MatrixElement destination = ancestor(rollup.getDestination(), level - 1);
+
+				getRollup(sourceParent, destination, levels.get(level - 1), pairs).addDependencyGroup(rollup);
+			}
+		}
+
+		for (Map.Entry<MatrixElement, Map<MatrixElement, AggregateMatrixDependencyGroup>> entry : pairs.entrySet()) {
+			rollups.put(entry.getKey(), entry.getValue().values().toArray(NO_ROLLUPS));
+			rollupsCount += entry.getValue().size();
+		}
+	}
+
+	/**
+	 * Record the depth of a node and of its descendants
+	 *
+	 * @param node     the node
+	 * @param depth    the depth of the node
+	 * @param elements the list that receives the nodes that are not groups
+	 * @return the maximum depth below the node
+	 */
+	private int addNode(MatrixElement node, int depth, List<MatrixElement> elements) {
+
+		depths.put(node, depth);
+
+		if (!(node instanceof MatrixElementGroup)) {
+			elements.add(node);
+			return depth;
+		}
+
+		int maximumDepth = depth;
+
+		for (MatrixElement child : ((MatrixElementGroup) node).getChildren()) {
+			maximumDepth = Math.max(maximumDepth, addNode(child, depth + 1, elements));
+		}
+
+		return maximumDepth;
+	}
+
+	/**
+	 * Returns the ancestor of a node at a depth, or the node itself if it is not
+	 * deeper
+	 */
+	private MatrixElement ancestor(MatrixElement node, int depth) {
+
+		for (int i = depths.get(node); i > depth; i--) {
+			node = node.getGroup();
+		}
+
+		return node;
+	}
+
+	private static AggregateMatrixDependencyGroup getRollup(MatrixElement source, MatrixElement destination,
+			List<AggregateMatrixDependencyGroup> level,
+			Map<MatrixElement, Map<MatrixElement, AggregateMatrixDependencyGroup>> pairs) {
+
+		Map<MatrixElement, AggregateMatrixDependencyGroup> destinations = pairs.computeIfAbsent(source,
+				s -> new IdentityHashMap<>());
+
+		AggregateMatrixDependencyGroup rollup = destinations.get(destination);
+
+		if (rollup == null) {
+			rollup = new AggregateMatrixDependencyGroup(source, destination);
+			destinations.put(destination, rollup);
+			level.add(rollup);
+		}
+
+		return rollup;
+	}
+
+	/**
+	 * Test if a node is part of the tree
+	 *
+	 * @param node
+	 * @return
+	 */
+	public boolean contains(MatrixElement node) {
+		return depths.containsKey(node);
+	}
+
+	/**
+	 * Returns the rollups of a group towards the nodes at its depth and the
+	 * elements above it
+	 *
+	 * @param group a group of the tree
+	 * @return the rollups, empty if the elements of the group have no dependencies
+	 */
+	public AggregateMatrixDependencyGroup[] getRollups(MatrixElement group) {
+		return rollups.getOrDefault(group, NO_ROLLUPS);
+	}
+
+	/**
+	 * Returns the number of rollups of all the groups
+	 *
+	 * @return
+	 */
+	public int getRollupsCount() {
+		return rollupsCount;
+	}
+
+	/**
+	 * Create a cut of the tree, to get the dependencies between its nodes
+	 *
+	 * @param nodes the nodes of the cut, compared by identity
+	 * @return
+	 */
+	public Cut getCut(Set<MatrixElement> nodes) {
+		return new Cut(nodes);
+	}
+
+	/**
+	 * A set of nodes of the tree, such as the elements of a model. The
+	 * dependencies of a group of the cut are assembled from its rollups, and only
+	 * the rollups towards groups that have descendants in the cut are opened
+	 *
+	 */
+	public class Cut {
+
+		private final Set<MatrixElement> nodes;
+
+		// The groups above the nodes of the cut
+		private final Set<MatrixElement> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		private Cut(Set<MatrixElement> nodes) {
+
+			this.nodes = nodes;
+
+			for (MatrixElement node : nodes) {
+
+				MatrixElement parent = node.getGroup();
+
+				while (parent != null && expanded.add(parent)) {
+					parent = parent.getGroup();
+				}
+			}
+		}
+
+		/**
+		 * Returns the dependencies from a group of the tree to the nodes of the cut. The
+		 * destination of a dependency is the closest node of the cut above the
+		 * destination of the cells, as with MatrixDependencyGroup.getDependencies
+		 *
+		 * @param group a group of the tree
+		 * @return one dependency group per destination
+		 */
+		public List<MatrixDependencyGroup> getDependencies(MatrixElement group) {
+
+			Map<MatrixElement, List<MatrixDependencyGroup>> parts = new IdentityHashMap<>();
+
+			for (AggregateMatrixDependencyGroup rollup : getRollups(group)) {
+				addPart(rollup, parts);
+			}
+
+			List<MatrixDependencyGroup> dependencies = new ArrayList<>(parts.size());
+
+			for (Map.Entry<MatrixElement, List<MatrixDependencyGroup>> entry : parts.entrySet()) {
+
+				List<MatrixDependencyGroup> destinationParts = entry.getValue();
+				MatrixDependencyGroup first = destinationParts.get(0);
+
+				// A rollup between the group and the destination is used as it is
+				if (destinationParts.size() == 1 && first instanceof AggregateMatrixDependencyGroup
+						&& first.getSource() == group && first.getDestination() == entry.getKey()) {
+					dependencies.add(first);
+					continue;
+				}
+
+				AggregateMatrixDependencyGroup dependency = new AggregateMatrixDependencyGroup(group, entry.getKey());
+
+				for (MatrixDependencyGroup part : destinationParts) {
+					dependency.addDependencyGroup(part);
+				}
+
+				dependencies.add(dependency);
+			}
+
+			return dependencies;
+		}
+
+		/**
+		 * Add a rollup or a cell to the parts of its destination in the cut, the ones
+		 * towards expanded groups are split in the parts they are made of
+		 */
+		private void addPart(MatrixDependencyGroup part, Map<MatrixElement, List<MatrixDependencyGroup>> parts) {
+
+			MatrixElement destination = part.getDestination();
+
+			if (expanded.contains(destination)) {
+
+				if (part instanceof AggregateMatrixDependencyGroup) {
+					for (MatrixDependencyGroup subPart : ((AggregateMatrixDependencyGroup) part)
+							.getSubDependencyGroups()) {
+						addPart(subPart, parts);
+					}
+				}
+
+				return;
+			}
+
+			while (destination != null && !nodes.contains(destination)) {
+				destination = destination.getGroup();
+			}
+
+			if (destination != null) {
+				parts.computeIfAbsent(destination, d -> new ArrayList<>()).add(part);
+			}
+		}
+	}
+
+}
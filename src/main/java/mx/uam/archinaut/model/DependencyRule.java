@@ -0,0 +1,47 @@
+package mx.uam.archinaut.model;
+
+/**
+ * A rule that forbids the dependencies from some elements to others. The
+ * elements are selected with the syntax of the exclusions, see NameFilter, and
+ * a selector that matches a group selects every element below it.
+ */
+public final class DependencyRule {
+
+	private final String source;
+
+	private final String destination;
+
+	private final String description;
+
+	/**
+	 * Constructor
+	 *
+	 * @param source      selector of the elements that must not have the
+	 *                    dependencies
+	 * @param destination selector of the elements they must not depend on
+	 * @param description the rule as it is reported
+	 */
+	public DependencyRule(String source, String destination, String description) {
+		this.source = source;
+		this.destination = destination;
+		this.description = description;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getDestination() {
+		return destination;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+}
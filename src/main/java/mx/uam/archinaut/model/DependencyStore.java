@@ -0,0 +1,593 @@
+package mx.uam.archinaut.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compressed sparse row (CSR) storage of the dependencies loaded from depends.
+ * The cells of a source element are stored contiguously, and the dependency
+ * types and occurrences of each cell are stored contiguously as well, so a
+ * matrix with millions of cells is held in a handful of arrays. Types are
+ * stored as their byte ids in the DependencyTypeTable.
+ *
+ * The cells are also indexed by destination, so the incoming dependencies of an
+ * element are found without going through the cells of every other element.
+ *
+ * MatrixDependencyGroups over this store are lightweight views that are only
+ * created when the dependencies of an element are requested.
+ */
+@Slf4j
+public class DependencyStore {
+
+	// The elements of the store, indexed by the position used in the cells
+	private final MatrixElement[] elements;
+
+	// For every element, the position of its first cell. Size is elements + 1
+	private final int[] cellOffsets;
+
+	// For every cell, the index of the destination element
+	private final int[] cellTargets;
+
+	// For every cell, the position of its first value. Size is cells + 1
+	private final int[] valueOffsets;
+
+	// For every value, the id of the dependency type as an unsigned byte
+	private final byte[] valueTypes;
+
+	// For every value, the number of occurrences
+	private final int[] valueCounts;
+
+	// For every cell, the total number of occurrences of its dependencies
+	private final int[] cellTotals;
+
+	// For every cell, the number of co-changes. Allocated when the first is set
+	private int[] cellCoChanges;
+
+	// For every element, the position of its first incoming cell. Size is
+	// elements + 1
+	private final int[] incomingOffsets;
+
+	// The cells ordered by destination, and by source for the same destination
+	private final int[] incomingCells;
+
+	// For every incoming cell, the index of its source element
+	private final int[] incomingSources;
+
+	private DependencyStore(MatrixElement[] elements, int[] cellOffsets, int[] cellTargets, int[] valueOffsets,
+			byte[] valueTypes, int[] valueCounts) {
+		this.elements = elements;
+		this.cellOffsets = cellOffsets;
+		this.cellTargets = cellTargets;
+		this.valueOffsets = valueOffsets;
+		this.valueTypes = valueTypes;
+		this.valueCounts = valueCounts;
+
+		this.cellTotals = new int[cellTargets.length];
+
+		for (int cell = 0; cell < cellTargets.length; cell++) {
+			for (int value = valueOffsets[cell]; value < valueOffsets[cell + 1]; value++) {
+				cellTotals[cell] += valueCounts[value];
+			}
+		}
+
+		this.incomingOffsets = new int[elements.length + 1];
+		this.incomingCells = new int[cellTargets.length];
+		this.incomingSources = new int[cellTargets.length];
+
+		for (int cell = 0; cell < cellTargets.length; cell++) {
+			incomingOffsets[cellTargets[cell] + 1]++;
+		}
+
+		for (int index = 0; index < elements.length; index++) {
+			incomingOffsets[index + 1] += incomingOffsets[index];
+		}
+
+		// Counting sort of the cells by destination, the sources are visited in order
+		int[] nextCell = Arrays.copyOf(incomingOffsets, elements.length);
+
+		for (int source = 0; source < elements.length; source++) {
+			for (int cell = cellOffsets[source]; cell < cellOffsets[source + 1]; cell++) {
+				int position = nextCell[cellTargets[cell]]++;
+				incomingCells[position] = cell;
+				incomingSources[position] = source;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of elements in the store
+	 *
+	 * @return
+	 */
+	public int getElementsCount() {
+		return elements.length;
+	}
+
+	/**
+	 * Returns the total number of cells in the store
+	 *
+	 * @return
+	 */
+	public int getCellsCount() {
+		return cellTargets.length;
+	}
+
+	/**
+	 * Returns the dependency groups of an element. The groups are created while
+	 * iterating and are not retained by the store.
+	 *
+	 * @param index the index of the source element
+	 * @return
+	 */
+	public Iterable<MatrixDependencyGroup> getDependencies(int index) {
+		return () -> new Iterator<MatrixDependencyGroup>() {
+
+			private int cell = cellOffsets[index];
+
+			@Override
+			public boolean hasNext() {
+				return cell < cellOffsets[index + 1];
+			}
+
+			@Override
+			public MatrixDependencyGroup next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				MatrixDependencyGroup group = new MatrixDependencyGroup(elements[index],
+						elements[cellTargets[cell]], DependencyStore.this, cell);
+				cell++;
+				return group;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of cells of an element
+	 *
+	 * @param index the index of the source element
+	 * @return
+	 */
+	public int getDependenciesCount(int index) {
+		return cellOffsets[index + 1] - cellOffsets[index];
+	}
+
+	/**
+	 * Returns the dependency groups whose destination is an element, ordered by
+	 * source. The groups are created while iterating and are not retained by the
+	 * store.
+	 *
+	 * @param index the index of the destination element
+	 * @return
+	 */
+	public Iterable<MatrixDependencyGroup> getIncomingDependencies(int index) {
+		return () -> new Iterator<MatrixDependencyGroup>() {
+
+			private int position = incomingOffsets[index];
+
+			@Override
+			public boolean hasNext() {
+				return position < incomingOffsets[index + 1];
+			}
+
+			@Override
+			public MatrixDependencyGroup next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				MatrixDependencyGroup group = new MatrixDependencyGroup(elements[incomingSources[position]],
+						elements[index], DependencyStore.this, incomingCells[position]);
+				position++;
+				return group;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of cells whose destination is an element
+	 *
+	 * @param index the index of the destination element
+	 * @return
+	 */
+	public int getIncomingDependenciesCount(int index) {
+		return incomingOffsets[index + 1] - incomingOffsets[index];
+	}
+
+	/**
+	 * Returns the map of dependencies <type, occurrences> of a cell
+	 *
+	 * @param cell
+	 * @return
+	 */
+	Map<String, Integer> getCellDependencies(int cell) {
+		Map<String, Integer> result = new HashMap<>();
+		for (int value = valueOffsets[cell]; value < valueOffsets[cell + 1]; value++) {
+			result.put(DependencyTypeTable.getName(valueTypes[value] & 0xFF), valueCounts[value]);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the occurrences of a cell indexed by type id
+	 *
+	 * @param cell
+	 * @return an array with room for every type of the DependencyTypeTable
+	 */
+	int[] getCellOccurrences(int cell) {
+		int[] result = new int[DependencyTypeTable.size()];
+		for (int value = valueOffsets[cell]; value < valueOffsets[cell + 1]; value++) {
+			result[valueTypes[value] & 0xFF] = valueCounts[value];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the occurrences of a type in a cell
+	 *
+	 * @param cell
+	 * @param type the id of the type
+	 * @return
+	 */
+	int getCellOccurrences(int cell, int type) {
+		for (int value = valueOffsets[cell]; value < valueOffsets[cell + 1]; value++) {
+			if ((valueTypes[value] & 0xFF) == type) {
+				return valueCounts[value];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Add the occurrences of every type of a cell to a group
+	 *
+	 * @param cell
+	 * @param target the group that receives the occurrences
+	 */
+	void addCellOccurrences(int cell, MatrixDependencyGroup target) {
+		for (int value = valueOffsets[cell]; value < valueOffsets[cell + 1]; value++) {
+			target.addOccurrences(valueTypes[value] & 0xFF, valueCounts[value]);
+		}
+	}
+
+	/**
+	 * Add the occurrences of every type of a cell to an array
+	 *
+	 * @param cell
+	 * @param counts the array that receives the occurrences
+	 * @param offset the position of the type with id 0
+	 */
+	void addCellOccurrences(int cell, int[] counts, int offset) {
+		for (int value = valueOffsets[cell]; value < valueOffsets[cell + 1]; value++) {
+			counts[offset + (valueTypes[value] & 0xFF)] += valueCounts[value];
+		}
+	}
+
+	/**
+	 * Returns the total number of dependencies of a cell
+	 *
+	 * @param cell
+	 * @return
+	 */
+	int getCellTotalDependencies(int cell) {
+		return cellTotals[cell];
+	}
+
+	/**
+	 * Returns the number of co-changes of a cell
+	 *
+	 * @param cell
+	 * @return
+	 */
+	int getCellCoChanges(int cell) {
+		return cellCoChanges == null ? 0 : cellCoChanges[cell];
+	}
+
+	/**
+	 * Sets the number of co-changes of a cell
+	 *
+	 * @param cell
+	 * @param coChanges
+	 */
+	void setCellCoChanges(int cell, int coChanges) {
+
+		if (cellCoChanges == null) {
+			if (coChanges == 0) {
+				return;
+			}
+			cellCoChanges = new int[cellTargets.length];
+		}
+
+		cellCoChanges[cell] = coChanges;
+	}
+
+	/**
+	 * Returns true if every element of the store still holds its dependencies in
+	 * it, without copies that were modified
+	 *
+	 * @return
+	 */
+	boolean isHeldByElements() {
+
+		for (int index = 0; index < elements.length; index++) {
+			if (!elements[index].isHeldInDependencyStore(this, index)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Create a store with the cells of this one and new cells that only have
+	 * co-changes, and attach every element to it. The new cells of a source come
+	 * after the ones it already has, ordered by destination
+	 *
+	 * @param coChangeCells the co-changes of every new cell, keyed by the index of
+	 *                      the source in the high half and the index of the
+	 *                      destination in the low half
+	 * @return the new store
+	 */
+	DependencyStore addCoChangeCells(Map<Long, Integer> coChangeCells) {
+
+		long[] keys = new long[coChangeCells.size()];
+		int position = 0;
+
+		for (Long key : coChangeCells.keySet()) {
+			keys[position++] = key;
+		}
+
+		Arrays.sort(keys);
+
+		Builder builder = new Builder(Arrays.asList(elements));
+		position = 0;
+
+		for (int source = 0; source < elements.length; source++) {
+
+			for (int cell = cellOffsets[source]; cell < cellOffsets[source + 1]; cell++) {
+
+				builder.addCell(source, cellTargets[cell]);
+
+				for (int value = valueOffsets[cell]; value < valueOffsets[cell + 1]; value++) {
+					builder.addDependency(valueTypes[value] & 0xFF, valueCounts[value]);
+				}
+
+				builder.setCoChanges(getCellCoChanges(cell));
+			}
+
+			for (; position < keys.length && (int) (keys[position] >>> 32) == source; position++) {
+				builder.addCell(source, (int) keys[position]);
+				builder.setCoChanges(coChangeCells.get(keys[position]));
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Builder that receives the cells as they are streamed from the depends output
+	 * and compresses them into a DependencyStore
+	 *
+	 */
+	public static class Builder {
+
+		private final MatrixElement[] elements;
+
+		private int[] cellSources = new int[1024];
+
+		private int[] cellTargets = new int[1024];
+
+		private int[] valueOffsets = new int[1025];
+
+		private byte[] valueTypes = new byte[1024];
+
+		private int[] valueCounts = new int[1024];
+
+		// Co-changes of every cell, allocated when the first is set
+		private int[] cellCoChanges;
+
+		private int cells = 0;
+
+		private int values = 0;
+
+		// True while the cells arrive ordered by source, which is what depends does
+		private boolean sorted = true;
+
+		/**
+		 * Constructor
+		 *
+		 * @param elements the elements, in the order in which the cells refer to them
+		 */
+		public Builder(List<MatrixElement> elements) {
+			this.elements = elements.toArray(new MatrixElement[0]);
+		}
+
+		/**
+		 * Start a new cell, the following calls to addDependency are added to it
+		 *
+		 * @param source      index of the source element
+		 * @param destination index of the destination element
+		 */
+		public void addCell(int source, int destination) {
+
+			if (source < 0 || source >= elements.length || destination < 0 || destination >= elements.length) {
+				throw new IllegalArgumentException(
+						"Cell from " + source + " to " + destination + " is outside of the " + elements.length
+								+ " elements");
+			}
+
+			if (cells == cellSources.length) {
+				cellSources = Arrays.copyOf(cellSources, cells * 2);
+				cellTargets = Arrays.copyOf(cellTargets, cells * 2);
+				valueOffsets = Arrays.copyOf(valueOffsets, cells * 2 + 1);
+				if (cellCoChanges != null) {
+					cellCoChanges = Arrays.copyOf(cellCoChanges, cells * 2);
+				}
+			}
+
+			if (cells > 0 && source < cellSources[cells - 1]) {
+				sorted = false;
+			}
+
+			cellSources[cells] = source;
+			cellTargets[cells] = destination;
+			cells++;
+			valueOffsets[cells] = values;
+		}
+
+		/**
+		 * Add a dependency to the current cell. In case this type was already added to
+		 * the cell, the occurrences are replaced
+		 *
+		 * @param type        A string that describes the type of dependency
+		 * @param occurrences An integer that represents the number of occurrences
+		 */
+		public void addDependency(String type, int occurrences) {
+			addDependency(DependencyTypeTable.intern(type), occurrences);
+		}
+
+		/**
+		 * Add a dependency to the current cell. In case this type was already added to
+		 * the cell, the occurrences are replaced
+		 *
+		 * @param type        the id of the type in the DependencyTypeTable
+		 * @param occurrences An integer that represents the number of occurrences
+		 */
+		public void addDependency(int type, int occurrences) {
+
+			if (cells == 0) {
+				throw new IllegalStateException("A dependency was added before any cell");
+			}
+
+			byte typeId = (byte) type;
+
+			for (int value = valueOffsets[cells - 1]; value < values; value++) {
+				if (valueTypes[value] == typeId) {
+					log.warn("DependencyStore.addDependency: dependency already contains type = "
+							+ DependencyTypeTable.getName(type));
+					valueCounts[value] = occurrences;
+					return;
+				}
+			}
+
+			if (values == valueTypes.length) {
+				valueTypes = Arrays.copyOf(valueTypes, values * 2);
+				valueCounts = Arrays.copyOf(valueCounts, values * 2);
+			}
+
+			valueTypes[values] = typeId;
+			valueCounts[values] = occurrences;
+			values++;
+			valueOffsets[cells] = values;
+		}
+
+		/**
+		 * Set the co-changes of the current cell
+		 *
+		 * @param coChanges the number of co-changes
+		 */
+		public void setCoChanges(int coChanges) {
+
+			if (cells == 0) {
+				throw new IllegalStateException("Co-changes were set before any cell");
+			}
+
+			if (cellCoChanges == null) {
+				if (coChanges == 0) {
+					return;
+				}
+				cellCoChanges = new int[cellSources.length];
+			}
+
+			cellCoChanges[cells - 1] = coChanges;
+		}
+
+		/**
+		 * Create the store and attach every element to it
+		 *
+		 * @return the store
+		 */
+		public DependencyStore build() {
+
+			int[] cellOffsets = new int[elements.length + 1];
+
+			for (int cell = 0; cell < cells; cell++) {
+				cellOffsets[cellSources[cell] + 1]++;
+			}
+
+			for (int index = 0; index < elements.length; index++) {
+				cellOffsets[index + 1] += cellOffsets[index];
+			}
+
+			DependencyStore store;
+
+			if (sorted) {
+				store = new DependencyStore(elements, cellOffsets, Arrays.copyOf(cellTargets, cells),
+						Arrays.copyOf(valueOffsets, cells + 1), Arrays.copyOf(valueTypes, values),
+						Arrays.copyOf(valueCounts, values));
+
+				if (cellCoChanges != null) {
+					store.cellCoChanges = Arrays.copyOf(cellCoChanges, cells);
+				}
+			} else {
+				store = buildUnsorted(cellOffsets);
+			}
+
+			for (int index = 0; index < elements.length; index++) {
+				elements[index].setDependencyStore(store, index);
+			}
+
+			return store;
+		}
+
+		/**
+		 * Counting sort of the cells by source when they did not arrive in order
+		 *
+		 * @param cellOffsets the offsets of every source
+		 * @return the store
+		 */
+		private DependencyStore buildUnsorted(int[] cellOffsets) {
+
+			int[] nextCell = Arrays.copyOf(cellOffsets, elements.length);
+			int[] order = new int[cells];
+
+			for (int cell = 0; cell < cells; cell++) {
+				order[nextCell[cellSources[cell]]++] = cell;
+			}
+
+			int[] sortedTargets = new int[cells];
+			int[] sortedValueOffsets = new int[cells + 1];
+			byte[] sortedValueTypes = new byte[values];
+			int[] sortedValueCounts = new int[values];
+			int[] sortedCoChanges = cellCoChanges == null ? null : new int[cells];
+
+			int value = 0;
+
+			for (int cell = 0; cell < cells; cell++) {
+				int original = order[cell];
+				int length = valueOffsets[original + 1] - valueOffsets[original];
+
+				sortedTargets[cell] = cellTargets[original];
+				if (sortedCoChanges != null) {
+					sortedCoChanges[cell] = cellCoChanges[original];
+				}
+				System.arraycopy(valueTypes, valueOffsets[original], sortedValueTypes, value, length);
+				System.arraycopy(valueCounts, valueOffsets[original], sortedValueCounts, value, length);
+				value += length;
+				sortedValueOffsets[cell + 1] = value;
+			}
+
+			DependencyStore store = new DependencyStore(elements, cellOffsets, sortedTargets, sortedValueOffsets,
+					sortedValueTypes, sortedValueCounts);
+			store.cellCoChanges = sortedCoChanges;
+
+			return store;
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package mx.uam.archinaut.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table shared by all the matrices that gives every dependency type, such as
+ * Call or Import, an id that fits in a byte. Cells hold their occurrences
+ * indexed by these ids instead of maps keyed by the names of the types, and the
+ * name of a type is only hashed when it is interned or looked up from outside.
+ *
+ * Depends reports a few dozen types at most, so the table is limited to
+ * MAX_TYPES types. Types can be interned from several threads.
+ */
+public final class DependencyTypeTable {
+
+	// Value returned when a type has no id
+	public static final int NO_ID = -1;
+
+	// Ids are stored as unsigned bytes
+	public static final int MAX_TYPES = 256;
+
+	private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+	private static final String[] names = new String[MAX_TYPES];
+
+	private static volatile int size = 0;
+
+	private DependencyTypeTable() {
+	}
+
+	/**
+	 * Returns the id of a type, giving it the next id if it has none
+	 *
+	 * @param type the name of the dependency type
+	 * @return the id, between 0 and MAX_TYPES - 1
+	 * @throws IllegalStateException if the table is full
+	 */
+	public static int intern(String type) {
+
+		Integer id = ids.get(type);
+
+		if (id != null) {
+			return id;
+		}
+
+		synchronized (DependencyTypeTable.class) {
+
+			id = ids.get(type);
+
+			if (id == null) {
+
+				if (size == MAX_TYPES) {
+					throw new IllegalStateException(
+							"Dependency type " + type + " can't be added, there are already " + MAX_TYPES + " types");
+				}
+
+				names[size] = type;
+				id = size;
+				ids.put(type, id);
+				size++;
+			}
+
+			return id;
+		}
+	}
+
+	/**
+	 * Returns the id of a type without interning it
+	 *
+	 * @param type the name of the dependency type
+	 * @return the id, NO_ID if the type has not been interned
+	 */
+	public static int getId(String type) {
+
+		Integer id = ids.get(type);
+
+		return id == null ? NO_ID : id;
+	}
+
+	/**
+	 * Returns the name of the type that has an id
+	 *
+	 * @param id the id
+	 * @return the name of the type
+	 * @throws IndexOutOfBoundsException if no type has the id
+	 */
+	public static String getName(int id) {
+
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("No dependency type has id " + id);
+		}
+
+		return names[id];
+	}
+
+	/**
+	 * Returns the number of interned types, ids are smaller than this number
+	 *
+	 * @return
+	 */
+	public static int size() {
+		return size;
+	}
+
+}
@@ -2,7 +2,11 @@ package mx.uam.archinaut.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +30,9 @@ public class DesignStructureMatrix implements Serializable {
 	// The root group
 	private MatrixElementGroup root;
 
+	// Dependencies between the nodes of the tree, built when a model needs them
+	private DependencyRollup rollup;
+
 	// The element names
 	private List<MatrixElement> elements = new ArrayList<>();
 
@@ -35,8 +42,24 @@ public class DesignStructureMatrix implements Serializable {
 	// Dependency constraints
 	private ArrayList<DependencyConstraint> dependencyConstraints = new ArrayList<>();
 
-	// Map of full names to elements
-	private Map<String, MatrixElement> fullNameElementsMap = new HashMap<>();
+	// Dependency constraints by source and destination
+	private Map<MatrixElement, Map<MatrixElement, DependencyConstraint>> constraintsBySource = new IdentityHashMap<>();
+
+	// Rules between sets of elements, checked with the DependencyRulesService
+	private List<DependencyRule> dependencyRules = new ArrayList<>();
+
+	// Elements and groups of the matrix, and their positions in this list by the
+	// id of their full name in the ElementSymbolTable
+	private List<MatrixElement> elementsById;
+
+	private IdIndex positionsById;
+
+	// Index in the matrix of the elements by the id of their full name, groups
+	// and names that are not in the matrix have no index
+	private IdIndex indexesById;
+
+	// Metrics of the elements, the row of an element is its index in the matrix
+	private MetricStore metricStore;
 
 	// Map of full names to elements
 	private static Map<String, List<String>> renameMap = new HashMap<>();
@@ -80,8 +103,18 @@ public class DesignStructureMatrix implements Serializable {
 		this.fileName = fileName;
 		this.elements = elements;
 
-		for (MatrixElement m : elements) {
-			this.fullNameElementsMap.put(m.getFullName(), m);
+		this.metricStore = new MetricStore(elements.size());
+
+		// Both indexes are as large as this matrix, not as the symbol table
+		elementsById = new ArrayList<>(elements.size());
+		positionsById = new IdIndex(elements.size());
+		indexesById = new IdIndex(elements.size());
+
+		for (int i = 0; i < elements.size(); i++) {
+			MatrixElement m = elements.get(i);
+			putElementById(m);
+			indexesById.putIfAbsent(m.getId(), i);
+			m.setMetricStore(metricStore, metricStore.addRow());
 		}
 
 		if (elements.size() > 0) {
@@ -113,8 +146,46 @@ public class DesignStructureMatrix implements Serializable {
 		return fileName;
 	}
 
+	/**
+	 * Returns the names of the metrics of the elements, in the order in which they
+	 * were first added
+	 * 
+	 * @return
+	 */
 	public Set<String> getMetricNames() {
-		return elements.get(0).getMetrics().keySet();
+		return new LinkedHashSet<>(metricStore.getColumnNames());
+	}
+
+	/**
+	 * Returns the store with the metrics of the elements of the matrix
+	 * 
+	 * @return
+	 */
+	public MetricStore getMetricStore() {
+		return metricStore;
+	}
+
+	/**
+	 * Set a metric of every element, replacing the values the elements had. This
+	 * is for metrics that are calculated from the matrix, so they can be
+	 * calculated again without adding up
+	 *
+	 * @param metric the name of the metric
+	 * @param values the values, in the order of the indexes of the elements
+	 */
+	public void setMetricValues(String metric, int[] values) {
+
+		if (values.length != elements.size()) {
+			throw new IllegalArgumentException(
+					values.length + " values of " + metric + " for " + elements.size() + " elements");
+		}
+
+		int column = metricStore.addColumn(metric);
+
+		// The row of every element is its index
+		for (int i = 0; i < values.length; i++) {
+			metricStore.setValue(column, i, values[i]);
+		}
 	}
 
 	/**
@@ -139,10 +210,124 @@ public class DesignStructureMatrix implements Serializable {
 	/**
 	 * 
 	 * @param element
-	 * @return
+	 * @return the index of the element, -1 if it is not in the matrix
 	 */
 	public int getIndexOfElement(MatrixElement element) {
-		return elements.indexOf(element);
+
+		return indexesById.get(element.getId());
+	}
+
+	/**
+	 * Returns the dependencies from other elements of the matrix to an element.
+	 * They are found through the incoming dependencies of the element, so the cost
+	 * depends on the number of dependents and not on the size of the matrix
+	 * 
+	 * @param element an element of the matrix
+	 * @return the dependencies, empty if the element is not in the matrix
+	 */
+	public List<MatrixDependencyGroup> getIncomingDependencies(MatrixElement element) {
+
+		List<MatrixDependencyGroup> incoming = new ArrayList<>();
+
+		if (getIndexOfElement(element) == -1) {
+			return incoming;
+		}
+
+		for (MatrixDependencyGroup group : element.getIncomingDependencies()) {
+			if (group.getSource() != element && getIndexOfElement(group.getSource()) != -1) {
+				incoming.add(group);
+			}
+		}
+
+		return incoming;
+	}
+
+	/**
+	 * Calculate the fan-in of every element, that is the number of other elements
+	 * of the matrix that depend on it. Cells that only have co-changes are not
+	 * counted
+	 * 
+	 * @return the fan-in of the elements, in the order of their indexes
+	 */
+	public int[] calculateFanIn() {
+
+		int[] fanIn = new int[elements.size()];
+
+		for (int i = 0; i < elements.size(); i++) {
+			MatrixElement element = elements.get(i);
+			fanIn[i] = countNeighbors(element, element.getIncomingDependencies(), true);
+		}
+
+		return fanIn;
+	}
+
+	/**
+	 * Calculate the fan-out of every element, that is the number of other elements
+	 * of the matrix that it depends on. Cells that only have co-changes are not
+	 * counted
+	 * 
+	 * @return the fan-out of the elements, in the order of their indexes
+	 */
+	public int[] calculateFanOut() {
+
+		int[] fanOut = new int[elements.size()];
+
+		for (int i = 0; i < elements.size(); i++) {
+			MatrixElement element = elements.get(i);
+			fanOut[i] = countNeighbors(element, element.getDependencies(), false);
+		}
+
+		return fanOut;
+	}
+
+	/**
+	 * Create the graph of the dependencies between the elements of the matrix, the
+	 * nodes are the indexes of the elements. Cells that only have co-changes are
+	 * not edges, an element that depends on itself has an edge to itself
+	 *
+	 * @return the graph
+	 */
+	public DependencyGraph createDependencyGraph() {
+
+		DependencyGraph.Builder builder = new DependencyGraph.Builder(elements.size());
+
+		for (int i = 0; i < elements.size(); i++) {
+			for (MatrixDependencyGroup group : elements.get(i).getDependencies()) {
+
+				int destination = getIndexOfElement(group.getDestination());
+
+				if (destination != -1 && group.getTotalDependencies() > 0) {
+					builder.addEdge(i, destination);
+				}
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Count the groups with dependencies between an element and other elements of
+	 * the matrix
+	 * 
+	 * @param element  the element
+	 * @param groups   its incoming or outgoing dependencies
+	 * @param incoming true if the groups are incoming dependencies
+	 * @return
+	 */
+	private int countNeighbors(MatrixElement element, Iterable<MatrixDependencyGroup> groups, boolean incoming) {
+
+		int count = 0;
+
+		for (MatrixDependencyGroup group : groups) {
+
+			MatrixElement neighbor = incoming ? group.getSource() : group.getDestination();
+
+			if (neighbor != element && group.getTotalDependencies() > 0 && getIndexOfElement(neighbor) != -1) {
+				count++;
+			}
+		}
+
+		return count;
 	}
 
 	/**
@@ -160,6 +345,7 @@ public class DesignStructureMatrix implements Serializable {
 	 */
 	public void setRootGroup(MatrixElementGroup root) {
 		this.root = root;
+		this.rollup = null;
 
 		// This is done in two passes otherwise there is a problem with the
 		// lookup mechanism in
@@ -174,7 +360,7 @@ public class DesignStructureMatrix implements Serializable {
 	 */
 	private void populateMap(MatrixElement element) {
 
-		fullNameElementsMap.put(element.getFullName(), element);
+		putElementById(element);
 
 		if (element instanceof MatrixElementGroup) {
 			for (MatrixElement current : ((MatrixElementGroup) element).getChildren()) {
@@ -184,6 +370,54 @@ public class DesignStructureMatrix implements Serializable {
 
 	}
 
+	private void putElementById(MatrixElement element) {
+
+		int position = positionsById.get(element.getId());
+
+		if (position == -1) {
+			// The groups are added after the elements
+			positionsById.put(element.getId(), elementsById.size());
+			elementsById.add(element);
+		} else {
+			elementsById.set(position, element);
+		}
+	}
+
+	/**
+	 * Retrieve an element given the id of its full name
+	 * 
+	 * @param id the id in the ElementSymbolTable
+	 * @return the element, null if it is not in the matrix
+	 */
+	public MatrixElement getElementById(int id) {
+
+		int position = positionsById.get(id);
+
+		return position == -1 ? null : elementsById.get(position);
+	}
+
+	/**
+	 * Retrieve an element given the id of its full name, looking for it under its
+	 * alternative names if it is not in the matrix with that name
+	 * 
+	 * @param id the id in the ElementSymbolTable
+	 * @return the element, null if it is not in the matrix
+	 */
+	public MatrixElement findElement(int id) {
+
+		MatrixElement element = getElementById(id);
+
+		if (element == null && id != ElementSymbolTable.NO_ID) {
+			element = getElementByFullname(ElementSymbolTable.getName(id));
+		}
+
+		return element;
+	}
+
+	public boolean hasElementWithId(int id) {
+		return getElementById(id) != null;
+	}
+
 	public static void setRenameMap(Map<String, List<String>> newRenameMap) {
 		renameMap = newRenameMap;
 	}
@@ -196,9 +430,13 @@ public class DesignStructureMatrix implements Serializable {
 	 */
 	public MatrixElement getElementByFullname(String name) {
 
-		name = name.replaceFirst("src\\.", "");
+		int prefix = name.indexOf("src.");
+
+		if (prefix >= 0) {
+			name = name.substring(0, prefix) + name.substring(prefix + 4);
+		}
 
-		MatrixElement element = fullNameElementsMap.get(name);
+		MatrixElement element = getElementById(ElementSymbolTable.getId(name));
 
 		// If element is null, it may be a renamed element
 		if (element == null) {
@@ -212,7 +450,7 @@ public class DesignStructureMatrix implements Serializable {
 						+ ". Total number of renames:" + renameMap.size());
 
 				for (String candidateName : newNames) {
-					element = fullNameElementsMap.get(candidateName);
+					element = getElementById(ElementSymbolTable.getId(candidateName));
 					if (element != null) {
 						return element;
 					}
@@ -235,7 +473,7 @@ public class DesignStructureMatrix implements Serializable {
 	 * @return
 	 */
 	public ElementStatus getElementStatus(String name) {
-		MatrixElement element = fullNameElementsMap.get(name);
+		MatrixElement element = getElementById(ElementSymbolTable.getId(name));
 		if (element == null) {
 			element = getElementByFullname(name);
 			if (element != null) {
@@ -255,6 +493,21 @@ public class DesignStructureMatrix implements Serializable {
 		return root;
 	}
 
+	/**
+	 * Returns the dependencies between the nodes of the tree, aggregated the first
+	 * time they are requested after the tree or the co-changes change
+	 * 
+	 * @return the rollup, null if the matrix has no tree
+	 */
+	public DependencyRollup getDependencyRollup() {
+
+		if (rollup == null && root != null) {
+			rollup = new DependencyRollup(root);
+		}
+
+		return rollup;
+	}
+
 	/**
 	 * Add a new constraint
 	 * 
@@ -263,6 +516,8 @@ public class DesignStructureMatrix implements Serializable {
 	 */
 	public boolean addDependencyConstraint(DependencyConstraint constraint) {
 		log.info("Added dependency constrant " + constraint);
+		constraintsBySource.computeIfAbsent(constraint.getSource(), source -> new IdentityHashMap<>())
+				.putIfAbsent(constraint.getDestination(), constraint);
 		return dependencyConstraints.add(constraint);
 	}
 
@@ -273,7 +528,28 @@ public class DesignStructureMatrix implements Serializable {
 	 * @return true if removed successfully
 	 */
 	public boolean removeDependencyConstraint(DependencyConstraint constraint) {
-		return dependencyConstraints.remove(constraint);
+
+		if (!dependencyConstraints.remove(constraint)) {
+			return false;
+		}
+
+		Map<MatrixElement, DependencyConstraint> destinations = constraintsBySource.get(constraint.getSource());
+
+		// Another constraint between the same elements takes its place
+		if (destinations != null && destinations.get(constraint.getDestination()) == constraint) {
+
+			destinations.remove(constraint.getDestination());
+
+			for (DependencyConstraint other : dependencyConstraints) {
+				if (other.getSource() == constraint.getSource()
+						&& other.getDestination() == constraint.getDestination()) {
+					destinations.put(other.getDestination(), other);
+					break;
+				}
+			}
+		}
+
+		return true;
 	}
 
 	/**
@@ -303,12 +579,10 @@ public class DesignStructureMatrix implements Serializable {
 	 * @return
 	 */
 	public DependencyConstraint findDependencyConstraint(MatrixElement source, MatrixElement destination) {
-		for (DependencyConstraint constraint : dependencyConstraints) {
-			if (constraint.getSource() == source && constraint.getDestination() == destination) {
-				return constraint;
-			}
-		}
-		return null;
+
+		Map<MatrixElement, DependencyConstraint> destinations = constraintsBySource.get(source);
+
+		return destinations == null ? null : destinations.get(destination);
 	}
 
 	/**
@@ -320,6 +594,25 @@ public class DesignStructureMatrix implements Serializable {
 		return dependencyConstraints;
 	}
 
+	/**
+	 * Add a rule between sets of elements
+	 * 
+	 * @param rule
+	 * @return true if added successfully
+	 */
+	public boolean addDependencyRule(DependencyRule rule) {
+		return dependencyRules.add(rule);
+	}
+
+	/**
+	 * Get the dependency rules, in the order they were added
+	 * 
+	 * @return
+	 */
+	public List<DependencyRule> getDependencyRules() {
+		return Collections.unmodifiableList(dependencyRules);
+	}
+
 	/**
 	 * Get the element constraints as an iterable
 	 * 
@@ -337,12 +630,185 @@ public class DesignStructureMatrix implements Serializable {
 	 * @return
 	 */
 	public int getTotalForMetric(ElementMetric type) {
+		return (int) metricStore.getTotal(metricStore.getColumn(type.getName()));
+	}
+
+	/**
+	 * Add the co-changes of a table to the cells of the matrix. Co-changes are not
+	 * directed, so a cell receives the co-changes of its pair in either order. A
+	 * pair of elements of the matrix without a cell gets a new cell that only has
+	 * co-changes. Every cell is looked up once in the table and every pair is
+	 * visited once, so the join is linear in the cells and the pairs
+	 * 
+	 * @param table the co-changes
+	 * @return the number of cells that received co-changes
+	 */
+	public int addCoChanges(CoChangeTable table) {
 
-		int total = 0;
-		for (MatrixElement element : this.getElements()) {
-			total += element.getMetricValue(type);
+		int pairsCount = table.getPairsCount();
+
+		// Pairs that were found in a cell in their order and in the reverse order
+		boolean[] forward = new boolean[pairsCount];
+		boolean[] backward = new boolean[pairsCount];
+
+		// The element of every name of the table, and the id in the table of every
+		// element of the matrix, the names are looked up without interning them
+		MatrixElement[] tableElements = new MatrixElement[table.getNamesCount()];
+		int[] tableIds = new int[elements.size()];
+		Arrays.fill(tableIds, -1);
+
+		for (int id = 0; id < tableElements.length; id++) {
+
+			tableElements[id] = getElementById(ElementSymbolTable.getId(table.getName(id)));
+
+			int index = tableElements[id] == null ? -1 : getIndexOfElement(tableElements[id]);
+
+			if (index != -1) {
+				tableIds[index] = id;
+			}
+		}
+
+		int attached = 0;
+		int maximum = getMaximumDependencyValue(DependencyMetric.COCHANGES);
+
+		for (int i = 0; i < elements.size(); i++) {
+
+			int sourceId = tableIds[i];
+
+			if (sourceId == -1) {
+				continue;
+			}
+
+			for (MatrixDependencyGroup group : elements.get(i).getDependencies()) {
+
+				int destination = getIndexOfElement(group.getDestination());
+				int destinationId = destination == -1 ? -1 : tableIds[destination];
+				int pair = table.findPair(sourceId, destinationId);
+
+				if (pair >= 0) {
+					forward[pair] = true;
+				} else {
+					pair = table.findPair(destinationId, sourceId);
+					if (pair >= 0) {
+						backward[pair] = true;
+					}
+				}
+
+				if (pair >= 0) {
+					group.setCoChanges(group.getCoChanges() + table.getCoChanges(pair));
+					maximum = Math.max(maximum, group.getCoChanges());
+					attached++;
+				}
+			}
+		}
+
+		int created = 0;
+
+		// The cells that only have co-changes are added to the dependency store in one
+		// rebuild, instead of copying the cells of their sources out of it
+		DependencyStore store = getSharedDependencyStore();
+		Map<Long, Integer> coChangeCells = new HashMap<>();
+
+		for (int pair = 0; pair < pairsCount; pair++) {
+
+			int elementId = table.getElementId(pair);
+			int coupledId = table.getCoupledId(pair);
+
+			MatrixElement element = tableElements[elementId];
+			MatrixElement coupled = tableElements[coupledId];
+
+			if (element == null || coupled == null || element == coupled || element.isGroup() || coupled.isGroup()) {
+				continue;
+			}
+
+			int coChanges = table.getCoChanges(pair);
+
+			if (!forward[pair]) {
+				addCoChangeCell(store, coChangeCells, element, coupled, coChanges);
+				maximum = Math.max(maximum, coChanges);
+				created++;
+			}
+
+			// If the reverse pair is in the table, it creates its own cell
+			if (!backward[pair] && table.findPair(coupledId, elementId) < 0) {
+				addCoChangeCell(store, coChangeCells, coupled, element, coChanges);
+				maximum = Math.max(maximum, coChanges);
+				created++;
+			}
+		}
+
+		if (!coChangeCells.isEmpty()) {
+			store.addCoChangeCells(coChangeCells);
+		}
+
+		setMaximumDependencyValue(DependencyMetric.COCHANGES, maximum);
+
+		// The rollup has the co-changes it was built with
+		rollup = null;
+
+		log.info("Added co-changes from {} to {} cells and created {} co-change cells", table.getSource(), attached,
+				created);
+
+		return attached + created;
+	}
+
+	private void addCoChangeCell(DependencyStore store, Map<Long, Integer> coChangeCells, MatrixElement source,
+			MatrixElement destination, int coChanges) {
+
+		if (store != null) {
+			coChangeCells.put(((long) source.getDependencyStoreIndex() << 32) | destination.getDependencyStoreIndex(),
+					coChanges);
+			return;
+		}
+
+		MatrixDependencyGroup group = new MatrixDependencyGroup(source, destination);
+		group.setCoChanges(coChanges);
+		source.addDependency(group);
+	}
+
+	/**
+	 * Returns the dependency store that holds the dependencies of every element of
+	 * the matrix, null if there is none or if some were modified outside of it
+	 *
+	 * @return
+	 */
+	private DependencyStore getSharedDependencyStore() {
+
+		if (elements.isEmpty()) {
+			return null;
+		}
+
+		DependencyStore store = elements.get(0).getDependencyStore();
+
+		if (store == null || !store.isHeldByElements()) {
+			return null;
+		}
+
+		for (MatrixElement element : elements) {
+			if (element.getDependencyStore() != store) {
+				return null;
+			}
+		}
+
+		return store;
+	}
+
+	/**
+	 * Set the maximum and minimum element values of every metric to the largest and
+	 * smallest values of the elements
+	 */
+	public void updateElementValueRanges() {
+
+		for (int column = 0; column < metricStore.getColumnsCount(); column++) {
+
+			Integer maximum = metricStore.getMaximum(column);
+			Integer minimum = metricStore.getMinimum(column);
+
+			if (maximum != null) {
+				maximumElementValues.put(metricStore.getColumnName(column), maximum);
+				minimumElementValues.put(metricStore.getColumnName(column), minimum);
+			}
 		}
-		return total;
 	}
 
 	public boolean setMaximumDependencyValue(DependencyMetric type, int value) {
@@ -372,6 +838,24 @@ public class DesignStructureMatrix implements Serializable {
 		return minimumElementValues.get(type.getName());
 	}
 
+	/**
+	 * Returns the maximum values of the element metrics by metric name
+	 * 
+	 * @return an unmodifiable map
+	 */
+	public Map<String, Integer> getMaximumElementValues() {
+		return Collections.unmodifiableMap(maximumElementValues);
+	}
+
+	/**
+	 * Returns the minimum values of the element metrics by metric name
+	 * 
+	 * @return an unmodifiable map
+	 */
+	public Map<String, Integer> getMinimumElementValues() {
+		return Collections.unmodifiableMap(minimumElementValues);
+	}
+
 	public ArchitecturalDiff getDiff() {
 		return diff;
 	}
@@ -423,7 +907,7 @@ public class DesignStructureMatrix implements Serializable {
 	}
 
 	public boolean hasElementWithName(String name) {
-		return fullNameElementsMap.containsKey(name);
+		return hasElementWithId(ElementSymbolTable.getId(name));
 	}
 
 }
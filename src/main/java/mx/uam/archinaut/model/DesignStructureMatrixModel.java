@@ -1,7 +1,11 @@
 package mx.uam.archinaut.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +16,21 @@ import org.slf4j.LoggerFactory;
  * the DSM. Some of the elements can be groups or they can be the actual
  * elements of the DSM
  * 
+ * The model is sparse: every row only keeps its non-empty cells, sorted by
+ * column, and the positions without dependencies or co-changes are the shared
+ * MatrixDependencyGroup.EMPTY cell. Constraints are kept apart, only for the
+ * positions that have one.
+ * 
+ * The non-empty cells are also indexed by column, so the dependents of an
+ * element are found without going through every row.
+ * 
+ * The rows of the groups of the tree of the matrix are assembled from the
+ * DependencyRollup of the matrix, so they don't go through the cells of the
+ * elements of the groups.
+ * 
+ * Every element is looked up by identity in an index built with the model, so
+ * finding the row of an element does not scan the list of elements.
+ * 
  * @author humbertocervantes
  *
  */
@@ -26,11 +45,23 @@ public class DesignStructureMatrixModel {
 	// The elements of this representation
 	private List<MatrixElement> elements;
 
-	// The cells of the matrix
-	private MatrixDependencyGroup[][] dependencies;
+	// The row of every element of this representation, by identity
+	private Map<MatrixElement, Integer> indexes;
+
+	// The columns of the non-empty cells of every row, in ascending order
+	private int[][] cellColumns;
 
-	// The cells of the matrix
-	private DependencyConstraint[][] constraints;
+	// The non-empty cells of every row, in the order of their columns
+	private MatrixDependencyGroup[][] cells;
+
+	// The rows of the non-empty cells of every column, in ascending order
+	private int[][] incomingRows;
+
+	// The non-empty cells of every column, in the order of their rows
+	private MatrixDependencyGroup[][] incomingCells;
+
+	// The constraints of the positions that have one, keyed by position
+	private Map<Long, DependencyConstraint> constraints;
 
 	// Maximum number of dependencies in a cell
 	private int maximumDependencies = 0;
@@ -48,6 +79,11 @@ public class DesignStructureMatrixModel {
 	public DesignStructureMatrixModel(DesignStructureMatrix source, List<MatrixElement> elements) {
 		this.matrix = source;
 		this.elements = elements;
+		this.indexes = new IdentityHashMap<>(elements.size() * 2);
+
+		for (int i = 0; i < elements.size(); i++) {
+			indexes.putIfAbsent(elements.get(i), i);
+		}
 
 		recalculateDependencies();
 	}
@@ -77,13 +113,37 @@ public class DesignStructureMatrixModel {
 	 * 
 	 * @param row    the row of the cell (starts with 0)
 	 * @param column the column of the cell (starts with 0)
-	 * @return a DesignStructureMatrixCell
+	 * @return a DesignStructureMatrixCell, MatrixDependencyGroup.EMPTY if there
+	 *         are no dependencies or co-changes between the elements
 	 */
 	public MatrixDependencyGroup getDependencyGroup(int row, int column) {
-		if (dependencies == null) {
+		if (cells == null) {
 			return null;
 		}
-		return dependencies[row][column];
+
+		int position = Arrays.binarySearch(cellColumns[row], column);
+
+		return position >= 0 ? cells[row][position] : MatrixDependencyGroup.EMPTY;
+	}
+
+	/**
+	 * Returns the non-empty cells of a row, in the order of their columns
+	 * 
+	 * @param row the row (starts with 0)
+	 * @return the cells, which must not be modified
+	 */
+	public MatrixDependencyGroup[] getNonEmptyDependencyGroups(int row) {
+		return cells[row];
+	}
+
+	/**
+	 * Returns the columns of the non-empty cells of a row
+	 * 
+	 * @param row the row (starts with 0)
+	 * @return the columns in ascending order, which must not be modified
+	 */
+	public int[] getNonEmptyColumns(int row) {
+		return cellColumns[row];
 	}
 
 	/**
@@ -92,21 +152,49 @@ public class DesignStructureMatrixModel {
 	 */
 	private void recalculateDependencies() {
 
-		dependencies = new MatrixDependencyGroup[elements.size()][elements.size()];
+		cellColumns = new int[elements.size()][];
+		cells = new MatrixDependencyGroup[elements.size()][];
+
+		// The dependencies of the groups of the tree are assembled from its rollups
+		DependencyRollup.Cut cut = null;
 
 		int row = 0;
 
 		// The calculation is made for the elements that are present in the model
 		for (MatrixElement e : elements) {
 
-			// Get the dependencies for the element. The dependencies that are returned
-			// are part of this matrix
-			List<MatrixDependencyGroup> elementDependencies = MatrixDependencyGroup.getDependencies(e, elements);
+			List<MatrixDependencyGroup> elementDependencies;
+
+			if (e instanceof MatrixElementGroup && matrix.getDependencyRollup() != null
+					&& matrix.getDependencyRollup().contains(e)) {
+
+				if (cut == null) {
+					cut = matrix.getDependencyRollup().getCut(indexes.keySet());
+				}
+
+				elementDependencies = cut.getDependencies(e);
+
+			} else {
+
+				// Get the dependencies for the element. The dependencies that are returned
+				// are part of this matrix
+				elementDependencies = MatrixDependencyGroup.getDependencies(e, indexes.keySet());
+			}
+
+			long[] sortKeys = new long[elementDependencies.size()];
+			int count = 0;
 
-			for (MatrixDependencyGroup dependencyGroup : elementDependencies) {
+			for (int i = 0; i < elementDependencies.size(); i++) {
 
-				int column = elements.indexOf(dependencyGroup.getDestination());
-				dependencies[row][column] = dependencyGroup;
+				MatrixDependencyGroup dependencyGroup = elementDependencies.get(i);
+				int column = indexOf(dependencyGroup.getDestination());
+
+				if (column == -1) {
+					continue;
+				}
+
+				// The column in the high bits and the position in the list in the low bits
+				sortKeys[count++] = ((long) column << 32) | i;
 
 				// Update the maximum number of dependencies
 				if (dependencyGroup.getTotalDependencies() > maximumDependencies) {
@@ -120,21 +208,55 @@ public class DesignStructureMatrixModel {
 
 			}
 
-			// After having filled the rows and columns with dependencies that have a
-			// content,
-			// we now fill the other cells with empty dependency groups. They are necessary
-			// to add constraints.
-			for (int column = 0; column < elements.size(); column++) {
-				if (dependencies[row][column] == null) {
-					MatrixDependencyGroup dependencyGroup = new MatrixDependencyGroup(e, elements.get(column));
-					dependencies[row][column] = dependencyGroup;
+			// Only the cells with content are kept, sorted by column
+			Arrays.sort(sortKeys, 0, count);
 
-				}
+			cellColumns[row] = new int[count];
+			cells[row] = new MatrixDependencyGroup[count];
+
+			for (int i = 0; i < count; i++) {
+				cellColumns[row][i] = (int) (sortKeys[i] >>> 32);
+				cells[row][i] = elementDependencies.get((int) sortKeys[i]);
 			}
 
 			row++;
 		}
 
+		recalculateIncomingCells();
+	}
+
+	/**
+	 * Index the non-empty cells by column. The rows are visited in order, so the
+	 * cells of every column are sorted by row
+	 * 
+	 */
+	private void recalculateIncomingCells() {
+
+		int[] columnSizes = new int[elements.size()];
+
+		for (int[] columns : cellColumns) {
+			for (int column : columns) {
+				columnSizes[column]++;
+			}
+		}
+
+		incomingRows = new int[elements.size()][];
+		incomingCells = new MatrixDependencyGroup[elements.size()][];
+
+		for (int column = 0; column < elements.size(); column++) {
+			incomingRows[column] = new int[columnSizes[column]];
+			incomingCells[column] = new MatrixDependencyGroup[columnSizes[column]];
+			columnSizes[column] = 0;
+		}
+
+		for (int row = 0; row < elements.size(); row++) {
+			for (int i = 0; i < cellColumns[row].length; i++) {
+				int column = cellColumns[row][i];
+				incomingRows[column][columnSizes[column]] = row;
+				incomingCells[column][columnSizes[column]] = cells[row][i];
+				columnSizes[column]++;
+			}
+		}
 	}
 
 	/**
@@ -149,7 +271,22 @@ public class DesignStructureMatrixModel {
 			return null;
 		}
 
-		return constraints[row][column];
+		return constraints.get(position(row, column));
+	}
+
+	/**
+	 * Returns the row of an element of this model
+	 * 
+	 * @param element the element
+	 * @return the row, -1 if the element is not in the model
+	 */
+	private int indexOf(MatrixElement element) {
+		Integer index = indexes.get(element);
+		return index == null ? -1 : index;
+	}
+
+	private static long position(int row, int column) {
+		return ((long) row << 32) | column;
 	}
 
 	/**
@@ -159,7 +296,7 @@ public class DesignStructureMatrixModel {
 	 */
 	public void recalculateDependencyConstraints() {
 
-		constraints = new DependencyConstraint[elements.size()][elements.size()];
+		constraints = new HashMap<>();
 
 		for (DependencyConstraint constraint : matrix.getDependencyConstraints()) {
 			// We transform the source and destination elements of the constraint into
@@ -170,10 +307,10 @@ public class DesignStructureMatrixModel {
 			// We now add to the constraints array pointers to the constraint
 			// in the positions associated with the elements
 			for (MatrixElement sourceElement : sourceElements) {
-				int sourceElementIndex = elements.indexOf(sourceElement);
+				int sourceElementIndex = indexOf(sourceElement);
 				for (MatrixElement destinationElement : destinationElements) {
-					int destinationElementIndex = elements.indexOf(destinationElement);
-					constraints[sourceElementIndex][destinationElementIndex] = constraint;
+					int destinationElementIndex = indexOf(destinationElement);
+					constraints.put(position(sourceElementIndex, destinationElementIndex), constraint);
 				}
 			}
 		}
@@ -192,7 +329,7 @@ public class DesignStructureMatrixModel {
 		ArrayList<MatrixElement> results = new ArrayList<>();
 
 		// If the element is in the model we return it directly
-		if (elements.contains(element)) {
+		if (indexes.containsKey(element)) {
 			results.add(element);
 		} else {
 			// We first look into the parent elements as this is quicker
@@ -226,19 +363,19 @@ public class DesignStructureMatrixModel {
 		int initialIndex = 0;
 		int finalIndex = 0;
 
-		if (elements.contains(element)) {
-			initialIndex = elements.indexOf(element);
+		if (indexes.containsKey(element)) {
+			initialIndex = indexOf(element);
 			finalIndex = initialIndex;
 		} else {
 			List<MatrixElement> elementList = getAsElementsInTheModel(element);
 
 			if (!elementList.isEmpty()) {
-				initialIndex = elements.indexOf(elementList.get(0));
+				initialIndex = indexOf(elementList.get(0));
 				finalIndex = initialIndex;
 				if (elementList.size() > 1) {
 					for (int i = 1; i < elementList.size(); i++) {
 						MatrixElement currentElement = elementList.get(i);
-						int currentIndex = elements.indexOf(currentElement);
+						int currentIndex = indexOf(currentElement);
 						if (currentIndex < initialIndex)
 							initialIndex = currentIndex;
 						if (currentIndex > finalIndex)
@@ -262,7 +399,7 @@ public class DesignStructureMatrixModel {
 	private void findSubelements(ArrayList<MatrixElement> results, MatrixElement parent) {
 		if (parent instanceof MatrixElementGroup) {
 			for (MatrixElement element : ((MatrixElementGroup) parent).getChildren()) {
-				if (elements.contains(element)) {
+				if (indexes.containsKey(element)) {
 					results.add(element);
 				} else {
 					findSubelements(results, element);
@@ -287,7 +424,7 @@ public class DesignStructureMatrixModel {
 		if (element != null) {
 			MatrixElement parent = element.getGroup();
 			while (parent != null) {
-				if (elements.contains(parent)) {
+				if (indexes.containsKey(parent)) {
 					return parent;
 				}
 				parent = parent.getGroup();
@@ -304,7 +441,7 @@ public class DesignStructureMatrixModel {
 	 * @return
 	 */
 	public boolean containsElement(MatrixElement element) {
-		return elements.contains(element);
+		return indexes.containsKey(element);
 	}
 
 	/**
@@ -314,7 +451,7 @@ public class DesignStructureMatrixModel {
 	 * @return
 	 */
 	public int getIndexOfElement(MatrixElement element) {
-		return elements.indexOf(element);
+		return indexOf(element);
 	}
 
 	/**
@@ -368,17 +505,18 @@ public class DesignStructureMatrixModel {
 		ArrayList<MatrixElement> dependents = new ArrayList<>();
 
 		// Right now this only works for visible components
-		if (!elements.contains(element)) {
+		if (!indexes.containsKey(element)) {
 			logger.warn("DesignStructureMatrixModel.getListOfDependents: element not found " + element + " elements:"
 					+ elements);
 		} else {
 
-			int indexOfElement = elements.indexOf(element);
+			int indexOfElement = indexOf(element);
 
-			for (int row = 0; row < elements.size(); row++) {
-				MatrixDependencyGroup group = getDependencyGroup(row, indexOfElement);
+			// Only the non-empty cells of the column can have dependencies
+			for (int i = 0; i < incomingCells[indexOfElement].length; i++) {
+				MatrixDependencyGroup group = incomingCells[indexOfElement][i];
 				// Dependencies to itself are not counted
-				if (row != indexOfElement && group.getTotalDependencies() > 0) {
+				if (incomingRows[indexOfElement][i] != indexOfElement && group.getTotalDependencies() > 0) {
 					dependents.add(group.getSource());
 				}
 			}
@@ -409,20 +547,20 @@ public class DesignStructureMatrixModel {
 	 */
 	public int calculateIncomingDependencies(MatrixElement element) {
 		// Right now this only works for visible components
-		if (!elements.contains(element)) {
+		if (!indexes.containsKey(element)) {
 			logger.warn("DesignStructureMatrixModel.getIncomingDependencies: element not found " + element
 					+ " elements:" + elements);
 			return 0;
 		}
 
-		int indexOfElement = elements.indexOf(element);
+		int indexOfElement = indexOf(element);
 		int totalIncomingDependencies = 0;
 
-		for (int i = 0; i < elements.size(); i++) {
-			MatrixDependencyGroup group = getDependencyGroup(i, indexOfElement);
+		for (int i = 0; i < incomingCells[indexOfElement].length; i++) {
 			// Dependencies to itself are not counted
-			if (i != indexOfElement) {
-				totalIncomingDependencies = totalIncomingDependencies + group.getTotalDependencies();
+			if (incomingRows[indexOfElement][i] != indexOfElement) {
+				totalIncomingDependencies = totalIncomingDependencies
+						+ incomingCells[indexOfElement][i].getTotalDependencies();
 			}
 		}
 
@@ -441,16 +579,17 @@ public class DesignStructureMatrixModel {
 		ArrayList<MatrixElement> dependees = new ArrayList<>();
 
 		// Right now this only works for visible components
-		if (!elements.contains(element)) {
+		if (!indexes.containsKey(element)) {
 			logger.warn("DesignStructureMatrixModel.getListOfDependendees: element not found " + element + " elements:"
 					+ elements);
 		} else {
-			int indexOfElement = elements.indexOf(element);
+			int indexOfElement = indexOf(element);
 
-			for (int column = 0; column < elements.size(); column++) {
-				MatrixDependencyGroup group = getDependencyGroup(indexOfElement, column);
+			// Only the non-empty cells of the row can have dependencies
+			for (int i = 0; i < cells[indexOfElement].length; i++) {
+				MatrixDependencyGroup group = cells[indexOfElement][i];
 				// Dependencies to itself are not counted
-				if (column != indexOfElement && group.getTotalDependencies() > 0) {
+				if (cellColumns[indexOfElement][i] != indexOfElement && group.getTotalDependencies() > 0) {
 					dependees.add(group.getDestination());
 				}
 			}
@@ -483,18 +622,17 @@ public class DesignStructureMatrixModel {
 	 */
 	public int calculateOutgoingDependencies(MatrixElement element) {
 		// Right now this only works for visible components
-		if (!elements.contains(element)) {
+		if (!indexes.containsKey(element)) {
 			return 0;
 		}
 
-		int indexOfElement = elements.indexOf(element);
+		int indexOfElement = indexOf(element);
 		int totalOutgoingDependencies = 0;
 
-		for (int i = 0; i < elements.size(); i++) {
-			MatrixDependencyGroup group = getDependencyGroup(indexOfElement, i);
+		for (int i = 0; i < cells[indexOfElement].length; i++) {
 			// Dependencies to itself are not counted
-			if (i != indexOfElement) {
-				totalOutgoingDependencies = totalOutgoingDependencies + group.getTotalDependencies();
+			if (cellColumns[indexOfElement][i] != indexOfElement) {
+				totalOutgoingDependencies = totalOutgoingDependencies + cells[indexOfElement][i].getTotalDependencies();
 			}
 		}
 
@@ -512,12 +650,16 @@ public class DesignStructureMatrixModel {
 
 		List<MatrixElement> partners = new ArrayList<>();
 
-		int indexOfElement = elements.indexOf(element);
+		int indexOfElement = indexOf(element);
 
-		for (int i = 0; i < elements.size(); i++) {
-			MatrixDependencyGroup group = getDependencyGroup(indexOfElement, i);
+		if (indexOfElement == -1) {
+			return partners;
+		}
+
+		for (int i = 0; i < cells[indexOfElement].length; i++) {
+			MatrixDependencyGroup group = cells[indexOfElement][i];
 			// Dependencies to itself are not counted
-			if (i != indexOfElement && group.getCoChanges() > 0) {
+			if (cellColumns[indexOfElement][i] != indexOfElement && group.getCoChanges() > 0) {
 				partners.add(group.getDestination());
 			}
 		}
@@ -545,18 +687,17 @@ public class DesignStructureMatrixModel {
 	 */
 	public int calculateCoChangeDependencies(MatrixElement element) {
 		// Right now this only works for visible components
-		if (!elements.contains(element)) {
+		if (!indexes.containsKey(element)) {
 			return 0;
 		}
 
-		int indexOfElement = elements.indexOf(element);
+		int indexOfElement = indexOf(element);
 		int totalCoChangeDependencies = 0;
 
-		for (int i = 0; i < elements.size(); i++) {
-			MatrixDependencyGroup group = getDependencyGroup(indexOfElement, i);
+		for (int i = 0; i < cells[indexOfElement].length; i++) {
 			// Dependencies to itself are not counted
-			if (i != indexOfElement) {
-				totalCoChangeDependencies = totalCoChangeDependencies + group.getCoChanges();
+			if (cellColumns[indexOfElement][i] != indexOfElement) {
+				totalCoChangeDependencies = totalCoChangeDependencies + cells[indexOfElement][i].getCoChanges();
 			}
 		}
 
@@ -0,0 +1,113 @@
+package mx.uam.archinaut.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table shared by all the matrices that gives every element full name a dense
+ * integer id. The id of a name never changes, so matrices, diffs and trends can
+ * be keyed by it and the name is only hashed when it is interned or looked up
+ * from outside.
+ *
+ * The table is never cleared, so only the names of elements are interned. Names
+ * that come from outside, such as the rows of a metrics file or a name that is
+ * queried, are looked up with getId, and arrays keyed by id are sized by the
+ * ids they hold and not by the size of the table.
+ *
+ * Names can be interned from several threads, as sources are loaded in
+ * parallel.
+ */
+public final class ElementSymbolTable {
+
+	// Value returned when a name has no id
+	public static final int NO_ID = -1;
+
+	private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+	// Names indexed by id, replaced by a bigger copy when it is full
+	private static volatile String[] names = new String[1024];
+
+	private static int size = 0;
+
+	private ElementSymbolTable() {
+	}
+
+	/**
+	 * Returns the id of a name, giving it the next id if it has none
+	 *
+	 * @param name the full name of an element
+	 * @return the id
+	 */
+	public static int intern(String name) {
+
+		Integer id = ids.get(name);
+
+		if (id != null) {
+			return id;
+		}
+
+		synchronized (ElementSymbolTable.class) {
+
+			id = ids.get(name);
+
+			if (id == null) {
+
+				String[] current = names;
+
+				if (size == current.length) {
+					current = Arrays.copyOf(current, current.length * 2);
+				}
+
+				current[size] = name;
+				names = current;
+
+				id = size++;
+				ids.put(name, id);
+			}
+
+			return id;
+		}
+	}
+
+	/**
+	 * Returns the id of a name without interning it
+	 *
+	 * @param name the full name of an element
+	 * @return the id, NO_ID if the name has not been interned
+	 */
+	public static int getId(String name) {
+
+		Integer id = ids.get(name);
+
+		return id == null ? NO_ID : id;
+	}
+
+	/**
+	 * Returns the name that has an id
+	 *
+	 * @param id the id
+	 * @return the full name
+	 * @throws IndexOutOfBoundsException if no name has the id
+	 */
+	public static String getName(int id) {
+
+		String[] current = names;
+
+		if (id < 0 || id >= current.length || current[id] == null) {
+			throw new IndexOutOfBoundsException("No element name has id " + id);
+		}
+
+		return current[id];
+	}
+
+	/**
+	 * Returns the number of interned names, ids are smaller than this number
+	 *
+	 * @return
+	 */
+	public static int size() {
+		return ids.size();
+	}
+
+}
@@ -0,0 +1,156 @@
+package mx.uam.archinaut.model;
+
+import java.util.Arrays;
+
+/**
+ * Maps the ids of full names in the ElementSymbolTable to positions in one
+ * matrix or analysis. The ids are global to the run, so an array indexed by
+ * them would be as large as every name interned so far; the ids are instead
+ * kept in an open addressing hash of primitives, which is as large as the
+ * number of ids that were put in it.
+ */
+class IdIndex {
+
+	private static final int FREE = -1;
+
+	// Id in every slot, FREE if the slot is free
+	private int[] ids;
+
+	// Position of the id in every slot
+	private int[] positions;
+
+	private int size = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param expectedSize the number of ids that are expected to be put
+	 */
+	IdIndex(int expectedSize) {
+
+		int capacity = 16;
+
+		while (capacity < expectedSize * 2) {
+			capacity *= 2;
+		}
+
+		ids = new int[capacity];
+		positions = new int[capacity];
+		Arrays.fill(ids, FREE);
+	}
+
+	/**
+	 * Returns the position of an id
+	 *
+	 * @param id the id in the ElementSymbolTable
+	 * @return the position, -1 if the id was not put
+	 */
+	int get(int id) {
+
+		if (id < 0) {
+			return -1;
+		}
+
+		int slot = findSlot(id);
+
+		return ids[slot] == FREE ? -1 : positions[slot];
+	}
+
+	/**
+	 * Sets the position of an id, replacing the one it had
+	 *
+	 * @param id       the id in the ElementSymbolTable
+	 * @param position the position
+	 * @return the position the id had, -1 if it had none
+	 */
+	int put(int id, int position) {
+
+		int slot = findSlot(id);
+
+		if (ids[slot] != FREE) {
+			int previous = positions[slot];
+			positions[slot] = position;
+			return previous;
+		}
+
+		ids[slot] = id;
+		positions[slot] = position;
+		size++;
+
+		// Keep the hash at most half full
+		if (size * 2 > ids.length) {
+			rehash();
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Sets the position of an id only if it has none
+	 *
+	 * @param id       the id in the ElementSymbolTable
+	 * @param position the position
+	 * @return the position of the id after the call
+	 */
+	int putIfAbsent(int id, int position) {
+
+		int current = get(id);
+
+		if (current != -1) {
+			return current;
+		}
+
+		put(id, position);
+
+		return position;
+	}
+
+	/**
+	 * Returns the number of ids that were put
+	 *
+	 * @return
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the slot of an id, or the free slot where it would go
+	 */
+	private int findSlot(int id) {
+
+		int mask = ids.length - 1;
+		int slot = hash(id) & mask;
+
+		while (ids[slot] != FREE && ids[slot] != id) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	private static int hash(int id) {
+		int mixed = id * 0x9E3779B9;
+		return mixed ^ (mixed >>> 16);
+	}
+
+	private void rehash() {
+
+		int[] oldIds = ids;
+		int[] oldPositions = positions;
+
+		ids = new int[oldIds.length * 2];
+		positions = new int[oldIds.length * 2];
+		Arrays.fill(ids, FREE);
+
+		for (int slot = 0; slot < oldIds.length; slot++) {
+
+			if (oldIds[slot] != FREE) {
+				int newSlot = findSlot(oldIds[slot]);
+				ids[newSlot] = oldIds[slot];
+				positions[newSlot] = oldPositions[slot];
+			}
+		}
+	}
+
+}
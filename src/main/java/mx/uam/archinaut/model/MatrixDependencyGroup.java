@@ -1,6 +1,8 @@
 package mx.uam.archinaut.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,15 +21,29 @@ public class MatrixDependencyGroup {
 	// The logger
 	private static final Logger logger = LoggerFactory.getLogger(MatrixDependencyGroup.class);
 
+	// Cell without dependencies or co-changes, for the positions of a model where
+	// there is nothing. It has no source and no destination, and it can't be
+	// modified
+	public static final MatrixDependencyGroup EMPTY = new EmptyMatrixDependencyGroup();
+
 	// number that identifies the source of the dependency
 	private MatrixElement source;
 
 	// number that identifies the destination of the dependency
 	private MatrixElement destination;
 
-	// A hashmap that contains dependencies the string is the type the integer is
-	// the number of occurrences
-	protected Map<String, Integer> dependencies = new HashMap<>();
+	// The occurrences of every dependency type, indexed by the id of the type in
+	// the DependencyTypeTable. It is not used when the group is a view over a
+	// DependencyStore
+	private int[] occurrences;
+
+	// The sum of the occurrences
+	private int totalDependencies = 0;
+
+	// The store and the cell this group is a view of, if it was loaded
+	private DependencyStore store;
+
+	private int cell = -1;
 
 	private int coChanges = 0;
 
@@ -41,6 +57,23 @@ public class MatrixDependencyGroup {
 
 		this.source = source;
 		this.destination = destination;
+		this.occurrences = new int[DependencyTypeTable.size()];
+	}
+
+	/**
+	 * Constructor for a view over a cell of a DependencyStore
+	 * 
+	 * @param source      the source element
+	 * @param destination the destination element
+	 * @param store       the store that holds the dependencies
+	 * @param cell        the cell in the store
+	 */
+	MatrixDependencyGroup(MatrixElement source, MatrixElement destination, DependencyStore store, int cell) {
+
+		this.source = source;
+		this.destination = destination;
+		this.store = store;
+		this.cell = cell;
 	}
 
 	/**
@@ -52,14 +85,94 @@ public class MatrixDependencyGroup {
 	 */
 	public void addDependency(String type, int occurrences) {
 
-		if (dependencies.containsKey(type)) {
+		copyFromStore();
+
+		int id = DependencyTypeTable.intern(type);
+		ensureType(id);
+
+		if (this.occurrences[id] != 0) {
 			logger.warn("MatrixDependecyGroup.addDependency: dependency already contains type = " + type);
 		}
 
-		dependencies.put(type, occurrences);
+		totalDependencies += occurrences - this.occurrences[id];
+		this.occurrences[id] = occurrences;
 
 	}
 
+	/**
+	 * Add occurrences to a dependency type, for groups that aggregate other groups
+	 * 
+	 * @param type        the id of the type in the DependencyTypeTable
+	 * @param occurrences the occurrences to add
+	 */
+	void addOccurrences(int type, int occurrences) {
+
+		copyFromStore();
+		ensureType(type);
+
+		this.occurrences[type] += occurrences;
+		totalDependencies += occurrences;
+	}
+
+	/**
+	 * Add the occurrences of every type of this group to another group
+	 * 
+	 * @param target the group that receives the occurrences
+	 */
+	void addOccurrencesTo(MatrixDependencyGroup target) {
+
+		if (store != null) {
+			store.addCellOccurrences(cell, target);
+			return;
+		}
+
+		for (int type = 0; type < occurrences.length; type++) {
+			if (occurrences[type] != 0) {
+				target.addOccurrences(type, occurrences[type]);
+			}
+		}
+	}
+
+	/**
+	 * Add the occurrences of every type of this group to an array, the occurrences
+	 * of a type are added at the offset plus the id of the type
+	 * 
+	 * @param counts the array, with room for every type of the DependencyTypeTable
+	 *               after the offset
+	 * @param offset the position of the type with id 0
+	 */
+	public void addOccurrencesTo(int[] counts, int offset) {
+
+		if (store != null) {
+			store.addCellOccurrences(cell, counts, offset);
+			return;
+		}
+
+		for (int type = 0; type < occurrences.length; type++) {
+			counts[offset + type] += occurrences[type];
+		}
+	}
+
+	/**
+	 * A view is copied the first time it is modified
+	 */
+	private void copyFromStore() {
+
+		if (store != null) {
+			occurrences = store.getCellOccurrences(cell);
+			totalDependencies = store.getCellTotalDependencies(cell);
+			coChanges = store.getCellCoChanges(cell);
+			store = null;
+		}
+	}
+
+	private void ensureType(int type) {
+
+		if (type >= occurrences.length) {
+			occurrences = Arrays.copyOf(occurrences, DependencyTypeTable.size());
+		}
+	}
+
 	/**
 	 * Returns the index of the source of the dependency
 	 * 
@@ -84,21 +197,50 @@ public class MatrixDependencyGroup {
 	 * @return an integer with the total number of dependencies
 	 */
 	public int getTotalDependencies() {
-		int total = 0;
 
-		for (int a : dependencies.values()) {
-			total += a;
+		if (store != null) {
+			return store.getCellTotalDependencies(cell);
 		}
-		return total;
+
+		return totalDependencies;
 	}
 
 	/**
-	 * Returns the map of dependencies <type, occurrences>
+	 * Returns the occurrences of a dependency type
+	 * 
+	 * @param type the id of the type in the DependencyTypeTable
+	 * @return the occurrences, 0 if there are none
+	 */
+	public int getOccurrences(int type) {
+
+		if (store != null) {
+			return store.getCellOccurrences(cell, type);
+		}
+
+		return type >= 0 && type < occurrences.length ? occurrences[type] : 0;
+	}
+
+	/**
+	 * Returns a map of dependencies <type, occurrences>, changes to the map are not
+	 * seen by the group
 	 * 
 	 * @return the map of dependencies
 	 */
 	public Map<String, Integer> getDependencies() {
-		return dependencies;
+
+		if (store != null) {
+			return store.getCellDependencies(cell);
+		}
+
+		Map<String, Integer> result = new HashMap<>();
+
+		for (int type = 0; type < occurrences.length; type++) {
+			if (occurrences[type] != 0) {
+				result.put(DependencyTypeTable.getName(type), occurrences[type]);
+			}
+		}
+
+		return result;
 	}
 
 	/**
@@ -130,11 +272,12 @@ public class MatrixDependencyGroup {
 	 * element and children of the target groups
 	 * 
 	 * @param source
-	 * @param possibleTargets
+	 * @param possibleTargets the targets, which are looked up once per dependency,
+	 *                        so a set is faster than a list
 	 * @return
 	 */
 	public static List<MatrixDependencyGroup> getDependencies(MatrixElement source,
-			List<MatrixElement> possibleTargets) {
+			Collection<MatrixElement> possibleTargets) {
 
 		// We need a map as a destination may occur in more than one dependency, to
 		// aggregate numbers
@@ -233,7 +376,8 @@ public class MatrixDependencyGroup {
 	 * @param element original element
 	 * @return new destination
 	 */
-	private static MatrixElement recalculateDestination(MatrixElement element, List<MatrixElement> possibleTargets) {
+	private static MatrixElement recalculateDestination(MatrixElement element,
+			Collection<MatrixElement> possibleTargets) {
 
 		// Check first if the element already exists in the list of targets
 		if (possibleTargets.contains(element)) {
@@ -247,10 +391,27 @@ public class MatrixDependencyGroup {
 	}
 
 	public int getCoChanges() {
+
+		if (store != null) {
+			return store.getCellCoChanges(cell);
+		}
+
 		return coChanges;
 	}
 
+	/**
+	 * Sets the number of co-changes of the cell. The co-changes of a view are kept
+	 * in the store, so they are seen by every view of the same cell
+	 * 
+	 * @param coChanges
+	 */
 	public void setCoChanges(int coChanges) {
+
+		if (store != null) {
+			store.setCellCoChanges(cell, coChanges);
+			return;
+		}
+
 		this.coChanges = coChanges;
 	}
 
@@ -258,4 +419,63 @@ public class MatrixDependencyGroup {
 		return "MatrixDependencyGroup from source:" + source + " destination:" + destination;
 	}
 
+	/**
+	 * Two views are equal if they are over the same cell of the same store, other
+	 * groups are only equal to themselves
+	 */
+	@Override
+	public boolean equals(Object target) {
+
+		if (this == target) {
+			return true;
+		}
+
+		if (store == null || !(target instanceof MatrixDependencyGroup)) {
+			return false;
+		}
+
+		MatrixDependencyGroup compared = (MatrixDependencyGroup) target;
+		return store == compared.store && cell == compared.cell;
+	}
+
+	@Override
+	public int hashCode() {
+
+		if (cell == -1) {
+			return System.identityHashCode(this);
+		}
+
+		return cell;
+	}
+
+	/**
+	 * The shared empty cell, every change is rejected
+	 */
+	private static class EmptyMatrixDependencyGroup extends MatrixDependencyGroup {
+
+		EmptyMatrixDependencyGroup() {
+			super(null, null);
+		}
+
+		@Override
+		public void addDependency(String type, int occurrences) {
+			throw new UnsupportedOperationException("The empty cell can't be modified");
+		}
+
+		@Override
+		void addOccurrences(int type, int occurrences) {
+			throw new UnsupportedOperationException("The empty cell can't be modified");
+		}
+
+		@Override
+		public void setCoChanges(int coChanges) {
+			throw new UnsupportedOperationException("The empty cell can't be modified");
+		}
+
+		@Override
+		public String toString() {
+			return "Empty MatrixDependencyGroup";
+		}
+	}
+
 }
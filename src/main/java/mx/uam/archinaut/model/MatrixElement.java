@@ -1,12 +1,15 @@
 package mx.uam.archinaut.model;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import lombok.extern.slf4j.Slf4j;
@@ -23,11 +26,24 @@ public class MatrixElement implements Comparable<MatrixElement> {
 	// Full name of the element
 	private String fullName;
 
+	// Id of the full name in the ElementSymbolTable
+	private final int id;
+
 	// Short name if it is in a cluster
 	private String name;
 
-	// Dependencies for which this element is source
-	private Set<MatrixDependencyGroup> dependencies = new HashSet<>();
+	// Dependencies for which this element is source, null while they are only
+	// held in the dependency store
+	private Set<MatrixDependencyGroup> dependencies;
+
+	// Dependencies for which this element is destination, null while they are
+	// only held in the dependency store
+	private Set<MatrixDependencyGroup> incomingDependencies;
+
+	// The store with the loaded dependencies and the index of this element in it
+	private DependencyStore dependencyStore;
+
+	private int dependencyStoreIndex;
 
 	// The group this belongs to (in case it does)
 	private MatrixElementGroup group;
@@ -44,8 +60,14 @@ public class MatrixElement implements Comparable<MatrixElement> {
 	// Element constraints
 	private List<ElementConstraint> constraints = new ArrayList<>();
 
-	// Element metrics
-	private Map<String, Integer> metrics = new HashMap<>();
+	// The store with the metrics and the row of this element in it, the element
+	// has a store of its own until it is added to a matrix
+	private MetricStore metricStore;
+
+	private int metricRow;
+
+	// Live view of the metrics in the store
+	private final Map<String, Integer> metrics = new MetricsView();
 
 	private Set<HotspotData> hotspotData;
 
@@ -94,6 +116,7 @@ public class MatrixElement implements Comparable<MatrixElement> {
 	public MatrixElement(String name) {
 		this.name = name;
 		this.fullName = name;
+		this.id = ElementSymbolTable.intern(name);
 	}
 
 	/**
@@ -126,6 +149,16 @@ public class MatrixElement implements Comparable<MatrixElement> {
 		return fullName;
 	}
 
+	/**
+	 * Get the id of the full name of the element, which is the same for elements
+	 * with the same full name in different matrices
+	 * 
+	 * @return the id in the ElementSymbolTable
+	 */
+	public int getId() {
+		return id;
+	}
+
 	/**
 	 * 
 	 * @param type
@@ -136,30 +169,51 @@ public class MatrixElement implements Comparable<MatrixElement> {
 
 		// If there's already a metric with that name for this element add the values
 		// together, else put the value as is
-		if (metrics.containsKey(metric.getName())) {
-			metrics.put(metric.getName(), metrics.get(metric.getName()) + metric.getValue());
-		} else {
-			metrics.put(metric.getName(), metric.getValue());
-		}
+		MetricStore store = getMetricStore();
+		store.addValue(store.addColumn(metric.getName()), metricRow, metric.getValue());
 
 		return true;
 	}
 
+	/**
+	 * Set the value of a metric, replacing the value it had
+	 * 
+	 * @param metric the name of the metric
+	 * @param value
+	 */
+	public void setMetricValue(String metric, int value) {
+
+		MetricStore store = getMetricStore();
+		store.setValue(store.addColumn(metric), metricRow, value);
+	}
+
 	/**
 	 * 
 	 * @param type
 	 * @return
 	 */
 	public int getMetricValue(ElementMetric metric) {
-		return metrics.get(metric.getName());
+		return getMetricValue(metric.getName());
 	}
 
 	public int getMetricValue(String metric) {
-		return metrics.get(metric);
+
+		int column = metricStore == null ? MetricStore.NO_COLUMN : metricStore.getColumn(metric);
+
+		if (!hasMetricValue(column)) {
+			throw new IllegalArgumentException("Element " + fullName + " has no value for metric " + metric);
+		}
+
+		return metricStore.getValue(column, metricRow);
+	}
+
+	private boolean hasMetricValue(int column) {
+		return column != MetricStore.NO_COLUMN && metricStore.hasValue(column, metricRow);
 	}
 
 	/**
-	 * Return the metrics for this element;
+	 * Return the metrics for this element, the map is a view of the values in the
+	 * metric store in the order of its columns
 	 * 
 	 * @return
 	 */
@@ -167,6 +221,38 @@ public class MatrixElement implements Comparable<MatrixElement> {
 		return metrics;
 	}
 
+	/**
+	 * Move the metrics of this element to a row of another store. This is called
+	 * by the DesignStructureMatrix when the element is added to it
+	 * 
+	 * @param store
+	 * @param row   the row of this element in the store
+	 */
+	void setMetricStore(MetricStore store, int row) {
+
+		if (metricStore != null) {
+			for (int column = 0; column < metricStore.getColumnsCount(); column++) {
+				if (metricStore.hasValue(column, metricRow)) {
+					store.setValue(store.addColumn(metricStore.getColumnName(column)), row,
+							metricStore.getValue(column, metricRow));
+				}
+			}
+		}
+
+		metricStore = store;
+		metricRow = row;
+	}
+
+	private MetricStore getMetricStore() {
+
+		if (metricStore == null) {
+			metricStore = new MetricStore(1);
+			metricRow = metricStore.addRow();
+		}
+
+		return metricStore;
+	}
+
 	/**
 	 * Mark this element as a hotspot
 	 * 
@@ -225,7 +311,8 @@ public class MatrixElement implements Comparable<MatrixElement> {
 	}
 
 	/**
-	 * Add a dependency for this element
+	 * Add a dependency for this element, it is also added to the incoming
+	 * dependencies of its destination
 	 * 
 	 * @param dependency where the source must be this element
 	 * @return true if added successfully, false if this element is not the source
@@ -237,7 +324,12 @@ public class MatrixElement implements Comparable<MatrixElement> {
 			return false;
 		}
 
-		return dependencies.add(dependency);
+		if (!getModifiableDependencies().add(dependency)) {
+			return false;
+		}
+
+		dependency.getDestination().getModifiableIncomingDependencies().add(dependency);
+		return true;
 	}
 
 	/**
@@ -253,18 +345,143 @@ public class MatrixElement implements Comparable<MatrixElement> {
 			return false;
 		}
 
-		return dependencies.remove(dependency);
+		if (!getModifiableDependencies().remove(dependency)) {
+			return false;
+		}
+
+		dependency.getDestination().getModifiableIncomingDependencies().remove(dependency);
+		return true;
 	}
 
 	/**
-	 * Retrieve this element's dependencies
+	 * Retrieve this element's dependencies. If they are held in the dependency
+	 * store, the groups are views that are created while iterating
 	 * 
 	 * @return an arraylist with the dependencies
 	 */
 	public Iterable<MatrixDependencyGroup> getDependencies() {
+
+		if (dependencies != null) {
+			return dependencies;
+		}
+
+		if (dependencyStore != null) {
+			return dependencyStore.getDependencies(dependencyStoreIndex);
+		}
+
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Retrieve the dependencies whose destination is this element. If they are held
+	 * in the dependency store, the groups are views that are created while
+	 * iterating
+	 * 
+	 * @return the incoming dependencies, including the ones of sources that may not
+	 *         be in the matrix of this element
+	 */
+	public Iterable<MatrixDependencyGroup> getIncomingDependencies() {
+
+		if (incomingDependencies != null) {
+			return incomingDependencies;
+		}
+
+		if (dependencyStore != null) {
+			return dependencyStore.getIncomingDependencies(dependencyStoreIndex);
+		}
+
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Associate this element with the store that holds its dependencies. This is
+	 * called by the DependencyStore when it is built
+	 * 
+	 * @param store
+	 * @param index the index of this element in the store
+	 */
+	void setDependencyStore(DependencyStore store, int index) {
+		this.dependencyStore = store;
+		this.dependencyStoreIndex = index;
+		this.dependencies = null;
+		this.incomingDependencies = null;
+	}
+
+	/**
+	 * Returns true if the dependencies of this element are only held in a store,
+	 * at an index
+	 *
+	 * @param store
+	 * @param index the index of this element in the store
+	 * @return
+	 */
+	boolean isHeldInDependencyStore(DependencyStore store, int index) {
+		return dependencyStore == store && dependencyStoreIndex == index && dependencies == null
+				&& incomingDependencies == null;
+	}
+
+	/**
+	 * Returns the store that holds the dependencies of this element, null if it has
+	 * none
+	 *
+	 * @return
+	 */
+	DependencyStore getDependencyStore() {
+		return dependencyStore;
+	}
+
+	/**
+	 * Returns the index of this element in its dependency store
+	 *
+	 * @return
+	 */
+	int getDependencyStoreIndex() {
+		return dependencyStoreIndex;
+	}
+
+	/**
+	 * Copy the dependencies out of the store the first time they are modified
+	 * 
+	 * @return the set of dependencies
+	 */
+	private Set<MatrixDependencyGroup> getModifiableDependencies() {
+
+		if (dependencies == null) {
+			dependencies = new HashSet<>();
+
+			if (dependencyStore != null) {
+				for (MatrixDependencyGroup dependency : dependencyStore.getDependencies(dependencyStoreIndex)) {
+					dependencies.add(dependency);
+				}
+			}
+		}
+
 		return dependencies;
 	}
 
+	/**
+	 * Copy the incoming dependencies out of the store the first time they are
+	 * modified. The copies of the views are equal to the ones of the dependencies
+	 * of their sources
+	 * 
+	 * @return the set of incoming dependencies
+	 */
+	private Set<MatrixDependencyGroup> getModifiableIncomingDependencies() {
+
+		if (incomingDependencies == null) {
+			incomingDependencies = new HashSet<>();
+
+			if (dependencyStore != null) {
+				for (MatrixDependencyGroup dependency : dependencyStore
+						.getIncomingDependencies(dependencyStoreIndex)) {
+					incomingDependencies.add(dependency);
+				}
+			}
+		}
+
+		return incomingDependencies;
+	}
+
 	/**
 	 * Sets the group of the element. This is normally called by
 	 * DesignStructureMatrixElementGroup when the element is added to a group.
@@ -397,7 +614,129 @@ public class MatrixElement implements Comparable<MatrixElement> {
 	@Override
 	public boolean equals(Object target) {
 		MatrixElement compared = (MatrixElement) target;
-		return (this.fullName.equals(compared.fullName));
+		return this.id == compared.id;
+	}
+
+	/**
+	 * The metrics of the element as a map from metric name to value
+	 */
+	private class MetricsView extends AbstractMap<String, Integer> {
+
+		@Override
+		public Integer get(Object key) {
+
+			if (!(key instanceof String) || metricStore == null) {
+				return null;
+			}
+
+			int column = metricStore.getColumn((String) key);
+
+			return hasMetricValue(column) ? metricStore.getValue(column, metricRow) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Integer put(String key, Integer value) {
+
+			MetricStore store = getMetricStore();
+			Integer previous = get(key);
+
+			store.setValue(store.addColumn(key), metricRow, value);
+
+			return previous;
+		}
+
+		@Override
+		public Integer remove(Object key) {
+
+			Integer previous = get(key);
+
+			if (previous != null) {
+				metricStore.removeValue(metricStore.getColumn((String) key), metricRow);
+			}
+
+			return previous;
+		}
+
+		@Override
+		public int size() {
+			return metricStore == null ? 0 : metricStore.getValuesCount(metricRow);
+		}
+
+		@Override
+		public Set<Entry<String, Integer>> entrySet() {
+
+			return new AbstractSet<Entry<String, Integer>>() {
+
+				@Override
+				public Iterator<Entry<String, Integer>> iterator() {
+					return new MetricsIterator();
+				}
+
+				@Override
+				public int size() {
+					return MetricsView.this.size();
+				}
+
+			};
+		}
+
+	}
+
+	/**
+	 * Iterates over the columns in which the element has a value
+	 */
+	private class MetricsIterator implements Iterator<Entry<String, Integer>> {
+
+		private int next = -1;
+
+		private int current = -1;
+
+		MetricsIterator() {
+			advance();
+		}
+
+		private void advance() {
+
+			do {
+				next++;
+			} while (metricStore != null && next < metricStore.getColumnsCount() && !hasMetricValue(next));
+		}
+
+		@Override
+		public boolean hasNext() {
+			return metricStore != null && next < metricStore.getColumnsCount();
+		}
+
+		@Override
+		public Entry<String, Integer> next() {
+
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			current = next;
+			advance();
+
+			return new AbstractMap.SimpleImmutableEntry<>(metricStore.getColumnName(current),
+					metricStore.getValue(current, metricRow));
+		}
+
+		@Override
+		public void remove() {
+
+			if (current < 0) {
+				throw new IllegalStateException();
+			}
+
+			metricStore.removeValue(current, metricRow);
+			current = -1;
+		}
+
 	}
 
 }
@@ -87,6 +87,17 @@ public class MatrixElementGroup extends MatrixElement {
 		return null;
 	}
 
+	/**
+	 * The incoming dependencies for a group must be obtained through its
+	 * representation
+	 * 
+	 * @return null
+	 */
+	@Override
+	public Iterable<MatrixDependencyGroup> getIncomingDependencies() {
+		return null;
+	}
+
 	/**
 	 * Returns the depth level
 	 * 
@@ -0,0 +1,312 @@
+package mx.uam.archinaut.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column storage of the metrics of a group of elements. Every metric name is a
+ * column with an int value and a presence bit for each row, and every element
+ * is a row. The DesignStructureMatrix owns the store of its elements, so
+ * totals, maximums and minimums of a metric are scans over an int array
+ * instead of lookups in a map of boxed values per element.
+ *
+ * Columns are kept in the order in which their metrics were first added.
+ */
+public class MetricStore {
+
+	// Value returned when a metric has no column
+	public static final int NO_COLUMN = -1;
+
+	private final Map<String, Integer> columnIds = new HashMap<>();
+
+	// Names of the metrics, indexed by column
+	private String[] names = new String[0];
+
+	// Values of every column, indexed by row
+	private int[][] values = new int[0][];
+
+	// Presence bits of every column, a row has a value if its bit is set
+	private long[][] present = new long[0][];
+
+	private int columnsCount = 0;
+
+	private int rowsCount = 0;
+
+	// Rows that fit in the arrays of the columns
+	private int capacity;
+
+	/**
+	 * Constructor
+	 *
+	 * @param expectedRows the number of rows to make room for
+	 */
+	public MetricStore(int expectedRows) {
+		this.capacity = Math.max(expectedRows, 1);
+	}
+
+	/**
+	 * Adds a row without values
+	 *
+	 * @return the index of the row
+	 */
+	public int addRow() {
+
+		if (rowsCount == capacity) {
+
+			capacity *= 2;
+
+			for (int column = 0; column < columnsCount; column++) {
+				values[column] = Arrays.copyOf(values[column], capacity);
+				present[column] = Arrays.copyOf(present[column], words(capacity));
+			}
+		}
+
+		return rowsCount++;
+	}
+
+	public int getRowsCount() {
+		return rowsCount;
+	}
+
+	public int getColumnsCount() {
+		return columnsCount;
+	}
+
+	public String getColumnName(int column) {
+		return names[column];
+	}
+
+	/**
+	 * Returns the names of the columns in column order
+	 *
+	 * @return an unmodifiable list
+	 */
+	public List<String> getColumnNames() {
+
+		return new AbstractList<String>() {
+
+			@Override
+			public String get(int index) {
+
+				if (index >= columnsCount) {
+					throw new IndexOutOfBoundsException(index);
+				}
+
+				return names[index];
+			}
+
+			@Override
+			public int size() {
+				return columnsCount;
+			}
+
+		};
+	}
+
+	/**
+	 * Returns the column of a metric
+	 *
+	 * @param metric the name of the metric
+	 * @return the column, NO_COLUMN if no value of the metric was added
+	 */
+	public int getColumn(String metric) {
+
+		Integer column = columnIds.get(metric);
+
+		return column == null ? NO_COLUMN : column;
+	}
+
+	/**
+	 * Returns the column of a metric, adding it if there is none
+	 *
+	 * @param metric the name of the metric
+	 * @return the column
+	 */
+	public int addColumn(String metric) {
+
+		Integer column = columnIds.get(metric);
+
+		if (column != null) {
+			return column;
+		}
+
+		if (columnsCount == names.length) {
+			int size = Math.max(8, names.length * 2);
+			names = Arrays.copyOf(names, size);
+			values = Arrays.copyOf(values, size);
+			present = Arrays.copyOf(present, size);
+		}
+
+		names[columnsCount] = metric;
+		values[columnsCount] = new int[capacity];
+		present[columnsCount] = new long[words(capacity)];
+		columnIds.put(metric, columnsCount);
+
+		return columnsCount++;
+	}
+
+	/**
+	 * Test if a row has a value in a column
+	 *
+	 * @param column
+	 * @param row
+	 * @return
+	 */
+	public boolean hasValue(int column, int row) {
+		return column >= 0 && (present[column][row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Returns the value of a row in a column, 0 if it has none
+	 *
+	 * @param column
+	 * @param row
+	 * @return
+	 */
+	public int getValue(int column, int row) {
+		return column >= 0 ? values[column][row] : 0;
+	}
+
+	/**
+	 * Adds a value to the value of a row in a column, if the row has no value the
+	 * value is set
+	 *
+	 * @param column
+	 * @param row
+	 * @param value
+	 */
+	public void addValue(int column, int row, int value) {
+
+		if (hasValue(column, row)) {
+			values[column][row] += value;
+		} else {
+			setValue(column, row, value);
+		}
+	}
+
+	/**
+	 * Sets the value of a row in a column
+	 *
+	 * @param column
+	 * @param row
+	 * @param value
+	 */
+	public void setValue(int column, int row, int value) {
+		values[column][row] = value;
+		present[column][row >>> 6] |= 1L << row;
+	}
+
+	/**
+	 * Removes the value of a row in a column
+	 *
+	 * @param column
+	 * @param row
+	 */
+	public void removeValue(int column, int row) {
+		values[column][row] = 0;
+		present[column][row >>> 6] &= ~(1L << row);
+	}
+
+	/**
+	 * Returns the number of columns in which a row has a value
+	 *
+	 * @param row
+	 * @return
+	 */
+	public int getValuesCount(int row) {
+
+		int count = 0;
+
+		for (int column = 0; column < columnsCount; column++) {
+			if (hasValue(column, row)) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the sum of the values of a column
+	 *
+	 * @param column
+	 * @return
+	 */
+	public long getTotal(int column) {
+
+		if (column < 0) {
+			return 0;
+		}
+
+		// Rows without a value are 0, so they can be added as well
+		int[] columnValues = values[column];
+		long total = 0;
+
+		for (int row = 0; row < rowsCount; row++) {
+			total += columnValues[row];
+		}
+
+		return total;
+	}
+
+	/**
+	 * Returns the largest value of a column
+	 *
+	 * @param column
+	 * @return the maximum, null if no row has a value
+	 */
+	public Integer getMaximum(int column) {
+		return getExtreme(column, true);
+	}
+
+	/**
+	 * Returns the smallest value of a column
+	 *
+	 * @param column
+	 * @return the minimum, null if no row has a value
+	 */
+	public Integer getMinimum(int column) {
+		return getExtreme(column, false);
+	}
+
+	private Integer getExtreme(int column, boolean maximum) {
+
+		if (column < 0) {
+			return null;
+		}
+
+		int[] columnValues = values[column];
+		long[] columnPresent = present[column];
+
+		boolean found = false;
+		int extreme = 0;
+
+		for (int word = 0; word < words(rowsCount); word++) {
+
+			long bits = columnPresent[word];
+
+			while (bits != 0) {
+
+				int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+				int value = columnValues[row];
+
+				if (!found || (maximum ? value > extreme : value < extreme)) {
+					extreme = value;
+					found = true;
+				}
+
+				bits &= bits - 1;
+			}
+		}
+
+		return found ? extreme : null;
+	}
+
+	private static int words(int rows) {
+		return (rows + 63) >>> 6;
+	}
+
+}
@@ -0,0 +1,143 @@
+package mx.uam.archinaut.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The metrics parsed from one source before they are added to a matrix. Values
+ * for the same element are added together, as MatrixElement.addMetricValue
+ * does, so the table can be merged into the matrix once parsing is over.
+ */
+public class MetricsTable {
+
+	// The file the metrics were parsed from
+	private final String source;
+
+	// Names of the metrics, as they are saved in the elements
+	private final String[] metricNames;
+
+	// Position of every element by its full name. The names are kept in the
+	// table and not interned, as most of them may not be in the matrix
+	private final Map<String, Integer> positions = new HashMap<>();
+
+	// Full names and values of the elements, in the order in which they were
+	// found
+	private String[] names = new String[16];
+
+	private Row[] rows = new Row[16];
+
+	private int elementsCount = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param source      the file the metrics are parsed from
+	 * @param metricNames the names of the metrics
+	 */
+	public MetricsTable(String source, List<String> metricNames) {
+		this.source = source;
+		this.metricNames = metricNames.toArray(new String[0]);
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public int getMetricsCount() {
+		return metricNames.length;
+	}
+
+	public String getMetricName(int metric) {
+		return metricNames[metric];
+	}
+
+	/**
+	 * Add the value of a metric for an element
+	 *
+	 * @param element the full name of the element
+	 * @param metric  the index of the metric
+	 * @param value   the value
+	 */
+	public void addValue(String element, int metric, int value) {
+
+		Integer position = positions.get(element);
+		Row row;
+
+		if (position == null) {
+
+			if (elementsCount == names.length) {
+				names = Arrays.copyOf(names, elementsCount * 2);
+				rows = Arrays.copyOf(rows, elementsCount * 2);
+			}
+
+			row = new Row(metricNames.length);
+			names[elementsCount] = element;
+			rows[elementsCount] = row;
+			positions.put(element, elementsCount++);
+
+		} else {
+			row = rows[position];
+		}
+
+		row.values[metric] += value;
+		row.present[metric] = true;
+	}
+
+	public int getElementsCount() {
+		return elementsCount;
+	}
+
+	/**
+	 * Returns the full name of an element that has values, elements are kept in
+	 * the order they were added
+	 *
+	 * @param index the position of the element, smaller than getElementsCount
+	 * @return the full name of the element
+	 */
+	public String getElementName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * Test if an element has a value for a metric
+	 *
+	 * @param index  the position of the element
+	 * @param metric
+	 * @return
+	 */
+	public boolean hasValue(int index, int metric) {
+		return rows[index].present[metric];
+	}
+
+	/**
+	 * Returns the value of a metric for an element, 0 if it has no value
+	 *
+	 * @param index  the position of the element
+	 * @param metric
+	 * @return
+	 */
+	public int getValue(int index, int metric) {
+		return rows[index].values[metric];
+	}
+
+	@Override
+	public String toString() {
+		return "MetricsTable from " + source + " metrics: " + Arrays.toString(metricNames) + " elements: "
+				+ elementsCount;
+	}
+
+	private static class Row {
+
+		private final int[] values;
+
+		private final boolean[] present;
+
+		Row(int metrics) {
+			values = new int[metrics];
+			present = new boolean[metrics];
+		}
+	}
+
+}
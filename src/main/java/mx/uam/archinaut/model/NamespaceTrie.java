@@ -0,0 +1,150 @@
+package mx.uam.archinaut.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds the hierarchy of MatrixElementGroups of the namespaces of a set of
+ * elements. The children of every group are indexed by name, so an element is
+ * placed with one hashed lookup per segment of its name no matter how many
+ * siblings there are, and the segments are shared by all the elements and
+ * groups that have them as their name.
+ *
+ * As with StringTokenizer, empty segments are skipped. The full name of a group
+ * is the full name of its parent and its segment separated by dots.
+ */
+@Slf4j
+public class NamespaceTrie {
+
+	private final char separator;
+
+	// The elements and groups of the first level, in the order they were added
+	private final List<MatrixElement> topLevel = new ArrayList<>();
+
+	private final Map<String, MatrixElement> topLevelByName = new HashMap<>();
+
+	// The children of every group by name
+	private final Map<MatrixElement, Map<String, MatrixElement>> childrenByName = new IdentityHashMap<>();
+
+	// The shared instance of every segment
+	private final Map<String, String> segments = new HashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param separator the character that separates the segments of the names
+	 */
+	public NamespaceTrie(char separator) {
+		this.separator = separator;
+	}
+
+	/**
+	 * Add an element under the groups of its namespace, creating the groups that
+	 * don't exist. The name of the element becomes the last segment of its full
+	 * name
+	 *
+	 * @param element the element
+	 * @return true if the element was added, false if its name has no segments or
+	 *         if there is already an element or a group with the same name
+	 */
+	public boolean add(MatrixElement element) {
+
+		String fullName = element.getFullName();
+		int start = skipSeparators(fullName, 0);
+
+		MatrixElementGroup parent = null;
+
+		while (start < fullName.length()) {
+
+			int end = fullName.indexOf(separator, start);
+
+			if (end == -1) {
+				end = fullName.length();
+			}
+
+			String segment = segment(fullName.substring(start, end));
+			start = skipSeparators(fullName, end);
+
+			boolean last = start == fullName.length();
+			Map<String, MatrixElement> siblings = parent == null ? topLevelByName
+					: childrenByName.computeIfAbsent(parent, p -> new HashMap<>());
+
+			MatrixElement node = siblings.get(segment);
+
+			if (node == null) {
+
+				if (last) {
+					element.setName(segment);
+					addChild(parent, element, siblings);
+					return true;
+				}
+
+				MatrixElementGroup group = new MatrixElementGroup(
+						parent == null ? segment : parent.getFullName() + "." + segment);
+				group.setName(segment);
+				addChild(parent, group, siblings);
+				node = group;
+
+			} else if (last || !(node instanceof MatrixElementGroup)) {
+
+				log.warn("NamespaceTrie.add: " + fullName + " is not added, " + node.getFullName()
+						+ " is already in its place");
+				return false;
+			}
+
+			parent = (MatrixElementGroup) node;
+		}
+
+		return false;
+	}
+
+	private void addChild(MatrixElementGroup parent, MatrixElement child, Map<String, MatrixElement> siblings) {
+
+		siblings.put(child.getName(), child);
+
+		if (parent == null) {
+			topLevel.add(child);
+		} else {
+			parent.addChild(child);
+		}
+	}
+
+	private int skipSeparators(String name, int position) {
+
+		while (position < name.length() && name.charAt(position) == separator) {
+			position++;
+		}
+
+		return position;
+	}
+
+	private String segment(String segment) {
+
+		String shared = segments.putIfAbsent(segment, segment);
+
+		return shared == null ? segment : shared;
+	}
+
+	/**
+	 * Create the root group with the elements and groups of the first level
+	 *
+	 * @param name the name of the root
+	 * @return the root
+	 */
+	public MatrixElementGroup createRoot(String name) {
+
+		MatrixElementGroup root = new MatrixElementGroup(name);
+
+		for (MatrixElement element : topLevel) {
+			root.addChild(element);
+		}
+
+		return root;
+	}
+
+}
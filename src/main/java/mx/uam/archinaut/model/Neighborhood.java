@@ -0,0 +1,255 @@
+package mx.uam.archinaut.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The elements of a matrix that are up to a number of dependencies away from a
+ * set of seed elements. The dependencies are followed from the seeds
+ * breadth-first, forward to the elements they depend on, backwards to the
+ * elements that depend on them or both, so the cost depends on the size of the
+ * neighborhood and not on the size of the matrix.
+ *
+ * Cells that only have co-changes are not followed. If the neighborhood is
+ * limited to some dependency types, only the cells with occurrences of those
+ * types are followed.
+ */
+public class Neighborhood {
+
+	/**
+	 * The dependencies that are followed from every element
+	 */
+	public enum Direction {
+		// To the elements it depends on
+		DEPENDEES,
+		// To the elements that depend on it
+		DEPENDENTS,
+		// Both
+		BOTH
+	}
+
+	private final DesignStructureMatrix matrix;
+
+	// Ids of the dependency types that are followed, null to follow every type
+	private final int[] types;
+
+	// The elements in the order they were reached, starting with the seeds
+	private final List<MatrixElement> elements = new ArrayList<>();
+
+	// Distance of every element to the nearest seed
+	private final Map<MatrixElement, Integer> distances = new IdentityHashMap<>();
+
+	private final List<MatrixElement> seeds;
+
+	/**
+	 * Find the neighborhood of a set of elements
+	 *
+	 * @param matrix    the matrix of the elements
+	 * @param seeds     the elements where the neighborhood starts
+	 * @param radius    the number of dependencies that are followed from the
+	 *                  seeds, 0 for only the seeds
+	 * @param direction the dependencies that are followed
+	 * @param types     the dependency types that are followed, null or empty to
+	 *                  follow every type
+	 * @throws IllegalArgumentException if the radius is negative or a seed is not
+	 *                                  in the matrix
+	 */
+	public Neighborhood(DesignStructureMatrix matrix, Collection<MatrixElement> seeds, int radius,
+			Direction direction, Collection<String> types) {
+
+		if (radius < 0) {
+			throw new IllegalArgumentException("The radius of a neighborhood can't be negative: " + radius);
+		}
+
+		this.matrix = matrix;
+		this.types = getTypeIds(types);
+		this.seeds = new ArrayList<>(seeds);
+
+		for (MatrixElement seed : seeds) {
+
+			if (matrix.getIndexOfElement(seed) == -1) {
+				throw new IllegalArgumentException("Element " + seed.getFullName() + " is not in the matrix");
+			}
+
+			add(seed, 0);
+		}
+
+		boolean dependees = direction != Direction.DEPENDENTS;
+		boolean dependents = direction != Direction.DEPENDEES;
+
+		// The elements of every distance are after the ones of the previous distance
+		int first = 0;
+
+		for (int distance = 1; distance <= radius && first < elements.size(); distance++) {
+
+			int last = elements.size();
+
+			for (int i = first; i < last; i++) {
+
+				MatrixElement element = elements.get(i);
+
+				if (dependees) {
+					for (MatrixDependencyGroup group : element.getDependencies()) {
+						if (isFollowed(group)) {
+							add(group.getDestination(), distance);
+						}
+					}
+				}
+
+				if (dependents) {
+					for (MatrixDependencyGroup group : element.getIncomingDependencies()) {
+						if (isFollowed(group)) {
+							add(group.getSource(), distance);
+						}
+					}
+				}
+			}
+
+			first = last;
+		}
+	}
+
+	/**
+	 * Returns the elements of the neighborhood, ordered by their distance to the
+	 * seeds
+	 *
+	 * @return
+	 */
+	public List<MatrixElement> getElements() {
+		return Collections.unmodifiableList(elements);
+	}
+
+	/**
+	 * Returns the number of dependencies between an element and the nearest seed
+	 *
+	 * @param element the element
+	 * @return the distance, -1 if the element is not in the neighborhood
+	 */
+	public int getDistance(MatrixElement element) {
+
+		Integer distance = distances.get(element);
+
+		return distance == null ? -1 : distance;
+	}
+
+	/**
+	 * Returns true if an element is in the neighborhood
+	 *
+	 * @param element the element
+	 * @return
+	 */
+	public boolean contains(MatrixElement element) {
+		return distances.containsKey(element);
+	}
+
+	/**
+	 * Create a matrix with copies of the elements of the neighborhood and of the
+	 * cells between them, with their co-changes. If the neighborhood is limited to
+	 * some dependency types, the copies of the cells only have those types, and
+	 * the cells left without dependencies or co-changes are not copied. The
+	 * copies of the seeds are hotspots
+	 *
+	 * @return the matrix
+	 */
+	public DesignStructureMatrix createMatrix() {
+
+		Map<MatrixElement, MatrixElement> copies = new IdentityHashMap<>();
+		List<MatrixElement> copiedElements = new ArrayList<>(elements.size());
+
+		for (MatrixElement element : elements) {
+			MatrixElement copy = new MatrixElement(element.getFullName());
+			copies.put(element, copy);
+			copiedElements.add(copy);
+		}
+
+		for (MatrixElement seed : seeds) {
+			copies.get(seed).setHotspot(true);
+		}
+
+		for (MatrixElement element : elements) {
+
+			MatrixElement source = copies.get(element);
+
+			for (MatrixDependencyGroup group : element.getDependencies()) {
+
+				MatrixElement destination = copies.get(group.getDestination());
+
+				if (destination != null) {
+					copyGroup(group, source, destination);
+				}
+			}
+		}
+
+		return new DesignStructureMatrix("", copiedElements);
+	}
+
+	private void copyGroup(MatrixDependencyGroup group, MatrixElement source, MatrixElement destination) {
+
+		MatrixDependencyGroup copy = new MatrixDependencyGroup(source, destination);
+
+		if (types == null) {
+			for (Map.Entry<String, Integer> dependency : group.getDependencies().entrySet()) {
+				copy.addDependency(dependency.getKey(), dependency.getValue());
+			}
+		} else {
+			for (int type : types) {
+
+				int occurrences = group.getOccurrences(type);
+
+				if (occurrences > 0) {
+					copy.addDependency(DependencyTypeTable.getName(type), occurrences);
+				}
+			}
+		}
+
+		copy.setCoChanges(group.getCoChanges());
+
+		if (copy.getTotalDependencies() > 0 || copy.getCoChanges() > 0 || types == null) {
+			source.addDependency(copy);
+		}
+	}
+
+	/**
+	 * Add an element the first time it is reached, if it is in the matrix
+	 */
+	private void add(MatrixElement element, int distance) {
+
+		if (!distances.containsKey(element) && matrix.getIndexOfElement(element) != -1) {
+			distances.put(element, distance);
+			elements.add(element);
+		}
+	}
+
+	private boolean isFollowed(MatrixDependencyGroup group) {
+
+		if (types == null) {
+			return group.getTotalDependencies() > 0;
+		}
+
+		for (int type : types) {
+			if (group.getOccurrences(type) > 0) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the ids of the types, leaving out the types that no dependency has
+	 */
+	private static int[] getTypeIds(Collection<String> types) {
+
+		if (types == null || types.isEmpty()) {
+			return null;
+		}
+
+		return types.stream().mapToInt(DependencyTypeTable::getId).filter(id -> id != DependencyTypeTable.NO_ID)
+				.distinct().toArray();
+	}
+
+}
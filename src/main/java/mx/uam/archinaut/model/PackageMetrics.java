@@ -0,0 +1,333 @@
+package mx.uam.archinaut.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The metrics of Robert Martin for the groups of the namespace tree of a
+ * matrix, calculated in one pass over the dependencies and one bottom-up pass
+ * over the tree. A group contains the elements of its subgroups.
+ *
+ * - The afferent coupling (Ca) is the number of elements outside the group that
+ * depend on elements of the group.
+ * - The efferent coupling (Ce) is the number of elements of the group that
+ * depend on elements outside the group.
+ * - The instability is Ce / (Ca + Ce), 0 for a group without couplings.
+ * - The abstractness is the fraction of the elements of the group that are
+ * abstract. As the matrix has no abstract types, an element is abstract if
+ * another one implements or extends it.
+ * - The distance from the main sequence is |abstractness + instability - 1|.
+ *
+ * A dependency from one element to another crosses the groups that contain one
+ * of them and are below their lowest common ancestor. Every element leaves a
+ * +1 on its group and a -1 on a common ancestor, so the sum of the values below
+ * a group is the number of elements that count for it, and the sums of every
+ * group are added in the bottom-up pass. Finding a common ancestor costs the
+ * depth of the tree.
+ *
+ * Cells that only have co-changes and dependencies of an element on itself are
+ * not counted.
+ */
+public class PackageMetrics {
+
+	// The groups below the root, in the order of the tree
+	private final List<MatrixElementGroup> packages = new ArrayList<>();
+
+	// For every package, its values
+	private final int[] elements;
+	private final int[] abstractElements;
+	private final int[] afferent;
+	private final int[] efferent;
+
+	// The nodes of the tree numbered in preorder, the root is 0
+	private int[] parents;
+	private int[] depths;
+
+	/**
+	 * Calculate the metrics of the groups of a matrix
+	 *
+	 * @param matrix the matrix, without metrics if it has no namespace grouping
+	 */
+	public PackageMetrics(DesignStructureMatrix matrix) {
+
+		int elementsCount = matrix.getElementsCount();
+
+		// The node of the group of every element, the root for the elements outside
+		// of the tree
+		int[] groups = new int[elementsCount];
+		int nodes = numberNodes(matrix, groups);
+
+		int[] elementSums = new int[nodes];
+		int[] abstractSums = new int[nodes];
+		int[] afferentSums = new int[nodes];
+		int[] efferentSums = new int[nodes];
+
+		boolean[] isAbstract = new boolean[elementsCount];
+		int implement = DependencyTypeTable.getId("Implement");
+		int extend = DependencyTypeTable.getId("Extend");
+
+		// The groups of the destinations of an element, and the element's group
+		int[] points = new int[16];
+
+		for (int i = 0; i < elementsCount; i++) {
+
+			int count = 0;
+
+			// The highest common ancestor with a destination, the element counts for the
+			// efferent coupling of the groups below it
+			int highest = groups[i];
+
+			for (MatrixDependencyGroup group : matrix.getElement(i).getDependencies()) {
+
+				int destination = matrix.getIndexOfElement(group.getDestination());
+
+				if (destination == -1 || destination == i || group.getTotalDependencies() == 0) {
+					continue;
+				}
+
+				if ((implement != DependencyTypeTable.NO_ID && group.getOccurrences(implement) > 0)
+						|| (extend != DependencyTypeTable.NO_ID && group.getOccurrences(extend) > 0)) {
+					isAbstract[destination] = true;
+				}
+
+				int ancestor = findCommonAncestor(groups[i], groups[destination]);
+
+				if (depths[ancestor] < depths[highest]) {
+					highest = ancestor;
+				}
+
+				if (count + 1 == points.length) {
+					points = Arrays.copyOf(points, points.length * 2);
+				}
+
+				points[count++] = groups[destination];
+			}
+
+			if (count == 0) {
+				continue;
+			}
+
+			efferentSums[groups[i]]++;
+			efferentSums[highest]--;
+
+			// The element counts for the afferent coupling of the groups that contain a
+			// destination and not the element. Sorted in preorder, the groups of the
+			// destinations and of the element count once for every ancestor they have
+			// with the +1 on every group and the -1 on the common ancestor of every
+			// consecutive pair, and the -1 on the group of the element removes the
+			// groups that contain it
+			points[count++] = groups[i];
+			Arrays.sort(points, 0, count);
+
+			for (int point = 0; point < count; point++) {
+
+				afferentSums[points[point]]++;
+
+				if (point > 0) {
+					afferentSums[findCommonAncestor(points[point - 1], points[point])]--;
+				}
+			}
+
+			afferentSums[groups[i]]--;
+		}
+
+		for (int i = 0; i < elementsCount; i++) {
+
+			elementSums[groups[i]]++;
+
+			if (isAbstract[i]) {
+				abstractSums[groups[i]]++;
+			}
+		}
+
+		// The children of a node come after it in preorder
+		for (int node = nodes - 1; node > 0; node--) {
+			elementSums[parents[node]] += elementSums[node];
+			abstractSums[parents[node]] += abstractSums[node];
+			afferentSums[parents[node]] += afferentSums[node];
+			efferentSums[parents[node]] += efferentSums[node];
+		}
+
+		elements = Arrays.copyOfRange(elementSums, 1, nodes);
+		abstractElements = Arrays.copyOfRange(abstractSums, 1, nodes);
+		afferent = Arrays.copyOfRange(afferentSums, 1, nodes);
+		efferent = Arrays.copyOfRange(efferentSums, 1, nodes);
+
+		parents = null;
+		depths = null;
+	}
+
+	/**
+	 * Number the groups of the tree in preorder and find the group of every
+	 * element
+	 *
+	 * @return the number of nodes, including the root
+	 */
+	private int numberNodes(DesignStructureMatrix matrix, int[] groups) {
+
+		List<Integer> parentList = new ArrayList<>();
+		List<Integer> depthList = new ArrayList<>();
+
+		parentList.add(-1);
+		depthList.add(0);
+
+		MatrixElementGroup root = matrix.getRootGroup();
+
+		if (root != null) {
+
+			Map<MatrixElement, Integer> nodes = new IdentityHashMap<>();
+			nodes.put(root, 0);
+
+			Deque<MatrixElement> pending = new ArrayDeque<>();
+			pushChildren(root, pending);
+
+			while (!pending.isEmpty()) {
+
+				MatrixElement node = pending.pop();
+				int parent = nodes.get(node.getGroup());
+
+				if (node instanceof MatrixElementGroup) {
+
+					nodes.put(node, parentList.size());
+					packages.add((MatrixElementGroup) node);
+					parentList.add(parent);
+					depthList.add(depthList.get(parent) + 1);
+
+					pushChildren((MatrixElementGroup) node, pending);
+
+				} else {
+
+					int index = matrix.getIndexOfElement(node);
+
+					if (index != -1) {
+						groups[index] = parent;
+					}
+				}
+			}
+		}
+
+		parents = parentList.stream().mapToInt(Integer::intValue).toArray();
+		depths = depthList.stream().mapToInt(Integer::intValue).toArray();
+
+		return parents.length;
+	}
+
+	/**
+	 * Push the children of a group so that the first one is on top
+	 */
+	private static void pushChildren(MatrixElementGroup group, Deque<MatrixElement> pending) {
+
+		List<MatrixElement> children = new ArrayList<>(group.getChildrenCount());
+
+		for (MatrixElement child : group.getChildren()) {
+			children.add(child);
+		}
+
+		for (int i = children.size() - 1; i >= 0; i--) {
+			pending.push(children.get(i));
+		}
+	}
+
+	private int findCommonAncestor(int first, int second) {
+
+		while (first != second) {
+			if (depths[first] >= depths[second]) {
+				first = parents[first];
+			} else {
+				second = parents[second];
+			}
+		}
+
+		return first;
+	}
+
+	/**
+	 * Returns the groups below the root of the tree, in the order of the tree
+	 *
+	 * @return
+	 */
+	public List<MatrixElementGroup> getPackages() {
+		return packages;
+	}
+
+	/**
+	 * Returns the number of elements of a group
+	 *
+	 * @param index the position of the group in the packages
+	 * @return
+	 */
+	public int getElementsCount(int index) {
+		return elements[index];
+	}
+
+	/**
+	 * Returns the number of elements of a group that other elements implement or
+	 * extend
+	 *
+	 * @param index the position of the group in the packages
+	 * @return
+	 */
+	public int getAbstractElementsCount(int index) {
+		return abstractElements[index];
+	}
+
+	/**
+	 * Returns the number of elements outside a group that depend on its elements
+	 *
+	 * @param index the position of the group in the packages
+	 * @return
+	 */
+	public int getAfferentCoupling(int index) {
+		return afferent[index];
+	}
+
+	/**
+	 * Returns the number of elements of a group that depend on elements outside it
+	 *
+	 * @param index the position of the group in the packages
+	 * @return
+	 */
+	public int getEfferentCoupling(int index) {
+		return efferent[index];
+	}
+
+	/**
+	 * Returns Ce / (Ca + Ce) for a group, 0 if it has no couplings
+	 *
+	 * @param index the position of the group in the packages
+	 * @return
+	 */
+	public double getInstability(int index) {
+
+		int couplings = afferent[index] + efferent[index];
+
+		return couplings == 0 ? 0 : (double) efferent[index] / couplings;
+	}
+
+	/**
+	 * Returns the fraction of the elements of a group that are abstract
+	 *
+	 * @param index the position of the group in the packages
+	 * @return
+	 */
+	public double getAbstractness(int index) {
+		return elements[index] == 0 ? 0 : (double) abstractElements[index] / elements[index];
+	}
+
+	/**
+	 * Returns the distance of a group from the main sequence, where abstractness
+	 * and instability add up to 1
+	 *
+	 * @param index the position of the group in the packages
+	 * @return
+	 */
+	public double getDistance(int index) {
+		return Math.abs(getAbstractness(index) + getInstability(index) - 1);
+	}
+
+}
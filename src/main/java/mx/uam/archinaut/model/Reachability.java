@@ -0,0 +1,289 @@
+package mx.uam.archinaut.model;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The transitive dependencies of every node of a DependencyGraph: how many
+ * other nodes it reaches through its dependencies, and how many other nodes
+ * reach it.
+ *
+ * The strongly connected components are condensed first, as every node of a
+ * component reaches the same nodes. The nodes reached by every component are
+ * then a bitset, the union of its own nodes and of the bitsets of the
+ * components it depends on, which are complete before it because the
+ * components are in reverse topological order. The nodes that reach every
+ * component are found the same way over the condensed graph reversed.
+ *
+ * The bitsets of all the components would take components x nodes bits, so
+ * the nodes are split in blocks of 64 bit words and the bitsets of one block
+ * are built at a time. The blocks are independent, and they are split between
+ * the threads of the common ForkJoinPool.
+ */
+public class Reachability {
+
+	// Longs of the bitsets of all the components in a block
+	private static final int BLOCK_LONGS = 1 << 20;
+
+	// For every node, the number of other nodes it reaches
+	private final int[] reached;
+
+	// For every node, the number of other nodes that reach it
+	private final int[] reachedBy;
+
+	/**
+	 * Calculate the reachability of the nodes of a graph
+	 *
+	 * @param graph      the graph
+	 * @param components the strongly connected components of the graph
+	 */
+	public Reachability(DependencyGraph graph, StronglyConnectedComponents components) {
+		this(graph, components, BLOCK_LONGS);
+	}
+
+	/**
+	 * Calculate the reachability of the nodes of a graph with blocks of a given
+	 * size, so the tests can split small graphs in several blocks
+	 *
+	 * @param graph      the graph
+	 * @param components the strongly connected components of the graph
+	 * @param blockLongs the longs of the bitsets of all the components in a block
+	 */
+	Reachability(DependencyGraph graph, StronglyConnectedComponents components, int blockLongs) {
+
+		int nodes = graph.getNodesCount();
+		int componentsCount = components.getComponentsCount();
+
+		int[] sets = new int[nodes];
+
+		for (int node = 0; node < nodes; node++) {
+			sets[node] = components.getComponent(node);
+		}
+
+		Condensation condensation = new Condensation(graph.condense(sets, componentsCount), sets, componentsCount);
+
+		int words = (nodes + 63) >>> 6;
+		int blockWords = Math.max(1, Math.min(words, blockLongs / Math.max(componentsCount, 1)));
+		int blocks = (words + blockWords - 1) / blockWords;
+
+		int[][] counts = blocks == 0 ? new int[][] { new int[nodes], new int[nodes] }
+				: new BlockTask(condensation, blockWords, 0, blocks).invoke();
+
+		reached = counts[0];
+		reachedBy = counts[1];
+
+		// A node is in the bitset of its own component
+		for (int node = 0; node < nodes; node++) {
+			reached[node]--;
+			reachedBy[node]--;
+		}
+	}
+
+	/**
+	 * Returns the number of nodes
+	 *
+	 * @return
+	 */
+	public int getNodesCount() {
+		return reached.length;
+	}
+
+	/**
+	 * Returns the number of other nodes that a node depends on, directly or
+	 * through other nodes
+	 *
+	 * @param node the node
+	 * @return
+	 */
+	public int getReached(int node) {
+		return reached[node];
+	}
+
+	/**
+	 * Returns the number of other nodes that depend on a node, directly or through
+	 * other nodes
+	 *
+	 * @param node the node
+	 * @return
+	 */
+	public int getReachedBy(int node) {
+		return reachedBy[node];
+	}
+
+	/**
+	 * Returns the propagation cost, the fraction of the pairs of nodes where the
+	 * first depends on the second, directly or through other nodes. Every node is
+	 * counted as depending on itself, as in the visibility matrix of MacCormack et
+	 * al.
+	 *
+	 * @return a value between 0 and 1, 0 if there are no nodes
+	 */
+	public double getPropagationCost() {
+
+		if (reached.length == 0) {
+			return 0;
+		}
+
+		long visible = 0;
+
+		for (int count : reached) {
+			visible += count + 1L;
+		}
+
+		return (double) visible / ((double) reached.length * reached.length);
+	}
+
+	/**
+	 * The condensed graph, its reverse and the nodes of every component
+	 */
+	private static class Condensation {
+
+		private final DependencyGraph graph;
+
+		private final DependencyGraph reversed;
+
+		// For every component, the position of its first node. Size is components + 1
+		private final int[] memberOffsets;
+
+		private final int[] members;
+
+		private final int nodes;
+
+		Condensation(DependencyGraph graph, int[] sets, int componentsCount) {
+
+			this.graph = graph;
+			this.reversed = graph.reverse();
+			this.nodes = sets.length;
+
+			memberOffsets = new int[componentsCount + 1];
+			members = new int[sets.length];
+
+			for (int set : sets) {
+				memberOffsets[set + 1]++;
+			}
+
+			for (int component = 0; component < componentsCount; component++) {
+				memberOffsets[component + 1] += memberOffsets[component];
+			}
+
+			int[] next = Arrays.copyOf(memberOffsets, componentsCount);
+
+			for (int node = 0; node < sets.length; node++) {
+				members[next[sets[node]]++] = node;
+			}
+		}
+	}
+
+	/**
+	 * Counts the nodes of a range of blocks reached by every node and the nodes of
+	 * the blocks that reach every node. The result are both counts, that are added
+	 * up when the range is split
+	 */
+	private static class BlockTask extends RecursiveTask<int[][]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Condensation condensation;
+
+		private final int blockWords;
+
+		private final int firstBlock;
+
+		private final int lastBlock;
+
+		BlockTask(Condensation condensation, int blockWords, int firstBlock, int lastBlock) {
+			this.condensation = condensation;
+			this.blockWords = blockWords;
+			this.firstBlock = firstBlock;
+			this.lastBlock = lastBlock;
+		}
+
+		@Override
+		protected int[][] compute() {
+
+			if (lastBlock - firstBlock > 1) {
+
+				int middle = (firstBlock + lastBlock) >>> 1;
+
+				BlockTask second = new BlockTask(condensation, blockWords, middle, lastBlock);
+				second.fork();
+
+				int[][] counts = new BlockTask(condensation, blockWords, firstBlock, middle).compute();
+				int[][] secondCounts = second.join();
+
+				for (int node = 0; node < condensation.nodes; node++) {
+					counts[0][node] += secondCounts[0][node];
+					counts[1][node] += secondCounts[1][node];
+				}
+
+				return counts;
+			}
+
+			int firstWord = firstBlock * blockWords;
+			int words = Math.min(blockWords, ((condensation.nodes + 63) >>> 6) - firstWord);
+
+			int componentsCount = condensation.memberOffsets.length - 1;
+			long[] bits = new long[componentsCount * words];
+
+			int[] reached = new int[condensation.nodes];
+			int[] reachedBy = new int[condensation.nodes];
+
+			// The components a component depends on have lower numbers
+			for (int component = 0; component < componentsCount; component++) {
+				addBits(component, condensation.graph, bits, firstWord, words, reached);
+			}
+
+			Arrays.fill(bits, 0);
+
+			// The components that depend on a component have higher numbers
+			for (int component = componentsCount - 1; component >= 0; component--) {
+				addBits(component, condensation.reversed, bits, firstWord, words, reachedBy);
+			}
+
+			return new int[][] { reached, reachedBy };
+		}
+
+		/**
+		 * Fill the bitset of a component with its own nodes and the bitsets of its
+		 * neighbors in a graph, then add the nodes of the bitset to the count of
+		 * every node of the component
+		 */
+		private void addBits(int component, DependencyGraph graph, long[] bits, int firstWord, int words,
+				int[] counts) {
+
+			int base = component * words;
+			int[] members = condensation.members;
+			int firstMember = condensation.memberOffsets[component];
+			int lastMember = condensation.memberOffsets[component + 1];
+
+			for (int member = firstMember; member < lastMember; member++) {
+
+				int word = (members[member] >>> 6) - firstWord;
+
+				if (word >= 0 && word < words) {
+					bits[base + word] |= 1L << members[member];
+				}
+			}
+
+			for (int edge = graph.getFirstEdge(component); edge < graph.getFirstEdge(component + 1); edge++) {
+
+				int neighbor = graph.getTarget(edge) * words;
+
+				for (int word = 0; word < words; word++) {
+					bits[base + word] |= bits[neighbor + word];
+				}
+			}
+
+			int count = 0;
+
+			for (int word = 0; word < words; word++) {
+				count += Long.bitCount(bits[base + word]);
+			}
+
+			for (int member = firstMember; member < lastMember; member++) {
+				counts[members[member]] += count;
+			}
+		}
+	}
+
+}
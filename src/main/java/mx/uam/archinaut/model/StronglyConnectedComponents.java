@@ -0,0 +1,197 @@
+package mx.uam.archinaut.model;
+
+import java.util.Arrays;
+
+/**
+ * The strongly connected components of a DependencyGraph, found with Tarjan's
+ * algorithm in time proportional to the nodes and edges. The depth first
+ * search keeps its own stack of nodes and edge positions instead of recursing,
+ * so long dependency chains don't overflow the stack of the thread.
+ *
+ * The components are numbered in the order in which Tarjan's algorithm
+ * completes them, which is a reverse topological order: every edge between two
+ * components goes from a higher number to a lower one.
+ *
+ * A node is in a cycle if its component has more than one node or if it depends
+ * on itself.
+ */
+public class StronglyConnectedComponents {
+
+	// For every node, the number of its component
+	private final int[] components;
+
+	// For every component, the number of nodes
+	private final int[] sizes;
+
+	private final int componentsCount;
+
+	// For every node, true if it has an edge to itself
+	private final boolean[] selfDependent;
+
+	/**
+	 * Find the components of a graph
+	 *
+	 * @param graph the graph
+	 */
+	public StronglyConnectedComponents(DependencyGraph graph) {
+
+		int nodes = graph.getNodesCount();
+
+		components = new int[nodes];
+		selfDependent = new boolean[nodes];
+
+		// Order in which the nodes are discovered, 0 for the nodes not discovered yet
+		int[] discovered = new int[nodes];
+
+		// Lowest discovery order reachable from the node through its subtree and one
+		// edge back to a node in the stack
+		int[] lowest = new int[nodes];
+
+		// Nodes of the components not completed yet
+		int[] stack = new int[nodes];
+		boolean[] inStack = new boolean[nodes];
+		int stackSize = 0;
+
+		// The path of the search, with the next edge of every node
+		int[] path = new int[nodes];
+		int[] nextEdges = new int[nodes];
+		int pathSize = 0;
+
+		int[] componentSizes = new int[nodes];
+		int count = 0;
+		int order = 0;
+
+		for (int root = 0; root < nodes; root++) {
+
+			if (discovered[root] != 0) {
+				continue;
+			}
+
+			discovered[root] = lowest[root] = ++order;
+			stack[stackSize++] = root;
+			inStack[root] = true;
+			path[pathSize] = root;
+			nextEdges[pathSize++] = graph.getFirstEdge(root);
+
+			while (pathSize > 0) {
+
+				int node = path[pathSize - 1];
+				int edge = nextEdges[pathSize - 1];
+
+				if (edge < graph.getFirstEdge(node + 1)) {
+
+					nextEdges[pathSize - 1]++;
+					int target = graph.getTarget(edge);
+
+					if (target == node) {
+						selfDependent[node] = true;
+					} else if (discovered[target] == 0) {
+
+						discovered[target] = lowest[target] = ++order;
+						stack[stackSize++] = target;
+						inStack[target] = true;
+						path[pathSize] = target;
+						nextEdges[pathSize++] = graph.getFirstEdge(target);
+
+					} else if (inStack[target]) {
+						lowest[node] = Math.min(lowest[node], discovered[target]);
+					}
+
+					continue;
+				}
+
+				// Every edge of the node was followed
+				pathSize--;
+
+				if (lowest[node] == discovered[node]) {
+
+					int member;
+
+					do {
+						member = stack[--stackSize];
+						inStack[member] = false;
+						components[member] = count;
+						componentSizes[count]++;
+					} while (member != node);
+
+					count++;
+				}
+
+				if (pathSize > 0) {
+					int parent = path[pathSize - 1];
+					lowest[parent] = Math.min(lowest[parent], lowest[node]);
+				}
+			}
+		}
+
+		componentsCount = count;
+		sizes = Arrays.copyOf(componentSizes, count);
+	}
+
+	/**
+	 * Returns the number of nodes of the graph
+	 *
+	 * @return
+	 */
+	public int getNodesCount() {
+		return components.length;
+	}
+
+	/**
+	 * Returns the number of components
+	 *
+	 * @return
+	 */
+	public int getComponentsCount() {
+		return componentsCount;
+	}
+
+	/**
+	 * Returns the component of a node
+	 *
+	 * @param node the node
+	 * @return the number of the component
+	 */
+	public int getComponent(int node) {
+		return components[node];
+	}
+
+	/**
+	 * Returns the number of nodes of a component
+	 *
+	 * @param component the number of the component
+	 * @return
+	 */
+	public int getComponentSize(int component) {
+		return sizes[component];
+	}
+
+	/**
+	 * Test if a node is in a cycle, with other nodes or with itself
+	 *
+	 * @param node the node
+	 * @return
+	 */
+	public boolean isInCycle(int node) {
+		return sizes[components[node]] > 1 || selfDependent[node];
+	}
+
+	/**
+	 * Returns the number of components with more than one node
+	 *
+	 * @return
+	 */
+	public int getCyclesCount() {
+
+		int cycles = 0;
+
+		for (int size : sizes) {
+			if (size > 1) {
+				cycles++;
+			}
+		}
+
+		return cycles;
+	}
+
+}
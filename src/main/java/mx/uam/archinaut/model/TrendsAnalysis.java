@@ -3,9 +3,7 @@ package mx.uam.archinaut.model;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.math3.stat.regression.SimpleRegression;
 import org.slf4j.Logger;
@@ -32,8 +30,12 @@ public class TrendsAnalysis implements Serializable {
 	// Matrixes that compose this trend analysis
 	private List<DesignStructureMatrix> matrixes;
 
-	// Hashmap for speeding up searches
-	private Map<String, Integer> nameAndRowMap = new HashMap<>();
+	// Rows of the elements by the id of their full name, the ids that are not in
+	// the most recent matrix have no row
+	private IdIndex rowsById;
+
+	// Number of different elements in the rows
+	private int elementsCount = 0;
 
 	// Matrix of elements, columns are versions, rows are elements
 	private MatrixElement[][] elements;
@@ -53,12 +55,17 @@ public class TrendsAnalysis implements Serializable {
 		// Columns is the number of versions
 		elements = new MatrixElement[currentMatrix.getElementsCount()][matrixes.size()];
 
+		rowsById = new IdIndex(currentMatrix.getElementsCount());
+
 		int row = 0;
 		for (MatrixElement element : currentMatrix.getElements()) {
 
-			// Add all the element names of the matrix to the array
-			String fullName = element.getFullName();
-			nameAndRowMap.put(fullName, row);
+			// Add all the element ids of the matrix to the array
+			int id = element.getId();
+
+			if (rowsById.put(id, row) == -1) {
+				elementsCount++;
+			}
 
 			// Put the elements of the most recent matrix on the rightmost column
 			elements[row][matrixes.size() - 1] = element;
@@ -66,7 +73,7 @@ public class TrendsAnalysis implements Serializable {
 			for (int column = 0; column < matrixes.size() - 1; column++) {
 				currentMatrix = matrixes.get(matrixes.size() - 1 - column);
 
-				MatrixElement thisElement = currentMatrix.getElementByFullname(fullName);
+				MatrixElement thisElement = currentMatrix.findElement(id);
 
 				// If the element was not present in a previous snapshot, thisElement will be
 				// null
@@ -86,11 +93,24 @@ public class TrendsAnalysis implements Serializable {
 	 * @return
 	 */
 	public int[] getResultsFor(String elementFullName, ElementMetric type, boolean useDeltas) {
+		return getResultsFor(ElementSymbolTable.getId(elementFullName), type, useDeltas);
+	}
+
+	/**
+	 * Returns the values of the metric of an element across all snapshots given
+	 * the id of its full name
+	 * 
+	 * @param elementId
+	 * @param type
+	 * @param useDeltas
+	 * @return
+	 */
+	public int[] getResultsFor(int elementId, ElementMetric type, boolean useDeltas) {
 		// First matrix in the array is the most recent one
-		int index = nameAndRowMap.get(elementFullName);
+		int index = rowsById.get(elementId);
 
 		if (index == -1) {
-			logger.warn("TrendsAnalysis.getResultsFor: Element not found " + elementFullName);
+			logger.warn("TrendsAnalysis.getResultsFor: Element not found " + elementId);
 		}
 
 		int[] result = new int[matrixes.size()];
@@ -110,9 +130,9 @@ public class TrendsAnalysis implements Serializable {
 		} else {
 			for (int i = 0; i < matrixes.size(); i++) {
 				if (i == 0) {
-					result[i] = getDelta(elementFullName, type, 0, 0);
+					result[i] = getDelta(elementId, type, 0, 0);
 				} else {
-					result[i] = getDelta(elementFullName, type, i, i - 1);
+					result[i] = getDelta(elementId, type, i, i - 1);
 				}
 			}
 
@@ -138,7 +158,7 @@ public class TrendsAnalysis implements Serializable {
 	 * @return
 	 */
 	public int getElementsCount() {
-		return nameAndRowMap.size();
+		return elementsCount;
 	}
 
 	/**
@@ -207,6 +227,40 @@ public class TrendsAnalysis implements Serializable {
 		if (firstIndex != 0 && secondIndex == firstIndex)
 			return 0;
 
+		checkDeltaIndexes(firstIndex, secondIndex);
+
+		// We need to translate the name to the one in the more recentMatrix
+		MatrixElement elementInFirst = getSnapshot(firstIndex).getElementByFullname(elementFullName);
+		MatrixElement elementInSecond = getSnapshot(secondIndex).getElementByFullname(elementFullName);
+
+		return getDelta(elementInFirst, elementInSecond, type, firstIndex);
+	}
+
+	/**
+	 * Calculate a difference in the value of a metric for an element between two
+	 * indexes given the id of its full name
+	 * 
+	 * @param elementId
+	 * @param type
+	 * @param firstIndex  index of newer snapshot 1
+	 * @param secondIndex index of older snapshot 0
+	 * @return
+	 */
+	public int getDelta(int elementId, ElementMetric type, int firstIndex, int secondIndex) {
+
+		if (firstIndex != 0 && secondIndex == firstIndex)
+			return 0;
+
+		checkDeltaIndexes(firstIndex, secondIndex);
+
+		MatrixElement elementInFirst = getSnapshot(firstIndex).findElement(elementId);
+		MatrixElement elementInSecond = getSnapshot(secondIndex).findElement(elementId);
+
+		return getDelta(elementInFirst, elementInSecond, type, firstIndex);
+	}
+
+	private void checkDeltaIndexes(int firstIndex, int secondIndex) {
+
 		if (secondIndex >= matrixes.size() || firstIndex >= matrixes.size())
 			throw new IndexOutOfBoundsException("Index bigger than matrix size first: " + firstIndex + " second: "
 					+ secondIndex + " size:" + matrixes.size());
@@ -217,10 +271,10 @@ public class TrendsAnalysis implements Serializable {
 		if (firstIndex < secondIndex)
 			throw new IndexOutOfBoundsException(
 					"first index smaller than second index first: " + firstIndex + " second: " + secondIndex);
+	}
 
-		// We need to translate the name to the one in the more recentMatrix
-		MatrixElement elementInFirst = getSnapshot(firstIndex).getElementByFullname(elementFullName);
-		MatrixElement elementInSecond = getSnapshot(secondIndex).getElementByFullname(elementFullName);
+	private int getDelta(MatrixElement elementInFirst, MatrixElement elementInSecond, ElementMetric type,
+			int firstIndex) {
 
 		// The element is not present in any of the snapshots
 		if (elementInFirst == null && elementInSecond == null) {
@@ -254,8 +308,8 @@ public class TrendsAnalysis implements Serializable {
 		int deltaMinimum = 0;
 
 		// This goes across all files
-		for (String currentName : nameAndRowMap.keySet()) {
-			int[] results = getResultsFor(currentName, type, false);
+		for (int row = 0; row < elements.length; row++) {
+			int[] results = getResultsFor(getElement(row).getId(), type, false);
 			for (int i = 1; i < results.length; i++) {
 				// We do not consider elements that just appeared
 				// in the calculation, or elements that have disappeared
@@ -305,7 +359,7 @@ public class TrendsAnalysis implements Serializable {
 						rowValue = elements[i][index].getMetricValue(type);
 					} else {
 						try {
-							rowValue = getDelta(current.getFullName(), type, index, index - 1);
+							rowValue = getDelta(current.getId(), type, index, index - 1);
 						} catch (Exception e) {
 							System.out.println("Exception: name" + current + " index:" + index);
 						}
@@ -523,7 +577,7 @@ public class TrendsAnalysis implements Serializable {
 		for (MatrixElement element : currentMatrix.getElements()) {
 			newRow = new String[matrixes.size() + 1];
 			newRow[0] = element.getFullName();
-			int metricResults[] = getResultsFor(element.getFullName(), metric, deltas);
+			int metricResults[] = getResultsFor(element.getId(), metric, deltas);
 			for (int i = 0; i < matrixes.size(); i++) {
 				if (metricResults[i] != Integer.MIN_VALUE) {
 					newRow[i + 1] = Integer.toString(metricResults[i]);
@@ -0,0 +1,68 @@
+package mx.uam.archinaut.model.yaml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mx.uam.archinaut.model.DependencyRule;
+
+/**
+ * The configuration file of an analysis, parsed once and validated. It has the
+ * depends source that the matrix is loaded from, the sources of the metrics
+ * in the order of the file and the dependency rules.
+ */
+public final class AnalysisConfiguration {
+
+	private final String fileName;
+
+	private final SourceConfiguration dependsSource;
+
+	private final List<SourceConfiguration> metricSources;
+
+	private final List<DependencyRule> dependencyRules;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileName      the configuration file
+	 * @param dependsSource the depends output
+	 * @param metricSources the other sources, in the order of the file
+	 */
+	public AnalysisConfiguration(String fileName, SourceConfiguration dependsSource,
+			List<SourceConfiguration> metricSources) {
+		this(fileName, dependsSource, metricSources, Collections.emptyList());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileName        the configuration file
+	 * @param dependsSource   the depends output
+	 * @param metricSources   the other sources, in the order of the file
+	 * @param dependencyRules the rules checked on the matrix
+	 */
+	public AnalysisConfiguration(String fileName, SourceConfiguration dependsSource,
+			List<SourceConfiguration> metricSources, List<DependencyRule> dependencyRules) {
+		this.fileName = fileName;
+		this.dependsSource = dependsSource;
+		this.metricSources = Collections.unmodifiableList(new ArrayList<>(metricSources));
+		this.dependencyRules = Collections.unmodifiableList(new ArrayList<>(dependencyRules));
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public SourceConfiguration getDependsSource() {
+		return dependsSource;
+	}
+
+	public List<SourceConfiguration> getMetricSources() {
+		return metricSources;
+	}
+
+	public List<DependencyRule> getDependencyRules() {
+		return dependencyRules;
+	}
+
+}
@@ -0,0 +1,19 @@
+package mx.uam.archinaut.model.yaml;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class ConstraintsConfiguration {
+
+	// Constraints saved by the ConstraintsLoader, optional
+	private String file;
+
+	// Selectors of the layers from the top one down, a layer must not depend on the
+	// layers above it
+	private List<String> layers;
+
+	private List<RuleConfiguration> rules;
+
+}
@@ -11,4 +11,7 @@ public class Metric {
 
 	private Boolean filename = false;
 
+	// The column with the element that changed with the filename, in COUPLING entries
+	private Boolean coupled = false;
+
 }
@@ -0,0 +1,14 @@
+package mx.uam.archinaut.model.yaml;
+
+import lombok.Data;
+
+@Data
+public class RuleConfiguration {
+
+	// Selector of the elements the rule applies to, see NameFilter
+	private String source;
+
+	// Selector of the elements they must not depend on
+	private String mustNotDependOn;
+
+}
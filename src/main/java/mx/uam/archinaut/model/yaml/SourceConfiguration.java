@@ -0,0 +1,246 @@
+package mx.uam.archinaut.model.yaml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mx.uam.archinaut.data.nameprocessing.NameFilter;
+import mx.uam.archinaut.data.nameprocessing.NameTransformer;
+
+/**
+ * An entry of the configuration file prepared for loading. The values are
+ * copied from the YamlConfigurationEntry, so later changes to the entry are not
+ * seen, and everything the loaders need per row is derived once: the compiled
+ * renaming and exclusions, the columns to read and the names the metrics are
+ * saved with.
+ */
+public final class SourceConfiguration {
+
+	public static final String DEPENDS_FORMAT = "DEPENDS";
+
+	public static final String CSV_FORMAT = "CSV";
+
+	public static final String COUPLING_FORMAT = "COUPLING";
+
+	private final String file;
+
+	private final String format;
+
+	private final NameTransformer renamer;
+
+	// The elements that are not loaded, it never matches for the metric sources
+	private final NameFilter exclusions;
+
+	// Column with the names of the elements, null if no metric is the filename
+	private final String filenameColumn;
+
+	// Column with the names of the coupled elements, null if no metric is coupled
+	private final String coupledColumn;
+
+	// Columns of the metrics in the file
+	private final List<String> metricColumns;
+
+	// Names of the metrics in the elements, in the order of the columns
+	private final List<String> metricNames;
+
+	// Columns read from the file, the filename and coupled columns first
+	private final List<String> columns;
+
+	// Everything that changes the parsed form of the source but the file contents
+	private final String signature;
+
+	/**
+	 * Constructor
+	 *
+	 * @param entry   the entry of the configuration file
+	 * @param renamer the compiled renaming configuration of the entry
+	 */
+	public SourceConfiguration(YamlConfigurationEntry entry, NameTransformer renamer) {
+
+		this.file = entry.getFile();
+		this.format = entry.getFormat();
+		this.renamer = renamer;
+		this.exclusions = entry.getExclusions() == null ? NameFilter.NONE : NameFilter.compile(entry.getExclusions());
+
+		String filename = null;
+		String coupled = null;
+		List<String> columns = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+
+		if (entry.getMetrics() != null) {
+			for (Metric metric : entry.getMetrics()) {
+				if (Boolean.TRUE.equals(metric.getFilename())) {
+					filename = filename == null ? metric.getName() : filename;
+				} else if (Boolean.TRUE.equals(metric.getCoupled())) {
+					coupled = coupled == null ? metric.getName() : coupled;
+				} else {
+					columns.add(metric.getName());
+					names.add(getSavedName(metric));
+				}
+			}
+		}
+
+		this.filenameColumn = filename;
+		this.coupledColumn = coupled;
+		this.metricColumns = Collections.unmodifiableList(columns);
+		this.metricNames = Collections.unmodifiableList(names);
+
+		List<String> projection = new ArrayList<>();
+		projection.add(filename);
+		if (coupled != null) {
+			projection.add(coupled);
+		}
+		projection.addAll(columns);
+		this.columns = Collections.unmodifiableList(projection);
+
+		this.signature = createSignature(entry);
+	}
+
+	/**
+	 * Returns the name a metric is saved with, its rename if it has one
+	 *
+	 * @param metric the metric of an entry
+	 * @return the name
+	 */
+	public static String getSavedName(Metric metric) {
+		return metric.getRename() == null || metric.getRename().isBlank() ? metric.getName() : metric.getRename();
+	}
+
+	private static String createSignature(YamlConfigurationEntry entry) {
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(entry.getFile()).append('\n');
+		sb.append(entry.getFormat()).append('\n');
+
+		RenamingConfiguration renaming = entry.getRenaming();
+
+		if (renaming != null) {
+
+			sb.append(renaming.getPathSeparator()).append('\n');
+			sb.append(renaming.getPrefix()).append('\n');
+			sb.append(renaming.getSuffix()).append('\n');
+
+			if (renaming.getSubstitutions() != null) {
+				for (Substitution substitution : renaming.getSubstitutions()) {
+					sb.append(substitution.getOrder()).append(' ').append(substitution.getSubstitute()).append(' ')
+							.append(substitution.getWith()).append('\n');
+				}
+			}
+		}
+
+		if (entry.getExclusions() != null) {
+			for (String exclusion : entry.getExclusions()) {
+				sb.append("exclude ").append(exclusion).append('\n');
+			}
+		}
+
+		if (entry.getMetrics() != null) {
+			for (Metric metric : entry.getMetrics()) {
+				sb.append(metric.getName()).append(' ').append(metric.getRename()).append(' ')
+						.append(metric.getFilename()).append(' ').append(metric.getCoupled()).append('\n');
+			}
+		}
+
+		return sb.toString();
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	public boolean isDepends() {
+		return DEPENDS_FORMAT.equals(format);
+	}
+
+	public boolean isCsv() {
+		return CSV_FORMAT.equalsIgnoreCase(format);
+	}
+
+	public boolean isCoupling() {
+		return COUPLING_FORMAT.equalsIgnoreCase(format);
+	}
+
+	public NameTransformer getRenamer() {
+		return renamer;
+	}
+
+	public NameFilter getExclusions() {
+		return exclusions;
+	}
+
+	/**
+	 * Returns the column with the names of the elements
+	 *
+	 * @return the column
+	 * @throws IllegalArgumentException if no metric is the filename
+	 */
+	public String getFilenameColumn() {
+
+		if (filenameColumn == null) {
+			throw new IllegalArgumentException("Filename metric not found for " + file);
+		}
+
+		return filenameColumn;
+	}
+
+	/**
+	 * Returns the column with the names of the elements that changed with the
+	 * element of the filename column
+	 *
+	 * @return the column
+	 * @throws IllegalArgumentException if no metric is coupled
+	 */
+	public String getCoupledColumn() {
+
+		if (coupledColumn == null) {
+			throw new IllegalArgumentException("Coupled metric not found for " + file);
+		}
+
+		return coupledColumn;
+	}
+
+	public List<String> getMetricColumns() {
+		return metricColumns;
+	}
+
+	public List<String> getMetricNames() {
+		return metricNames;
+	}
+
+	/**
+	 * Returns the columns that are read from the file, the filename column, the
+	 * coupled column if there is one and then the metric columns
+	 *
+	 * @return
+	 * @throws IllegalArgumentException if no metric is the filename
+	 */
+	public List<String> getColumns() {
+
+		// Fails if there's no filename column
+		getFilenameColumn();
+
+		return columns;
+	}
+
+	/**
+	 * Returns a description of everything that changes the parsed form of this
+	 * source, besides the contents of its file. Two sources with the same
+	 * signature parse the same file the same way
+	 *
+	 * @return
+	 */
+	public String getSignature() {
+		return signature;
+	}
+
+	@Override
+	public String toString() {
+		return format + " source " + file;
+	}
+
+}
@@ -14,6 +14,12 @@ public class YamlConfigurationEntry {
 
 	private List<Metric> metrics;
 
+	// Elements of the depends output that are not loaded, see NameFilter
+	private List<String> exclusions;
+
+	// Dependency rules checked on the matrix, only in the depends entry
+	private ConstraintsConfiguration constraints;
+
 	public String getFilenameMetricName() {
 
 		for (Metric m : metrics) {
@@ -9,6 +9,7 @@ import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionGroup;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,8 +36,20 @@ public class CliService implements CommandLineRunner {
 	@Autowired
 	private JunitService junitService;
 
+	@Autowired
+	private DependencyAnalysisService analysisService;
+
+	@Autowired
+	private DependencyRulesService rulesService;
+
 	public static final String CONFIGURATION_OPTION = "configuration";
 	public static final String CONFIGURATION_SHORT_OPTION = "c";
+	public static final String SAVE_SNAPSHOT_OPTION = "save-snapshot";
+	public static final String SAVE_SNAPSHOT_SHORT_OPTION = "s";
+	public static final String LOAD_SNAPSHOT_OPTION = "load-snapshot";
+	public static final String LOAD_SNAPSHOT_SHORT_OPTION = "l";
+	public static final String CACHE_DIRECTORY_OPTION = "cache-directory";
+	public static final String CACHE_DIRECTORY_SHORT_OPTION = "d";
 
 	@Override
 	public void run(String... args) throws Exception {
@@ -49,25 +62,63 @@ public class CliService implements CommandLineRunner {
 
 		Options options = new Options();
 
-		options.addOption(Option.builder(CONFIGURATION_SHORT_OPTION).longOpt(CONFIGURATION_OPTION).required(true)
+		// The matrix is loaded either from the configuration file or from a snapshot
+		OptionGroup sources = new OptionGroup();
+		sources.setRequired(true);
+
+		sources.addOption(Option.builder(CONFIGURATION_SHORT_OPTION).longOpt(CONFIGURATION_OPTION)
 				.desc("Path to the configuration.yml file").hasArg().build());
 
+		sources.addOption(Option.builder(LOAD_SNAPSHOT_SHORT_OPTION).longOpt(LOAD_SNAPSHOT_OPTION)
+				.desc("Load the matrix from this snapshot instead of the configuration file").hasArg().build());
+
+		options.addOptionGroup(sources);
+
+		options.addOption(Option.builder(SAVE_SNAPSHOT_SHORT_OPTION).longOpt(SAVE_SNAPSHOT_OPTION)
+				.desc("Save a snapshot of the loaded matrix to this file").hasArg().build());
+
+		options.addOption(Option.builder(CACHE_DIRECTORY_SHORT_OPTION).longOpt(CACHE_DIRECTORY_OPTION)
+				.desc("Directory where parsed inputs are cached, only inputs that changed are parsed again").hasArg()
+				.build());
+
 		try {
 
 			// Parse the command line args
 			CommandLine line = parser.parse(options, args);
 
-			// Check if we have the configuration filename option
-			if (!line.getOptionValue(CONFIGURATION_OPTION).isBlank()) {
+			DesignStructureMatrix matrix = null;
+
+			if (!line.getOptionValue(LOAD_SNAPSHOT_OPTION, "").isBlank()) {
+
+				matrix = dsmService.loadSnapshot(line.getOptionValue(LOAD_SNAPSHOT_OPTION));
+
+			} else if (!line.getOptionValue(CONFIGURATION_OPTION, "").isBlank()) {
 
 				log.info("Loading " + line.getOptionValue(CONFIGURATION_OPTION));
 
-				DesignStructureMatrix matrix = dsmService
-						.loadDataBasedOnConfigurationFile(line.getOptionValue(CONFIGURATION_OPTION));
+				String cacheDirectory = line.getOptionValue(CACHE_DIRECTORY_OPTION, "");
+
+				matrix = dsmService.loadDataBasedOnConfigurationFile(line.getOptionValue(CONFIGURATION_OPTION),
+						cacheDirectory.isBlank() ? null : cacheDirectory);
+
+			}
+
+			// Check if we have a matrix from the configuration file or a snapshot
+			if (matrix != null) {
+
+				// The metrics calculated from the dependencies are reported with the loaded
+				// ones
+				analysisService.addDependencyMetrics(matrix);
+
+				if (!line.getOptionValue(SAVE_SNAPSHOT_OPTION, "").isBlank()) {
+					dsmService.saveSnapshot(matrix, line.getOptionValue(SAVE_SNAPSHOT_OPTION));
+				}
 
 				metricsService.saveMetricsReport(matrix, "archinaut.csv");
 
-				junitService.createJunitReport(matrix);
+				metricsService.savePackagesReport(matrix, "archinaut-packages.csv");
+
+				junitService.createJunitReport(matrix, rulesService.findViolations(matrix));
 
 				File results = new File("archinaut.csv");
 
@@ -80,13 +131,18 @@ public class CliService implements CommandLineRunner {
 			} else {
 
 				// If we miss the configuration arguments, invoke help
-				formatter.printHelp("java -jar archinaut.jar --configuration configuration.yml", options);
+				formatter.printHelp(
+						"java -jar archinaut.jar --configuration configuration.yml | --load-snapshot archinaut.snapshot",
+						options);
 				System.exit(1);
 
 			}
 
 		} catch (ParseException e) {
 			log.error("Error parsing command line options: " + e.getMessage(), e);
+		} catch (IllegalArgumentException e) {
+			log.error(e.getMessage());
+			System.exit(1);
 		} catch (JAXBException je) {
 			log.error("Error creating JUnit report: " + je.getMessage(), je);
 		}
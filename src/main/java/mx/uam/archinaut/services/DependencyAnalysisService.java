@@ -0,0 +1,365 @@
+package mx.uam.archinaut.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+import mx.uam.archinaut.model.DependencyGraph;
+import mx.uam.archinaut.model.DependencyTypeTable;
+import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.MatrixDependencyGroup;
+import mx.uam.archinaut.model.MatrixElement;
+import mx.uam.archinaut.model.MatrixElementGroup;
+import mx.uam.archinaut.model.Reachability;
+import mx.uam.archinaut.model.StronglyConnectedComponents;
+
+/**
+ * Service that calculates metrics of the elements from the structure of the
+ * dependencies of the matrix. The metrics are saved in the elements, so they
+ * are part of the metrics report and can have JUnit thresholds like the
+ * metrics loaded from the configuration file
+ */
+@Slf4j
+@Service
+public class DependencyAnalysisService {
+
+	// Number of the strongly connected component of the element
+	public static final String CYCLE_ID = "CYCLE_ID";
+
+	// Number of elements of the component, 1 if the element is in no cycle
+	public static final String CYCLE_SIZE = "CYCLE_SIZE";
+
+	// 1 if the element is in a cycle, 0 if not
+	public static final String IN_CYCLE = "IN_CYCLE";
+
+	// Number of the strongly connected component of a group among the groups at
+	// its depth
+	public static final String GROUP_CYCLE_ID = "GROUP_CYCLE_ID";
+
+	// Number of groups of the component, 1 if the group is in no cycle
+	public static final String GROUP_CYCLE_SIZE = "GROUP_CYCLE_SIZE";
+
+	// Number of other elements that the element depends on, directly or not
+	public static final String PROPAGATION_REACH = "PROPAGATION_REACH";
+
+	// Number of other elements that depend on the element, directly or not
+	public static final String PROPAGATION_FANIN = "PROPAGATION_FANIN";
+
+	// Number of other elements that depend on the element
+	public static final String FAN_IN = "FAN_IN";
+
+	// Number of other elements that the element depends on
+	public static final String FAN_OUT = "FAN_OUT";
+
+	// Dependencies from other elements to the element
+	public static final String INCOMING_DEPS = "INCOMING_DEPS";
+
+	// Dependencies from the element to other elements
+	public static final String OUTGOING_DEPS = "OUTGOING_DEPS";
+
+	// Followed by the dependency type, such as OUTGOING_CALL
+	public static final String OUTGOING_PREFIX = "OUTGOING_";
+
+	// The metrics of the elements saved by this service, besides the ones with
+	// the OUTGOING_ prefix
+	private static final Set<String> COMPUTED_METRICS = Set.of(CYCLE_ID, CYCLE_SIZE, IN_CYCLE, GROUP_CYCLE_ID,
+			GROUP_CYCLE_SIZE, PROPAGATION_REACH, PROPAGATION_FANIN, FAN_IN, FAN_OUT, INCOMING_DEPS, OUTGOING_DEPS);
+
+	/**
+	 * Test if a metric is calculated by this service. A metric loaded from the
+	 * configuration file with the same name would be overwritten
+	 *
+	 * @param name the name of the metric
+	 * @return true if the name is reserved for a calculated metric
+	 */
+	public static boolean isComputedMetric(String name) {
+		return COMPUTED_METRICS.contains(name) || name.startsWith(OUTGOING_PREFIX);
+	}
+
+	/**
+	 * Calculate every metric of the elements that comes from the dependencies,
+	 * building the graph of the dependencies once
+	 *
+	 * @param matrix the matrix
+	 */
+	public void addDependencyMetrics(DesignStructureMatrix matrix) {
+
+		addStructuralMetrics(matrix);
+
+		DependencyGraph graph = matrix.createDependencyGraph();
+
+		StronglyConnectedComponents components = addCycleMetrics(matrix, graph);
+		addPropagationMetrics(matrix, graph, components);
+	}
+
+	/**
+	 * Count the dependencies of every element in one pass over the cells of the
+	 * matrix and save the FAN_IN, FAN_OUT, INCOMING_DEPS and OUTGOING_DEPS
+	 * metrics, and an OUTGOING_ metric for every dependency type of the matrix.
+	 * Cells that only have co-changes and the dependencies of an element on itself
+	 * are not counted
+	 *
+	 * @param matrix the matrix
+	 */
+	public void addStructuralMetrics(DesignStructureMatrix matrix) {
+
+		int elements = matrix.getElementsCount();
+		int types = DependencyTypeTable.size();
+
+		int[] fanIn = new int[elements];
+		int[] fanOut = new int[elements];
+		int[] incoming = new int[elements];
+		int[] outgoing = new int[elements];
+
+		// The occurrences of every type for every element, one row per element
+		int[] typeCounts = new int[elements * types];
+
+		for (int i = 0; i < elements; i++) {
+			for (MatrixDependencyGroup group : matrix.getElement(i).getDependencies()) {
+
+				int destination = matrix.getIndexOfElement(group.getDestination());
+				int total = group.getTotalDependencies();
+
+				if (destination == -1 || destination == i || total == 0) {
+					continue;
+				}
+
+				fanOut[i]++;
+				fanIn[destination]++;
+				outgoing[i] += total;
+				incoming[destination] += total;
+
+				group.addOccurrencesTo(typeCounts, i * types);
+			}
+		}
+
+		matrix.setMetricValues(FAN_IN, fanIn);
+		matrix.setMetricValues(FAN_OUT, fanOut);
+		matrix.setMetricValues(INCOMING_DEPS, incoming);
+		matrix.setMetricValues(OUTGOING_DEPS, outgoing);
+
+		for (int type = 0; type < types; type++) {
+
+			int[] values = new int[elements];
+			boolean found = false;
+
+			for (int i = 0; i < elements; i++) {
+				values[i] = typeCounts[i * types + type];
+				found |= values[i] != 0;
+			}
+
+			// Only the types that the dependencies of the matrix have
+			if (found) {
+				matrix.setMetricValues(OUTGOING_PREFIX + DependencyTypeTable.getName(type).toUpperCase(), values);
+			}
+		}
+
+		matrix.updateElementValueRanges();
+	}
+
+	/**
+	 * Find the cycles of dependencies between the elements and save the
+	 * CYCLE_ID, CYCLE_SIZE and IN_CYCLE metrics of every element. The cycles
+	 * between the groups of every depth of the namespace grouping are found as
+	 * well, and the GROUP_CYCLE_ID and GROUP_CYCLE_SIZE metrics are saved in the
+	 * groups
+	 *
+	 * @param matrix the matrix
+	 * @return the strongly connected components of the elements, in the order of
+	 *         their indexes
+	 */
+	public StronglyConnectedComponents addCycleMetrics(DesignStructureMatrix matrix) {
+		return addCycleMetrics(matrix, matrix.createDependencyGraph());
+	}
+
+	private StronglyConnectedComponents addCycleMetrics(DesignStructureMatrix matrix, DependencyGraph graph) {
+
+		StronglyConnectedComponents components = new StronglyConnectedComponents(graph);
+
+		int elements = matrix.getElementsCount();
+		int[] ids = new int[elements];
+		int[] sizes = new int[elements];
+		int[] inCycle = new int[elements];
+
+		for (int i = 0; i < elements; i++) {
+			ids[i] = components.getComponent(i);
+			sizes[i] = components.getComponentSize(ids[i]);
+			inCycle[i] = components.isInCycle(i) ? 1 : 0;
+		}
+
+		matrix.setMetricValues(CYCLE_ID, ids);
+		matrix.setMetricValues(CYCLE_SIZE, sizes);
+		matrix.setMetricValues(IN_CYCLE, inCycle);
+		matrix.updateElementValueRanges();
+
+		log.info("Found {} cycles between the {} elements", components.getCyclesCount(), elements);
+
+		List<StronglyConnectedComponents> levels = findGroupCycles(matrix, graph);
+		List<List<MatrixElementGroup>> groups = getGroupsByDepth(matrix);
+
+		for (int depth = 1; depth <= levels.size(); depth++) {
+
+			StronglyConnectedComponents level = levels.get(depth - 1);
+			List<MatrixElementGroup> levelGroups = groups.get(depth - 1);
+
+			for (int i = 0; i < levelGroups.size(); i++) {
+
+				int id = level.getComponent(i);
+
+				levelGroups.get(i).setMetricValue(GROUP_CYCLE_ID, id);
+				levelGroups.get(i).setMetricValue(GROUP_CYCLE_SIZE, level.getComponentSize(id));
+			}
+
+			if (level.getCyclesCount() > 0) {
+				log.info("Found {} cycles between the {} groups at depth {}", level.getCyclesCount(),
+						level.getNodesCount(), depth);
+			}
+		}
+
+		return components;
+	}
+
+	/**
+	 * Find how many elements every element depends on and how many depend on it,
+	 * directly or through other elements, and save them as the PROPAGATION_REACH
+	 * and PROPAGATION_FANIN metrics. The propagation cost of the matrix is logged
+	 *
+	 * @param matrix the matrix
+	 * @return the reachability of the elements, in the order of their indexes
+	 */
+	public Reachability addPropagationMetrics(DesignStructureMatrix matrix) {
+
+		DependencyGraph graph = matrix.createDependencyGraph();
+
+		return addPropagationMetrics(matrix, graph, new StronglyConnectedComponents(graph));
+	}
+
+	private Reachability addPropagationMetrics(DesignStructureMatrix matrix, DependencyGraph graph,
+			StronglyConnectedComponents components) {
+
+		Reachability reachability = new Reachability(graph, components);
+
+		int elements = matrix.getElementsCount();
+		int[] reached = new int[elements];
+		int[] reachedBy = new int[elements];
+
+		for (int i = 0; i < elements; i++) {
+			reached[i] = reachability.getReached(i);
+			reachedBy[i] = reachability.getReachedBy(i);
+		}
+
+		matrix.setMetricValues(PROPAGATION_REACH, reached);
+		matrix.setMetricValues(PROPAGATION_FANIN, reachedBy);
+		matrix.updateElementValueRanges();
+
+		log.info("Propagation cost of the {} elements is {}%", elements,
+				String.format("%.2f", reachability.getPropagationCost() * 100));
+
+		return reachability;
+	}
+
+	/**
+	 * Find the cycles of dependencies between the groups of the namespace grouping,
+	 * one depth at a time. There is a dependency between two groups of the same
+	 * depth if an element below one depends on an element below the other, the
+	 * dependencies between elements of the same group are not counted
+	 *
+	 * @param matrix the matrix
+	 * @param graph  the graph of the dependencies between the elements of the
+	 *               matrix
+	 * @return the strongly connected components of the groups of every depth,
+	 *         starting with the children of the root. The nodes are the groups in
+	 *         the order of the tree. Empty if the matrix has no namespace grouping
+	 */
+	public List<StronglyConnectedComponents> findGroupCycles(DesignStructureMatrix matrix, DependencyGraph graph) {
+
+		List<StronglyConnectedComponents> levels = new ArrayList<>();
+		List<List<MatrixElementGroup>> groups = getGroupsByDepth(matrix);
+
+		// Depth and position in its depth of every group below the root
+		Map<MatrixElement, int[]> positions = new IdentityHashMap<>();
+
+		for (int depth = 1; depth <= groups.size(); depth++) {
+			for (int i = 0; i < groups.get(depth - 1).size(); i++) {
+				positions.put(groups.get(depth - 1).get(i), new int[] { depth, i });
+			}
+		}
+
+		// For every depth, the group of every element at that depth, or -1
+		int elements = matrix.getElementsCount();
+		int[][] sets = new int[groups.size()][elements];
+
+		for (int[] set : sets) {
+			Arrays.fill(set, -1);
+		}
+
+		for (int i = 0; i < elements; i++) {
+			for (MatrixElement group = matrix.getElement(i).getGroup(); group != null; group = group.getGroup()) {
+
+				int[] position = positions.get(group);
+
+				if (position != null) {
+					sets[position[0] - 1][i] = position[1];
+				}
+			}
+		}
+
+		for (int depth = 1; depth <= sets.length; depth++) {
+			levels.add(new StronglyConnectedComponents(graph.condense(sets[depth - 1], groups.get(depth - 1).size())));
+		}
+
+		return levels;
+	}
+
+	/**
+	 * Returns the groups of every depth of the namespace grouping in the order of
+	 * the tree, starting with the children of the root
+	 */
+	private static List<List<MatrixElementGroup>> getGroupsByDepth(DesignStructureMatrix matrix) {
+
+		List<List<MatrixElementGroup>> depths = new ArrayList<>();
+
+		if (matrix.getRootGroup() == null) {
+			return depths;
+		}
+
+		List<MatrixElementGroup> groups = getGroups(matrix.getRootGroup());
+
+		while (!groups.isEmpty()) {
+
+			List<MatrixElementGroup> children = new ArrayList<>();
+
+			for (MatrixElementGroup group : groups) {
+				children.addAll(getGroups(group));
+			}
+
+			depths.add(groups);
+			groups = children;
+		}
+
+		return depths;
+	}
+
+	/**
+	 * Returns the children of a group that are groups
+	 */
+	private static List<MatrixElementGroup> getGroups(MatrixElementGroup group) {
+
+		List<MatrixElementGroup> groups = new ArrayList<>();
+
+		for (MatrixElement child : group.getChildren()) {
+			if (child instanceof MatrixElementGroup) {
+				groups.add((MatrixElementGroup) child);
+			}
+		}
+
+		return groups;
+	}
+
+}
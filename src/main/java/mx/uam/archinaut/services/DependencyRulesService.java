@@ -0,0 +1,315 @@
+package mx.uam.archinaut.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+import mx.uam.archinaut.data.nameprocessing.NameFilter;
+import mx.uam.archinaut.model.DependencyConstraint;
+import mx.uam.archinaut.model.DependencyConstraintViolation;
+import mx.uam.archinaut.model.DependencyRule;
+import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.MatrixDependencyGroup;
+import mx.uam.archinaut.model.MatrixElement;
+import mx.uam.archinaut.model.MatrixElementGroup;
+
+/**
+ * Service that checks the dependencies of a matrix against its dependency rules
+ * and its dependency constraints.
+ *
+ * The rules are compiled into an index first: the selectors that name a single
+ * element, as the ones of the constraints, are looked up by name, the other
+ * selectors are joined into one NameFilter that reports which of them match a
+ * name. The namespace tree is walked from the root, so every node gets the
+ * selectors of its ancestors and the ones that match its own name. The elements
+ * that end up with the same selectors share a class, and every class keeps the
+ * rules whose source selector it has. The dependencies are then checked in one
+ * pass, and only the rules of the class of the source of each dependency are
+ * looked at.
+ */
+@Slf4j
+@Service
+public class DependencyRulesService {
+
+	/**
+	 * Find the dependencies that break a dependency rule or a dependency
+	 * constraint of the matrix. Cells that only have co-changes and dependencies
+	 * of an element on itself are not checked, and a dependency that breaks
+	 * several rules is reported with the first one
+	 *
+	 * @param matrix the matrix
+	 * @return the violations, in the order of the elements
+	 * @throws IllegalArgumentException if a selector of a rule is not valid
+	 */
+	public List<DependencyConstraintViolation> findViolations(DesignStructureMatrix matrix) {
+
+		List<DependencyRule> rules = new ArrayList<>(matrix.getDependencyRules());
+		List<DependencyConstraint> constraints = new ArrayList<>();
+
+		// The constraints are rules between the elements or groups they name
+		for (DependencyConstraint constraint : matrix.getDependencyConstraints()) {
+			rules.add(new DependencyRule(NameFilter.exactly(constraint.getSource().getFullName()),
+					NameFilter.exactly(constraint.getDestination().getFullName()), constraint.toString()));
+			constraints.add(constraint);
+		}
+
+		if (rules.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		RuleIndex index = new RuleIndex(matrix, rules);
+
+		List<DependencyConstraintViolation> violations = new ArrayList<>();
+		int checked = 0;
+
+		for (int i = 0; i < matrix.getElementsCount(); i++) {
+
+			int[] sourceRules = index.getRules(i);
+
+			if (sourceRules.length == 0) {
+				continue;
+			}
+
+			MatrixElement element = matrix.getElement(i);
+
+			for (MatrixDependencyGroup group : element.getDependencies()) {
+
+				int destination = matrix.getIndexOfElement(group.getDestination());
+
+				if (destination == -1 || destination == i || group.getTotalDependencies() == 0) {
+					continue;
+				}
+
+				checked++;
+
+				int rule = index.findBrokenRule(sourceRules, destination);
+
+				if (rule != -1) {
+
+					int constraint = rule - matrix.getDependencyRules().size();
+
+					if (constraint >= 0) {
+						violations.add(new DependencyConstraintViolation(group, constraints.get(constraint)));
+					} else {
+						violations.add(new DependencyConstraintViolation(group, rules.get(rule)));
+					}
+				}
+			}
+		}
+
+		log.info("Checked {} dependencies against {} dependency rules, found {} violations", checked, rules.size(),
+				violations.size());
+
+		return violations;
+	}
+
+	/**
+	 * The selectors of every element of a matrix, grouped in classes of elements
+	 * with the same selectors
+	 */
+	private static class RuleIndex {
+
+		// For every element, its class
+		private final int[] classes;
+
+		// For every class, its selectors
+		private final List<BitSet> classSelectors = new ArrayList<>();
+
+		// For every class, the rules whose source selector it has
+		private final List<int[]> classRules = new ArrayList<>();
+
+		// For every rule, its destination selector
+		private final int[] destinations;
+
+		// The selectors that match a single name, by that name. Two of them can't
+		// have the same name, as the selectors are different
+		private final Map<String, Integer> exactSelectors = new HashMap<>();
+
+		// The other selectors, joined in one filter, and the id of every selector
+		// of the filter
+		private final NameFilter patternFilter;
+
+		private final int[] patternSelectors;
+
+		RuleIndex(DesignStructureMatrix matrix, List<DependencyRule> rules) {
+
+			Map<String, Integer> selectorIds = new HashMap<>();
+
+			int[] sources = new int[rules.size()];
+			destinations = new int[rules.size()];
+
+			for (int rule = 0; rule < rules.size(); rule++) {
+				sources[rule] = getSelectorId(rules.get(rule).getSource(), selectorIds);
+				destinations[rule] = getSelectorId(rules.get(rule).getDestination(), selectorIds);
+			}
+
+			List<String> patterns = new ArrayList<>();
+			List<Integer> patternIds = new ArrayList<>();
+
+			for (Map.Entry<String, Integer> selector : selectorIds.entrySet()) {
+
+				String name = NameFilter.getExactName(selector.getKey());
+
+				if (name != null) {
+					exactSelectors.put(name, selector.getValue());
+				} else {
+					patterns.add(selector.getKey());
+					patternIds.add(selector.getValue());
+				}
+			}
+
+			// Throws the exception of the first selector that is not valid
+			patternFilter = NameFilter.compile(patterns);
+			patternSelectors = patternIds.stream().mapToInt(Integer::intValue).toArray();
+
+			// The rules of every source selector, so a class only looks at the rules of
+			// its own selectors
+			List<List<Integer>> selectorRules = new ArrayList<>();
+
+			for (int selector = 0; selector < selectorIds.size(); selector++) {
+				selectorRules.add(new ArrayList<>());
+			}
+
+			for (int rule = 0; rule < rules.size(); rule++) {
+				selectorRules.get(sources[rule]).add(rule);
+			}
+
+			classes = new int[matrix.getElementsCount()];
+
+			Map<BitSet, Integer> classIds = new HashMap<>();
+			BitSet[] elementSelectors = findSelectors(matrix);
+
+			for (int i = 0; i < classes.length; i++) {
+
+				BitSet selectors = elementSelectors[i];
+				Integer id = classIds.get(selectors);
+
+				if (id == null) {
+
+					id = classSelectors.size();
+					classIds.put(selectors, id);
+					classSelectors.add(selectors);
+
+					// In the order of the rules, so the first broken rule is reported
+					classRules.add(selectors.stream().flatMap(selector -> selectorRules.get(selector).stream()
+							.mapToInt(Integer::intValue)).sorted().toArray());
+				}
+
+				classes[i] = id;
+			}
+		}
+
+		/**
+		 * Returns the rules that apply to the dependencies of an element
+		 */
+		int[] getRules(int element) {
+			return classRules.get(classes[element]);
+		}
+
+		/**
+		 * Returns the first rule that forbids a dependency towards an element, -1 if
+		 * there is none
+		 */
+		int findBrokenRule(int[] rules, int destination) {
+
+			BitSet selectors = classSelectors.get(classes[destination]);
+
+			for (int rule : rules) {
+				if (selectors.get(destinations[rule])) {
+					return rule;
+				}
+			}
+
+			return -1;
+		}
+
+		private static int getSelectorId(String selector, Map<String, Integer> selectorIds) {
+			return selectorIds.computeIfAbsent(selector, key -> selectorIds.size());
+		}
+
+		/**
+		 * Find the selectors of every element, the ones that match its name and the
+		 * ones of the groups above it
+		 */
+		private BitSet[] findSelectors(DesignStructureMatrix matrix) {
+
+			BitSet[] selectors = new BitSet[matrix.getElementsCount()];
+
+			Deque<MatrixElement> pending = new ArrayDeque<>();
+			Deque<BitSet> inherited = new ArrayDeque<>();
+
+			if (matrix.getRootGroup() != null) {
+				for (MatrixElement child : matrix.getRootGroup().getChildren()) {
+					pending.push(child);
+					inherited.push(new BitSet());
+				}
+			}
+
+			while (!pending.isEmpty()) {
+
+				MatrixElement node = pending.pop();
+				BitSet nodeSelectors = match(node, inherited.pop());
+
+				if (node instanceof MatrixElementGroup) {
+
+					for (MatrixElement child : ((MatrixElementGroup) node).getChildren()) {
+						pending.push(child);
+						inherited.push(nodeSelectors);
+					}
+
+				} else {
+
+					int index = matrix.getIndexOfElement(node);
+
+					if (index != -1) {
+						selectors[index] = nodeSelectors;
+					}
+				}
+			}
+
+			// Elements outside of the namespace tree only have their own selectors
+			for (int i = 0; i < selectors.length; i++) {
+				if (selectors[i] == null) {
+					selectors[i] = match(matrix.getElement(i), new BitSet());
+				}
+			}
+
+			return selectors;
+		}
+
+		/**
+		 * Returns the inherited selectors with the ones that match the name of a node,
+		 * the inherited ones are not modified
+		 */
+		private BitSet match(MatrixElement node, BitSet inherited) {
+
+			BitSet matches = patternFilter.findMatches(node.getFullName());
+			Integer exact = exactSelectors.get(node.getFullName());
+
+			if (matches.isEmpty() && exact == null) {
+				return inherited;
+			}
+
+			BitSet selectors = (BitSet) inherited.clone();
+
+			for (int match = matches.nextSetBit(0); match >= 0; match = matches.nextSetBit(match + 1)) {
+				selectors.set(patternSelectors[match]);
+			}
+
+			if (exact != null) {
+				selectors.set(exact);
+			}
+
+			return selectors;
+		}
+	}
+
+}
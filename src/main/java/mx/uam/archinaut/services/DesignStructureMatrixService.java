@@ -2,11 +2,13 @@ package mx.uam.archinaut.services;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,14 +18,24 @@ import org.springframework.stereotype.Service;
 import com.opencsv.exceptions.CsvValidationException;
 
 import mx.uam.archinaut.data.loader.DesignStructureMatrixLoader;
+import mx.uam.archinaut.data.loader.InputCache;
+import mx.uam.archinaut.data.loader.SnapshotLoader;
 import mx.uam.archinaut.data.loader.YamlLoader;
+import mx.uam.archinaut.data.nameprocessing.NameFilter;
+import mx.uam.archinaut.model.CoChangeTable;
 import mx.uam.archinaut.model.DependencyMetric;
+import mx.uam.archinaut.model.DependencyRule;
 import mx.uam.archinaut.model.DesignStructureMatrix;
 import mx.uam.archinaut.model.DesignStructureMatrixModel;
 import mx.uam.archinaut.model.MatrixDependencyGroup;
 import mx.uam.archinaut.model.MatrixElement;
 import mx.uam.archinaut.model.MatrixElementGroup;
+import mx.uam.archinaut.model.MetricsTable;
+import mx.uam.archinaut.model.NamespaceTrie;
+import mx.uam.archinaut.model.Neighborhood;
+import mx.uam.archinaut.model.yaml.AnalysisConfiguration;
 import mx.uam.archinaut.model.yaml.RenamingConfiguration;
+import mx.uam.archinaut.model.yaml.SourceConfiguration;
 import mx.uam.archinaut.model.yaml.YamlConfigurationEntry;
 
 /**
@@ -50,85 +62,38 @@ public class DesignStructureMatrixService {
 	@Autowired
 	private YamlLoader yamlLoader;
 
+	@Autowired
+	private SnapshotLoader snapshotLoader;
+
+	@Autowired
+	private InputCache inputCache;
+
 	/**
-	 * Loads a matrix from a JSON file
+	 * Loads a matrix from a JSON file without the elements that match the
+	 * exclusions, nor their dependencies. An exclusion is a substring of the name
+	 * of the element, a glob if it starts with "glob:" or a regular expression if
+	 * it starts with "regex:", see NameFilter
 	 * 
-	 * @param filename
-	 * @return
+	 * @param fileName              the depends output
+	 * @param renamingConfiguration the renaming of the elements
+	 * @param exclusions            the exclusions, null or empty to load every
+	 *                              element
+	 * @return the matrix, null if the file couldn't be loaded
+	 * @throws IllegalArgumentException if an exclusion is not valid
 	 */
 	public DesignStructureMatrix loadMatrixFromJSON(String fileName, RenamingConfiguration renamingConfiguration,
 			List<String> exclusions) {
 
-		DesignStructureMatrix matrix = null;
+		NameFilter filter = exclusions == null ? NameFilter.NONE : NameFilter.compile(exclusions);
 
-		DesignStructureMatrix initialMatrix = loader.loadFromJSON(fileName, renamingConfiguration);
+		DesignStructureMatrix matrix = loader.loadFromJSON(fileName, renamingConfiguration, filter);
 
-		if (initialMatrix == null) {
+		if (matrix == null) {
 			return null;
 		}
 
-		if (exclusions != null && exclusions.size() > 0 && initialMatrix.getFilesExtension().contentEquals("java")) {
-			// Remove test files
-
-			int removedTests = 0;
-			int removedDependencies = 0;
-
-			List<MatrixElement> elementsWithoutTests = new ArrayList<>();
-			List<MatrixElement> elementsForRemoval = new ArrayList<>();
-
-			// First we mark all the elements for removal
-			for (MatrixElement element : initialMatrix.getElements()) {
-				boolean remove = false;
-
-				for (String exclusion : exclusions) {
-					if (element.getFullName().contains(exclusion)) {
-						remove = true;
-						break;
-					}
-				}
-
-				if (!remove) {
-					elementsWithoutTests.add(element);
-				} else {
-					elementsForRemoval.add(element);
-					removedTests++;
-				}
-			}
-
-			// Next we go through the existing elements and remove the removed elements from
-			// their dependencies
-
-			for (MatrixElement element : elementsWithoutTests) {
-
-				List<MatrixDependencyGroup> dependenciesForRemoval = new ArrayList<>();
-
-				for (MatrixDependencyGroup dependencies : element.getDependencies()) {
-
-					if (elementsForRemoval.contains(dependencies.getDestination())) {
-						dependenciesForRemoval.add(dependencies);
-					}
-				}
-
-				for (MatrixDependencyGroup dependencies : dependenciesForRemoval) {
-					element.removeDependency(dependencies);
-					removedDependencies++;
-				}
-
-			}
-
-			matrix = new DesignStructureMatrix(initialMatrix.getFileName(), elementsWithoutTests);
-
-			for (String exclusion : exclusions) {
-				matrix.addExclusionString(exclusion);
-			}
-
-			log.info("loadMatrixFromJSON: Removed {} elements and {} dependencies, exclusions are: {}", removedTests,
-					removedDependencies, Arrays.toString(exclusions.toArray()));
-
-		} else {
-			matrix = initialMatrix;
+		if (filter.isEmpty()) {
 			log.info("loadMatrixFromJSON: Did not remove any elements");
-
 		}
 
 		int maxDependencies = 0;
@@ -149,102 +114,28 @@ public class DesignStructureMatrixService {
 	}
 
 	/**
-	 * Create a DSM that groups the elements hierarchically by namespace
+	 * Create a DSM that groups the elements hierarchically by namespace. The
+	 * groups are built with a NamespaceTrie in one pass over the elements
 	 * 
-	 * @param matrix      the original DSM
-	 * @param separator   the character that separates names
-	 * @param concatenate true if groupings with only one child should be
-	 *                    concatenated
+	 * @param matrix    the original DSM
+	 * @param separator the character that separates names
 	 * @return the root group
 	 */
 	public MatrixElementGroup createNamespaceGrouping(DesignStructureMatrix matrix, char separator) {
 
-		ArrayList<MatrixElement> elements = new ArrayList<>();
+		NamespaceTrie trie = new NamespaceTrie(separator);
 
 		for (MatrixElement element : matrix.getElements()) {
-
-			// Creates a tokenizer that will separate based on package name
-			StringTokenizer tokenizer = new StringTokenizer(element.getFullName(), Character.toString(separator));
-
-			if (tokenizer.hasMoreTokens()) {
-				String namespace = tokenizer.nextToken();
-
-				boolean found = false;
-
-				// Check if a DesignStructureMatrixElementGroup has been created previously for
-				// this namespace
-				for (MatrixElement currentElement : elements) {
-					if (currentElement.getName().equals(namespace)) {
-						found = true;
-						addSubElement(tokenizer, (MatrixElementGroup) currentElement, element, namespace);
-					}
-				}
-
-				if (!found) {
-					// Check if there are more tokens. In case there aren't this is a leaf element
-					if (tokenizer.hasMoreTokens()) {
-						MatrixElementGroup newElement = new MatrixElementGroup(namespace);
-						elements.add(newElement);
-						addSubElement(tokenizer, newElement, element, namespace);
-					} else {
-						// Leaf element, we just copy it
-						element.setName(namespace);
-						elements.add(element);
-
-					}
-				}
-			}
+			trie.add(element);
 		}
 
-		MatrixElementGroup rootElement = new MatrixElementGroup("matrix");
-
-		for (MatrixElement e : elements) {
-			rootElement.addChild(e);
-		}
+		MatrixElementGroup rootElement = trie.createRoot("matrix");
 
 		matrix.setRootGroup(rootElement);
 
 		return rootElement;
 	}
 
-	/**
-	 * Recursive function to create the hierarchy of
-	 * DesignStructureMatrixElementGroup
-	 * 
-	 * @param tokenizer the tokenizer that is parsing the name
-	 * @param parent    the parent DesignStructureMatrixElementGroup
-	 * @param element   the element to add
-	 */
-	private void addSubElement(StringTokenizer tokenizer, MatrixElementGroup parent, MatrixElement element,
-			String fullNamespace) {
-
-		if (tokenizer.hasMoreTokens()) {
-			String namespace = tokenizer.nextToken();
-			fullNamespace = fullNamespace + "." + namespace;
-
-			// Check if the parent already has a node for this token
-			for (MatrixElement child : parent.getChildren()) {
-				if (child.getName().equals(namespace)) {
-					addSubElement(tokenizer, (MatrixElementGroup) child, element, fullNamespace);
-					return;
-				}
-			}
-			// The parent does not have a node for this token, check if there are more
-			// tokens. If not, this is a leaf element
-			if (tokenizer.hasMoreTokens()) {
-				MatrixElementGroup newChild = new MatrixElementGroup(fullNamespace);
-				newChild.setName(namespace);
-
-				parent.addChild(newChild);
-				addSubElement(tokenizer, newChild, element, fullNamespace);
-			} else {
-				// Leaf element, we copy the original element into the new matrix
-				element.setName(namespace);
-				parent.addChild(element);
-			}
-		}
-	}
-
 	/**
 	 * Change the hotspot status of an element
 	 * 
@@ -257,7 +148,8 @@ public class DesignStructureMatrixService {
 	}
 
 	/**
-	 * Create a matrixModel that only contains the dependents
+	 * Create a matrixModel that only contains the element, the elements it depends
+	 * on and the elements that depend on it
 	 * 
 	 * @param matrix
 	 * @param element
@@ -265,62 +157,46 @@ public class DesignStructureMatrixService {
 	 */
 	public DesignStructureMatrixModel getDependentsModel(DesignStructureMatrix matrix, MatrixElement element) {
 
-		DesignStructureMatrixModel model = DesignStructureMatrixModel.getModelFromElementsInMatrix(matrix);
-		List<MatrixElement> dependents = model.getListOfDependents(element);
-		List<MatrixElement> dependees = model.getListOfDependees(element);
-		ArrayList<MatrixElement> listWithDependents = new ArrayList<>();
-
-		listWithDependents.addAll(dependents);
-		listWithDependents.add(element);
-		listWithDependents.addAll(dependees);
+		DesignStructureMatrix tempMatrix = extractNeighborhood(matrix, Collections.singletonList(element), 1,
+				Neighborhood.Direction.BOTH, null);
 
-		Map<MatrixElement, MatrixElement> tempMap = new HashMap<>();
+		ArrayList<MatrixElement> elementsInMatrix = new ArrayList<>();
 
-		// First we make a copy of all the elements
-		for (MatrixElement dependentElement : listWithDependents) {
-			MatrixElement newElement = new MatrixElement(dependentElement.getFullName());
-			if (dependentElement == element) {
-				newElement.setHotspot(true);
-			}
-			tempMap.put(dependentElement, newElement);
+		for (MatrixElement dependentElement : tempMatrix.getElements()) {
+			elementsInMatrix.add(dependentElement);
 		}
 
-		// Now we copy the dependencies
-		for (MatrixElement dependentElement : listWithDependents) {
-			for (MatrixDependencyGroup group : dependentElement.getDependencies()) {
-
-				// We only copy the dependency if the target is there (it should be!)
-				if (listWithDependents.contains(group.getDestination())) {
-					MatrixDependencyGroup newGroup = new MatrixDependencyGroup(tempMap.get(dependentElement),
-							tempMap.get(group.getDestination()));
-					Map<String, Integer> dependencyMap = group.getDependencies();
-					for (String currentKey : dependencyMap.keySet()) {
-						newGroup.addDependency(currentKey, dependencyMap.get(currentKey));
-					}
-					newGroup.setCoChanges(group.getCoChanges());
-					tempMap.get(dependentElement).addDependency(newGroup);
-				}
-			}
-		}
+		createNamespaceGrouping(tempMatrix, '$');
 
-		ArrayList<MatrixElement> elementsInMatrix = new ArrayList<MatrixElement>(tempMap.values());
+		return new DesignStructureMatrixModel(tempMatrix, elementsInMatrix);
+	}
 
-		DesignStructureMatrix tempMatrix = new DesignStructureMatrix("", elementsInMatrix);
+	/**
+	 * Create a matrix with copies of the elements that are up to a number of
+	 * dependencies away from a set of elements, and of the dependencies and
+	 * co-changes between them. Only the neighborhood is visited, see Neighborhood
+	 * 
+	 * @param matrix    the matrix
+	 * @param seeds     the elements where the neighborhood starts, their copies
+	 *                  are hotspots
+	 * @param radius    the number of dependencies that are followed from the
+	 *                  seeds
+	 * @param direction the dependencies that are followed
+	 * @param types     the dependency types that are followed and copied, null or
+	 *                  empty for every type
+	 * @return the matrix of the neighborhood, without grouping
+	 * @throws IllegalArgumentException if the radius is negative or a seed is not
+	 *                                  in the matrix
+	 */
+	public DesignStructureMatrix extractNeighborhood(DesignStructureMatrix matrix, Collection<MatrixElement> seeds,
+			int radius, Neighborhood.Direction direction, Collection<String> types) {
 
-		/*
-		 * MatrixElementGroup rootElement = new
-		 * MatrixElementGroup(element.getFullName());
-		 * 
-		 * 
-		 * for(MatrixElement e:elementsInMatrix) { rootElement.addChild(e); }
-		 * 
-		 * matrix.setRootGroup(rootElement);
-		 */
+		Neighborhood neighborhood = new Neighborhood(matrix, seeds, radius, direction, types);
 
-		createNamespaceGrouping(tempMatrix, '$');
+		log.info("extractNeighborhood: {} elements within {} dependencies of {} elements",
+				neighborhood.getElements().size(), radius, seeds.size());
 
-		DesignStructureMatrixModel finalModel = new DesignStructureMatrixModel(tempMatrix, elementsInMatrix);
-		return finalModel;
+		return neighborhood.createMatrix();
 	}
 
 	/**
@@ -342,28 +218,134 @@ public class DesignStructureMatrixService {
 
 	}
 
+	/**
+	 * Loads the matrix and all the metrics defined in the configuration file. Every
+	 * source is parsed in parallel, and the metrics and co-changes are added to
+	 * the matrix once the depends output is loaded
+	 * 
+	 * @param filename the configuration file
+	 * @return the matrix with all the metrics
+	 * @throws IOException
+	 * @throws CsvValidationException
+	 */
 	public DesignStructureMatrix loadDataBasedOnConfigurationFile(String filename)
 			throws IOException, CsvValidationException {
 
-		// Get the configuration associated with the depends JSON file
-		YamlConfigurationEntry dependsConfiguration = yamlLoader.getDependsConfigurationEntry(filename);
+		return loadDataBasedOnConfigurationFile(filename, null);
 
-		// Get the configuration associated with the rest of the entries in the
-		// configuration file
-		List<YamlConfigurationEntry> configurationEntries = yamlLoader.getNonDependsConfigurationEntries(filename);
+	}
 
-		// Load the initial matrix using the depends configuration
-		DesignStructureMatrix matrix = loadMatrixFromJSON(dependsConfiguration);
+	/**
+	 * Loads the matrix and all the metrics defined in the configuration file,
+	 * reusing the parsed form of the inputs that didn't change since they were
+	 * saved in the cache directory
+	 * 
+	 * @param filename       the configuration file
+	 * @param cacheDirectory the directory of the cache, null to parse every input
+	 * @return the matrix with all the metrics
+	 * @throws IOException
+	 * @throws CsvValidationException
+	 * @throws IllegalArgumentException if the configuration file is not valid
+	 */
+	public DesignStructureMatrix loadDataBasedOnConfigurationFile(String filename, String cacheDirectory)
+			throws IOException, CsvValidationException {
 
-		// Create the grouping of the elements based on the package level
-		createNamespaceGrouping(matrix, '.');
+		// Parse and validate the configuration before any source is loaded
+		AnalysisConfiguration configuration = yamlLoader.loadConfiguration(filename);
 
-		// Load all metrics defined in the configuration file, but depends as that was
-		// already loaded.
-		metricsService.loadMetrics(configurationEntries, matrix);
+		SourceConfiguration dependsSource = configuration.getDependsSource();
+		List<SourceConfiguration> metricSources = configuration.getMetricSources();
 
-		return matrix;
+		int threads = Math.min(metricSources.size() + 1, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+
+		try {
+
+			// Load the initial matrix from the depends source
+			Future<DesignStructureMatrix> matrixFuture = executor.submit(() -> cacheDirectory == null
+					? loadMatrixFromJSON(dependsSource)
+					: inputCache.getMatrix(cacheDirectory, dependsSource, () -> loadMatrixFromJSON(dependsSource)));
+
+			// Parse all the other sources while the matrix is loading
+			List<Future<?>> sourceFutures = new ArrayList<>();
+
+			for (SourceConfiguration source : metricSources) {
+				if (source.isCsv()) {
+					sourceFutures.add(executor.submit(() -> cacheDirectory == null ? metricsService.parseCsvFile(source)
+							: inputCache.getMetrics(cacheDirectory, source, () -> metricsService.parseCsvFile(source))));
+				} else if (source.isCoupling()) {
+					sourceFutures.add(executor.submit(() -> cacheDirectory == null
+							? metricsService.parseCouplingFile(source)
+							: inputCache.getCoChanges(cacheDirectory, source,
+									() -> metricsService.parseCouplingFile(source))));
+				}
+			}
+
+			DesignStructureMatrix matrix = await(matrixFuture);
+
+			if (matrix == null) {
+				throw new IOException("Couldn't load depends output from " + dependsSource.getFile());
+			}
+
+			// Create the grouping of the elements based on the package level
+			createNamespaceGrouping(matrix, '.');
+
+			for (DependencyRule rule : configuration.getDependencyRules()) {
+				matrix.addDependencyRule(rule);
+			}
+
+			// Add the metrics and co-changes in the order of the configuration file
+			for (Future<?> sourceFuture : sourceFutures) {
+
+				Object parsed = await(sourceFuture);
+
+				if (parsed instanceof CoChangeTable) {
+					metricsService.mergeCoChanges((CoChangeTable) parsed, matrix);
+				} else {
+					metricsService.mergeMetrics((MetricsTable) parsed, matrix);
+				}
+			}
+
+			matrix.updateElementValueRanges();
 
+			return matrix;
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+	}
+
+	/**
+	 * Wait for the result of a loading task and rethrow its exception
+	 * 
+	 * @param future the task
+	 * @return the result of the task
+	 * @throws IOException
+	 * @throws CsvValidationException
+	 */
+	private <T> T await(Future<T> future) throws IOException, CsvValidationException {
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading", e);
+		} catch (ExecutionException e) {
+
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof CsvValidationException) {
+				throw (CsvValidationException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
 	}
 
 	public DesignStructureMatrix loadMatrixFromJSON(YamlConfigurationEntry dependsConfiguration) {
@@ -372,4 +354,35 @@ public class DesignStructureMatrixService {
 
 	}
 
+	public DesignStructureMatrix loadMatrixFromJSON(SourceConfiguration dependsSource) {
+
+		// Only the dependency types listed in the metrics of the entry are loaded, and
+		// the excluded elements are left out
+		return loader.loadFromJSON(dependsSource.getFile(), dependsSource.getRenamer(),
+				dependsSource.getMetricColumns(), dependsSource.getExclusions());
+
+	}
+
+	/**
+	 * Save a loaded matrix into a binary snapshot
+	 * 
+	 * @param matrix   the matrix with its metrics and namespace grouping
+	 * @param filename the path of the snapshot
+	 * @throws IOException
+	 */
+	public void saveSnapshot(DesignStructureMatrix matrix, String filename) throws IOException {
+		snapshotLoader.saveSnapshot(matrix, filename);
+	}
+
+	/**
+	 * Load a matrix from a binary snapshot instead of parsing its sources
+	 * 
+	 * @param filename the path of the snapshot
+	 * @return the matrix as it was when it was saved
+	 * @throws IOException
+	 */
+	public DesignStructureMatrix loadSnapshot(String filename) throws IOException {
+		return snapshotLoader.loadSnapshot(filename);
+	}
+
 }
@@ -1,6 +1,10 @@
 package mx.uam.archinaut.services;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -10,6 +14,7 @@ import javax.xml.bind.Marshaller;
 
 import org.springframework.stereotype.Service;
 
+import mx.uam.archinaut.model.DependencyConstraintViolation;
 import mx.uam.archinaut.model.DesignStructureMatrix;
 import mx.uam.archinaut.model.MatrixElement;
 import mx.uam.archinaut.model.xsd.ObjectFactory;
@@ -24,6 +29,27 @@ public class JunitService {
 	private Map<String, String> environmentVariables = System.getenv();
 
 	public void createJunitReport(DesignStructureMatrix matrix) throws JAXBException {
+		createJunitReport(matrix, Collections.emptyList());
+	}
+
+	/**
+	 * Create the report with the thresholds of the metrics and a failed test case
+	 * for every violation of a dependency rule, in the test suite of the source of
+	 * the dependency
+	 * 
+	 * @param matrix     the matrix
+	 * @param violations the violations of the dependency rules
+	 * @throws JAXBException
+	 */
+	public void createJunitReport(DesignStructureMatrix matrix, List<DependencyConstraintViolation> violations)
+			throws JAXBException {
+
+		Map<MatrixElement, List<DependencyConstraintViolation>> elementViolations = new IdentityHashMap<>();
+
+		for (DependencyConstraintViolation violation : violations) {
+			elementViolations.computeIfAbsent(violation.getMatrixDependencyGroup().getSource(),
+					element -> new ArrayList<>()).add(violation);
+		}
 
 		// Our XML object factory if needed
 		ObjectFactory of = new ObjectFactory();
@@ -63,6 +89,15 @@ public class JunitService {
 
 			}
 
+			// Every violation of a dependency rule is a failure
+			for (DependencyConstraintViolation violation : elementViolations.getOrDefault(element,
+					Collections.emptyList())) {
+
+				ts.getTestcase().add(getTestCaseForViolation(element, violation));
+				numberOfTests++;
+				failures++;
+			}
+
 			ts.setTests(numberOfTests);
 			ts.setErrors(errors);
 			ts.setFailures(failures);
@@ -83,6 +118,25 @@ public class JunitService {
 		}
 	}
 
+	private Testcase getTestCaseForViolation(MatrixElement m, DependencyConstraintViolation violation) {
+
+		Object rule = violation.getRule() != null ? violation.getRule() : violation.getConstraint();
+		String message = "Dependency on " + violation.getMatrixDependencyGroup().getDestination().getFullName()
+				+ " is not allowed: " + rule;
+
+		Testcase t = new Testcase();
+		t.setName("DEPENDENCY_RULE");
+		t.setClassname(m.getName());
+
+		Testsuite.Testcase.Failure failure = new Testsuite.Testcase.Failure();
+		failure.setMessage(message);
+		failure.setType("dependencyRuleViolated");
+		failure.setValue(message);
+		t.setFailure(failure);
+
+		return t;
+	}
+
 	private Optional<Testcase> getTestCaseForMetric(MatrixElement m, String metric) {
 
 		String envName = "INPUT_" + metric.toUpperCase().replace(" ", "_").trim();
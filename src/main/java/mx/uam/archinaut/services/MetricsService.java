@@ -4,21 +4,25 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.opencsv.CSVReaderHeaderAware;
 import com.opencsv.exceptions.CsvValidationException;
 
 import lombok.extern.slf4j.Slf4j;
 import mx.uam.archinaut.data.loader.MetricsLoader;
+import mx.uam.archinaut.data.loader.ProjectedCsvReader;
 import mx.uam.archinaut.data.nameprocessing.NameProcessor;
+import mx.uam.archinaut.data.nameprocessing.NameTransformer;
+import mx.uam.archinaut.model.CoChangeTable;
 import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.ElementSymbolTable;
 import mx.uam.archinaut.model.MatrixElement;
-import mx.uam.archinaut.model.yaml.Metric;
+import mx.uam.archinaut.model.MetricsTable;
+import mx.uam.archinaut.model.PackageMetrics;
+import mx.uam.archinaut.model.yaml.SourceConfiguration;
 import mx.uam.archinaut.model.yaml.YamlConfigurationEntry;
 import mx.uam.archinaut.model.ElementMetric;
 
@@ -32,31 +36,35 @@ public class MetricsService {
 	@Autowired
 	private NameProcessor nameProcessor;
 
+	/**
+	 * Save the metrics of every element of the matrix in a CSV report. The columns
+	 * are the names of the metrics of the matrix
+	 * 
+	 * @param matrix   the matrix
+	 * @param fileName the path of the report
+	 * @return true if the report was saved
+	 */
 	public boolean saveMetricsReport(DesignStructureMatrix matrix, String fileName) {
 
-		StringBuilder sb = new StringBuilder();
+		return loader.saveReport(fileName, "Filename", matrix.getMetricNames(), matrix.getElements());
 
-		// Generate the header for the csv file
-		sb.append("Filename");
-
-		for (String metric : matrix.getMetricNames()) {
+	}
 
-			sb.append(",");
-			sb.append(metric);
+	/**
+	 * Save the metrics of Robert Martin for every group of the namespace grouping
+	 * of the matrix in a CSV report, see PackageMetrics
+	 *
+	 * @param matrix   the matrix
+	 * @param fileName the path of the report
+	 * @return true if the report was saved
+	 */
+	public boolean savePackagesReport(DesignStructureMatrix matrix, String fileName) {
 
-		}
-		sb.append("\n");
+		PackageMetrics metrics = new PackageMetrics(matrix);
 
-		for (MatrixElement element : matrix.getElements()) {
-			sb.append(element.getFullName());
-			for (int metric : element.getMetrics().values()) {
-				sb.append(",");
-				sb.append(Integer.toString(metric));
-			}
-			sb.append("\n");
-		}
+		log.info("Calculated the package metrics of {} groups", metrics.getPackages().size());
 
-		return loader.saveReport(fileName, sb);
+		return loader.savePackagesReport(fileName, metrics);
 
 	}
 
@@ -68,7 +76,7 @@ public class MetricsService {
 
 			// Handle CSV entries
 			if (entry.getFormat().equalsIgnoreCase("CSV")) {
-				loadCsvFileIntoMatrix(entry, matrix);
+				mergeMetrics(parseCsvFile(entry), matrix);
 			}
 
 		}
@@ -76,47 +84,132 @@ public class MetricsService {
 		return matrix;
 	}
 
-	private DesignStructureMatrix loadCsvFileIntoMatrix(YamlConfigurationEntry yamlConfiguration,
-			DesignStructureMatrix matrix) throws IOException, CsvValidationException {
+	/**
+	 * Add the metrics parsed from a source to the elements of the matrix. Only the
+	 * elements that are in the matrix receive values
+	 * 
+	 * @param table  the parsed metrics
+	 * @param matrix the matrix
+	 * @return the matrix
+	 */
+	public DesignStructureMatrix mergeMetrics(MetricsTable table, DesignStructureMatrix matrix) {
 
-		// Get the current file loaded into the reader
-		try (CSVReaderHeaderAware reader = new CSVReaderHeaderAware(
-				new InputStreamReader(new FileInputStream(yamlConfiguration.getFile())))) {
+		int merged = 0;
 
-			Map<String, String> values = reader.readMap();
+		for (int index = 0; index < table.getElementsCount(); index++) {
 
-			while (values != null) {
+			// Only proceed with this entry if that filename is in the matrix already, the
+			// name is looked up without interning it
+			MatrixElement element = matrix
+					.getElementById(ElementSymbolTable.getId(table.getElementName(index)));
 
-				String fileName = values.get(yamlConfiguration.getFilenameMetricName());
-				fileName = nameProcessor.processName(yamlConfiguration.getRenaming(), fileName);
+			if (element != null) {
 
-				// Only proceed with this entry if there's a filename and that filename is in
-				// the matrix already
-				if (!StringUtils.isBlank(fileName) && matrix.hasElementWithName(fileName)) {
+				for (int metric = 0; metric < table.getMetricsCount(); metric++) {
 
-					MatrixElement element = matrix.getElementByFullname(fileName);
+					if (table.hasValue(index, metric)) {
+						element.addMetricValue(
+								new ElementMetric(table.getMetricName(metric), table.getValue(index, metric)));
+					}
 
-					// For every metric in the configuration file, search for the value in the row
-					// and add it
-					for (Metric metric : yamlConfiguration.getMetrics()) {
+				}
+
+				merged++;
+			}
+
+		}
+
+		log.info("Merged metrics of {} elements from {}", merged, table.getSource());
+
+		return matrix;
+	}
+
+	/**
+	 * Add the co-changes parsed from a coupling source to the cells of the matrix.
+	 * The co-changes of every element are also added as a metric, as they are when
+	 * the pairs are loaded as a CSV file
+	 * 
+	 * @param table  the parsed co-changes
+	 * @param matrix the matrix
+	 * @return the matrix
+	 */
+	public DesignStructureMatrix mergeCoChanges(CoChangeTable table, DesignStructureMatrix matrix) {
 
-						if (Boolean.FALSE.equals(metric.getFilename())) {
+		matrix.addCoChanges(table);
 
-							// Create an element metric and add its value to this element
-							try {
-								
-								String nameToSave = metric.getRename().isBlank() ? metric.getName() : metric.getRename();
+		if (table.getMetricName() != null) {
 
-								ElementMetric elementMetric = new ElementMetric(nameToSave,
-										Integer.parseInt(values.get(metric.getName())));
-								element.addMetricValue(elementMetric);
+			MetricsTable totals = new MetricsTable(table.getSource(), List.of(table.getMetricName()));
+
+			for (int pair = 0; pair < table.getPairsCount(); pair++) {
+				totals.addValue(table.getName(table.getElementId(pair)), 0, table.getCoChanges(pair));
+			}
 
-							} catch (NumberFormatException e) {
+			mergeMetrics(totals, matrix);
+		}
+
+		return matrix;
+	}
 
-								log.error("Couldn't load from: " + yamlConfiguration.getFile() + " metric: "
-										+ metric.getName() + " with value: " + values.get(metric.getName()));
+	/**
+	 * Parse the metrics of a CSV file described by a configuration entry. The
+	 * matrix is not needed, so this can be done while other sources are loaded
+	 * 
+	 * @param yamlConfiguration the configuration entry
+	 * @return the parsed metrics
+	 * @throws IOException
+	 * @throws CsvValidationException
+	 */
+	public MetricsTable parseCsvFile(YamlConfigurationEntry yamlConfiguration)
+			throws IOException, CsvValidationException {
 
-							}
+		NameTransformer nameTransformer = nameProcessor.getTransformer(yamlConfiguration.getRenaming());
+
+		return parseCsvFile(new SourceConfiguration(yamlConfiguration, nameTransformer));
+
+	}
+
+	/**
+	 * Parse the metrics of a CSV source of a validated configuration. Only the
+	 * filename and the metric columns of the source are read
+	 * 
+	 * @param source the source
+	 * @return the parsed metrics
+	 * @throws IOException
+	 * @throws CsvValidationException
+	 */
+	public MetricsTable parseCsvFile(SourceConfiguration source) throws IOException, CsvValidationException {
+
+		List<String> metricColumns = source.getMetricColumns();
+		int metricsCount = metricColumns.size();
+
+		MetricsTable table = new MetricsTable(source.getFile(), source.getMetricNames());
+
+		NameTransformer nameTransformer = source.getRenamer();
+
+		// Get the current file loaded into the reader
+		try (ProjectedCsvReader reader = new ProjectedCsvReader(
+				new InputStreamReader(new FileInputStream(source.getFile())), source.getColumns())) {
+
+			while (reader.next()) {
+
+				String fileName = nameTransformer.transform(reader.getString(0));
+
+				// Only proceed with this entry if there's a filename
+				if (!StringUtils.isBlank(fileName)) {
+
+					// For every metric in the configuration file, search for the value in the row
+					// and add it
+					for (int metric = 0; metric < metricsCount; metric++) {
+
+						try {
+
+							table.addValue(fileName, metric, reader.getInt(metric + 1));
+
+						} catch (NumberFormatException e) {
+
+							log.error("Couldn't load from: " + source.getFile() + " metric: "
+									+ metricColumns.get(metric) + " with value: " + reader.getString(metric + 1));
 
 						}
 
@@ -124,15 +217,64 @@ public class MetricsService {
 
 				}
 
-				// Read the next line
-				values = reader.readMap();
+			}
+
+			return table;
+
+		} catch (IOException e) {
+			log.error("Error loading " + source.getFile(), e);
+			throw e;
+		}
+
+	}
+
+	/**
+	 * Parse the pairs of a coupling source of a validated configuration. The names
+	 * of both elements of a pair are renamed, and the pairs are kept in a table
+	 * keyed by the positions of the names in the table, so they can be joined with
+	 * the cells of the matrix later
+	 * 
+	 * @param source the source
+	 * @return the parsed co-changes
+	 * @throws IOException
+	 * @throws CsvValidationException
+	 */
+	public CoChangeTable parseCouplingFile(SourceConfiguration source) throws IOException, CsvValidationException {
+
+		CoChangeTable table = new CoChangeTable(source.getFile(), source.getMetricNames().get(0));
+
+		NameTransformer nameTransformer = source.getRenamer();
+
+		try (ProjectedCsvReader reader = new ProjectedCsvReader(
+				new InputStreamReader(new FileInputStream(source.getFile())), source.getColumns())) {
+
+			while (reader.next()) {
+
+				String fileName = nameTransformer.transform(reader.getString(0));
+				String coupledName = nameTransformer.transform(reader.getString(1));
+
+				// Only proceed with this pair if both elements have a name
+				if (!StringUtils.isBlank(fileName) && !StringUtils.isBlank(coupledName)) {
+
+					try {
+
+						table.addPair(fileName, coupledName, reader.getInt(2));
+
+					} catch (NumberFormatException e) {
+
+						log.error("Couldn't load from: " + source.getFile() + " co-changes of " + fileName + " and "
+								+ coupledName + " with value: " + reader.getString(2));
+
+					}
+
+				}
 
 			}
 
-			return matrix;
+			return table;
 
-		} catch (CsvValidationException | IOException e) {
-			log.error("Error loading " + yamlConfiguration.getFile(), e);
+		} catch (IOException e) {
+			log.error("Error loading " + source.getFile(), e);
 			throw e;
 		}
 
@@ -0,0 +1,113 @@
+package mx.uam.archinaut.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates synthetic input files for the benchmarks
+ *
+ */
+public class BenchmarkData {
+
+	private static final String[] DEPENDENCY_TYPES = { "Call", "Import", "Return", "Use", "Parameter", "Contain",
+			"Implement", "Create", "Extend" };
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Name of a synthetic element, grouped in packages of 50 elements
+	 *
+	 * @param index
+	 * @return
+	 */
+	public static String elementName(int index) {
+		return "main.java.com.example.module" + (index / 2500) + ".package" + (index / 50) + ".Element" + index
+				+ "_java";
+	}
+
+	/**
+	 * Write a depends-sdsm file with the given number of elements and cells per
+	 * element
+	 *
+	 * @param file
+	 * @param elements
+	 * @param cellsPerElement
+	 * @throws IOException
+	 */
+	public static void writeDependsFile(Path file, int elements, int cellsPerElement) throws IOException {
+
+		Random random = new Random(42);
+
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+			writer.write("{\n\t\"schemaVersion\": \"1.0\",\n\t\"name\": \"depends-sdsm\",\n\t\"variables\": [\n");
+
+			for (int i = 0; i < elements; i++) {
+				writer.write("\t\t\"" + elementName(i) + "\"" + (i < elements - 1 ? ",\n" : "\n"));
+			}
+
+			writer.write("\t],\n\t\"cells\": [\n");
+
+			for (int source = 0; source < elements; source++) {
+				for (int cell = 0; cell < cellsPerElement; cell++) {
+
+					writer.write("\t\t{\n\t\t\t\"src\": " + source + ",\n\t\t\t\"dest\": " + random.nextInt(elements)
+							+ ",\n\t\t\t\"values\": {\n");
+
+					int types = 1 + random.nextInt(3);
+
+					for (int type = 0; type < types; type++) {
+						writer.write("\t\t\t\t\"" + DEPENDENCY_TYPES[(cell + type) % DEPENDENCY_TYPES.length] + "\": "
+								+ (1 + random.nextInt(20)) + (type < types - 1 ? ",\n" : "\n"));
+					}
+
+					boolean last = source == elements - 1 && cell == cellsPerElement - 1;
+					writer.write("\t\t\t}\n\t\t}" + (last ? "\n" : ",\n"));
+				}
+			}
+
+			writer.write("\t]\n}");
+		}
+	}
+
+	/**
+	 * Write a CSV file with the columns that scc produces. One row in ten has a
+	 * quoted location, so the quoting rules are exercised as well
+	 *
+	 * @param file
+	 * @param rows
+	 * @throws IOException
+	 */
+	public static void writeSccFile(Path file, int rows) throws IOException {
+
+		Random random = new Random(42);
+
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+			writer.write("Language,Location,Filename,Lines,Code,Comments,Blanks,Complexity,Bytes\n");
+
+			for (int i = 0; i < rows; i++) {
+
+				String location = "src/main/java/com/example/module" + (i / 2500) + "/package" + (i / 50) + "/Element"
+						+ i + ".java";
+
+				if (i % 10 == 0) {
+					location = "\"" + location + "\"";
+				}
+
+				int code = random.nextInt(2000);
+				int comments = random.nextInt(200);
+				int blanks = random.nextInt(200);
+
+				writer.write("Java," + location + ",Element" + i + ".java," + (code + comments + blanks) + "," + code
+						+ "," + comments + "," + blanks + "," + random.nextInt(300) + "," + (code * 30) + "\n");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package mx.uam.archinaut.benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opencsv.CSVReaderHeaderAware;
+import com.opencsv.exceptions.CsvValidationException;
+
+import mx.uam.archinaut.data.loader.ProjectedCsvReader;
+
+/**
+ * Compares reading the columns used by the scc configuration through
+ * CSVReaderHeaderAware maps with the projected reader, over a synthetic scc
+ * file
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvReaderBenchmark {
+
+	private static final List<String> COLUMNS = Arrays.asList("Location", "Lines", "Code", "Complexity");
+
+	@Param({ "1000000" })
+	private int rows;
+
+	private Path file;
+
+	@Setup
+	public void createFile() throws IOException {
+		file = Files.createTempFile("scc", ".csv");
+		BenchmarkData.writeSccFile(file, rows);
+	}
+
+	@TearDown
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public long headerAware() throws IOException, CsvValidationException {
+
+		long total = 0;
+
+		try (CSVReaderHeaderAware reader = new CSVReaderHeaderAware(
+				new InputStreamReader(new FileInputStream(file.toFile())))) {
+
+			Map<String, String> values = reader.readMap();
+
+			while (values != null) {
+
+				total += values.get(COLUMNS.get(0)).length();
+
+				for (int column = 1; column < COLUMNS.size(); column++) {
+					total += Integer.parseInt(values.get(COLUMNS.get(column)));
+				}
+
+				values = reader.readMap();
+			}
+		}
+
+		return total;
+	}
+
+	@Benchmark
+	public long projected() throws IOException {
+
+		long total = 0;
+
+		try (ProjectedCsvReader reader = new ProjectedCsvReader(
+				new InputStreamReader(new FileInputStream(file.toFile())), COLUMNS)) {
+
+			while (reader.next()) {
+
+				total += reader.getString(0).length();
+
+				for (int column = 1; column < COLUMNS.size(); column++) {
+					total += reader.getInt(column);
+				}
+			}
+		}
+
+		return total;
+	}
+
+}
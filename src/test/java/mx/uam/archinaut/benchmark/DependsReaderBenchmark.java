@@ -0,0 +1,95 @@
+package mx.uam.archinaut.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mx.uam.archinaut.data.loader.DependsHandler;
+import mx.uam.archinaut.data.loader.JsonDependsReader;
+import mx.uam.archinaut.data.loader.MappedDependsReader;
+
+/**
+ * Compares the Gson streaming reader with the memory mapped reader over a
+ * synthetic depends-sdsm file
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DependsReaderBenchmark {
+
+	@Param({ "10000", "50000" })
+	private int elements;
+
+	@Param({ "20" })
+	private int cellsPerElement;
+
+	private Path file;
+
+	@Setup
+	public void createFile() throws IOException {
+		file = Files.createTempFile("depends", ".json");
+		BenchmarkData.writeDependsFile(file, elements, cellsPerElement);
+	}
+
+	@TearDown
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public long gson() throws IOException {
+		CountingHandler handler = new CountingHandler();
+		new JsonDependsReader().read(file.toString(), handler);
+		return handler.total;
+	}
+
+	@Benchmark
+	public long mapped() throws IOException {
+		CountingHandler handler = new CountingHandler();
+		new MappedDependsReader().read(file.toString(), handler);
+		return handler.total;
+	}
+
+	/**
+	 * Handler that only accumulates what it receives, so the readers are measured
+	 * on their own
+	 */
+	private static class CountingHandler implements DependsHandler {
+
+		private long total = 0;
+
+		@Override
+		public void variable(String name) {
+			total += name.length();
+		}
+
+		@Override
+		public void cell(int source, int destination) {
+			total += source + destination;
+		}
+
+		@Override
+		public void dependency(String type, int occurrences) {
+			total += type.length() + occurrences;
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package mx.uam.archinaut.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mx.uam.archinaut.data.loader.DesignStructureMatrixLoader;
+import mx.uam.archinaut.data.nameprocessing.NameTransformer;
+import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.DesignStructureMatrixModel;
+import mx.uam.archinaut.model.MatrixElement;
+import mx.uam.archinaut.model.MatrixElementGroup;
+import mx.uam.archinaut.model.yaml.RenamingConfiguration;
+import mx.uam.archinaut.services.DesignStructureMatrixService;
+
+/**
+ * Measures the construction of models over a synthetic matrix, one with every
+ * element of the matrix and one with the packages, whose cells aggregate the
+ * dependencies of their elements
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModelBenchmark {
+
+	@Param({ "1000", "10000", "50000" })
+	private int elements;
+
+	@Param({ "10" })
+	private int cellsPerElement;
+
+	private DesignStructureMatrix matrix;
+
+	private List<MatrixElement> packages;
+
+	@Setup
+	public void createMatrix() throws IOException {
+
+		Path file = Files.createTempFile("depends", ".json");
+
+		try {
+			BenchmarkData.writeDependsFile(file, elements, cellsPerElement);
+
+			RenamingConfiguration renaming = new RenamingConfiguration();
+			renaming.setPrefix("");
+			renaming.setSuffix("");
+
+			matrix = new DesignStructureMatrixLoader().loadFromJSON(file.toString(),
+					NameTransformer.compile(renaming));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+
+		packages = new ArrayList<>();
+		findPackages(new DesignStructureMatrixService().createNamespaceGrouping(matrix, '.'), packages);
+	}
+
+	/**
+	 * Add the groups whose children are the elements of the matrix
+	 */
+	private static void findPackages(MatrixElementGroup group, List<MatrixElement> packages) {
+
+		for (MatrixElement child : group.getChildren()) {
+
+			if (!(child instanceof MatrixElementGroup)) {
+				packages.add(group);
+				return;
+			}
+
+			findPackages((MatrixElementGroup) child, packages);
+		}
+	}
+
+	@Benchmark
+	public int elementsModel() {
+		return DesignStructureMatrixModel.getModelFromElementsInMatrix(matrix).getMaximumCellDependencies();
+	}
+
+	@Benchmark
+	public int packagesModel() {
+		return new DesignStructureMatrixModel(matrix, packages).getMaximumCellDependencies();
+	}
+
+}
@@ -0,0 +1,54 @@
+package mx.uam.archinaut.loader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import mx.uam.archinaut.data.loader.DependsHandler;
+import mx.uam.archinaut.data.loader.JsonDependsReader;
+import mx.uam.archinaut.data.loader.MappedDependsReader;
+
+class DependsReaderTest {
+
+	@Test
+	void testMappedReaderMatchesJsonReader() throws IOException {
+
+		RecordingHandler json = new RecordingHandler();
+		RecordingHandler mapped = new RecordingHandler();
+
+		new JsonDependsReader().read("depends.json", json);
+		new MappedDependsReader().read("depends.json", mapped);
+
+		assertEquals(17, json.variables);
+		assertEquals(json.events, mapped.events);
+
+	}
+
+	private static class RecordingHandler implements DependsHandler {
+
+		private List<String> events = new ArrayList<>();
+
+		private int variables = 0;
+
+		@Override
+		public void variable(String name) {
+			events.add(name);
+			variables++;
+		}
+
+		@Override
+		public void cell(int source, int destination) {
+			events.add(source + "->" + destination);
+		}
+
+		@Override
+		public void dependency(String type, int occurrences) {
+			events.add(type + ":" + occurrences);
+		}
+	}
+
+}
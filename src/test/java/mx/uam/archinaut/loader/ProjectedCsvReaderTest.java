@@ -0,0 +1,109 @@
+package mx.uam.archinaut.loader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.opencsv.CSVReaderHeaderAware;
+import com.opencsv.exceptions.CsvValidationException;
+
+import mx.uam.archinaut.data.loader.ProjectedCsvReader;
+
+class ProjectedCsvReaderTest {
+
+	@Test
+	void testProjectedReaderMatchesHeaderAwareReader() throws IOException, CsvValidationException {
+
+		List<String> columns = Arrays.asList("Location", "Lines", "Code", "Complexity");
+
+		try (CSVReaderHeaderAware expected = new CSVReaderHeaderAware(
+				new InputStreamReader(new FileInputStream("scc.csv")));
+				ProjectedCsvReader reader = new ProjectedCsvReader(
+						new InputStreamReader(new FileInputStream("scc.csv")), columns)) {
+
+			Map<String, String> values = expected.readMap();
+
+			while (values != null) {
+
+				assertTrue(reader.next());
+
+				assertEquals(values.get("Location"), reader.getString(0));
+
+				for (int column = 1; column < columns.size(); column++) {
+					assertEquals(Integer.parseInt(values.get(columns.get(column))), reader.getInt(column));
+				}
+
+				values = expected.readMap();
+			}
+
+			assertFalse(reader.next());
+		}
+
+	}
+
+	@Test
+	void testQuotedFields() throws IOException {
+
+		String csv = "name,skipped,value\n" + "\"a,b\",\"x\"\"y\",1\n" + "\"multi\nline\",\"\",\"2\"\n"
+				+ "\"say \\\"hi\\\"\",z,-3\r\n" + "plain,,4";
+
+		try (ProjectedCsvReader reader = new ProjectedCsvReader(new StringReader(csv),
+				Arrays.asList("name", "value", "missing"))) {
+
+			assertTrue(reader.next());
+			assertEquals("a,b", reader.getString(0));
+			assertEquals(1, reader.getInt(1));
+			assertFalse(reader.hasColumn(2));
+			assertNull(reader.getString(2));
+
+			assertTrue(reader.next());
+			assertEquals("multi\nline", reader.getString(0));
+			assertEquals(2, reader.getInt(1));
+
+			assertTrue(reader.next());
+			assertEquals("say \"hi\"", reader.getString(0));
+			assertEquals(-3, reader.getInt(1));
+
+			assertTrue(reader.next());
+			assertEquals("plain", reader.getString(0));
+			assertEquals(4, reader.getInt(1));
+
+			assertFalse(reader.next());
+		}
+
+	}
+
+	@Test
+	void testMalformedRecords() throws IOException {
+
+		try (ProjectedCsvReader reader = new ProjectedCsvReader(new StringReader("a,b\n1,x\n1,2,3\n"),
+				Arrays.asList("a", "b"))) {
+
+			assertTrue(reader.next());
+			assertThrows(NumberFormatException.class, () -> reader.getInt(1));
+			assertEquals("x", reader.getString(1));
+
+			assertThrows(IOException.class, reader::next);
+		}
+
+		try (ProjectedCsvReader reader = new ProjectedCsvReader(new StringReader("a\n\"open\n"),
+				Arrays.asList("a"))) {
+
+			assertThrows(IOException.class, reader::next);
+		}
+
+	}
+
+}
@@ -1,8 +1,15 @@
 package mx.uam.archinaut.loader;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -10,6 +17,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import mx.uam.archinaut.data.loader.YamlLoader;
+import mx.uam.archinaut.model.yaml.AnalysisConfiguration;
+import mx.uam.archinaut.model.yaml.SourceConfiguration;
 import mx.uam.archinaut.model.yaml.YamlConfigurationEntry;
 
 @SpringBootTest
@@ -134,6 +143,82 @@ class YamlLoaderTest {
 		
 	}
 	
+	@Test
+	void testLoadConfiguration() throws FileNotFoundException {
+		
+		AnalysisConfiguration configuration = yamlLoader.loadConfiguration("archinaut.yml");
+		
+		assertEquals("depends.json", configuration.getDependsSource().getFile());
+		assertEquals(3, configuration.getMetricSources().size());
+		
+		SourceConfiguration scc = configuration.getMetricSources().get(0);
+		
+		assertEquals("scc.csv", scc.getFile());
+		assertEquals(Arrays.asList("Location", "Lines", "Code", "Complexity"), scc.getColumns());
+		assertEquals(Arrays.asList("SCC_LOC", "SCC_CLOC", "SCC_COMPLEXITY"), scc.getMetricNames());
+		assertEquals("com_uam_App_java", scc.getRenamer().transform("src/main/java/com/uam/App.java"));
+		
+	}
 	
+	@Test
+	void testInvalidConfiguration() throws IOException {
+		
+		Path configuration = Files.createTempFile("archinaut", ".yml");
+		
+		try {
+			
+			Files.writeString(configuration, String.join("\n",
+					"file: 'missing.csv'",
+					"format: 'CSV'",
+					"renaming:",
+					"  prefix: ''",
+					"  suffix: ''",
+					"metrics:",
+					"  - name: 'Lines'",
+					"    rename: 'LOC'",
+					"---",
+					"file: 'scc.csv'",
+					"format: 'CSV'",
+					"renaming:",
+					"  prefix: ''",
+					"  suffix: ''",
+					"metrics:",
+					"  - name: 'Location'",
+					"    filename: true",
+					"  - name: 'Code'",
+					"    rename: 'LOC'",
+					"---",
+					"file: 'scc.csv'",
+					"format: 'CSV'",
+					"renaming:",
+					"  prefix: ''",
+					"  suffix: ''",
+					"metrics:",
+					"  - name: 'Location'",
+					"    filename: true",
+					"  - name: 'Lines'",
+					"    rename: 'FAN_IN'",
+					"  - name: 'Code'",
+					"    rename: 'OUTGOING_CALL'",
+					"  - name: 'Complexity'",
+					"    rename: 'SCC_COMPLEXITY'"));
+			
+			IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+					() -> yamlLoader.loadConfiguration(configuration.toString()));
+			
+			assertTrue(e.getMessage().contains("file can't be read"));
+			assertTrue(e.getMessage().contains("exactly one filename metric"));
+			assertTrue(e.getMessage().contains("Depends setting missing"));
+			
+			// The names of the metrics calculated from the dependencies are reserved
+			assertTrue(e.getMessage().contains("metric FAN_IN is calculated from the dependencies"));
+			assertTrue(e.getMessage().contains("metric OUTGOING_CALL is calculated from the dependencies"));
+			assertFalse(e.getMessage().contains("SCC_COMPLEXITY"));
+			
+		} finally {
+			Files.deleteIfExists(configuration);
+		}
+		
+	}
 	
 }
@@ -0,0 +1,125 @@
+package mx.uam.archinaut.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ReachabilityTest {
+
+	@Test
+	void testBlocksMatchBreadthFirstSearch() {
+
+		int nodes = 700;
+		DependencyGraph graph = createRandomGraph(nodes, new Random(21));
+		StronglyConnectedComponents components = new StronglyConnectedComponents(graph);
+
+		// Cycles of several nodes, so the nodes are not all components of their own
+		assertTrue(components.getCyclesCount() > 0);
+		assertTrue(components.getComponentsCount() < nodes);
+
+		int[] reached = new int[nodes];
+		int[] reachedBy = new int[nodes];
+
+		for (int node = 0; node < nodes; node++) {
+
+			boolean[] visited = breadthFirstSearch(graph, node);
+
+			for (int other = 0; other < nodes; other++) {
+				if (visited[other] && other != node) {
+					reached[node]++;
+					reachedBy[other]++;
+				}
+			}
+		}
+
+		long visible = 0;
+
+		for (int count : reached) {
+			visible += count + 1L;
+		}
+
+		// The 11 words of the nodes in one block, in blocks of 3 words where the last
+		// one is shorter, and in blocks of one word
+		int componentsCount = components.getComponentsCount();
+		Reachability[] reachabilities = { new Reachability(graph, components),
+				new Reachability(graph, components, componentsCount * 3),
+				new Reachability(graph, components, 1) };
+
+		for (Reachability reachability : reachabilities) {
+
+			assertEquals(nodes, reachability.getNodesCount());
+
+			for (int node = 0; node < nodes; node++) {
+				assertEquals(reached[node], reachability.getReached(node), "reached from " + node);
+				assertEquals(reachedBy[node], reachability.getReachedBy(node), "reaching " + node);
+			}
+
+			assertEquals((double) visible / ((double) nodes * nodes), reachability.getPropagationCost(), 1e-12);
+		}
+	}
+
+	/**
+	 * A graph where most edges go to one of the next nodes and some go back to one
+	 * of the previous nodes, which closes cycles
+	 */
+	private DependencyGraph createRandomGraph(int nodes, Random random) {
+
+		DependencyGraph.Builder builder = new DependencyGraph.Builder(nodes);
+
+		for (int node = 0; node < nodes; node++) {
+
+			int edges = random.nextInt(4);
+
+			for (int edge = 0; edge < edges; edge++) {
+
+				int target;
+
+				if (random.nextInt(6) == 0) {
+					target = Math.max(0, node - 1 - random.nextInt(40));
+				} else {
+					target = Math.min(nodes - 1, node + 1 + random.nextInt(60));
+				}
+
+				builder.addEdge(node, target);
+			}
+
+			if (random.nextInt(50) == 0) {
+				builder.addEdge(node, node);
+			}
+		}
+
+		return builder.build();
+	}
+
+	private boolean[] breadthFirstSearch(DependencyGraph graph, int start) {
+
+		boolean[] visited = new boolean[graph.getNodesCount()];
+		Deque<Integer> pending = new ArrayDeque<>();
+
+		visited[start] = true;
+		pending.add(start);
+
+		while (!pending.isEmpty()) {
+
+			int node = pending.remove();
+
+			for (int edge = graph.getFirstEdge(node); edge < graph.getFirstEdge(node + 1); edge++) {
+
+				int target = graph.getTarget(edge);
+
+				if (!visited[target]) {
+					visited[target] = true;
+					pending.add(target);
+				}
+			}
+		}
+
+		return visited;
+	}
+
+}
@@ -0,0 +1,279 @@
+package mx.uam.archinaut.nameprocessing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import mx.uam.archinaut.data.nameprocessing.NameFilter;
+
+class NameFilterTest {
+
+	@Test
+	void testSubstrings() {
+
+		NameFilter filter = NameFilter.compile(List.of("Test_java", "_generated_"));
+
+		assertTrue(filter.matches("com_uam_GameTest_java"));
+		assertTrue(filter.matches("com_uam_generated_Parser_java"));
+		assertFalse(filter.matches("com_uam_Game_java"));
+		assertFalse(filter.matches("Test_jav"));
+	}
+
+	@Test
+	void testOverlappingSubstrings() {
+
+		// Substrings that are suffixes of each other end in states whose failure
+		// transitions lead to the state of the shorter one
+		assertSameAsContains(List.of("he", "she", "his", "hers"), "ushers", "sh", "h", "hi", "s");
+
+		// A substring inside a longer one is found when the longer one does not
+		// complete
+		assertSameAsContains(List.of("abcd", "bc"), "xabcx", "abdc", "abd", "bcd");
+		assertSameAsContains(List.of("abcd", "c"), "abce", "abd");
+
+		// A substring that starts where another one almost matched
+		assertSameAsContains(List.of("aab", "ab"), "aaab", "aaa", "ba");
+		assertSameAsContains(List.of("abab", "bac"), "ababac", "abac", "abba");
+
+		// Characters outside of ASCII
+		assertSameAsContains(List.of("\u00f1u", "u\u00f1"), "uu\u00f1", "\u00f1", "u", "\u00f1u\u00f1", "nu");
+	}
+
+	@Test
+	void testRandomSubstrings() {
+
+		Random random = new Random(7);
+		String alphabet = "ab_.";
+
+		for (int test = 0; test < 2000; test++) {
+
+			List<String> substrings = new ArrayList<>();
+
+			for (int i = random.nextInt(5) + 1; i > 0; i--) {
+				substrings.add(randomString(random, alphabet, 1, 4));
+			}
+
+			NameFilter filter = NameFilter.compile(substrings);
+
+			for (int name = 0; name < 20; name++) {
+				String original = randomString(random, alphabet, 0, 12);
+				assertEquals(contains(substrings, original), filter.matches(original),
+						() -> substrings + " on " + original);
+			}
+		}
+	}
+
+	@Test
+	void testGlobs() {
+
+		NameFilter star = NameFilter.compile(List.of("glob:com_uam_*_generated_*"));
+
+		assertTrue(star.matches("com_uam_parser_generated_Lexer_java"));
+		assertTrue(star.matches("com_uam__generated_"));
+		assertFalse(star.matches("org_com_uam_parser_generated_Lexer_java"));
+		assertFalse(star.matches("com_uam_parser_Lexer_java"));
+
+		// Two stars are the same as one, and the dots are not wildcards
+		NameFilter stars = NameFilter.compile(List.of("glob:com.**.java"));
+
+		assertTrue(stars.matches("com.uam.Game.java"));
+		assertTrue(stars.matches("com..java"));
+		assertFalse(stars.matches("com_uam_Game_java"));
+		assertFalse(stars.matches("com.uam.Game.javax"));
+
+		NameFilter question = NameFilter.compile(List.of("glob:Game?_java"));
+
+		assertTrue(question.matches("Game1_java"));
+		assertFalse(question.matches("Game_java"));
+		assertFalse(question.matches("Game12_java"));
+
+		// A glob without wildcards is the whole name
+		NameFilter exact = NameFilter.compile(List.of("glob:Game_java"));
+
+		assertTrue(exact.matches("Game_java"));
+		assertFalse(exact.matches("com_Game_java"));
+	}
+
+	@Test
+	void testRegularExpressions() {
+
+		NameFilter anchored = NameFilter.compile(List.of("regex:^com_uam_spaceinvaders_(audio|presentation)_"));
+
+		assertTrue(anchored.matches("com_uam_spaceinvaders_audio_Sound_java"));
+		assertTrue(anchored.matches("com_uam_spaceinvaders_presentation_Window_java"));
+		assertFalse(anchored.matches("org_com_uam_spaceinvaders_audio_Sound_java"));
+		assertFalse(anchored.matches("com_uam_spaceinvaders_levels_Level_java"));
+
+		// Without anchors the expression is found anywhere in the name
+		NameFilter found = NameFilter.compile(List.of("regex:_aliens_"));
+
+		assertTrue(found.matches("com_uam_aliens_Alien_java"));
+		assertFalse(found.matches("com_uam_Alien_java"));
+
+		NameFilter end = NameFilter.compile(List.of("regex:Test_java$"));
+
+		assertTrue(end.matches("GameTest_java"));
+		assertFalse(end.matches("GameTest_java_bak"));
+
+		// Exactly a name, with the characters of regular expressions quoted
+		NameFilter exactly = NameFilter.compile(List.of(NameFilter.exactly("a.b(c)")));
+
+		assertTrue(exactly.matches("a.b(c)"));
+		assertFalse(exactly.matches("axb(c)"));
+		assertFalse(exactly.matches("a.b(c)d"));
+
+		assertThrows(IllegalArgumentException.class, () -> NameFilter.compile(List.of("regex:(unclosed")));
+	}
+
+	@Test
+	void testMixedExclusions() {
+
+		NameFilter filter = NameFilter.compile(List.of("Test_java", "glob:*_generated_*", "regex:^legacy_"));
+
+		assertTrue(filter.matches("GameTest_java"));
+		assertTrue(filter.matches("com_generated_Lexer_java"));
+		assertTrue(filter.matches("legacy_Game_java"));
+		assertFalse(filter.matches("com_legacy_Game_java"));
+		assertEquals(List.of("Test_java", "glob:*_generated_*", "regex:^legacy_"), filter.getExclusions());
+	}
+
+	@Test
+	void testFindMatches() {
+
+		Random random = new Random(23);
+		String alphabet = "ab_.";
+
+		for (int test = 0; test < 1000; test++) {
+
+			// Repeated exclusions and substrings that are suffixes of each other are
+			// reported at every position
+			List<String> exclusions = new ArrayList<>();
+
+			for (int i = random.nextInt(6) + 1; i > 0; i--) {
+
+				String text = randomString(random, alphabet, 0, 3);
+
+				switch (random.nextInt(4)) {
+				case 0:
+					exclusions.add(NameFilter.GLOB_PREFIX + "*" + text + "*");
+					break;
+				case 1:
+					exclusions.add(NameFilter.exactly(text));
+					break;
+				default:
+					exclusions.add(text);
+				}
+			}
+
+			NameFilter filter = NameFilter.compile(exclusions);
+
+			for (int name = 0; name < 20; name++) {
+
+				String original = randomString(random, alphabet, 0, 8);
+				BitSet expected = new BitSet();
+
+				for (int i = 0; i < exclusions.size(); i++) {
+					if (NameFilter.compile(List.of(exclusions.get(i))).matches(original)) {
+						expected.set(i);
+					}
+				}
+
+				assertEquals(expected, filter.findMatches(original), () -> exclusions + " on " + original);
+				assertEquals(!expected.isEmpty(), filter.matches(original));
+			}
+		}
+
+		assertTrue(NameFilter.NONE.findMatches("a").isEmpty());
+	}
+
+	@Test
+	void testExactNames() {
+
+		for (String name : Arrays.asList("", "a.b(c)", "com_uam_Game_java", "a\\Eb", "\\E", "a\\Q\\E\\E")) {
+
+			String exclusion = NameFilter.exactly(name);
+
+			assertEquals(name, NameFilter.getExactName(exclusion));
+			assertTrue(NameFilter.compile(List.of(exclusion)).matches(name));
+		}
+
+		for (String exclusion : Arrays.asList("a", "glob:a", "regex:^a$", "regex:^\\Qa\\E$b", "regex:^\\Qa\\E",
+				"regex:^\\Qa\\Eb\\E$", null)) {
+			assertNull(NameFilter.getExactName(exclusion), exclusion);
+		}
+	}
+
+	@Test
+	void testEmptyExclusions() {
+
+		NameFilter empty = NameFilter.compile(Collections.emptyList());
+
+		assertTrue(empty.isEmpty());
+		assertTrue(NameFilter.NONE.isEmpty());
+
+		for (String name : Arrays.asList("", "a", "com_uam_Game_java")) {
+			assertFalse(empty.matches(name));
+			assertFalse(NameFilter.NONE.matches(name));
+		}
+
+		// An empty substring is in every name, as with String.contains
+		NameFilter emptySubstring = NameFilter.compile(List.of(""));
+
+		assertFalse(emptySubstring.isEmpty());
+		assertTrue(emptySubstring.matches(""));
+		assertTrue(emptySubstring.matches("com_uam_Game_java"));
+
+		assertThrows(IllegalArgumentException.class, () -> NameFilter.compile(Arrays.asList("a", null)));
+	}
+
+	private static void assertSameAsContains(List<String> substrings, String... names) {
+
+		NameFilter filter = NameFilter.compile(substrings);
+
+		for (String name : names) {
+			assertEquals(contains(substrings, name), filter.matches(name), () -> substrings + " on " + name);
+		}
+
+		// Every substring matches itself
+		for (String substring : substrings) {
+			assertTrue(filter.matches(substring), () -> substrings + " on " + substring);
+		}
+	}
+
+	/**
+	 * The matching of the substrings as it was done with String.contains
+	 */
+	private static boolean contains(List<String> substrings, String name) {
+
+		for (String substring : substrings) {
+			if (name.contains(substring)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static String randomString(Random random, String alphabet, int minimumLength, int maximumLength) {
+
+		char[] chars = new char[minimumLength + random.nextInt(maximumLength - minimumLength + 1)];
+
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+
+		return new String(chars);
+	}
+
+}
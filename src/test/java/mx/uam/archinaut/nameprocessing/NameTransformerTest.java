@@ -0,0 +1,174 @@
+package mx.uam.archinaut.nameprocessing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import mx.uam.archinaut.data.nameprocessing.NameProcessor;
+import mx.uam.archinaut.data.nameprocessing.NameTransformer;
+import mx.uam.archinaut.model.yaml.RenamingConfiguration;
+import mx.uam.archinaut.model.yaml.Substitution;
+
+class NameTransformerTest {
+
+	private static final String[] NAMES = { "", "a", "src/main/java/com/uam/Game.java",
+			"main.java.com.uam.spaceinvaders.Alien", "aaaa", "ababab", "a.b/c_d", "__..//", "Test.java.java" };
+
+	@Test
+	void testChainedSubstitutions() {
+
+		// Single characters folded into one table, where later substitutions apply to
+		// what earlier ones produced
+		assertSameAsReplace(configuration("src/main/java/", ".java", "/", "_", "_", "-", "-", "."));
+		assertSameAsReplace(configuration("", "", ".", "_", "_", "::"));
+		assertSameAsReplace(configuration("", "", "a", "b", "b", "a"));
+
+		// The order of the substitutions and not their position in the list
+		RenamingConfiguration reversed = configuration("", "", "/", "_", "_", "-");
+		reversed.getSubstitutions().get(0).setOrder(2);
+		reversed.getSubstitutions().get(1).setOrder(1);
+		assertSameAsReplace(reversed);
+
+		// The configuration is not sorted by the transformer
+		assertEquals(2, reversed.getSubstitutions().get(0).getOrder());
+	}
+
+	@Test
+	void testOverlappingAndMultiCharacterSubstitutions() {
+
+		assertSameAsReplace(configuration("", "", "aa", "b"));
+		assertSameAsReplace(configuration("", "", "aba", "x"));
+		assertSameAsReplace(configuration("", "", "ab", "ba", "ba", "ab"));
+		assertSameAsReplace(configuration("main.java.", "", ".", "_", "com_uam_", ""));
+		assertSameAsReplace(configuration("", ".java", "/", "::", "::", "."));
+
+		// The prefix and the suffix are removed wherever they appear
+		assertSameAsReplace(configuration("java", "java", ".", "_"));
+	}
+
+	@Test
+	void testEmptyPatterns() {
+
+		RenamingConfiguration empty = configuration("", "");
+
+		for (String name : NAMES) {
+			assertSame(name, NameTransformer.compile(empty).transform(name));
+		}
+
+		// An empty substitute is inserted around every character, as String.replace
+		// does
+		assertSameAsReplace(configuration("", "", "", "|"));
+		assertSameAsReplace(configuration("", "", "", "", ".", "_"));
+		assertSameAsReplace(configuration("", "", ".", "_", "", "ab", "ab", "."));
+	}
+
+	@Test
+	void testRandomConfigurations() {
+
+		Random random = new Random(5);
+		String alphabet = "ab._/";
+
+		for (int test = 0; test < 2000; test++) {
+
+			List<String> patterns = new ArrayList<>();
+
+			for (int i = random.nextInt(6) * 2; i > 0; i--) {
+				patterns.add(randomString(random, alphabet, 3));
+			}
+
+			RenamingConfiguration configuration = configuration(randomString(random, alphabet, 3),
+					randomString(random, alphabet, 3), patterns.toArray(new String[0]));
+
+			Collections.shuffle(configuration.getSubstitutions(), random);
+
+			NameTransformer transformer = NameTransformer.compile(configuration);
+
+			for (int name = 0; name < 20; name++) {
+				String original = randomString(random, alphabet, 12);
+				assertEquals(replace(configuration, original), transformer.transform(original),
+						() -> "Renaming " + original);
+			}
+		}
+	}
+
+	@Test
+	void testProcessorSeesChangedConfigurations() {
+
+		NameProcessor processor = new NameProcessor();
+		RenamingConfiguration configuration = configuration("", "", ".", "_");
+
+		assertEquals("a_b", processor.processName(configuration, "a.b"));
+
+		configuration.getSubstitutions().get(0).setWith("/");
+
+		assertEquals("a/b", processor.processName(configuration, "a.b"));
+	}
+
+	private static void assertSameAsReplace(RenamingConfiguration configuration) {
+
+		NameTransformer transformer = NameTransformer.compile(configuration);
+
+		for (String name : NAMES) {
+			assertEquals(replace(configuration, name), transformer.transform(name), () -> "Renaming " + name);
+		}
+	}
+
+	/**
+	 * The renaming as it was done with a chain of String.replace
+	 */
+	private static String replace(RenamingConfiguration configuration, String name) {
+
+		String result = name.replace(configuration.getPrefix(), "").replace(configuration.getSuffix(), "");
+
+		List<Substitution> substitutions = new ArrayList<>(configuration.getSubstitutions());
+		Collections.sort(substitutions);
+
+		for (Substitution substitution : substitutions) {
+			result = result.replace(substitution.getSubstitute(), substitution.getWith());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Create a configuration, with the substitutions as pairs of substitute and
+	 * replacement in order
+	 */
+	private static RenamingConfiguration configuration(String prefix, String suffix, String... substitutions) {
+
+		RenamingConfiguration configuration = new RenamingConfiguration();
+		configuration.setPrefix(prefix);
+		configuration.setSuffix(suffix);
+		configuration.setSubstitutions(new ArrayList<>());
+
+		for (int i = 0; i < substitutions.length; i += 2) {
+
+			Substitution substitution = new Substitution();
+			substitution.setOrder(i / 2 + 1);
+			substitution.setSubstitute(substitutions[i]);
+			substitution.setWith(substitutions[i + 1]);
+
+			configuration.getSubstitutions().add(substitution);
+		}
+
+		return configuration;
+	}
+
+	private static String randomString(Random random, String alphabet, int maximumLength) {
+
+		char[] chars = new char[random.nextInt(maximumLength + 1)];
+
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+
+		return new String(chars);
+	}
+
+}
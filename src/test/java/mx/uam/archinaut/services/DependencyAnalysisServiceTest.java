@@ -0,0 +1,283 @@
+package mx.uam.archinaut.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.opencsv.exceptions.CsvValidationException;
+
+import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.DesignStructureMatrixModel;
+import mx.uam.archinaut.model.ElementMetric;
+import mx.uam.archinaut.model.MatrixDependencyGroup;
+import mx.uam.archinaut.model.MatrixElement;
+import mx.uam.archinaut.model.MatrixElementGroup;
+import mx.uam.archinaut.model.Reachability;
+import mx.uam.archinaut.model.StronglyConnectedComponents;
+
+@SpringBootTest
+class DependencyAnalysisServiceTest {
+
+	@Autowired
+	private DesignStructureMatrixService designStructureMatrixService;
+
+	@Autowired
+	private DependencyAnalysisService dependencyAnalysisService;
+
+	@Test
+	void cycleMetricsTest() throws CsvValidationException, IOException {
+
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+
+		StronglyConnectedComponents components = dependencyAnalysisService.addCycleMetrics(matrix);
+
+		// The game, the levels and most of the entities depend on each other
+		assertEquals(1, components.getCyclesCount());
+
+		Map<Integer, Integer> sizes = new HashMap<>();
+
+		for (MatrixElement element : matrix.getElements()) {
+			sizes.merge(element.getMetricValue(DependencyAnalysisService.CYCLE_ID), 1, Integer::sum);
+		}
+
+		for (MatrixElement element : matrix.getElements()) {
+
+			int size = element.getMetricValue(DependencyAnalysisService.CYCLE_SIZE);
+
+			assertEquals(sizes.get(element.getMetricValue(DependencyAnalysisService.CYCLE_ID)), size);
+			assertEquals(size > 1 ? 1 : 0, element.getMetricValue(DependencyAnalysisService.IN_CYCLE));
+		}
+
+		// Every dependency goes from a component to the same one or to a lower one
+		for (int i = 0; i < matrix.getElementsCount(); i++) {
+			for (MatrixDependencyGroup group : matrix.getElement(i).getDependencies()) {
+				int destination = matrix.getIndexOfElement(group.getDestination());
+				assertTrue(group.getTotalDependencies() == 0
+						|| components.getComponent(i) >= components.getComponent(destination));
+			}
+		}
+
+		// The metrics are replaced when they are calculated again
+		dependencyAnalysisService.addCycleMetrics(matrix);
+		assertEquals(9, matrix.getMaximumElementValue(new ElementMetric(DependencyAnalysisService.CYCLE_SIZE, 0)));
+
+	}
+
+	@Test
+	void groupCycleMetricsTest() throws CsvValidationException, IOException {
+
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+
+		// The names of the sample have no dots, so the tree comes from the underscores
+		MatrixElementGroup root = designStructureMatrixService.createNamespaceGrouping(matrix, '_');
+
+		dependencyAnalysisService.addCycleMetrics(matrix);
+
+		int cycles = 0;
+		List<MatrixElementGroup> groups = getGroups(root);
+
+		while (!groups.isEmpty()) {
+
+			// The groups of every depth that every group depends on, directly or not
+			List<Set<MatrixElementGroup>> reached = new ArrayList<>();
+
+			for (MatrixElementGroup group : groups) {
+				reached.add(findReachedGroups(matrix, group, groups));
+			}
+
+			for (int i = 0; i < groups.size(); i++) {
+
+				MatrixElementGroup group = groups.get(i);
+				int size = 0;
+
+				for (int j = 0; j < groups.size(); j++) {
+
+					boolean sameCycle = i == j
+							|| (reached.get(i).contains(groups.get(j)) && reached.get(j).contains(group));
+
+					assertEquals(sameCycle, group.getMetricValue(DependencyAnalysisService.GROUP_CYCLE_ID) == groups
+							.get(j).getMetricValue(DependencyAnalysisService.GROUP_CYCLE_ID), group.getFullName());
+
+					if (sameCycle) {
+						size++;
+					}
+				}
+
+				assertEquals(size, group.getMetricValue(DependencyAnalysisService.GROUP_CYCLE_SIZE),
+						group.getFullName());
+
+				if (size > 1) {
+					cycles++;
+				}
+			}
+
+			List<MatrixElementGroup> children = new ArrayList<>();
+
+			for (MatrixElementGroup group : groups) {
+				children.addAll(getGroups(group));
+			}
+
+			groups = children;
+		}
+
+		assertTrue(cycles > 0);
+
+		// The metrics are replaced when they are calculated again
+		MatrixElementGroup first = getGroups(root).get(0);
+		int size = first.getMetricValue(DependencyAnalysisService.GROUP_CYCLE_SIZE);
+
+		dependencyAnalysisService.addCycleMetrics(matrix);
+		assertEquals(size, first.getMetricValue(DependencyAnalysisService.GROUP_CYCLE_SIZE));
+
+	}
+
+	/**
+	 * Find the groups that the elements below a group depend on, directly or
+	 * through other groups, with a search over the dependencies between the
+	 * groups of the same depth
+	 */
+	private Set<MatrixElementGroup> findReachedGroups(DesignStructureMatrix matrix, MatrixElementGroup start,
+			List<MatrixElementGroup> groups) {
+
+		Set<MatrixElementGroup> reached = new HashSet<>();
+		List<MatrixElementGroup> pending = new ArrayList<>(List.of(start));
+
+		while (!pending.isEmpty()) {
+
+			MatrixElementGroup group = pending.remove(pending.size() - 1);
+
+			for (MatrixElement element : matrix.getElements()) {
+
+				if (!isBelow(element, group)) {
+					continue;
+				}
+
+				for (MatrixDependencyGroup dependency : element.getDependencies()) {
+
+					if (dependency.getTotalDependencies() == 0) {
+						continue;
+					}
+
+					for (MatrixElementGroup destination : groups) {
+						if (destination != group && isBelow(dependency.getDestination(), destination)
+								&& reached.add(destination)) {
+							pending.add(destination);
+						}
+					}
+				}
+			}
+		}
+
+		return reached;
+	}
+
+	private boolean isBelow(MatrixElement element, MatrixElementGroup group) {
+
+		for (MatrixElement parent = element.getGroup(); parent != null; parent = parent.getGroup()) {
+			if (parent == group) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private List<MatrixElementGroup> getGroups(MatrixElementGroup group) {
+
+		List<MatrixElementGroup> groups = new ArrayList<>();
+
+		for (MatrixElement child : group.getChildren()) {
+			if (child instanceof MatrixElementGroup) {
+				groups.add((MatrixElementGroup) child);
+			}
+		}
+
+		return groups;
+	}
+
+	@Test
+	void structuralMetricsTest() throws CsvValidationException, IOException {
+
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+
+		dependencyAnalysisService.addStructuralMetrics(matrix);
+
+		DesignStructureMatrixModel model = DesignStructureMatrixModel.getModelFromElementsInMatrix(matrix);
+
+		for (MatrixElement element : matrix.getElements()) {
+
+			assertEquals(model.calculateNumberOfDependents(element),
+					element.getMetricValue(DependencyAnalysisService.FAN_IN));
+			assertEquals(model.calculateNumberOfDependees(element),
+					element.getMetricValue(DependencyAnalysisService.FAN_OUT));
+			assertEquals(model.calculateIncomingDependencies(element),
+					element.getMetricValue(DependencyAnalysisService.INCOMING_DEPS));
+			assertEquals(model.calculateOutgoingDependencies(element),
+					element.getMetricValue(DependencyAnalysisService.OUTGOING_DEPS));
+
+			int calls = 0;
+
+			for (MatrixDependencyGroup group : element.getDependencies()) {
+				if (group.getDestination() != element) {
+					calls += group.getDependencies().getOrDefault("Call", 0);
+				}
+			}
+
+			assertEquals(calls, element.getMetricValue(DependencyAnalysisService.OUTGOING_PREFIX + "CALL"));
+		}
+
+	}
+
+	@Test
+	void propagationMetricsTest() throws CsvValidationException, IOException {
+
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+
+		Reachability reachability = dependencyAnalysisService.addPropagationMetrics(matrix);
+
+		int elements = matrix.getElementsCount();
+		long reached = 0;
+		long reachedBy = 0;
+
+		for (int i = 0; i < elements; i++) {
+
+			MatrixElement element = matrix.getElement(i);
+
+			assertEquals(reachability.getReached(i), element.getMetricValue(DependencyAnalysisService.PROPAGATION_REACH));
+			assertEquals(reachability.getReachedBy(i),
+					element.getMetricValue(DependencyAnalysisService.PROPAGATION_FANIN));
+
+			reached += reachability.getReached(i);
+			reachedBy += reachability.getReachedBy(i);
+
+			// An element reaches at least the elements it depends on directly
+			int direct = 0;
+
+			for (MatrixDependencyGroup group : element.getDependencies()) {
+				if (group.getTotalDependencies() > 0 && group.getDestination() != element) {
+					direct++;
+				}
+			}
+
+			assertTrue(reachability.getReached(i) >= direct);
+		}
+
+		// Every pair is counted once from each side
+		assertEquals(reached, reachedBy);
+		assertEquals((double) (reached + elements) / ((double) elements * elements), reachability.getPropagationCost(),
+				1e-9);
+
+	}
+
+}
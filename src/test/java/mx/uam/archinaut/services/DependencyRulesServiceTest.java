@@ -0,0 +1,174 @@
+package mx.uam.archinaut.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.opencsv.exceptions.CsvValidationException;
+
+import mx.uam.archinaut.data.loader.ConstraintsLoader;
+import mx.uam.archinaut.model.DependencyConstraintViolation;
+import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.MatrixDependencyGroup;
+import mx.uam.archinaut.model.MatrixElement;
+import mx.uam.archinaut.model.dto.DependencyConstraintDTO;
+import mx.uam.archinaut.model.dto.MatrixConstraintsDTO;
+
+@SpringBootTest
+class DependencyRulesServiceTest {
+
+	private static final String PRESENTATION = "com_uam_spaceinvaders_presentation_";
+
+	private static final String LEVELS = "com_uam_spaceinvaders_levels_";
+
+	private static final String APP = "com_uam_spaceinvaders_App_java";
+
+	private static final String AUDIO = "com_uam_spaceinvaders_audio_Audio_java";
+
+	@Autowired
+	private DesignStructureMatrixService designStructureMatrixService;
+
+	@Autowired
+	private DependencyRulesService dependencyRulesService;
+
+	@Autowired
+	private ConstraintsLoader constraintsLoader;
+
+	@Test
+	void findViolationsTest() throws CsvValidationException, IOException {
+
+		Path configuration = Files.createTempFile("archinaut", ".yml");
+		Path constraints = Files.createTempFile("archinaut", ".json");
+
+		try {
+
+			MatrixConstraintsDTO matrixConstraints = new MatrixConstraintsDTO("depends");
+			matrixConstraints.addDependencyConstraint(new DependencyConstraintDTO(APP, AUDIO));
+			assertTrue(constraintsLoader.saveToJSON(constraints.toString(), matrixConstraints));
+
+			Files.writeString(configuration, String.join("\n",
+					"file: 'depends.json'",
+					"format: 'DEPENDS'",
+					"renaming:",
+					"  pathSeparator: '.'",
+					"  prefix: 'main.java.'",
+					"  suffix: ''",
+					"  substitutions:",
+					"    - order: 1",
+					"      substitute: '.'",
+					"      with: '_'",
+					"metrics:",
+					"  - name: 'Call'",
+					"  - name: 'Import'",
+					"  - name: 'Use'",
+					"constraints:",
+					"  file: '" + constraints + "'",
+					"  layers:",
+					"    - '" + PRESENTATION + "'",
+					"    - 'glob:" + LEVELS + "*'",
+					"  rules:",
+					"    - source: 'regex:_aliens_'",
+					"      mustNotDependOn: 'regex:_entities_Spaceship_java$'"));
+
+			DesignStructureMatrix matrix = designStructureMatrixService
+					.loadDataBasedOnConfigurationFile(configuration.toString());
+
+			assertEquals(3, matrix.getDependencyRules().size());
+
+			List<DependencyConstraintViolation> violations = dependencyRulesService.findViolations(matrix);
+
+			assertFalse(violations.isEmpty());
+
+			for (DependencyConstraintViolation violation : violations) {
+
+				String source = violation.getMatrixDependencyGroup().getSource().getFullName();
+				String destination = violation.getMatrixDependencyGroup().getDestination().getFullName();
+
+				assertNotNull(violation.getRule());
+				assertTrue(violation.getMatrixDependencyGroup().getTotalDependencies() > 0);
+
+				if (source.startsWith(LEVELS)) {
+					assertTrue(destination.startsWith(PRESENTATION));
+				} else if (source.contains("_aliens_")) {
+					assertTrue(destination.endsWith("_entities_Spaceship_java"));
+				} else {
+					assertEquals(APP, source);
+					assertEquals(AUDIO, destination);
+				}
+			}
+
+			// Every dependency that breaks a rule is reported once
+			int expected = 0;
+
+			for (MatrixElement element : matrix.getElements()) {
+				for (MatrixDependencyGroup group : element.getDependencies()) {
+
+					String source = element.getFullName();
+					String destination = group.getDestination().getFullName();
+
+					if (group.getTotalDependencies() == 0) {
+						continue;
+					}
+
+					if (source.startsWith(LEVELS) && destination.startsWith(PRESENTATION)
+							|| source.contains("_aliens_") && destination.endsWith("_entities_Spaceship_java")
+							|| source.equals(APP) && destination.equals(AUDIO)) {
+						expected++;
+					}
+				}
+			}
+
+			assertEquals(expected, violations.size());
+
+		} finally {
+			Files.deleteIfExists(configuration);
+			Files.deleteIfExists(constraints);
+		}
+
+	}
+
+	@Test
+	void invalidConstraintsTest() throws IOException {
+
+		Path configuration = Files.createTempFile("archinaut", ".yml");
+
+		try {
+
+			Files.writeString(configuration, String.join("\n",
+					"file: 'depends.json'",
+					"format: 'DEPENDS'",
+					"renaming:",
+					"  pathSeparator: '.'",
+					"  prefix: 'main.java.'",
+					"  suffix: ''",
+					"metrics:",
+					"  - name: 'Call'",
+					"constraints:",
+					"  rules:",
+					"    - source: 'regex:('",
+					"      mustNotDependOn: ''"));
+
+			IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+					() -> designStructureMatrixService.loadDataBasedOnConfigurationFile(configuration.toString()));
+
+			assertTrue(exception.getMessage().contains("regex:("));
+			assertTrue(exception.getMessage().contains("is empty"));
+
+		} finally {
+			Files.deleteIfExists(configuration);
+		}
+
+	}
+
+}
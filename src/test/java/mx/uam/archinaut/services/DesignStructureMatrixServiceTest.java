@@ -1,15 +1,61 @@
 package mx.uam.archinaut.services;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import com.opencsv.exceptions.CsvValidationException;
+
+import mx.uam.archinaut.data.loader.InputCache;
 import mx.uam.archinaut.data.nameprocessing.NameProcessor;
+import mx.uam.archinaut.model.AggregateMatrixDependencyGroup;
+import mx.uam.archinaut.model.CoChangeTable;
+import mx.uam.archinaut.model.DependencyConstraint;
+import mx.uam.archinaut.model.DependencyGraph;
+import mx.uam.archinaut.model.DependencyMetric;
+import mx.uam.archinaut.model.DependencyRollup;
 import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.DesignStructureMatrixModel;
+import mx.uam.archinaut.model.ElementMetric;
+import mx.uam.archinaut.model.ElementSymbolTable;
+import mx.uam.archinaut.model.MatrixDependencyGroup;
 import mx.uam.archinaut.model.MatrixElement;
+import mx.uam.archinaut.model.MatrixElementGroup;
+import mx.uam.archinaut.model.MetricsTable;
+import mx.uam.archinaut.model.Neighborhood;
+import mx.uam.archinaut.model.Reachability;
+import mx.uam.archinaut.model.StronglyConnectedComponents;
+import mx.uam.archinaut.model.TrendsAnalysis;
+import mx.uam.archinaut.model.yaml.SourceConfiguration;
+import mx.uam.archinaut.model.yaml.YamlConfigurationEntry;
 
 @SpringBootTest
 class DesignStructureMatrixServiceTest extends AbstractServiceTest {
@@ -20,6 +66,12 @@ class DesignStructureMatrixServiceTest extends AbstractServiceTest {
 	@Autowired
 	private NameProcessor nameProcessor;
 	
+	@Autowired
+	private MetricsService metricsService;
+	
+	@Autowired
+	private InputCache inputCache;
+	
 	@Test
 	void loadMatrixFromJSONTest() {
 		
@@ -59,4 +111,1053 @@ class DesignStructureMatrixServiceTest extends AbstractServiceTest {
 		
 	}
 	
+	@Test
+	void exclusionsTest() {
+		
+		List<String> exclusions = Arrays.asList("aliens", "glob:*_Level*_java",
+				"regex:^com_uam_spaceinvaders_audio_");
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadMatrixFromJSON(
+				dependsConfigurationEntry.getFile(), dependsConfigurationEntry.getRenaming(), exclusions);
+		
+		assertNotNull(matrix);
+		assertEquals(9, matrix.getElementsCount());
+		assertEquals(exclusions, matrix.getExclusionStrings());
+		
+		for (MatrixElement element : matrix.getElements()) {
+			
+			assertFalse(element.getFullName().contains("aliens"));
+			assertFalse(element.getFullName().contains("Level"));
+			assertFalse(element.getFullName().contains("audio"));
+			
+			// Only dependencies between the elements that were loaded
+			for (MatrixDependencyGroup group : element.getDependencies()) {
+				MatrixElement destination = group.getDestination();
+				assertEquals(destination, matrix.getElement(matrix.getIndexOfElement(destination)));
+			}
+		}
+		
+	}
+	
+	@Test
+	void elementIdsTest() {
+		
+		// Names interned by other matrixes give the elements of this one large ids
+		int unloaded = ElementSymbolTable.intern("elementIdsTest.unloaded0");
+		
+		for (int i = 1; i < 5000; i++) {
+			ElementSymbolTable.intern("elementIdsTest.unloaded" + i);
+		}
+		
+		List<MatrixElement> elements = new ArrayList<>();
+		List<MatrixElement> older = new ArrayList<>();
+		
+		for (int i = 0; i < 20; i++) {
+			elements.add(new MatrixElement("elementIdsTest.loaded" + i));
+		
+			if (i % 2 == 0) {
+				older.add(new MatrixElement("elementIdsTest.loaded" + i));
+			}
+		}
+		
+		DesignStructureMatrix matrix = new DesignStructureMatrix("elementIdsTest", elements);
+		
+		MatrixElementGroup root = new MatrixElementGroup("elementIdsTest");
+		MatrixElementGroup group = new MatrixElementGroup("elementIdsTest.group");
+		root.addChild(group);
+		elements.forEach(group::addChild);
+		matrix.setRootGroup(root);
+		
+		for (int i = 0; i < elements.size(); i++) {
+			MatrixElement element = elements.get(i);
+			assertTrue(element.getId() > unloaded);
+			assertSame(element, matrix.getElementById(element.getId()));
+			assertEquals(i, matrix.getIndexOfElement(element));
+		}
+		
+		// Groups are found by id but have no index, other names are not found
+		assertSame(group, matrix.getElementById(group.getId()));
+		assertEquals(-1, matrix.getIndexOfElement(group));
+		assertNull(matrix.getElementById(unloaded));
+		assertNull(matrix.getElementById(ElementSymbolTable.NO_ID));
+		assertEquals(-1, matrix.getIndexOfElement(new MatrixElement("elementIdsTest.unloaded1")));
+		
+		// Rows of the trends follow the most recent matrix
+		TrendsAnalysis trends = new TrendsAnalysis(
+				Arrays.asList(matrix, new DesignStructureMatrix("elementIdsTest.older", older)));
+		
+		assertEquals(elements.size(), trends.getElementsCount());
+		
+		for (int row = 0; row < elements.size(); row++) {
+			assertSame(elements.get(row), trends.getElement(row));
+		}
+		
+	}
+	
+	@Test
+	void dependencyStoreTest() {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadMatrixFromJSON(dependsConfigurationEntry);
+		
+		MatrixElement source = null;
+		
+		for (MatrixElement element : matrix.getElements()) {
+			if (source == null || countDependencies(element) > countDependencies(source)) {
+				source = element;
+			}
+		}
+		
+		assertTrue(countDependencies(source) > 1);
+		
+		// Every iteration creates new views, views of the same cell are equal
+		List<MatrixDependencyGroup> first = new ArrayList<>();
+		List<MatrixDependencyGroup> second = new ArrayList<>();
+		source.getDependencies().forEach(first::add);
+		source.getDependencies().forEach(second::add);
+		
+		for (int i = 0; i < first.size(); i++) {
+			assertNotSame(first.get(i), second.get(i));
+			assertEquals(first.get(i), second.get(i));
+			assertEquals(first.get(i).hashCode(), second.get(i).hashCode());
+			assertNotEquals(first.get(i), second.get((i + 1) % second.size()));
+		}
+		
+		// A group that is not a view is only equal to itself
+		MatrixDependencyGroup detached = new MatrixDependencyGroup(source, first.get(0).getDestination());
+		assertNotEquals(first.get(0), detached);
+		assertNotEquals(detached, first.get(0));
+		
+		// The co-changes of a view are seen by the other views of the cell, including
+		// the incoming dependencies of the destination
+		MatrixDependencyGroup cell = first.get(0);
+		cell.setCoChanges(7);
+		
+		assertEquals(7, second.get(0).getCoChanges());
+		assertEquals(7, source.getDependencies().iterator().next().getCoChanges());
+		
+		for (MatrixDependencyGroup group : cell.getDestination().getIncomingDependencies()) {
+			assertEquals(group.getSource() == source ? 7 : 0, group.getCoChanges());
+		}
+		
+		// The first change copies the cells of the element out of the store, the
+		// other elements keep their cells
+		Map<MatrixElement, List<MatrixDependencyGroup>> before = new IdentityHashMap<>();
+		
+		for (MatrixElement element : matrix.getElements()) {
+			List<MatrixDependencyGroup> groups = new ArrayList<>();
+			element.getDependencies().forEach(groups::add);
+			before.put(element, groups);
+		}
+		
+		assertTrue(source.removeDependency(second.get(1)));
+		assertEquals(first.size() - 1, countDependencies(source));
+		
+		for (MatrixDependencyGroup group : source.getDependencies()) {
+			assertTrue(first.contains(group));
+			assertNotEquals(first.get(1), group);
+		}
+		
+		// The copies are still views, so they write through to the store
+		second.get(0).setCoChanges(9);
+		
+		for (MatrixDependencyGroup group : source.getDependencies()) {
+			assertEquals(group.equals(cell) ? 9 : 0, group.getCoChanges());
+		}
+		
+		for (MatrixElement element : matrix.getElements()) {
+			
+			if (element == source) {
+				continue;
+			}
+			
+			List<MatrixDependencyGroup> groups = new ArrayList<>();
+			element.getDependencies().forEach(groups::add);
+			assertEquals(before.get(element), groups);
+		}
+		
+	}
+	
+		@Test
+	void loadDataBasedOnConfigurationFileTest() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+		
+		assertNotNull(matrix);
+		assertEquals(17, matrix.getElementsCount());
+		
+		for (MatrixElement m : matrix.getElements()) {
+			assertEquals(8, m.getMetrics().size());
+		}
+		
+		for (String metric : matrix.getMetricNames()) {
+			
+			ElementMetric type = new ElementMetric(metric, 0);
+			int total = 0;
+			int maximum = Integer.MIN_VALUE;
+			
+			for (MatrixElement m : matrix.getElements()) {
+				total += m.getMetricValue(metric);
+				maximum = Math.max(maximum, m.getMetricValue(metric));
+			}
+			
+			assertEquals(total, matrix.getTotalForMetric(type));
+			assertEquals(maximum, matrix.getMaximumElementValue(type));
+		}
+		
+	}
+	
+	@Test
+	void snapshotTest() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+		
+		Path snapshot = Files.createTempFile("archinaut", ".snapshot");
+		
+		try {
+			
+			designStructureMatrixService.saveSnapshot(matrix, snapshot.toString());
+			DesignStructureMatrix loaded = designStructureMatrixService.loadSnapshot(snapshot.toString());
+			
+			assertEquals(matrix.getElementsCount(), loaded.getElementsCount());
+			assertEquals(matrix.getRootGroup().getChildrenCount(), loaded.getRootGroup().getChildrenCount());
+			
+			for (int i = 0; i < matrix.getElementsCount(); i++) {
+				
+				MatrixElement original = matrix.getElement(i);
+				MatrixElement copy = loaded.getElement(i);
+				
+				assertEquals(original.getFullName(), copy.getFullName());
+				assertEquals(original.getMetrics(), copy.getMetrics());
+				assertEquals(totalDependencies(original), totalDependencies(copy));
+			}
+			
+		} finally {
+			Files.deleteIfExists(snapshot);
+		}
+		
+	}
+	
+	@Test
+	void cacheTest() throws CsvValidationException, IOException {
+		
+		Path cache = Files.createTempDirectory("archinaut-cache");
+		
+		try {
+			
+			DesignStructureMatrix parsed = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml",
+					cache.toString());
+			
+			// A hash and a data file for the depends output and each CSV file
+			try (Stream<Path> files = Files.list(cache)) {
+				assertEquals(8, files.count());
+			}
+			
+			DesignStructureMatrix cached = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml",
+					cache.toString());
+			
+			assertEquals(parsed.getElementsCount(), cached.getElementsCount());
+			
+			for (int i = 0; i < parsed.getElementsCount(); i++) {
+				
+				MatrixElement original = parsed.getElement(i);
+				MatrixElement copy = cached.getElement(i);
+				
+				assertEquals(original.getFullName(), copy.getFullName());
+				assertEquals(original.getMetrics(), copy.getMetrics());
+				assertEquals(totalDependencies(original), totalDependencies(copy));
+			}
+			
+			// Copies of the CSV sources, parsed through the cache with parsers that count
+			// their calls
+			Path inputs = Files.createDirectory(cache.resolve("inputs"));
+			String metricsCache = cache.resolve("metrics").toString();
+			List<SourceConfiguration> sources = new ArrayList<>();
+			
+			for (YamlConfigurationEntry entry : nonDependsConfigurationEntries) {
+				Path copy = inputs.resolve(Paths.get(entry.getFile()).getFileName());
+				Files.copy(Paths.get(entry.getFile()), copy);
+				entry.setFile(copy.toString());
+				sources.add(new SourceConfiguration(entry, nameProcessor.getTransformer(entry.getRenaming())));
+			}
+			
+			int[] parses = new int[sources.size()];
+			List<MetricsTable> first = loadMetrics(metricsCache, sources, parses);
+			
+			int[] expected = new int[sources.size()];
+			Arrays.fill(expected, 1);
+			assertArrayEquals(expected, parses);
+			
+			// Nothing changed, so no parser is called
+			List<MetricsTable> second = loadMetrics(metricsCache, sources, parses);
+			assertArrayEquals(expected, parses);
+			
+			for (int i = 0; i < sources.size(); i++) {
+				assertSameMetrics(first.get(i), second.get(i));
+			}
+			
+			// Only the input that changed is parsed again
+			Path changed = Paths.get(sources.get(0).getFile());
+			List<String> lines = Files.readAllLines(changed);
+			Files.write(changed, lines.subList(0, lines.size() - 1));
+			
+			List<MetricsTable> third = loadMetrics(metricsCache, sources, parses);
+			expected[0]++;
+			assertArrayEquals(expected, parses);
+			assertEquals(first.get(0).getElementsCount() - 1, third.get(0).getElementsCount());
+			first.set(0, third.get(0));
+			
+			// Truncated data files are parsed again, and saved again
+			try (Stream<Path> files = Files.list(Paths.get(metricsCache))) {
+				for (Path data : (Iterable<Path>) files.filter(path -> path.toString().endsWith(".data"))::iterator) {
+					byte[] bytes = Files.readAllBytes(data);
+					Files.write(data, Arrays.copyOf(bytes, bytes.length / 2));
+				}
+			}
+			
+			List<MetricsTable> reparsed = loadMetrics(metricsCache, sources, parses);
+			
+			for (int i = 0; i < sources.size(); i++) {
+				expected[i]++;
+				assertSameMetrics(first.get(i), reparsed.get(i));
+			}
+			
+			assertArrayEquals(expected, parses);
+			
+			loadMetrics(metricsCache, sources, parses);
+			assertArrayEquals(expected, parses);
+			
+		} finally {
+			try (Stream<Path> files = Files.walk(cache)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+		
+	}
+	
+	private List<MetricsTable> loadMetrics(String cacheDirectory, List<SourceConfiguration> sources, int[] parses)
+			throws CsvValidationException, IOException {
+		
+		List<MetricsTable> tables = new ArrayList<>();
+		
+		for (int i = 0; i < sources.size(); i++) {
+			
+			SourceConfiguration source = sources.get(i);
+			int index = i;
+			
+			tables.add(inputCache.getMetrics(cacheDirectory, source, () -> {
+				parses[index]++;
+				return metricsService.parseCsvFile(source);
+			}));
+		}
+		
+		return tables;
+	}
+	
+	private void assertSameMetrics(MetricsTable expected, MetricsTable actual) {
+		
+		assertEquals(expected.getMetricsCount(), actual.getMetricsCount());
+		assertEquals(expected.getElementsCount(), actual.getElementsCount());
+		
+		for (int index = 0; index < expected.getElementsCount(); index++) {
+			
+			assertEquals(expected.getElementName(index), actual.getElementName(index));
+			
+			for (int metric = 0; metric < expected.getMetricsCount(); metric++) {
+				assertEquals(expected.hasValue(index, metric), actual.hasValue(index, metric));
+				assertEquals(expected.getValue(index, metric), actual.getValue(index, metric));
+			}
+		}
+	}
+	
+	@Test
+	void couplingTest() throws CsvValidationException, IOException {
+		
+		Path configuration = Files.createTempFile("archinaut", ".yml");
+		
+		try {
+			
+			Files.writeString(configuration, String.join("\n",
+					"file: 'coupling.csv'",
+					"format: 'COUPLING'",
+					"renaming:",
+					"  pathSeparator: '/'",
+					"  prefix: 'src/main/java/'",
+					"  suffix: ''",
+					"  substitutions:",
+					"    - order: 1",
+					"      substitute: '.'",
+					"      with: '_'",
+					"    - order: 2",
+					"      substitute: '/'",
+					"      with: '_'",
+					"metrics:",
+					"  - name: 'entity'",
+					"    filename: true",
+					"  - name: 'coupled'",
+					"    coupled: true",
+					"  - name: 'cochanges'",
+					"    rename: 'COCHANGES'",
+					"---",
+					"file: 'depends.json'",
+					"format: 'DEPENDS'",
+					"renaming:",
+					"  pathSeparator: '.'",
+					"  prefix: 'main.java.'",
+					"  suffix: ''",
+					"  substitutions:",
+					"    - order: 1",
+					"      substitute: '.'",
+					"      with: '_'",
+					"metrics:",
+					"  - name: 'Call'"));
+			
+			DesignStructureMatrix matrix = designStructureMatrixService
+					.loadDataBasedOnConfigurationFile(configuration.toString());
+			
+			int coChanges = 0;
+			int coChangeCells = 0;
+			int incomingCoChanges = 0;
+			
+			for (MatrixElement element : matrix.getElements()) {
+				for (MatrixDependencyGroup group : element.getDependencies()) {
+					coChanges += group.getCoChanges();
+					
+					if (group.getTotalDependencies() == 0) {
+						coChangeCells++;
+					}
+					
+					// Only the types in the metrics of the depends entry are loaded
+					for (String type : group.getDependencies().keySet()) {
+						assertEquals("Call", type);
+					}
+				}
+				
+				for (MatrixDependencyGroup group : element.getIncomingDependencies()) {
+					incomingCoChanges += group.getCoChanges();
+				}
+			}
+			
+			// The cells that only have co-changes are incoming dependencies of their
+			// destinations as well
+			assertTrue(coChanges > 0);
+			assertTrue(coChangeCells > 0);
+			assertEquals(coChanges, incomingCoChanges);
+			assertTrue(matrix.getTotalForMetric(new ElementMetric("COCHANGES", 0)) > 0);
+			assertTrue(matrix.getMaximumDependencyValue(DependencyMetric.COCHANGES) > 0);
+			assertTrue(designStructureMatrixService.createInitialModel(matrix).getMaximumCellCoChanges() > 0);
+			
+		} finally {
+			Files.deleteIfExists(configuration);
+		}
+		
+	}
+	
+	@Test
+	void fanInTest() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+		DesignStructureMatrixModel model = DesignStructureMatrixModel.getModelFromElementsInMatrix(matrix);
+		
+		int[] fanIn = matrix.calculateFanIn();
+		int[] fanOut = matrix.calculateFanOut();
+		
+		for (int i = 0; i < matrix.getElementsCount(); i++) {
+			
+			MatrixElement element = matrix.getElement(i);
+			
+			assertEquals(i, matrix.getIndexOfElement(element));
+			assertEquals(model.calculateNumberOfDependents(element), fanIn[i]);
+			assertEquals(model.calculateNumberOfDependees(element), fanOut[i]);
+			
+			int incoming = 0;
+			
+			for (MatrixDependencyGroup group : matrix.getIncomingDependencies(element)) {
+				assertEquals(element, group.getDestination());
+				incoming += group.getTotalDependencies();
+			}
+			
+			assertEquals(model.calculateIncomingDependencies(element), incoming);
+		}
+		
+		// Removing a dependency also removes it from the incoming dependencies
+		MatrixElement source = matrix.getElement(0);
+		MatrixDependencyGroup removed = source.getDependencies().iterator().next();
+		int dependents = matrix.getIncomingDependencies(removed.getDestination()).size();
+		
+		assertTrue(source.removeDependency(removed));
+		assertEquals(dependents - 1, matrix.getIncomingDependencies(removed.getDestination()).size());
+		
+	}
+	
+	@Test
+	void neighborhoodTest() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+		DesignStructureMatrixModel model = DesignStructureMatrixModel.getModelFromElementsInMatrix(matrix);
+		
+		for (MatrixElement element : matrix.getElements()) {
+			
+			DesignStructureMatrix neighborhood = designStructureMatrixService
+					.getDependentsModel(matrix, element).getDesignStructureMatrix();
+			
+			// An element that is a dependent and a dependee is there once
+			Set<MatrixElement> first = neighbors(model, Set.of(element));
+			assertEquals(first.size(), neighborhood.getElementsCount());
+			
+			for (MatrixElement copy : neighborhood.getElements()) {
+				assertTrue(first.contains(matrix.getElementByFullname(copy.getFullName())));
+			}
+			
+			// With radius 2 the neighbors of the neighbors are there as well
+			Set<MatrixElement> second = neighbors(model, first);
+			DesignStructureMatrix twoSteps = designStructureMatrixService.extractNeighborhood(matrix,
+					List.of(element), 2, Neighborhood.Direction.BOTH, null);
+			assertEquals(second.size(), twoSteps.getElementsCount());
+			
+			for (MatrixElement copy : twoSteps.getElements()) {
+				assertTrue(second.contains(matrix.getElementByFullname(copy.getFullName())));
+			}
+			
+			for (MatrixElement copy : neighborhood.getElements()) {
+				
+				MatrixElement original = matrix.getElementByFullname(copy.getFullName());
+				assertEquals(original == element, copy.isHotspot());
+				
+				// The cells between the elements of the neighborhood are copied
+				for (MatrixDependencyGroup group : copy.getDependencies()) {
+					MatrixDependencyGroup originalGroup = MatrixDependencyGroup.getDependencies(original,
+							matrix.getElementByFullname(group.getDestination().getFullName()));
+					assertEquals(originalGroup.getTotalDependencies(), group.getTotalDependencies());
+					assertEquals(originalGroup.getCoChanges(), group.getCoChanges());
+				}
+			}
+		}
+		
+		MatrixElement seed = matrix.getElement(0);
+		
+		assertEquals(1, designStructureMatrixService
+				.extractNeighborhood(matrix, List.of(seed), 0, Neighborhood.Direction.BOTH, null).getElementsCount());
+		
+		// With a large enough radius every element that the seed reaches is there
+		Neighborhood dependees = new Neighborhood(matrix, List.of(seed), matrix.getElementsCount(),
+				Neighborhood.Direction.DEPENDEES, null);
+		DependencyGraph graph = matrix.createDependencyGraph();
+		Reachability reachability = new Reachability(graph, new StronglyConnectedComponents(graph));
+		assertEquals(reachability.getReached(0) + 1, dependees.getElements().size());
+		
+		// Only the calls are followed and copied
+		DesignStructureMatrix calls = designStructureMatrixService.extractNeighborhood(matrix, List.of(seed), 2,
+				Neighborhood.Direction.BOTH, List.of("Call"));
+		
+		for (MatrixElement copy : calls.getElements()) {
+			for (MatrixDependencyGroup group : copy.getDependencies()) {
+				for (String type : group.getDependencies().keySet()) {
+					assertEquals("Call", type);
+				}
+			}
+		}
+		
+	}
+	
+	@Test
+	void dependencyRollupTest() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+		
+		// Co-changes in a cell with dependencies and in cells without them
+		MatrixElement last = matrix.getElement(matrix.getElementsCount() - 1);
+		CoChangeTable coChanges = new CoChangeTable("test", "TEST_COCHANGES");
+		coChanges.addPair(matrix.getElement(0).getFullName(), last.getFullName(), 3);
+		coChanges.addPair(matrix.getElement(1).getFullName(), last.getFullName(), 2);
+		coChanges.addPair(last.getFullName(), matrix.getElement(2).getFullName(), 5);
+		matrix.addCoChanges(coChanges);
+		
+		// The names of the sample have no dots, so the tree comes from the underscores
+		MatrixElementGroup root = designStructureMatrixService.createNamespaceGrouping(matrix, '_');
+		DependencyRollup rollup = matrix.getDependencyRollup();
+		
+		Random random = new Random(11);
+		int compared = 0;
+		
+		for (int test = 0; test < 40; test++) {
+			
+			// A cut of the tree where the groups are expanded at random, except the
+			// ones with a single child that are always expanded
+			Set<MatrixElement> cut = new HashSet<>();
+			List<MatrixElementGroup> pending = new ArrayList<>(List.of(root));
+			
+			while (!pending.isEmpty()) {
+				
+				MatrixElementGroup group = pending.remove(pending.size() - 1);
+				
+				for (MatrixElement child : group.getChildren()) {
+					if (child instanceof MatrixElementGroup
+							&& (((MatrixElementGroup) child).getChildrenCount() == 1 || random.nextInt(3) > 0)) {
+						pending.add((MatrixElementGroup) child);
+					} else {
+						cut.add(child);
+					}
+				}
+			}
+			
+			DependencyRollup.Cut rollupCut = rollup.getCut(cut);
+			
+			for (MatrixElement node : cut) {
+				if (node instanceof MatrixElementGroup) {
+					assertSameDependencies(MatrixDependencyGroup.getDependencies(node, cut),
+							rollupCut.getDependencies(node));
+					compared++;
+				}
+			}
+		}
+		
+		assertTrue(compared > 0);
+		
+	}
+	
+	/**
+	 * Compare the dependencies of the recursive aggregation with the ones of the
+	 * rollups, by destination
+	 */
+	private void assertSameDependencies(List<MatrixDependencyGroup> expected, List<MatrixDependencyGroup> actual) {
+		
+		Map<MatrixElement, MatrixDependencyGroup> byDestination = new IdentityHashMap<>();
+		
+		for (MatrixDependencyGroup group : expected) {
+			byDestination.put(group.getDestination(), group);
+		}
+		
+		assertEquals(byDestination.size(), actual.size());
+		
+		for (MatrixDependencyGroup group : actual) {
+			assertSameCell(byDestination.get(group.getDestination()), group);
+		}
+	}
+	
+	private void assertSameCell(MatrixDependencyGroup expected, MatrixDependencyGroup actual) {
+		
+		String cell = actual.getSource().getFullName() + " -> " + actual.getDestination().getFullName();
+		
+		assertNotNull(expected, cell);
+		assertEquals(expected.getTotalDependencies(), actual.getTotalDependencies(), cell);
+		assertEquals(expected.getDependencies(), actual.getDependencies(), cell);
+		assertEquals(expected.getCoChanges(), actual.getCoChanges(), cell);
+		
+		if (expected instanceof AggregateMatrixDependencyGroup && actual instanceof AggregateMatrixDependencyGroup) {
+			assertEquals(((AggregateMatrixDependencyGroup) expected).getMaxDependencies(),
+					((AggregateMatrixDependencyGroup) actual).getMaxDependencies(), cell);
+			assertEquals(((AggregateMatrixDependencyGroup) expected).getMaxCoChanges(),
+					((AggregateMatrixDependencyGroup) actual).getMaxCoChanges(), cell);
+		}
+	}
+	
+	@Test
+	void modelCellsTest() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+		int count = matrix.getElementsCount();
+		
+		// Co-changes in a cell without dependencies
+		CoChangeTable coChanges = new CoChangeTable("test", "TEST_COCHANGES");
+		coChanges.addPair(matrix.getElement(count - 1).getFullName(), matrix.getElement(2).getFullName(), 5);
+		matrix.addCoChanges(coChanges);
+		
+		Random random = new Random(5);
+		
+		for (int i = 0; i < 12; i++) {
+			matrix.addDependencyConstraint(new DependencyConstraint(matrix.getElement(random.nextInt(count)),
+					matrix.getElement(random.nextInt(count))));
+		}
+		
+		List<MatrixElement> flat = new ArrayList<>();
+		matrix.getElements().forEach(flat::add);
+		
+		int nonEmpty = assertModelCells(matrix, DesignStructureMatrixModel.getModelFromElementsInMatrix(matrix), flat);
+		
+		assertTrue(nonEmpty > 0);
+		assertTrue(nonEmpty < count * count);
+		
+		// Models with groups, where the constraints are moved to the groups
+		MatrixElementGroup root = designStructureMatrixService.createNamespaceGrouping(matrix, '_');
+		
+		for (int test = 0; test < 10; test++) {
+			
+			List<MatrixElement> elements = randomCut(root, random);
+			DesignStructureMatrixModel model = new DesignStructureMatrixModel(matrix, elements);
+			model.recalculateDependencyConstraints();
+			
+			assertModelCells(matrix, model, elements);
+		}
+		
+	}
+	
+	/**
+	 * Compare every position of a model with the dependencies of its elements and
+	 * with the constraints of the matrix
+	 * 
+	 * @return the number of non-empty positions
+	 */
+	private int assertModelCells(DesignStructureMatrix matrix, DesignStructureMatrixModel model,
+			List<MatrixElement> elements) {
+		
+		Set<MatrixElement> targets = new HashSet<>(elements);
+		Map<List<Integer>, DependencyConstraint> constraints = new HashMap<>();
+		
+		// The constraints are between elements, which are in the model or in one of
+		// its groups, and a later constraint takes the position of an earlier one
+		for (DependencyConstraint constraint : matrix.getDependencyConstraints()) {
+			constraints.put(List.of(elements.indexOf(findInModel(elements, constraint.getSource())),
+					elements.indexOf(findInModel(elements, constraint.getDestination()))), constraint);
+		}
+		
+		int nonEmpty = 0;
+		
+		for (int row = 0; row < elements.size(); row++) {
+			
+			Map<MatrixElement, MatrixDependencyGroup> byDestination = new IdentityHashMap<>();
+			
+			for (MatrixDependencyGroup group : MatrixDependencyGroup.getDependencies(elements.get(row), targets)) {
+				byDestination.put(group.getDestination(), group);
+			}
+			
+			for (int column = 0; column < elements.size(); column++) {
+				
+				MatrixDependencyGroup expected = byDestination.get(elements.get(column));
+				MatrixDependencyGroup actual = model.getDependencyGroup(row, column);
+				
+				if (expected == null) {
+					assertSame(MatrixDependencyGroup.EMPTY, actual);
+				} else {
+					assertNotSame(MatrixDependencyGroup.EMPTY, actual);
+					assertSame(elements.get(row), actual.getSource());
+					assertSame(elements.get(column), actual.getDestination());
+					assertSameCell(expected, actual);
+					nonEmpty++;
+				}
+				
+				assertSame(constraints.get(List.of(row, column)), model.getDependenciesConstraint(row, column));
+			}
+		}
+		
+		assertFalse(constraints.isEmpty());
+		
+		return nonEmpty;
+	}
+	
+	@Test
+	void modelIndexTest() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadDataBasedOnConfigurationFile("archinaut.yml");
+		MatrixElementGroup root = designStructureMatrixService.createNamespaceGrouping(matrix, '_');
+		
+		List<MatrixElement> tree = new ArrayList<>();
+		List<MatrixElement> pending = new ArrayList<>(List.of(root));
+		
+		while (!pending.isEmpty()) {
+			
+			MatrixElement node = pending.remove(pending.size() - 1);
+			tree.add(node);
+			
+			if (node instanceof MatrixElementGroup) {
+				((MatrixElementGroup) node).getChildren().forEach(pending::add);
+			}
+		}
+		
+		Random random = new Random(17);
+		
+		for (int test = 0; test < 10; test++) {
+			
+			List<MatrixElement> elements = randomCut(root, random);
+			DesignStructureMatrixModel model = new DesignStructureMatrixModel(matrix, elements);
+			
+			// The index of every node of the tree, found by scanning the list
+			for (MatrixElement node : tree) {
+				
+				int index = elements.indexOf(node);
+				
+				assertEquals(index, model.getIndexOfElement(node));
+				assertEquals(index != -1, model.containsElement(node));
+				assertEquals(findAllInModel(elements, node), model.getAsElementsInTheModel(node));
+			}
+			
+			// The dependents and dependees, found by going through every row
+			List<List<MatrixDependencyGroup>> rows = new ArrayList<>();
+			
+			for (MatrixElement element : elements) {
+				rows.add(MatrixDependencyGroup.getDependencies(element, elements));
+			}
+			
+			for (int i = 0; i < elements.size(); i++) {
+				
+				List<MatrixElement> dependents = new ArrayList<>();
+				List<MatrixElement> dependees = new ArrayList<>();
+				
+				for (int j = 0; j < elements.size(); j++) {
+					
+					if (i == j) {
+						continue;
+					}
+					
+					if (hasDependencies(rows.get(j), elements.get(i))) {
+						dependents.add(elements.get(j));
+					}
+					
+					if (hasDependencies(rows.get(i), elements.get(j))) {
+						dependees.add(elements.get(j));
+					}
+				}
+				
+				assertEquals(dependents, model.getListOfDependents(elements.get(i)));
+				assertEquals(dependees, model.getListOfDependees(elements.get(i)));
+			}
+		}
+		
+	}
+	
+	private boolean hasDependencies(List<MatrixDependencyGroup> groups, MatrixElement destination) {
+		
+		for (MatrixDependencyGroup group : groups) {
+			if (group.getDestination() == destination && group.getTotalDependencies() > 0) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns the element if it is in the list, otherwise its closest group in the
+	 * list, otherwise its subelements in the list
+	 */
+	private List<MatrixElement> findAllInModel(List<MatrixElement> elements, MatrixElement element) {
+		
+		List<MatrixElement> results = new ArrayList<>();
+		MatrixElement parent = element;
+		
+		while (parent != null && !elements.contains(parent)) {
+			parent = parent.getGroup();
+		}
+		
+		if (parent != null) {
+			results.add(parent);
+		} else {
+			addSubelementsInModel(elements, element, results);
+		}
+		
+		return results;
+	}
+	
+	private void addSubelementsInModel(List<MatrixElement> elements, MatrixElement parent,
+			List<MatrixElement> results) {
+		
+		if (parent instanceof MatrixElementGroup) {
+			for (MatrixElement child : ((MatrixElementGroup) parent).getChildren()) {
+				if (elements.contains(child)) {
+					results.add(child);
+				} else {
+					addSubelementsInModel(elements, child, results);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the element or the group of the element that is in the list
+	 */
+	private MatrixElement findInModel(List<MatrixElement> elements, MatrixElement element) {
+		
+		while (!elements.contains(element)) {
+			element = element.getGroup();
+		}
+		
+		return element;
+	}
+	
+	/**
+	 * A cut of the tree where the groups are expanded at random, except the ones
+	 * with a single child that are always expanded
+	 */
+	private List<MatrixElement> randomCut(MatrixElementGroup root, Random random) {
+		
+		List<MatrixElement> cut = new ArrayList<>();
+		List<MatrixElementGroup> pending = new ArrayList<>(List.of(root));
+		
+		while (!pending.isEmpty()) {
+			
+			MatrixElementGroup group = pending.remove(pending.size() - 1);
+			
+			for (MatrixElement child : group.getChildren()) {
+				if (child instanceof MatrixElementGroup
+						&& (((MatrixElementGroup) child).getChildrenCount() == 1 || random.nextInt(3) > 0)) {
+					pending.add((MatrixElementGroup) child);
+				} else {
+					cut.add(child);
+				}
+			}
+		}
+		
+		return cut;
+	}
+	
+	@Test
+	void namespaceGroupingTest() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadMatrixFromJSON(dependsConfigurationEntry);
+		
+		// The names of the sample have no dots, so they are all on the first level
+		// with dots and in a tree with underscores
+		for (char separator : new char[] { '.', '_' }) {
+			
+			List<String> expected = describeTree(createTokenizedGrouping(matrix, separator));
+			List<String> actual = describeTree(designStructureMatrixService.createNamespaceGrouping(matrix, separator));
+			
+			assertEquals(expected, actual);
+		}
+		
+	}
+	
+	/**
+	 * The nodes of a tree in preorder, with their names, their full names and the
+	 * full names of their parents
+	 */
+	private List<String> describeTree(MatrixElementGroup root) {
+		
+		List<String> nodes = new ArrayList<>();
+		List<MatrixElement> pending = new ArrayList<>(List.of(root));
+		
+		while (!pending.isEmpty()) {
+			
+			MatrixElement node = pending.remove(pending.size() - 1);
+			MatrixElement parent = node.getGroup();
+			
+			nodes.add((node.isGroup() ? "group " : "element ") + node.getName() + " " + node.getFullName() + " in "
+					+ (parent == null ? "" : parent.getFullName()));
+			
+			if (node.isGroup()) {
+				
+				List<MatrixElement> children = new ArrayList<>();
+				
+				for (MatrixElement child : ((MatrixElementGroup) node).getChildren()) {
+					children.add(child);
+				}
+				
+				for (int i = children.size() - 1; i >= 0; i--) {
+					pending.add(children.get(i));
+				}
+			}
+		}
+		
+		return nodes;
+	}
+	
+	/**
+	 * The grouping as it was done with a StringTokenizer, scanning the children of
+	 * every group by name
+	 */
+	private MatrixElementGroup createTokenizedGrouping(DesignStructureMatrix matrix, char separator) {
+		
+		List<MatrixElement> elements = new ArrayList<>();
+		
+		for (MatrixElement element : matrix.getElements()) {
+			
+			StringTokenizer tokenizer = new StringTokenizer(element.getFullName(), Character.toString(separator));
+			
+			if (tokenizer.hasMoreTokens()) {
+				
+				String namespace = tokenizer.nextToken();
+				boolean found = false;
+				
+				for (MatrixElement currentElement : elements) {
+					if (currentElement.getName().equals(namespace)) {
+						found = true;
+						addTokenizedElement(tokenizer, (MatrixElementGroup) currentElement, element, namespace);
+					}
+				}
+				
+				if (!found) {
+					if (tokenizer.hasMoreTokens()) {
+						MatrixElementGroup newElement = new MatrixElementGroup(namespace);
+						elements.add(newElement);
+						addTokenizedElement(tokenizer, newElement, element, namespace);
+					} else {
+						element.setName(namespace);
+						elements.add(element);
+					}
+				}
+			}
+		}
+		
+		MatrixElementGroup root = new MatrixElementGroup("matrix");
+		
+		for (MatrixElement element : elements) {
+			root.addChild(element);
+		}
+		
+		return root;
+	}
+	
+	private void addTokenizedElement(StringTokenizer tokenizer, MatrixElementGroup parent, MatrixElement element,
+			String fullNamespace) {
+		
+		if (tokenizer.hasMoreTokens()) {
+			
+			String namespace = tokenizer.nextToken();
+			fullNamespace = fullNamespace + "." + namespace;
+			
+			for (MatrixElement child : parent.getChildren()) {
+				if (child.getName().equals(namespace)) {
+					addTokenizedElement(tokenizer, (MatrixElementGroup) child, element, fullNamespace);
+					return;
+				}
+			}
+			
+			if (tokenizer.hasMoreTokens()) {
+				MatrixElementGroup newChild = new MatrixElementGroup(fullNamespace);
+				newChild.setName(namespace);
+				parent.addChild(newChild);
+				addTokenizedElement(tokenizer, newChild, element, fullNamespace);
+			} else {
+				element.setName(namespace);
+				parent.addChild(element);
+			}
+		}
+	}
+	
+	/**
+	 * The elements and the elements that depend on them or that they depend on
+	 */
+	private Set<MatrixElement> neighbors(DesignStructureMatrixModel model, Set<MatrixElement> elements) {
+		
+		Set<MatrixElement> neighbors = new HashSet<>(elements);
+		
+		for (MatrixElement element : elements) {
+			neighbors.addAll(model.getListOfDependents(element));
+			neighbors.addAll(model.getListOfDependees(element));
+		}
+		
+		return neighbors;
+	}
+	
+	private int totalDependencies(MatrixElement element) {
+		
+		int total = 0;
+		
+		for (MatrixDependencyGroup group : element.getDependencies()) {
+			total += group.getTotalDependencies();
+		}
+		
+		return total;
+	}
+	
+	private int countDependencies(MatrixElement element) {
+		
+		int count = 0;
+		
+		for (Iterator<MatrixDependencyGroup> i = element.getDependencies().iterator(); i.hasNext(); i.next()) {
+			count++;
+		}
+		
+		return count;
+	}
+	
 }
@@ -2,8 +2,16 @@ package mx.uam.archinaut.services;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,8 +19,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 
 import com.opencsv.exceptions.CsvValidationException;
 
+import mx.uam.archinaut.model.CoChangeTable;
 import mx.uam.archinaut.model.DesignStructureMatrix;
+import mx.uam.archinaut.model.ElementSymbolTable;
+import mx.uam.archinaut.model.MatrixDependencyGroup;
 import mx.uam.archinaut.model.MatrixElement;
+import mx.uam.archinaut.model.MatrixElementGroup;
+import mx.uam.archinaut.model.MetricsTable;
+import mx.uam.archinaut.model.PackageMetrics;
 
 @SpringBootTest
 public class MetricsServiceTest extends AbstractServiceTest  {
@@ -37,5 +51,159 @@ public class MetricsServiceTest extends AbstractServiceTest  {
 		}
 				
 	}
+	
+	@Test
+	void testSaveMetricsReport() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadMatrixFromJSON(dependsConfigurationEntry);
+		matrix = metricsService.loadMetrics(nonDependsConfigurationEntries, matrix);
+		
+		// An element without one of the metrics of the header
+		MatrixElement first = matrix.getElement(0);
+		String missing = matrix.getMetricNames().iterator().next();
+		MatrixElement last = matrix.getElement(matrix.getElementsCount() - 1);
+		last.getMetrics().remove(missing);
+		
+		Path report = Files.createTempFile("archinaut", ".csv");
+		
+		try {
+			
+			assertTrue(metricsService.saveMetricsReport(matrix, report.toString()));
+			
+			List<String> lines = Files.readAllLines(report);
+			List<String> header = Arrays.asList(lines.get(0).split(",", -1));
+			
+			assertEquals(matrix.getElementsCount() + 1, lines.size());
+			assertEquals("Filename", header.get(0));
+			
+			String[] firstRow = lines.get(1).split(",", -1);
+			String[] lastRow = lines.get(lines.size() - 1).split(",", -1);
+			
+			assertEquals(header.size(), firstRow.length);
+			assertEquals(header.size(), lastRow.length);
+			
+			for (int column = 1; column < header.size(); column++) {
+				assertEquals(Integer.toString(first.getMetricValue(header.get(column))), firstRow[column]);
+			}
+			
+			assertEquals("", lastRow[header.indexOf(missing)]);
+			
+		} finally {
+			Files.deleteIfExists(report);
+		}
+		
+	}
+
+	@Test
+	void testNamesOutsideTheMatrixAreNotInterned() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadMatrixFromJSON(dependsConfigurationEntry);
+		MatrixElement element = matrix.getElement(0);
+		String missing = "mx_uam_NotInTheMatrix_java";
+		
+		MetricsTable metrics = new MetricsTable("test", List.of("TEST_METRIC"));
+		metrics.addValue(element.getFullName(), 0, 3);
+		metrics.addValue(missing, 0, 5);
+		
+		CoChangeTable coChanges = new CoChangeTable("test", "TEST_COCHANGES");
+		coChanges.addPair(element.getFullName(), missing, 2);
+		coChanges.addPair(missing, element.getFullName(), 2);
+		
+		metricsService.mergeMetrics(metrics, matrix);
+		metricsService.mergeCoChanges(coChanges, matrix);
+		
+		assertEquals(3, element.getMetricValue("TEST_METRIC"));
+		assertEquals(ElementSymbolTable.NO_ID, ElementSymbolTable.getId(missing));
+		assertNull(matrix.getElementByFullname(missing));
+		
+	}
+	
+	@Test
+	void testSavePackagesReport() throws CsvValidationException, IOException {
+		
+		DesignStructureMatrix matrix = designStructureMatrixService.loadMatrixFromJSON(dependsConfigurationEntry);
+		
+		// The names of the sample have no dots, so the namespace comes from the
+		// underscores
+		designStructureMatrixService.createNamespaceGrouping(matrix, '_');
+		
+		PackageMetrics metrics = new PackageMetrics(matrix);
+		assertTrue(metrics.getPackages().size() > 0);
+		
+		int abstractElements = 0;
+		
+		for (int i = 0; i < metrics.getPackages().size(); i++) {
+			
+			MatrixElementGroup group = metrics.getPackages().get(i);
+			
+			Set<MatrixElement> afferent = new HashSet<>();
+			Set<MatrixElement> efferent = new HashSet<>();
+			int elements = 0;
+			
+			for (MatrixElement element : matrix.getElements()) {
+				
+				boolean inside = isInside(element, group);
+				
+				if (inside) {
+					elements++;
+				}
+				
+				for (MatrixDependencyGroup dependencies : element.getDependencies()) {
+					
+					boolean destinationInside = isInside(dependencies.getDestination(), group);
+					
+					if (dependencies.getTotalDependencies() > 0 && inside != destinationInside) {
+						(inside ? efferent : afferent).add(element);
+					}
+				}
+			}
+			
+			assertEquals(elements, metrics.getElementsCount(i));
+			assertEquals(afferent.size(), metrics.getAfferentCoupling(i));
+			assertEquals(efferent.size(), metrics.getEfferentCoupling(i));
+			
+			double instability = metrics.getInstability(i);
+			assertEquals(Math.abs(metrics.getAbstractness(i) + instability - 1), metrics.getDistance(i), 1e-9);
+			assertTrue(instability >= 0 && instability <= 1);
+			
+			abstractElements = Math.max(abstractElements, metrics.getAbstractElementsCount(i));
+		}
+		
+		// The sample has implementations and subclasses
+		assertTrue(abstractElements > 0);
+		
+		Path report = Files.createTempFile("archinaut-packages", ".csv");
+		
+		try {
+			
+			assertTrue(metricsService.savePackagesReport(matrix, report.toString()));
+			
+			List<String> lines = Files.readAllLines(report);
+			
+			assertEquals(metrics.getPackages().size() + 1, lines.size());
+			assertEquals("Package,ELEMENTS,ABSTRACT_ELEMENTS,CA,CE,INSTABILITY,ABSTRACTNESS,DISTANCE", lines.get(0));
+			
+			String[] firstRow = lines.get(1).split(",", -1);
+			
+			assertEquals(metrics.getPackages().get(0).getFullName(), firstRow[0]);
+			assertEquals(Integer.toString(metrics.getAfferentCoupling(0)), firstRow[3]);
+			assertEquals(Integer.toString(metrics.getEfferentCoupling(0)), firstRow[4]);
+			
+		} finally {
+			Files.deleteIfExists(report);
+		}
+		
+	}
+
+	private static boolean isInside(MatrixElement element, MatrixElementGroup group) {
+		
+		for (MatrixElement parent = element.getGroup(); parent != null; parent = parent.getGroup()) {
+			if (parent == group) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
 
 }